@@ -0,0 +1,93 @@
+package asl.metadata;
+
+import asl.testutils.Dependent;
+import asl.testutils.ResourceManager;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares loading the test dataless files through rdseed, as MetaGenerator used to, against
+ * reading them in process one file at a time and through the parallel {@link MetaGenerator}
+ * constructor.
+ *
+ * Run with "gradle jmh". The rdseed benchmark needs rdseed on the PATH.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MetaGeneratorBenchmark {
+
+  private static final String PATTERN = "${NETWORK}_${STATION}.dataless";
+  private static final List<String> NETWORKS = Arrays
+      .asList("CU", "GT", "IC", "IW", "NE", "US", "IU");
+
+  private String datalessDir;
+  private List<String[]> files;
+
+  @Setup
+  public void setUp() {
+    datalessDir = ResourceManager.getDirectoryPath("/metadata/station_dataless");
+    files = new ArrayList<>();
+    for (String network : NETWORKS) {
+      for (String file : MetaGenerator
+          .getDatalessFilesForNetwork(new File(datalessDir), PATTERN, network)) {
+        files.add(new String[]{file, network,
+            MetaGenerator.getStationNameFromPath(file, network, PATTERN)});
+      }
+    }
+  }
+
+  @Benchmark
+  public List<SeedVolume> rdseed() throws Exception {
+    Dependent.requireRDSeed();
+    List<SeedVolume> volumes = new ArrayList<>();
+    for (String[] file : files) {
+      Process process = new ProcessBuilder("rdseed", "-s", "-f", file[0]).start();
+      List<String> strings = new ArrayList<>();
+      try (BufferedReader reader = new BufferedReader(
+          new InputStreamReader(process.getInputStream()))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          strings.add(line);
+        }
+      }
+      process.waitFor();
+      Dataless dataless = new Dataless(strings, file[1], file[2]);
+      dataless.processVolume();
+      volumes.add(dataless.getVolume());
+    }
+    return volumes;
+  }
+
+  @Benchmark
+  public List<SeedVolume> readInProcess() throws Exception {
+    List<SeedVolume> volumes = new ArrayList<>();
+    for (String[] file : files) {
+      volumes.add(MetaGenerator.readVolume(file[0], file[1], file[2]));
+    }
+    return volumes;
+  }
+
+  @Benchmark
+  public MetaGenerator metaGenerator() {
+    return new MetaGenerator(datalessDir, PATTERN, NETWORKS);
+  }
+}
@@ -0,0 +1,176 @@
+package asl.seedscan.database;
+
+import asl.metadata.Blockette;
+import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
+import asl.seedscan.metrics.MetricResult;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares writing a station day's metric values from several scanners at once through
+ * spInsertMetricData, one call per value in a transaction, against
+ * {@link MetricDatabase#insertMetricData(List)}. Each thread writes its own station, so any waiting
+ * is on locks rather than on the same rows.
+ *
+ * Needs a local PostgreSQL with the seedscan schema, given by the SEEDSCAN_DB_URI, SEEDSCAN_DB_USER
+ * and SEEDSCAN_DB_PASSWORD environment variables, by default seedscan on localhost as user
+ * seedscan. It writes values for the made up network XX. Run with "gradle jmh".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(8)
+public class MetricInsertBenchmark {
+
+  private static final String[] METRICS = {"AvailabilityMetric", "GapCountMetric",
+      "DeadChannelMetric", "NLNMDeviationMetric:0.125-0.25", "NLNMDeviationMetric:4-8",
+      "NLNMDeviationMetric:18-22", "NLNMDeviationMetric:90-110", "NLNMDeviationMetric:200-500",
+      "CoherencePBM:4-8", "CoherencePBM:18-22", "PowerDifferencePBM:4-8",
+      "PowerDifferencePBM:18-22", "MassPositionMetric", "TimingQualityMetric",
+      "ALNMDeviationMetric:18-22", "ALNMDeviationMetric:4-8", "StationDeviationMetric:4-8",
+      "StationDeviationMetric:18-22", "DifferencePBM:90-110", "VacuumMonitorMetric"};
+
+  private static final String[] CHANNELS = {"00,LHZ", "00,LH1", "00,LH2", "10,LHZ", "10,LH1",
+      "10,LH2"};
+
+  private static final AtomicInteger stations = new AtomicInteger();
+
+  private String uri;
+  private String user;
+  private String password;
+  private MetricDatabase database;
+
+  /**
+   * One scanner, writing the days of its own station.
+   */
+  @State(Scope.Thread)
+  public static class Scanner {
+
+    private Blockette blockette;
+    private Connection connection;
+    private Random random;
+    private LocalDateTime day = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+    @Setup(Level.Trial)
+    public void setUp(MetricInsertBenchmark benchmark) throws SQLException {
+      int station = stations.incrementAndGet();
+      blockette = new Blockette(50);
+      blockette.addFieldData(3, "B" + station);
+      // StationMeta requires the coordinates
+      blockette.addFieldData(4, "0.0");
+      blockette.addFieldData(5, "0.0");
+      blockette.addFieldData(6, "0.0");
+      blockette.addFieldData(16, "XX");
+      connection = DriverManager.getConnection(benchmark.uri, benchmark.user,
+          benchmark.password);
+      random = new Random(station);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+      connection.close();
+    }
+
+    /**
+     * @return the metric results of the next day
+     */
+    List<MetricResult> nextDay() throws Exception {
+      day = day.plusDays(1);
+      StationMeta stationMeta = new StationMeta(blockette, day);
+      List<MetricResult> results = new ArrayList<>();
+      for (String metric : METRICS) {
+        MetricResult result = new MetricResult(stationMeta, metric);
+        for (String channel : CHANNELS) {
+          byte[] digest = new byte[16];
+          random.nextBytes(digest);
+          result.addResult(channel, random.nextDouble(), ByteBuffer.wrap(digest));
+        }
+        results.add(result);
+      }
+      return results;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws SQLException {
+    uri = getenv("SEEDSCAN_DB_URI", "jdbc:postgresql://localhost:5432/seedscan");
+    user = getenv("SEEDSCAN_DB_USER", "seedscan");
+    password = getenv("SEEDSCAN_DB_PASSWORD", "");
+    database = new MetricDatabase(uri, user, password);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    database.close();
+  }
+
+  private static String getenv(String name, String defaultValue) {
+    String value = System.getenv(name);
+    return value == null ? defaultValue : value;
+  }
+
+  @Benchmark
+  public void storedProcedure(Scanner scanner) throws Exception {
+    List<MetricResult> resultsList = scanner.nextDay();
+    Connection connection = scanner.connection;
+    connection.setAutoCommit(false);
+    try (PreparedStatement statement = connection
+        .prepareStatement("SELECT spInsertMetricData(?, ?, ?, ?, ?, ?, ?, ?)")) {
+      for (MetricResult results : resultsList) {
+        for (String id : results.getIdSet()) {
+          Channel channel = MetricResult.createChannel(id);
+          statement.setObject(1, results.getDate());
+          statement.setString(2, results.getMetricName());
+          statement.setString(3, results.getStation().getNetwork());
+          statement.setString(4, results.getStation().getStation());
+          statement.setString(5, channel.getLocation());
+          statement.setString(6, channel.getChannel());
+          statement.setDouble(7, results.getResult(id));
+          statement.setBytes(8, results.getDigest(id).array());
+          statement.executeQuery().close();
+        }
+      }
+      connection.commit();
+    } catch (SQLException e) {
+      connection.rollback();
+      throw e;
+    } finally {
+      connection.setAutoCommit(true);
+    }
+  }
+
+  @Benchmark
+  public int upsert(Scanner scanner) throws Exception {
+    int result = database.insertMetricData(scanner.nextDay());
+    if (result != 0) {
+      throw new IllegalStateException("Insert failed");
+    }
+    return result;
+  }
+}
@@ -0,0 +1,126 @@
+package asl.seedscan.event;
+
+import asl.metadata.Blockette;
+import asl.metadata.meta_new.StationMeta;
+import edu.sc.seis.TauP.SphericalCoords;
+import edu.sc.seis.TauP.TauP_Time;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the P arrivals of a station day's events, each requested by three metrics, through a
+ * new TauP_Time per request as the metrics used to, through {@link ArrivalTimeService} without and
+ * with its cache, and through its P arrival table.
+ *
+ * Run with "gradle jmh".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArrivalTimeBenchmark {
+
+  private static final int EVENTS = 10;
+  private static final int METRICS = 3;
+
+  private EventCMT[] events;
+  private StationMeta station;
+  private ArrivalTimeService service;
+  private ArrivalTimeService tableService;
+
+  @Setup
+  public void setUp() throws Exception {
+    Random random = new Random(1);
+    events = new EventCMT[EVENTS];
+    for (int i = 0; i < EVENTS; i++) {
+      events[i] = new EventCMT.Builder("E" + i)
+          .calendar(GregorianCalendar.from(LocalDateTime.of(2017, 3, 1, 0, 0)
+              .atZone(ZoneOffset.UTC)))
+          .latitude(-40 + 80 * random.nextDouble()).longitude(-180 + 360 * random.nextDouble())
+          .depth(700 * random.nextDouble() * random.nextDouble()).build();
+    }
+    Blockette blockette = new Blockette(50);
+    blockette.addFieldData(3, "ANMO");
+    blockette.addFieldData(4, "34.9459");
+    blockette.addFieldData(5, "-106.4572");
+    blockette.addFieldData(6, "1671.0");
+    blockette.addFieldData(16, "IU");
+    station = new StationMeta(blockette, LocalDateTime.of(2017, 3, 1, 0, 0));
+
+    service = new ArrivalTimeService("prem", 10000);
+    tableService = new ArrivalTimeService("prem", 10000);
+    tableService.setTableStep(0.5);
+    // Calculates the table rows the events need
+    pTable();
+  }
+
+  @Benchmark
+  public double perCallConstruction() throws Exception {
+    double sum = 0;
+    for (int metric = 0; metric < METRICS; metric++) {
+      for (EventCMT event : events) {
+        TauP_Time timeTool = new TauP_Time("prem");
+        timeTool.parsePhaseList("P");
+        timeTool.setSourceDepth(event.getDepth());
+        timeTool.calculate(SphericalCoords.distance(event.getLatitude(), event.getLongitude(),
+            station.getLatitude(), station.getLongitude()));
+        if (timeTool.getArrivals().size() > 0) {
+          sum += timeTool.getArrivals().get(0).getTime();
+        }
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double sharedModel() throws Exception {
+    double sum = 0;
+    for (int metric = 0; metric < METRICS; metric++) {
+      for (EventCMT event : events) {
+        sum += service.calculate("P", event.getDepth(), SphericalCoords.distance(
+            event.getLatitude(), event.getLongitude(), station.getLatitude(),
+            station.getLongitude())).size();
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double cached() throws Exception {
+    // A new station day
+    service.clear();
+    double sum = 0;
+    for (int metric = 0; metric < METRICS; metric++) {
+      for (EventCMT event : events) {
+        sum += service.getPArrivalTime(event, station);
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double pTable() throws Exception {
+    double sum = 0;
+    for (int metric = 0; metric < METRICS; metric++) {
+      for (EventCMT event : events) {
+        sum += tableService.getPArrivalTime(event, station);
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,135 @@
+package asl.seedscan.metrics;
+
+import static asl.utils.NumericUtils.detrend;
+import static asl.utils.NumericUtils.getMean;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the step correlation and the moving averages of {@link PulseDetectionMetric} over a
+ * full day plus the 280 seconds it reads past midnight against the window by window versions they
+ * replaced, kept here as the windowed* methods.
+ *
+ * The windowed correlation takes minutes per day at 40 Hz, so each benchmark runs once per
+ * iteration. Run with "gradle jmh".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PulseDetectionBenchmark {
+
+  @Param({"1", "20", "40"})
+  public double sampleRate;
+
+  private double[] trace;
+  private double[] stepFunction;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(1);
+    trace = new double[(int) ((86400 + 280) * sampleRate)];
+    double walk = 0;
+    for (int i = 0; i < trace.length; i++) {
+      walk += random.nextGaussian();
+      trace[i] = 1E-6 * walk;
+    }
+    stepFunction = PulseDetectionMetric.getStepFunction(sampleRate);
+  }
+
+  @Benchmark
+  public double[][] crossCorrelate() {
+    return PulseDetectionMetric.crossCorrelate(trace, stepFunction);
+  }
+
+  @Benchmark
+  public double[][] windowedCrossCorrelate() {
+    double[] stepFunctionProcessed = detrend(stepFunction);
+    double summedSquares = 0.;
+    for (double point : stepFunctionProcessed) {
+      summedSquares += Math.pow(point, 2);
+    }
+    summedSquares = Math.sqrt(summedSquares);
+    for (int i = 0; i < stepFunctionProcessed.length; ++i) {
+      stepFunctionProcessed[i] /= summedSquares;
+    }
+    int corrLen = trace.length - stepFunction.length;
+    double[] correl = new double[corrLen];
+    double[] scal = new double[corrLen];
+    for (int i = 0; i < corrLen; ++i) {
+      double[] tr2 = detrend(Arrays.copyOfRange(trace, i, i + stepFunction.length));
+      double sumSqd = 0;
+      for (double v : tr2) {
+        sumSqd += Math.pow(v, 2);
+      }
+      sumSqd = Math.sqrt(sumSqd);
+      double scalNumer = 0;
+      double scalDenom = 0;
+      for (int j = 0; j < tr2.length; ++j) {
+        correl[i] += tr2[j] / sumSqd * stepFunctionProcessed[j];
+        scalNumer += tr2[j] * stepFunctionProcessed[j];
+        scalDenom += stepFunction[j] * stepFunctionProcessed[j];
+      }
+      scal[i] = scalNumer / scalDenom;
+    }
+    return new double[][]{correl, scal};
+  }
+
+  private static int singleSide(int windowLength) {
+    return (int) ((Math.ceil(windowLength / 2.) * 2. - 1.) / 2.);
+  }
+
+  @Benchmark
+  public double[] movingAverage() {
+    return PulseDetectionMetric.getCenteredMovingAverage(trace, (int) (3600 * sampleRate));
+  }
+
+  @Benchmark
+  public double[] windowedMovingAverage() {
+    int singleSide = singleSide((int) (3600 * sampleRate));
+    double[] mean = new double[trace.length];
+    for (int i = 0; i < trace.length; ++i) {
+      mean[i] = getMean(Arrays.copyOfRange(trace, Math.max(0, i - singleSide),
+          Math.min(trace.length, i + singleSide)));
+    }
+    return mean;
+  }
+
+  @Benchmark
+  public double[][] movingAveragePercentiles() {
+    return PulseDetectionMetric
+        .getCenteredMovingAveragePercentiles(trace, (int) (240 * sampleRate));
+  }
+
+  @Benchmark
+  public double[][] windowedMovingAveragePercentiles() {
+    int singleSide = singleSide((int) (240 * sampleRate));
+    double[][] thirds = new double[3][trace.length];
+    for (int i = 0; i < trace.length; ++i) {
+      double[] window = Arrays.copyOfRange(trace, Math.max(0, i - singleSide),
+          Math.min(trace.length, i + singleSide));
+      Arrays.sort(window);
+      int firstDivider = window.length / 3;
+      int secondDivider = (int) (window.length / 1.5);
+      thirds[0][i] = getMean(Arrays.copyOfRange(window, 0, firstDivider));
+      thirds[1][i] = getMean(Arrays.copyOfRange(window, firstDivider, secondDivider));
+      thirds[2][i] = getMean(Arrays.copyOfRange(window, secondDivider, window.length));
+    }
+    return thirds;
+  }
+}
@@ -0,0 +1,96 @@
+package asl.seedsplitter;
+
+import asl.seedscan.GlobalMock;
+import asl.testutils.ResourceManager;
+import edu.iris.dmc.seedcodec.B1000Types;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import seed.MiniSeed;
+import seed.MiniSeedView;
+
+/**
+ * Compares decoding a station day of MiniSEED with MiniSeed.decomp() followed by
+ * Sequence.extend() against decoding with {@link SteimDecoder} straight into the Sequence.
+ *
+ * Run with "gradle jmh". The gc profiler is enabled in build.gradle, so the report includes the
+ * allocation rate of each path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SteimDecoderBenchmark {
+
+  private List<MiniSeed> records;
+  private List<MiniSeedView> views;
+  private SteimDecoder decoder;
+
+  @Setup
+  public void setUp() throws Exception {
+    GlobalMock.setQualityFlags("All");
+    records = new ArrayList<>();
+    views = new ArrayList<>();
+    decoder = new SteimDecoder();
+
+    File dir = new File(ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206"));
+    File[] files = dir.listFiles((dir1, name) -> name.endsWith(".seed"));
+    Arrays.sort(files);
+    for (File file : files) {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      while (buffer.remaining() >= 256) {
+        int length = MiniSeedView.crackBlockSize(buffer);
+        ByteBuffer record = buffer.slice();
+        record.limit(length);
+        buffer.position(buffer.position() + length);
+
+        if (MiniSeedView.isHeartBeat(record)) {
+          continue;
+        }
+        MiniSeedView view = new MiniSeedView(record);
+        if (view.getEncoding() != B1000Types.STEIM1 && view.getEncoding() != B1000Types.STEIM2) {
+          continue;
+        }
+        byte[] bytes = new byte[length];
+        record.duplicate().get(bytes);
+        records.add(new MiniSeed(bytes));
+        views.add(view);
+      }
+    }
+  }
+
+  @Benchmark
+  public Sequence decompExtend() throws Exception {
+    Sequence sequence = new Sequence();
+    for (MiniSeed record : records) {
+      int[] samples = record.decomp();
+      sequence.extend(samples, 0, samples.length);
+    }
+    return sequence;
+  }
+
+  @Benchmark
+  public Sequence decodeInPlace() throws Exception {
+    Sequence sequence = new Sequence();
+    for (MiniSeedView view : views) {
+      decoder.decode(view, sequence);
+    }
+    return sequence;
+  }
+}
@@ -0,0 +1,102 @@
+package asl.timeseries;
+
+import asl.utils.FFTResult;
+import asl.utils.TimeSeriesUtils;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.complex.Complex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the PSD of a full day through {@link CrossSpectrum} against FFTResult.spectralCalc and
+ * Complex response division, as {@link CrossPower} used to compute it, for power and cross power.
+ *
+ * Run with "gradle jmh".
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CrossSpectrumBenchmark {
+
+  @Param({"1", "20", "40"})
+  public double sampleRate;
+
+  private double[] x;
+  private double[] y;
+  private double[] xCopy;
+  private Complex[] response;
+  private double[] interleavedResponse;
+
+  @Setup
+  public void setUp() {
+    int length = (int) (86400 * sampleRate);
+    Random random = new Random(1);
+    x = new double[length];
+    y = new double[length];
+    for (int i = 0; i < length; i++) {
+      x[i] = random.nextGaussian();
+      y[i] = random.nextGaussian();
+    }
+    xCopy = x.clone();
+
+    int size = CrossSpectrum.compute(x, y, 1.0 / sampleRate).getSize();
+    response = new Complex[size];
+    interleavedResponse = new double[2 * size];
+    for (int k = 0; k < size; k++) {
+      response[k] = new Complex(1.0 + k, 0.5 * k);
+      interleavedResponse[2 * k] = response[k].getReal();
+      interleavedResponse[2 * k + 1] = response[k].getImaginary();
+    }
+  }
+
+  private double[] complexPath(double[] yData) {
+    FFTResult psdRaw = FFTResult.spectralCalc(x, yData,
+        (long) (TimeSeriesUtils.ONE_HZ_INTERVAL / sampleRate));
+    Complex[] spectrumRaw = psdRaw.getFFT();
+    double[] powerSpectrum = new double[spectrumRaw.length];
+    for (int k = 1; k < powerSpectrum.length; k++) {
+      Complex responseMagnitude = response[k].multiply(response[k].conjugate());
+      powerSpectrum[k] = spectrumRaw[k].divide(responseMagnitude).abs();
+    }
+    return powerSpectrum;
+  }
+
+  private double[] primitivePath(double[] yData) throws TimeseriesException {
+    CrossSpectrum spectrum = CrossSpectrum.compute(x, yData, 1.0 / sampleRate);
+    spectrum.removeResponse(interleavedResponse, interleavedResponse);
+    return spectrum.getMagnitudes();
+  }
+
+  @Benchmark
+  public double[] powerComplex() {
+    return complexPath(xCopy);
+  }
+
+  @Benchmark
+  public double[] powerPrimitive() throws TimeseriesException {
+    return primitivePath(xCopy);
+  }
+
+  @Benchmark
+  public double[] crossComplex() {
+    return complexPath(y);
+  }
+
+  @Benchmark
+  public double[] crossPrimitive() throws TimeseriesException {
+    return primitivePath(y);
+  }
+}
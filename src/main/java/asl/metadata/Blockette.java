@@ -134,6 +134,22 @@ public class Blockette implements java.io.Serializable {
 		fields.put(fieldIdentifier, field);
 	}
 
+	/**
+	 * Appends a value to a field, creating the field if this is its first
+	 * value. Used by the readers that build blockettes without rdseed.
+	 *
+	 * @param fieldIdentifier numeric field id for a given field
+	 * @param value the value appended to the field
+	 */
+	void addFieldValue(int fieldIdentifier, String value) {
+		Field field = fields.get(fieldIdentifier);
+		if (field == null) {
+			field = new Field(fieldIdentifier, "");
+			fields.put(fieldIdentifier, field);
+		}
+		field.addValue(value);
+	}
+
 	/**
 	 * Gets the field value.
 	 *
@@ -5,18 +5,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Hashtable;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 public class ChannelData {
-	private static final Logger logger = LoggerFactory
-			.getLogger(asl.metadata.ChannelData.class);
-
 	private static final int CHANNEL_EPOCH_INFO_BLOCKETTE_NUMBER = 52;
 	private static final int CHANNEL_COMMENT_BLOCKETTE_NUMBER = 59;
 
 	private Hashtable<LocalDateTime, Blockette> comments;
 	private Hashtable<LocalDateTime, EpochData> epochs;
+	/** Index of epochs by start time, null until an epoch is searched. */
+	private volatile EpochIndex<EpochData> epochIndex;
 	private String location = null;
 	private String name = null;
 
@@ -55,6 +51,7 @@ public class ChannelData {
                 .parseTimestamp(timestampString);
 		EpochData data = new EpochData(blockette);
 		epochs.put(timestamp, data);
+		epochIndex = null;
 		return timestamp;
 	}
 
@@ -66,79 +63,33 @@ public class ChannelData {
 		return epochs.get(timestamp);
 	}
 
-	// containsEpoch - search through epochs of current channeldata
-	// return true if epochTime is contained.
+	Hashtable<LocalDateTime, EpochData> getEpochs() {
+		return epochs;
+	}
+
 	/**
-	 * Epoch index ----------- ONLY THIS EPOCH! 0 newest startTimestamp - newest
-	 * endTimestamp (may be "null") 1 ... - ... 2 ... - ... . ... - ... n-1
-	 * oldest startTimestamp - oldest endTimestamp
-	 **/
-	// public boolean containsEpoch(Calendar epochTime)
+	 * Finds the epoch containing a timestamp. The newest epoch may be open,
+	 * an older open epoch stops the search. Epochs are searched newest first
+	 * through an index sorted by start time, which is rebuilt after epochs
+	 * are added.
+	 *
+	 * @param epochTime
+	 *            the requested timestamp
+	 * @return the start timestamp of the epoch or null if no epoch contains
+	 *         epochTime
+	 */
 	LocalDateTime containsEpoch(LocalDateTime epochTime) {
-		boolean containsEpochTime = false;
-
-		ArrayList<LocalDateTime> epochtimes = new ArrayList<>();
-		epochtimes.addAll(epochs.keySet());
-		Collections.sort(epochtimes);
-		Collections.reverse(epochtimes);
-		int nEpochs = epochtimes.size();
-
-		LocalDateTime startTimeStamp = null;
-		LocalDateTime endTimeStamp = null;
-		LocalDateTime timestamp = null;
-		EpochData epoch = null;
-
-		// epochs keys(=timestamps) are now sorted with the newest first
-		// most likely the first (=newest) epoch will be the one we want
-		// So check the first epoch for the epochTime and if it's not
-		// found (and nEpochs > 1), check the older epochs
-
-		timestamp = epochtimes.get(0);
-		epoch = epochs.get(timestamp);
-		startTimeStamp = epoch.getStartTime();
-		endTimeStamp = epoch.getEndTime();
-		if (endTimeStamp == null) { // This Epoch is open
-			if (epochTime.compareTo(startTimeStamp) >= 0) {
-				containsEpochTime = true;
-			}
-		} // The first Epoch is closed
-		else if (epochTime.compareTo(startTimeStamp) >= 0
-				&& epochTime.compareTo(endTimeStamp) <= 0) {
-			containsEpochTime = true;
-		}
-
-		if (!containsEpochTime && nEpochs > 1) { // Search the older epochs if
-													// necessary
-			for (int i = 1; i < nEpochs; i++) {
-				timestamp = epochtimes.get(i);
-				epoch = epochs.get(timestamp);
-				startTimeStamp = epoch.getStartTime();
-				endTimeStamp = epoch.getEndTime();
-				if (endTimeStamp == null) { // This Epoch is open - we don't
-											// allow that here!
-					logger.error("Older Epoch has Open End Time (=null)");
-					// if (epochTime.getTimeInMillis() >=
-					// startTimeStamp.getTimeInMillis() ) {
-					// containsEpochTime = true;
-					// }
-					break;
-				} else if (epochTime.compareTo(startTimeStamp) >= 0
-						&& epochTime.compareTo(endTimeStamp) <= 0) {
-					containsEpochTime = true;
-					break;
-				}
-			}
+		EpochIndex<EpochData> index = epochIndex;
+		if (index == null) {
+			index = new EpochIndex<>(epochs.values(), EpochData::getStartTime,
+					EpochData::getEndTime, false);
+			epochIndex = index;
 		}
-
-		if (containsEpochTime) {
-			// System.out.format("----ChannelData %s-%s Epoch: [%s - %s] contains EpochTime=%s\n",getLocation(),
-			// getName(), startDateString,endDateString,epochDateString);
-			return startTimeStamp;
-		} else {
-			// System.out.format("----ChannelData EpochTime=%s was NOT FOUND!!\n",epochDateString);
+		EpochData epoch = index.getEpoch(epochTime);
+		if (epoch == null) {
 			return null;
 		}
-
+		return epoch.getStartTime();
 	}
 
 	void printEpochs() {
@@ -67,6 +67,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Hashtable;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -91,6 +92,20 @@ class Dataless {
 		this.stationName = stationName;
 	}
 
+	/**
+	 * Assembles blockettes already read by {@link DatalessReader} or
+	 * {@link StationXmlReader}, skipping the rdseed text parsing.
+	 *
+	 * @param blockettes the blockettes in the order rdseed prints them
+	 * @param networkName the network of the volume
+	 * @param stationName the station of the volume
+	 */
+	Dataless(List<Blockette> blockettes, String networkName, String stationName) {
+		this.blockettes = new ArrayList<>(blockettes);
+		this.networkName = networkName;
+		this.stationName = stationName;
+	}
+
 	void processVolume() throws DatalessParseException {
 		boolean failed = true;
 		try {
@@ -7,4 +7,8 @@ class DatalessParseException extends Exception {
 		super();
 	}
 
+	DatalessParseException(String message) {
+		super(message);
+	}
+
 }
@@ -0,0 +1,508 @@
+package asl.metadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the control headers of a dataless SEED volume into blockettes.
+ *
+ * The blockettes are numbered and formatted the way rdseed -s prints them,
+ * so {@link Dataless} assembles them the same way it assembles rdseed output:
+ * <ul>
+ * <li>abbreviation lookups are replaced by the abbreviations they reference,</li>
+ * <li>each channel's data format blockette B030 follows its B052,</li>
+ * <li>responses referenced through a B060 are expanded into the matching
+ * response blockettes,</li>
+ * <li>empty variable length fields read "(null)".</li>
+ * </ul>
+ * Abbreviation dictionaries and time span headers are not returned.
+ */
+class DatalessReader {
+
+	/**
+	 * Field layouts of the blockettes that are read, from the SEED manual.
+	 *
+	 * A and D are fixed width ASCII and decimal fields, V is a variable
+	 * length field ended by a '~'. Brackets repeat their fields as many times
+	 * as the value of the field before them. Fields are numbered in order
+	 * from 3, after the blockette type and length.
+	 */
+	private static final Map<Integer, FieldLayout[]> LAYOUTS = new HashMap<>();
+
+	static {
+		layout(10, "D4 D2 V V V V V");
+		layout(11, "D3 [A5 D6]");
+		layout(30, "V D4 D3 D2 [V]");
+		layout(33, "D3 V");
+		layout(34, "D3 V V");
+		layout(41, "D4 V A1 D3 D3 D4 [D14]");
+		layout(42, "D4 V A1 D3 D3 A1 A1 D12 D12 D12 D12 D12 D3 [D12 D12]");
+		layout(43, "D4 V A1 D3 D3 D12 D12 D3 [D12 D12 D12 D12] D3 [D12 D12 D12 D12]");
+		layout(44, "D4 V A1 D3 D3 D4 [D12 D12] D4 [D12 D12]");
+		layout(45, "D4 V D3 D3 D4 [D12 D12 D12 D12 D12]");
+		layout(46, "D4 V D3 D3 D4 [D12 D12]");
+		layout(47, "D4 V D10 D5 D5 D11 D11");
+		layout(48, "D4 V D12 D12 D2 [D12 D12 V]");
+		layout(50, "A5 D10 D11 D7 D4 D3 V D3 D4 D2 V V A1 A2");
+		layout(51, "V V D4 D6");
+		layout(52, "A2 A3 D4 D3 V D3 D3 D10 D11 D7 D5 D5 D5 D4 D2 D10 D10 D4 V V V A1");
+		layout(53, "A1 D2 D3 D3 D12 D12 D3 [D12 D12 D12 D12] D3 [D12 D12 D12 D12]");
+		layout(54, "A1 D2 D3 D3 D4 [D12 D12] D4 [D12 D12]");
+		layout(55, "D2 D3 D3 D4 [D12 D12 D12 D12 D12]");
+		layout(56, "D2 D3 D3 D4 [D12 D12]");
+		layout(57, "D2 D10 D5 D5 D11 D11");
+		layout(58, "D2 D12 D12 D2 [D12 D12 V]");
+		layout(59, "V V D4 D6");
+		layout(60, "D2 [D2 D2 [D4]]");
+		layout(61, "D2 V A1 D3 D3 D4 [D14]");
+		layout(62, "A1 D2 D3 D3 A1 A1 D12 D12 D12 D12 D12 D3 [D12 D12]");
+	}
+
+	/**
+	 * Fields of the response blockettes that reference a B034 unit
+	 * abbreviation.
+	 */
+	private static final Map<Integer, int[]> UNIT_FIELDS = new HashMap<>();
+
+	static {
+		UNIT_FIELDS.put(53, new int[] { 5, 6 });
+		UNIT_FIELDS.put(54, new int[] { 5, 6 });
+		UNIT_FIELDS.put(55, new int[] { 4, 5 });
+		UNIT_FIELDS.put(56, new int[] { 4, 5 });
+		UNIT_FIELDS.put(61, new int[] { 6, 7 });
+		UNIT_FIELDS.put(62, new int[] { 5, 6 });
+	}
+
+	/** Size of the sequence number, type and continuation header of a record. */
+	private static final int RECORD_HEADER_LENGTH = 8;
+
+	/** Size of a blockette's type and length fields. */
+	private static final int BLOCKETTE_HEADER_LENGTH = 7;
+
+	/**
+	 * A field, or a group of fields repeated as many times as the value of
+	 * the field before it.
+	 */
+	private static class FieldLayout {
+		private final char type;
+		private final int width;
+		private final int number;
+		private final FieldLayout[] repeated;
+
+		private FieldLayout(char type, int width, int number,
+				FieldLayout[] repeated) {
+			this.type = type;
+			this.width = width;
+			this.number = number;
+			this.repeated = repeated;
+		}
+	}
+
+	private static void layout(int blocketteNumber, String layout) {
+		String[] tokens = layout.replace("[", "[ ").replace("]", " ]").split(" +");
+		int[] position = { 0 };
+		int[] fieldNumber = { 3 };
+		LAYOUTS.put(blocketteNumber, compile(tokens, position, fieldNumber));
+	}
+
+	private static FieldLayout[] compile(String[] tokens, int[] position,
+			int[] fieldNumber) {
+		List<FieldLayout> fields = new ArrayList<>();
+		while (position[0] < tokens.length) {
+			String token = tokens[position[0]++];
+			if (token.equals("[")) {
+				fields.add(new FieldLayout('R', 0, 0,
+						compile(tokens, position, fieldNumber)));
+			} else if (token.equals("]")) {
+				break;
+			} else {
+				int width = token.length() > 1 ? Integer.parseInt(token.substring(1)) : 0;
+				fields.add(new FieldLayout(token.charAt(0), width, fieldNumber[0]++, null));
+			}
+		}
+		return fields.toArray(new FieldLayout[fields.size()]);
+	}
+
+	/** Blockettes in the order they are printed by rdseed. */
+	private final List<Blockette> blockettes = new ArrayList<>();
+
+	/** B030 data format dictionary, by lookup code. */
+	private final Map<String, Blockette> formats = new HashMap<>();
+
+	/** B033 generic abbreviations, by lookup code. */
+	private final Map<String, Blockette> abbreviations = new HashMap<>();
+
+	/** B034 unit abbreviations, by lookup code. */
+	private final Map<String, Blockette> units = new HashMap<>();
+
+	/** B041 to B048 response dictionary, by lookup code. */
+	private final Map<String, Blockette> responses = new HashMap<>();
+
+	private DatalessReader() {
+	}
+
+	/**
+	 * Reads the control headers of a SEED volume.
+	 *
+	 * @param volume the volume's bytes
+	 * @return the station and channel blockettes, as rdseed prints them
+	 * @throws DatalessParseException if the bytes are not a SEED volume
+	 */
+	static List<Blockette> read(byte[] volume) throws DatalessParseException {
+		DatalessReader reader = new DatalessReader();
+		List<Blockette> parsed = reader.parse(volume);
+		reader.resolve(parsed);
+		return reader.blockettes;
+	}
+
+	/**
+	 * Returns the blockettes of the control headers in file order. Records
+	 * that are not volume, abbreviation or station headers are skipped.
+	 */
+	private List<Blockette> parse(byte[] volume) throws DatalessParseException {
+		int recordLength = getRecordLength(volume);
+
+		// Join the bodies of the control records, blockettes may continue
+		// into the next record.
+		byte[] headers = new byte[volume.length];
+		List<Integer> recordStarts = new ArrayList<>();
+		int length = 0;
+		for (int offset = 0; offset + recordLength <= volume.length; offset += recordLength) {
+			char type = (char) volume[offset + 6];
+			if (type != 'V' && type != 'A' && type != 'S') {
+				continue;
+			}
+			recordStarts.add(length);
+			int bodyLength = recordLength - RECORD_HEADER_LENGTH;
+			System.arraycopy(volume, offset + RECORD_HEADER_LENGTH, headers, length, bodyLength);
+			length += bodyLength;
+		}
+		recordStarts.add(length);
+
+		List<Blockette> parsed = new ArrayList<>();
+		int record = 0;
+		int position = 0;
+		while (position + BLOCKETTE_HEADER_LENGTH <= length) {
+			while (recordStarts.get(record + 1) <= position) {
+				record++;
+			}
+			// A blockette header never spans records, the rest of a record
+			// too short for one, or after the last blockette of a header, is
+			// padding.
+			int recordEnd = recordStarts.get(record + 1);
+			if (recordEnd - position < BLOCKETTE_HEADER_LENGTH
+					|| !isNumber(headers, position, BLOCKETTE_HEADER_LENGTH)) {
+				position = recordEnd;
+				continue;
+			}
+			int number = parseInt(headers, position, 3);
+			int blocketteLength = parseInt(headers, position + 3, 4);
+			if (blocketteLength < BLOCKETTE_HEADER_LENGTH
+					|| position + blocketteLength > length) {
+				throw new DatalessParseException("Blockette " + number
+						+ " has invalid length " + blocketteLength);
+			}
+			FieldLayout[] layout = LAYOUTS.get(number);
+			if (layout != null) {
+				String body = new String(headers, position + BLOCKETTE_HEADER_LENGTH,
+						blocketteLength - BLOCKETTE_HEADER_LENGTH,
+						StandardCharsets.ISO_8859_1);
+				Blockette blockette = new Blockette(number);
+				readFields(blockette, layout, body, new int[] { 0 }, new int[] { 0 });
+				parsed.add(blockette);
+			}
+			position += blocketteLength;
+		}
+		return parsed;
+	}
+
+	/**
+	 * The record length is read from field 4 of the volume identifier B010,
+	 * which starts the first record.
+	 */
+	private static int getRecordLength(byte[] volume) throws DatalessParseException {
+		int offset = RECORD_HEADER_LENGTH;
+		if (volume.length < offset + 13 || volume[6] != 'V'
+				|| !new String(volume, offset, 3, StandardCharsets.ISO_8859_1).equals("010")
+				|| !isNumber(volume, offset + 11, 2)) {
+			throw new DatalessParseException("Volume does not start with a blockette 010");
+		}
+		int exponent = parseInt(volume, offset + 11, 2);
+		if (exponent < 8 || exponent > 16) {
+			throw new DatalessParseException("Invalid record length 2^" + exponent);
+		}
+		return 1 << exponent;
+	}
+
+	/**
+	 * Reads fields into the blockette until the layout or the body ends.
+	 *
+	 * @param position next character of the body to read
+	 * @param lastCount value of the last field read, the count of a following
+	 *            repeated group
+	 * @return false once the body is exhausted
+	 */
+	private static boolean readFields(Blockette blockette, FieldLayout[] layout,
+			String body, int[] position, int[] lastCount) {
+		for (FieldLayout field : layout) {
+			if (field.type == 'R') {
+				int count = lastCount[0];
+				for (int i = 0; i < count; i++) {
+					if (!readFields(blockette, field.repeated, body, position, lastCount)) {
+						return false;
+					}
+				}
+				continue;
+			}
+			if (position[0] >= body.length()) {
+				return false;
+			}
+
+			String value;
+			if (field.type == 'V') {
+				int end = body.indexOf('~', position[0]);
+				if (end < 0) {
+					end = body.length();
+				}
+				value = body.substring(position[0], end);
+				position[0] = end + 1;
+				if (value.isEmpty()) {
+					value = "(null)";
+				}
+			} else {
+				int end = Math.min(position[0] + field.width, body.length());
+				value = body.substring(position[0], end).trim();
+				position[0] = end;
+				if (field.type == 'D') {
+					value = normalizeNumber(value);
+				}
+			}
+
+			try {
+				lastCount[0] = Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				lastCount[0] = 0;
+			}
+			blockette.addFieldValue(field.number, value);
+		}
+		return true;
+	}
+
+	/**
+	 * Integers lose their leading zeros and sign, as rdseed prints them.
+	 * Floating point values are kept as written.
+	 */
+	private static String normalizeNumber(String value) {
+		int start = (value.startsWith("+") || value.startsWith("-")) ? 1 : 0;
+		if (value.length() == start || value.length() > 18) {
+			return value;
+		}
+		for (int i = start; i < value.length(); i++) {
+			if (!Character.isDigit(value.charAt(i))) {
+				return value;
+			}
+		}
+		return Long.toString(Long.parseLong(value));
+	}
+
+	/**
+	 * Collects the dictionaries, then resolves the lookups of the station
+	 * headers into {@link #blockettes}.
+	 */
+	private void resolve(List<Blockette> parsed) throws DatalessParseException {
+		for (Blockette blockette : parsed) {
+			switch (blockette.getNumber()) {
+			case 30:
+				formats.put(blockette.getFieldValue(4, 0), blockette);
+				break;
+			case 33:
+				abbreviations.put(blockette.getFieldValue(3, 0), blockette);
+				break;
+			case 34:
+				units.put(blockette.getFieldValue(3, 0), blockette);
+				break;
+			case 41:
+			case 42:
+			case 43:
+			case 44:
+			case 45:
+			case 46:
+			case 47:
+			case 48:
+				responses.put(blockette.getFieldValue(3, 0), blockette);
+				break;
+			default:
+				break;
+			}
+		}
+
+		for (Blockette blockette : parsed) {
+			int number = blockette.getNumber();
+			switch (number) {
+			case 10:
+			case 11:
+			case 50:
+			case 51:
+			case 59:
+				blockettes.add(blockette);
+				break;
+			case 52:
+				blockette.addFieldData(6, lookupAbbreviation(blockette.getFieldValue(6, 0)));
+				String signalUnits = blockette.getFieldValue(8, 0);
+				blockette.addFieldData(8, signalUnits + " " + lookupUnits(signalUnits));
+				String calibrationUnits = blockette.getFieldValue(9, 0);
+				blockette.addFieldData(9, calibrationUnits + " " + lookupUnits(calibrationUnits));
+				blockettes.add(blockette);
+				Blockette format = formats.get(blockette.getFieldValue(16, 0));
+				if (format != null) {
+					blockettes.add(format);
+				}
+				break;
+			case 53:
+			case 54:
+			case 55:
+			case 56:
+			case 57:
+			case 58:
+			case 61:
+			case 62:
+				resolveUnits(blockette);
+				blockettes.add(blockette);
+				break;
+			case 60:
+				expandResponseReference(blockette);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Adds the dictionary responses referenced by a B060 as the response
+	 * blockettes they stand for.
+	 */
+	private void expandResponseReference(Blockette reference)
+			throws DatalessParseException {
+		List<String> stages = reference.getFieldValues(4);
+		List<String> counts = reference.getFieldValues(5);
+		List<String> keys = reference.getFieldValues(6);
+		if (stages == null) {
+			return;
+		}
+		int key = 0;
+		for (int i = 0; i < stages.size(); i++) {
+			int count = Integer.parseInt(counts.get(i));
+			for (int j = 0; j < count; j++) {
+				Blockette dictionary = responses.get(keys.get(key++));
+				if (dictionary == null) {
+					throw new DatalessParseException("Blockette 060 references missing response "
+							+ keys.get(key - 1));
+				}
+				Blockette response = toResponse(dictionary, stages.get(i));
+				resolveUnits(response);
+				blockettes.add(response);
+			}
+		}
+	}
+
+	/**
+	 * Converts a dictionary blockette (B041 to B048) into its channel response
+	 * blockette (B061, B062, B053 to B058) for a stage.
+	 *
+	 * The dictionary replaces the stage number with a lookup key and name, so
+	 * its later fields are renumbered around the stage number.
+	 */
+	private static Blockette toResponse(Blockette dictionary, String stage) {
+		int number = dictionary.getNumber();
+		Blockette response;
+		switch (number) {
+		case 41:
+			// Keeps its name, only the lookup key becomes the stage
+			response = new Blockette(61);
+			response.addFieldValue(3, stage);
+			copyFields(dictionary, response, 4, 0);
+			break;
+		case 42:
+		case 43:
+		case 44:
+			// Transfer function type comes before the stage
+			response = new Blockette(number == 42 ? 62 : number + 10);
+			response.addFieldValue(3, dictionary.getFieldValue(5, 0));
+			response.addFieldValue(4, stage);
+			copyFields(dictionary, response, 6, -1);
+			break;
+		default:
+			response = new Blockette(number + 10);
+			response.addFieldValue(3, stage);
+			copyFields(dictionary, response, 5, -1);
+			break;
+		}
+		return response;
+	}
+
+	private static void copyFields(Blockette from, Blockette to, int firstField,
+			int shift) {
+		for (Map.Entry<Integer, Field> entry : from.getFields().entrySet()) {
+			if (entry.getKey() < firstField) {
+				continue;
+			}
+			for (String value : entry.getValue().getValues()) {
+				to.addFieldValue(entry.getKey() + shift, value);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the unit lookup codes of a response blockette with "UNIT -
+	 * Description".
+	 */
+	private void resolveUnits(Blockette blockette) {
+		int[] fields = UNIT_FIELDS.get(blockette.getNumber());
+		if (fields == null) {
+			return;
+		}
+		for (int field : fields) {
+			String code = blockette.getFieldValue(field, 0);
+			if (code != null) {
+				blockette.addFieldData(field, lookupUnits(code));
+			}
+		}
+	}
+
+	private String lookupUnits(String code) {
+		Blockette unit = units.get(code);
+		if (unit == null) {
+			return "No Abbreviation Referenced";
+		}
+		return unit.getFieldValue(4, 0) + " - " + unit.getFieldValue(5, 0);
+	}
+
+	private String lookupAbbreviation(String code) {
+		Blockette abbreviation = abbreviations.get(code);
+		if (abbreviation == null) {
+			return code;
+		}
+		return code + " " + abbreviation.getFieldValue(4, 0);
+	}
+
+	private static boolean isNumber(byte[] bytes, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (bytes[i] < '0' || bytes[i] > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int parseInt(byte[] bytes, int offset, int length) {
+		int value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			value = value * 10 + (bytes[i] - '0');
+		}
+		return value;
+	}
+}
@@ -0,0 +1,136 @@
+package asl.metadata;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sorted index over the epochs of a station or channel, finding the epoch
+ * containing a timestamp by binary search instead of sorting and scanning
+ * every epoch on each request.
+ *
+ * Epochs are sorted by start time. Each position also keeps the latest end
+ * time of it and every older epoch, so the search for a timestamp stops as
+ * soon as no older epoch can reach it. Epochs of a station do not overlap,
+ * which makes a lookup a single binary search; overlapping epochs are still
+ * resolved in the order the linear scan used, newest first.
+ *
+ * @param <T>
+ *            the epoch data, a Blockette 050 for stations and EpochData for
+ *            channels
+ */
+class EpochIndex<T> {
+	private static final Logger logger = LoggerFactory
+			.getLogger(asl.metadata.EpochIndex.class);
+
+	private final LocalDateTime[] starts;
+	private final LocalDateTime[] ends;
+	private final List<T> epochs;
+
+	/** Latest end time of each epoch and all older ones, MAX if open. */
+	private final LocalDateTime[] latestEnds;
+
+	/**
+	 * Newest open epoch other than the last one, which stops the search, or
+	 * -1 if there is none or they are allowed.
+	 */
+	private final int openOlderEpoch;
+
+	/**
+	 * @param epochs
+	 *            the epochs, in any order
+	 * @param startTime
+	 *            the start time of an epoch
+	 * @param endTime
+	 *            the end time of an epoch, null if it is open
+	 * @param allowOpenOlderEpochs
+	 *            whether an open epoch older than the newest one may contain
+	 *            a timestamp. Otherwise the search stops at it and logs an
+	 *            error.
+	 */
+	EpochIndex(Collection<T> epochs, Function<T, LocalDateTime> startTime,
+			Function<T, LocalDateTime> endTime, boolean allowOpenOlderEpochs) {
+		this.epochs = new ArrayList<>(epochs);
+		this.epochs.sort(Comparator.comparing(startTime));
+
+		int nEpochs = this.epochs.size();
+		starts = new LocalDateTime[nEpochs];
+		ends = new LocalDateTime[nEpochs];
+		latestEnds = new LocalDateTime[nEpochs];
+		int openOlder = -1;
+		LocalDateTime latestEnd = LocalDateTime.MIN;
+		for (int i = 0; i < nEpochs; i++) {
+			T epoch = this.epochs.get(i);
+			starts[i] = startTime.apply(epoch);
+			ends[i] = endTime.apply(epoch);
+			if (ends[i] == null) {
+				latestEnd = LocalDateTime.MAX;
+				if (i < nEpochs - 1 && !allowOpenOlderEpochs) {
+					openOlder = i;
+				}
+			} else if (ends[i].isAfter(latestEnd)) {
+				latestEnd = ends[i];
+			}
+			latestEnds[i] = latestEnd;
+		}
+		openOlderEpoch = openOlder;
+	}
+
+	/**
+	 * Finds the newest epoch containing a timestamp. Start and end times are
+	 * inclusive.
+	 *
+	 * @param epochTime
+	 *            the timestamp
+	 * @return the epoch or null if none contains epochTime
+	 */
+	T getEpoch(LocalDateTime epochTime) {
+		int nEpochs = starts.length;
+		if (nEpochs == 0) {
+			return null;
+		}
+		// Most requests are for the newest epoch, which may be open
+		if (contains(nEpochs - 1, epochTime)) {
+			return epochs.get(nEpochs - 1);
+		}
+
+		// Newest of the older epochs starting no later than epochTime
+		int low = 0;
+		int high = nEpochs - 2;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid].compareTo(epochTime) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		int i = high;
+		while (i > openOlderEpoch) {
+			if (latestEnds[i].compareTo(epochTime) < 0) {
+				return null;
+			}
+			if (contains(i, epochTime)) {
+				return epochs.get(i);
+			}
+			i--;
+		}
+		if (openOlderEpoch >= 0) {
+			// Searching newest first, the open epoch is reached before any
+			// epoch containing epochTime
+			logger.error("Older Epoch has Open End Time (=null)");
+		}
+		return null;
+	}
+
+	private boolean contains(int i, LocalDateTime epochTime) {
+		return epochTime.compareTo(starts[i]) >= 0
+				&& (ends[i] == null || epochTime.compareTo(ends[i]) <= 0);
+	}
+}
@@ -20,23 +20,29 @@ package asl.metadata;
 
 import asl.metadata.meta_new.ChannelMeta;
 import asl.metadata.meta_new.StationMeta;
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.slf4j.Logger;
@@ -44,7 +50,7 @@ import org.slf4j.LoggerFactory;
 
 /**
  * MetaGenerator - Holds metadata for all networks x stations x channels x epochs Currently reads
- * metadata in from network dataless seed files
+ * metadata in from network dataless seed files or StationXML files
  *
  * @author Mike Hagerty hagertmb@bc.edu
  */
@@ -59,6 +65,24 @@ public class MetaGenerator {
    */
   protected Hashtable<StationKey, SeedVolume> volumes = null;
 
+  /**
+   * Number of station epoch combinations whose processed channels are kept, enough for every
+   * station being scanned at once to reuse them across its days.
+   */
+  private static final int SNAPSHOT_CACHE_SIZE = 256;
+
+  /**
+   * Channels processed for a station's combination of epochs, in least recently used order. The
+   * snapshots are never modified, each StationMeta is given copies of them. Guarded by itself.
+   */
+  private final Map<StationEpochs, ChannelMeta[]> snapshots = new LinkedHashMap<
+      StationEpochs, ChannelMeta[]>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<StationEpochs, ChannelMeta[]> eldest) {
+      return size() > SNAPSHOT_CACHE_SIZE;
+    }
+  };
+
   /**
    * Private class meant to enable mock test class to inherit from this without running other
    * function
@@ -76,73 +100,58 @@ public class MetaGenerator {
   public MetaGenerator(String datalessDir, String datalessFilePattern, List<String> networkSubset) {
     volumes = new Hashtable<>();
 
-    for (String networkName : networkSubset) {
-
-      // Allow for differing network directories
-      File dir = new File(datalessDir.replace("${NETWORK}", networkName));
-      if (!dir.exists()) {
-        logger.error("Path '" + dir + "' does not exist.");
-        System.exit(0);
-      } else if (!dir.isDirectory()) {
-        logger.error("Path '" + dir + "' is not a directory.");
-        System.exit(0);
-      }
-
-      List<String> files = getDatalessFilesForNetwork(dir, datalessFilePattern, networkName);
-
-      if (files.size() == 0) {
-        continue;
-      }
+    // Files are read in parallel, their volumes are added in order once read.
+    ExecutorService pool = Executors
+        .newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    List<String> datalessFiles = new ArrayList<>();
+    List<Future<SeedVolume>> reads = new ArrayList<>();
+    try {
+      for (String networkName : networkSubset) {
 
-      // we expect dataless structures to be associated over entire network
-      // so we'll read in the strings from
-      for (String datalessFile : files) {
+        // Allow for differing network directories
+        File dir = new File(datalessDir.replace("${NETWORK}", networkName));
+        if (!dir.exists()) {
+          logger.error("Path '" + dir + "' does not exist.");
+          System.exit(0);
+        } else if (!dir.isDirectory()) {
+          logger.error("Path '" + dir + "' is not a directory.");
+          System.exit(0);
+        }
 
-        ArrayList<String> strings = new ArrayList<>(); // list of lines from processed metadata file
+        List<String> files = getDatalessFilesForNetwork(dir, datalessFilePattern, networkName);
 
-        logger.info("== MetaGenerator: rdseed -f [datalessFile={}]", datalessFile);
-        ProcessBuilder pb = new ProcessBuilder("rdseed", "-s", "-f", datalessFile);
+        // we expect dataless structures to be associated over entire network
+        for (String datalessFile : files) {
+          String stationName = getStationNameFromPath(datalessFile, networkName,
+              datalessFilePattern);
+          datalessFiles.add(datalessFile);
+          reads.add(pool.submit(() -> readVolume(datalessFile, networkName, stationName)));
+        } // end loop over the per-station dataless files for a given network
 
-        String stationName = getStationNameFromPath(datalessFile, networkName, datalessFilePattern);
+      } // end loop over network name codes
 
+      for (int i = 0; i < reads.size(); i++) {
+        SeedVolume volume = null;
         try {
-          Process process = pb.start();
-          BufferedReader reader = new BufferedReader(
-              new InputStreamReader(process.getInputStream()));
-          String line = null;
-          while ((line = reader.readLine()) != null) {
-            strings.add(line);
-          }
-          process.waitFor();
-        }
-        // Need to catch both IOException and InterruptedException
-        catch (IOException e) {
-          // System.out.println("Error: IOException Description: " +
-          // e.getMessage());
-          logger.error("IOException:", e);
+          volume = reads.get(i).get();
+        } catch (ExecutionException e) {
+          logger.error("== processing dataless volume for file=[{}]", datalessFiles.get(i),
+              e.getCause());
         } catch (InterruptedException e) {
-          // System.out.println("Error: InterruptedException Description: "
-          // + e.getMessage());
           logger.error("InterruptedException:", e);
         }
 
-        SeedVolume volume = null;
-        try {
-          volume = buildVolumesFromStringData(strings, networkName, stationName);
-        } catch (Exception e) {
-          logger.error("== processing dataless volume for network=[{}]", networkName);
-        }
-
         if (volume == null) {
-          logger.error("== processing dataless volume==null! for network=[{}]", networkName);
+          logger.error("== processing dataless volume==null! for file=[{}]",
+              datalessFiles.get(i));
           System.exit(0);
         } else {
           addVolume(volume);
         }
-
-      } // end loop over the per-station dataless files for a given network
-
-    } // end loop over network name codes
+      }
+    } finally {
+      pool.shutdownNow();
+    }
 
     if (volumes.size() == 0) {
       logger.error("No dataless files found");
@@ -150,6 +159,48 @@ public class MetaGenerator {
     }
   }
 
+  /**
+   * Read a dataless SEED or StationXML file into a volume. StationXML is recognized by its leading
+   * '&lt;', anything else is read as SEED.
+   *
+   * @param datalessFile path to the file
+   * @param networkName the network the file is listed under
+   * @param stationName the station the file is named for
+   * @return the volume
+   * @throws IOException if the file cannot be read
+   * @throws DatalessParseException if the file's contents cannot be parsed
+   */
+  static SeedVolume readVolume(String datalessFile, String networkName, String stationName)
+      throws IOException, DatalessParseException {
+    logger.info("== MetaGenerator: reading [datalessFile={}]", datalessFile);
+    byte[] bytes = Files.readAllBytes(Paths.get(datalessFile));
+    List<Blockette> blockettes;
+    if (isStationXml(bytes)) {
+      blockettes = StationXmlReader.read(new ByteArrayInputStream(bytes));
+    } else {
+      blockettes = DatalessReader.read(bytes);
+    }
+    Dataless dataless = new Dataless(blockettes, networkName, stationName);
+    dataless.processVolume();
+    return dataless.getVolume();
+  }
+
+  /**
+   * SEED volumes start with a record sequence number, XML with a '&lt;' after any byte order mark
+   * or whitespace.
+   */
+  private static boolean isStationXml(byte[] bytes) {
+    for (byte b : bytes) {
+      if (b == '<') {
+        return true;
+      }
+      if (!Character.isWhitespace(b) && (b & 0x80) == 0) {
+        return false;
+      }
+    }
+    return false;
+  }
+
   static String getStationNameFromPath(String filePath, String networkName,
       String datalessFilePattern) {
     String filename = filePath.substring(
@@ -306,6 +357,9 @@ public class MetaGenerator {
    * Our (minimal) internal format of the channel response. Contains the first 3 (0, 1, 2) response
    * stages for the REQUESTED epoch only. ChannelMeta.setDayBreak() = true if we detect a change in
    * metadata on the requested timestamp day.
+   *
+   * Channels are processed once for each combination of station and channel epochs, later days
+   * within the same epochs are given copies of them.
    */
 
   public StationMeta getStationMeta(Station station, LocalDateTime timestamp) {
@@ -343,35 +397,106 @@ public class MetaGenerator {
 
     // Get this StationData's ChannelKeys and sort:
     Hashtable<ChannelKey, ChannelData> channels = stationData.getChannels();
-    TreeSet<ChannelKey> keys = new TreeSet<>(channels.keySet());
-    for (ChannelKey key : keys) {
-      // System.out.println("==Channel:"+key );
-      ChannelData channel = channels.get(key);
-      // ChannelMeta channelMeta = new ChannelMeta(key,timestamp);
-      ChannelMeta channelMeta = new ChannelMeta(key, timestamp,
-          station);
+    ChannelKey[] keys = new TreeSet<>(channels.keySet()).toArray(new ChannelKey[0]);
 
-      // See if this channel contains the requested epoch time and if
-      // so return the key
-      // (=Epoch Start timestamp)
-      // channel.printEpochs();
+    // See which epoch of each channel contains the requested epoch time
+    EpochData[] epochs = new EpochData[keys.length];
+    boolean[] dayBreaks = new boolean[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      ChannelData channel = channels.get(keys[i]);
       LocalDateTime epochTimestamp = channel.containsEpoch(timestamp);
       if (epochTimestamp != null) {
-        EpochData epochData = channel.getEpoch(epochTimestamp);
+        epochs[i] = channel.getEpoch(epochTimestamp);
 
         // If the epoch is closed, check that the end time is at
         // least 24 hours later than the requested time
-        if (epochData.getEndTime() != null) {
-          if (epochData.getEndTime().compareTo(timestamp.plusDays(1)) < 0) {
-            // set channelMeta.dayBreak = true
+        if (epochs[i].getEndTime() != null) {
+          if (epochs[i].getEndTime().compareTo(timestamp.plusDays(1)) < 0) {
+            dayBreaks[i] = true;
+          }
+        }
+      }
+    }
+
+    // Days within the same epochs copy the channels processed for the first of them
+    StationEpochs stationEpochs = new StationEpochs(blockette, keys, epochs, dayBreaks);
+    ChannelMeta[] snapshot;
+    synchronized (snapshots) {
+      snapshot = snapshots.get(stationEpochs);
+    }
+    if (snapshot == null) {
+      snapshot = new ChannelMeta[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        if (epochs[i] != null) {
+          ChannelMeta channelMeta = new ChannelMeta(keys[i], timestamp, station);
+          if (dayBreaks[i]) {
             channelMeta.setDayBreak();
           }
+          channelMeta.processEpochData(epochs[i]);
+          snapshot[i] = channelMeta;
         }
-        channelMeta.processEpochData(epochData);
-        stationMeta.addChannel(key, channelMeta);
+      }
+      synchronized (snapshots) {
+        snapshots.put(stationEpochs, snapshot);
+      }
+    }
+
+    for (int i = 0; i < keys.length; i++) {
+      if (snapshot[i] != null) {
+        stationMeta.addChannel(keys[i], snapshot[i].copy(timestamp));
       }
     }
 
     return stationMeta;
   }
+
+  /**
+   * The station epoch and channel epochs containing a requested time. Epochs are compared by
+   * identity, as they are only ever read from the loaded volumes.
+   */
+  private static final class StationEpochs {
+
+    private final Blockette stationEpoch;
+    private final ChannelKey[] keys;
+    private final EpochData[] channelEpochs;
+    private final boolean[] dayBreaks;
+    private final int hash;
+
+    StationEpochs(Blockette stationEpoch, ChannelKey[] keys, EpochData[] channelEpochs,
+        boolean[] dayBreaks) {
+      this.stationEpoch = stationEpoch;
+      this.keys = keys;
+      this.channelEpochs = channelEpochs;
+      this.dayBreaks = dayBreaks;
+      int h = System.identityHashCode(stationEpoch);
+      for (EpochData epoch : channelEpochs) {
+        h = 31 * h + System.identityHashCode(epoch);
+      }
+      hash = 31 * h + Arrays.hashCode(dayBreaks);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof StationEpochs)) {
+        return false;
+      }
+      StationEpochs other = (StationEpochs) obj;
+      if (hash != other.hash || stationEpoch != other.stationEpoch
+          || channelEpochs.length != other.channelEpochs.length
+          || !Arrays.equals(keys, other.keys) || !Arrays.equals(dayBreaks, other.dayBreaks)) {
+        return false;
+      }
+      for (int i = 0; i < channelEpochs.length; i++) {
+        if (channelEpochs[i] != other.channelEpochs[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 }
@@ -1,8 +1,6 @@
 package asl.metadata;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Hashtable;
 import java.util.TreeSet;
 
@@ -18,6 +16,8 @@ public class StationData {
 
 	private Hashtable<LocalDateTime, Blockette> comments;
 	private Hashtable<LocalDateTime, Blockette> epochs;
+	/** Index of epochs by start time, null until an epoch is searched. */
+	private volatile EpochIndex<LocalDateTime> epochIndex;
 	private Hashtable<ChannelKey, ChannelData> channels;
 	private String network = null;
 	private String name = null;
@@ -74,6 +74,7 @@ public class StationData {
 		LocalDateTime timestamp = BlocketteTimestamp
 				.parseTimestamp(timestampString);
 		epochs.put(timestamp, blockette);
+		epochIndex = null;
 		return timestamp;
 	}
 
@@ -85,52 +86,38 @@ public class StationData {
 		return epochs.get(timestamp);
 	}
 
-	/**
-	 * Epoch index ----------- ONLY THIS EPOCH! 0 newest startTimestamp - newest
-	 * endTimestamp (may be "null") 1 ... - ... 2 ... - ... . ... - ... n-1
-	 * oldest startTimestamp - oldest endTimestamp
-	 **/
-	// public boolean containsEpoch(Calendar epochTime)
-
 	// Return the correct Blockette 050 for the requested epochTime
 	// Return null if epochTime not contained
 	public Blockette getBlockette(LocalDateTime epochTime) {
-		ArrayList<LocalDateTime> epochtimes = new ArrayList<>();
-		epochtimes.addAll(epochs.keySet());
-		Collections.sort(epochtimes);
-		Collections.reverse(epochtimes);
-		int nEpochs = epochtimes.size();
-
-		LocalDateTime startTimeStamp = null;
-		LocalDateTime endTimeStamp = null;
-
-		// Loop through Blockettes (B050) and pick out epoch end dates
-		for (int i = 0; i < nEpochs; i++) {
-			endTimeStamp = null;
-			startTimeStamp = epochtimes.get(i);
-			Blockette blockette = epochs.get(startTimeStamp);
-			String timestampString = blockette.getFieldValue(14, 0);
-			if (!timestampString.equals("(null)")) {
-				try {
-					endTimeStamp = BlocketteTimestamp
-							.parseTimestamp(timestampString);
-				} catch (TimestampFormatException e) {
-					logger.error("StationData.printEpochs() [{}-{}] Error converting timestampString={}",
-							network, name, timestampString);
-				}
-			}
-			if (endTimeStamp == null) { // This Epoch is open
-				if (epochTime.compareTo(startTimeStamp) >= 0) {
-					return blockette;
-				}
-			} // This Epoch is closed
-			else if (epochTime.compareTo(startTimeStamp) >= 0
-					&& epochTime.compareTo(endTimeStamp) <= 0) {
-				return blockette;
+		EpochIndex<LocalDateTime> index = epochIndex;
+		if (index == null) {
+			// Index the epoch start times, any epoch may be open
+			index = new EpochIndex<>(epochs.keySet(), timestamp -> timestamp,
+					timestamp -> getEndTime(epochs.get(timestamp)), true);
+			epochIndex = index;
+		}
+		LocalDateTime startTimeStamp = index.getEpoch(epochTime);
+		if (startTimeStamp == null) {
+			return null;
+		}
+		return epochs.get(startTimeStamp);
+	}
+
+	/**
+	 * @return the end time of a Blockette 050 epoch, null if it is open or
+	 *         can't be read
+	 */
+	private LocalDateTime getEndTime(Blockette blockette) {
+		String timestampString = blockette.getFieldValue(14, 0);
+		if (!timestampString.equals("(null)")) {
+			try {
+				return BlocketteTimestamp.parseTimestamp(timestampString);
+			} catch (TimestampFormatException e) {
+				logger.error("StationData.printEpochs() [{}-{}] Error converting timestampString={}",
+						network, name, timestampString);
 			}
-		} // for
-		return null; // If we made it to here than we are returning
-						// blockette==null
+		}
+		return null;
 	}
 
 	// Loop through all station (=Blockette 050) epochs and print summary
@@ -0,0 +1,552 @@
+package asl.metadata;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads FDSN StationXML into the blockettes a dataless SEED volume of the same
+ * stations holds, so {@link Dataless} can assemble them.
+ *
+ * Each Station becomes a B050 and each Channel a B052. Response stages become
+ * the SEED response blockettes: PolesZeros B053, Coefficients B054, Decimation
+ * B057, StageGain B058, FIR B061 and Polynomial B062. The InstrumentSensitivity
+ * becomes the stage 0 B058. Values are formatted the way rdseed prints them.
+ * Response lists and comments are not read.
+ *
+ * The document is streamed rather than loaded as a tree.
+ */
+class StationXmlReader {
+
+	/** Output format of SEED times, as printed by rdseed. */
+	private static final DateTimeFormatter SEED_TIME = DateTimeFormatter
+			.ofPattern("yyyy,DDD,HH:mm:ss.SSSS");
+
+	/**
+	 * Descriptions of the common SEED units, for StationXML that only names
+	 * its units. ResponseStage recognizes units by their description.
+	 */
+	private static final Map<String, String> UNIT_DESCRIPTIONS = new HashMap<>();
+
+	static {
+		UNIT_DESCRIPTIONS.put("M", "Displacement in Meters");
+		UNIT_DESCRIPTIONS.put("NM", "Displacement in Nanometers");
+		UNIT_DESCRIPTIONS.put("M/S", "Velocity in Meters Per Second");
+		UNIT_DESCRIPTIONS.put("NM/S", "Velocity in Nanometers Per Second");
+		UNIT_DESCRIPTIONS.put("M/S**2", "Acceleration in Meters Per Second Per Second");
+		UNIT_DESCRIPTIONS.put("PA", "Pressure in Pascals");
+		UNIT_DESCRIPTIONS.put("KPA", "Pressure in Kilopascals");
+		UNIT_DESCRIPTIONS.put("T", "Magnetic Flux Density in Teslas");
+		UNIT_DESCRIPTIONS.put("NT", "Magnetic Flux Density in Nanoteslas");
+		UNIT_DESCRIPTIONS.put("C", "Degrees Centigrade");
+		UNIT_DESCRIPTIONS.put("V", "Volts");
+		UNIT_DESCRIPTIONS.put("COUNTS", "Digital Counts");
+	}
+
+	private final List<Blockette> blockettes = new ArrayList<>();
+
+	/** Names of the open elements, innermost first. */
+	private final Deque<String> path = new ArrayDeque<>();
+
+	private final StringBuilder text = new StringBuilder();
+
+	private String network;
+	private Blockette station;
+	private Blockette channel;
+	private StringBuilder channelFlags;
+	private String sensor;
+	private String stage;
+
+	/** Response blockette of the element being read. */
+	private Blockette response;
+
+	private String unitsName;
+	private String unitsDescription;
+
+	/** Real and imaginary values of the zeros, poles or coefficients read. */
+	private List<String> zerosReal;
+	private List<String> zerosImaginary;
+	private List<String> polesReal;
+	private List<String> polesImaginary;
+	private List<String> coefficients;
+	private List<String> denominators;
+
+	private StationXmlReader() {
+	}
+
+	/**
+	 * Reads StationXML from a stream.
+	 *
+	 * @param input the StationXML document
+	 * @return the station and channel blockettes, as rdseed prints them
+	 * @throws DatalessParseException if the document is not valid StationXML
+	 */
+	static List<Blockette> read(InputStream input) throws DatalessParseException {
+		StationXmlReader reader = new StationXmlReader();
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		try {
+			XMLStreamReader xml = factory.createXMLStreamReader(input);
+			try {
+				reader.read(xml);
+			} finally {
+				xml.close();
+			}
+		} catch (XMLStreamException | RuntimeException e) {
+			throw new DatalessParseException("Invalid StationXML: " + e.getMessage());
+		}
+		return reader.blockettes;
+	}
+
+	private void read(XMLStreamReader xml) throws XMLStreamException {
+		// Stands in for the volume identifier of a dataless volume
+		Blockette volume = new Blockette(10);
+		volume.addFieldValue(3, "StationXML");
+		blockettes.add(volume);
+
+		while (xml.hasNext()) {
+			switch (xml.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				text.setLength(0);
+				start(xml.getLocalName(), xml);
+				path.push(xml.getLocalName());
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+				text.append(xml.getText());
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				String name = path.pop();
+				end(name, path.peek(), text.toString().trim());
+				text.setLength(0);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	private void start(String name, XMLStreamReader xml) {
+		switch (name) {
+		case "Network":
+			network = xml.getAttributeValue(null, "code");
+			break;
+		case "Station":
+			station = new Blockette(50);
+			station.addFieldValue(3, xml.getAttributeValue(null, "code"));
+			station.addFieldValue(13, toSeedTime(xml.getAttributeValue(null, "startDate")));
+			station.addFieldValue(14, toSeedTime(xml.getAttributeValue(null, "endDate")));
+			station.addFieldValue(16, network);
+			blockettes.add(station);
+			break;
+		case "Channel":
+			channel = new Blockette(52);
+			String location = xml.getAttributeValue(null, "locationCode");
+			channel.addFieldValue(3, location == null ? "" : location.trim());
+			channel.addFieldValue(4, xml.getAttributeValue(null, "code"));
+			channel.addFieldValue(22, toSeedTime(xml.getAttributeValue(null, "startDate")));
+			channel.addFieldValue(23, toSeedTime(xml.getAttributeValue(null, "endDate")));
+			for (int field : new int[] { 12, 13, 14, 15, 18 }) {
+				channel.addFieldData(field, "0");
+			}
+			channelFlags = new StringBuilder();
+			sensor = null;
+			blockettes.add(channel);
+			break;
+		case "InstrumentSensitivity":
+			if ("Response".equals(path.peek())) {
+				stage = "0";
+				startResponse(58);
+			}
+			break;
+		case "Stage":
+			stage = xml.getAttributeValue(null, "number");
+			break;
+		case "PolesZeros":
+			startResponse(53);
+			zerosReal = new ArrayList<>();
+			zerosImaginary = new ArrayList<>();
+			polesReal = new ArrayList<>();
+			polesImaginary = new ArrayList<>();
+			break;
+		case "Coefficients":
+			startResponse(54);
+			coefficients = new ArrayList<>();
+			denominators = new ArrayList<>();
+			break;
+		case "Decimation":
+			startResponse(57);
+			break;
+		case "StageGain":
+			startResponse(58);
+			break;
+		case "FIR":
+			startResponse(61);
+			String firName = xml.getAttributeValue(null, "name");
+			response.addFieldValue(4, firName == null ? "(null)" : firName);
+			coefficients = new ArrayList<>();
+			break;
+		case "Polynomial":
+			if ("Stage".equals(path.peek())) {
+				startResponse(62);
+				coefficients = new ArrayList<>();
+			}
+			break;
+		case "InputUnits":
+		case "OutputUnits":
+			unitsName = null;
+			unitsDescription = null;
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Starts a response blockette of the current stage.
+	 */
+	private void startResponse(int number) {
+		response = new Blockette(number);
+		switch (number) {
+		case 53:
+		case 54:
+		case 62:
+			response.addFieldValue(4, stage);
+			break;
+		default:
+			response.addFieldValue(3, stage);
+			break;
+		}
+		blockettes.add(response);
+	}
+
+	private void end(String name, String parent, String value) {
+		if (parent == null) {
+			return;
+		}
+		switch (parent) {
+		case "Station":
+			endStationField(name, value);
+			break;
+		case "Site":
+			if (name.equals("Name") && station != null) {
+				station.addFieldData(9, value);
+			}
+			break;
+		case "Channel":
+			endChannelField(name, value);
+			break;
+		case "Sensor":
+			// The description names the instrument as B033 does, fall back
+			// on the type or model
+			if (name.equals("Description")) {
+				sensor = value;
+			} else if (sensor == null && (name.equals("Type") || name.equals("Model"))) {
+				sensor = value;
+			}
+			break;
+		case "InputUnits":
+		case "OutputUnits":
+			if (name.equals("Name")) {
+				unitsName = value;
+			} else if (name.equals("Description")) {
+				unitsDescription = value;
+			}
+			break;
+		case "Zero":
+			endComplex(name, value, zerosReal, zerosImaginary);
+			break;
+		case "Pole":
+			endComplex(name, value, polesReal, polesImaginary);
+			break;
+		default:
+			if (response != null && isResponseElement(parent)) {
+				endResponseField(name, value);
+			}
+			break;
+		}
+
+		switch (name) {
+		case "Channel":
+			if (channel != null) {
+				channel.addFieldData(6, sensor == null ? "(null)" : sensor);
+				channel.addFieldData(21, channelFlags.toString());
+			}
+			break;
+		case "PolesZeros":
+			response.addFieldData(9, Integer.toString(zerosReal.size()));
+			addComplex(10, zerosReal, zerosImaginary);
+			response.addFieldData(14, Integer.toString(polesReal.size()));
+			addComplex(15, polesReal, polesImaginary);
+			response = null;
+			break;
+		case "Coefficients":
+			response.addFieldData(7, Integer.toString(coefficients.size()));
+			addValues(8, coefficients, 9);
+			response.addFieldData(10, Integer.toString(denominators.size()));
+			addValues(11, denominators, 12);
+			response = null;
+			break;
+		case "FIR":
+			response.addFieldData(8, Integer.toString(coefficients.size()));
+			addValues(9, coefficients, 0);
+			response = null;
+			break;
+		case "Polynomial":
+			if (response != null && response.getNumber() == 62) {
+				response.addFieldData(3, "P");
+				response.addFieldData(8, "B");
+				response.addFieldData(14, Integer.toString(coefficients.size()));
+				addValues(15, coefficients, 16);
+				response = null;
+			}
+			break;
+		case "StageGain":
+		case "InstrumentSensitivity":
+			if (response != null && response.getNumber() == 58) {
+				response.addFieldData(6, "0");
+				response = null;
+			}
+			break;
+		case "Decimation":
+			response = null;
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void endStationField(String name, String value) {
+		switch (name) {
+		case "Latitude":
+			station.addFieldData(4, value);
+			break;
+		case "Longitude":
+			station.addFieldData(5, value);
+			break;
+		case "Elevation":
+			station.addFieldData(6, value);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void endChannelField(String name, String value) {
+		switch (name) {
+		case "Latitude":
+			channel.addFieldData(10, value);
+			break;
+		case "Longitude":
+			channel.addFieldData(11, value);
+			break;
+		case "Elevation":
+			channel.addFieldData(12, value);
+			break;
+		case "Depth":
+			channel.addFieldData(13, value);
+			break;
+		case "Azimuth":
+			channel.addFieldData(14, value);
+			break;
+		case "Dip":
+			channel.addFieldData(15, value);
+			break;
+		case "SampleRate":
+			channel.addFieldData(18, value);
+			break;
+		case "Type":
+			// SEED channel flags are the initials of the StationXML types
+			if (!value.isEmpty()) {
+				channelFlags.append(value.charAt(0));
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static boolean isResponseElement(String name) {
+		switch (name) {
+		case "PolesZeros":
+		case "Coefficients":
+		case "FIR":
+		case "Polynomial":
+		case "Decimation":
+		case "StageGain":
+		case "InstrumentSensitivity":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Reads a child of the response element being read.
+	 */
+	private void endResponseField(String name, String value) {
+		int number = response.getNumber();
+		switch (name) {
+		case "InputUnits":
+		case "OutputUnits":
+			String units = toSeedUnits();
+			int field;
+			if (number == 61) {
+				field = name.equals("InputUnits") ? 6 : 7;
+			} else if (number == 53 || number == 54 || number == 62) {
+				field = name.equals("InputUnits") ? 5 : 6;
+			} else {
+				if (number == 58 && name.equals("InputUnits")
+						&& "0".equals(stage) && channel != null) {
+					channel.addFieldData(8, units);
+				}
+				return;
+			}
+			response.addFieldData(field, units);
+			break;
+		case "PzTransferFunctionType":
+			response.addFieldData(3, value.startsWith("LAPLACE (HERTZ)") ? "B"
+					: value.startsWith("DIGITAL") ? "D" : "A");
+			break;
+		case "CfTransferFunctionType":
+			response.addFieldData(3, value.startsWith("ANALOG (HERTZ)") ? "B"
+					: value.startsWith("ANALOG") ? "A" : "D");
+			break;
+		case "NormalizationFactor":
+			response.addFieldData(7, value);
+			break;
+		case "NormalizationFrequency":
+			response.addFieldData(8, value);
+			break;
+		case "Numerator":
+		case "NumeratorCoefficient":
+		case "Coefficient":
+			coefficients.add(value);
+			break;
+		case "Denominator":
+			denominators.add(value);
+			break;
+		case "Symmetry":
+			response.addFieldData(5, value.equals("ODD") ? "B"
+					: value.equals("EVEN") ? "C" : "A");
+			break;
+		case "ApproximationType":
+			response.addFieldData(7, value.isEmpty() ? "M" : value.substring(0, 1));
+			break;
+		case "FrequencyLowerBound":
+			response.addFieldData(9, value);
+			break;
+		case "FrequencyUpperBound":
+			response.addFieldData(10, value);
+			break;
+		case "ApproximationLowerBound":
+			response.addFieldData(11, value);
+			break;
+		case "ApproximationUpperBound":
+			response.addFieldData(12, value);
+			break;
+		case "MaximumError":
+			response.addFieldData(13, value);
+			break;
+		case "InputSampleRate":
+			response.addFieldData(4, value);
+			break;
+		case "Factor":
+			response.addFieldData(5, value);
+			break;
+		case "Offset":
+			response.addFieldData(6, value);
+			break;
+		case "Delay":
+			response.addFieldData(7, value);
+			break;
+		case "Correction":
+			response.addFieldData(8, value);
+			break;
+		case "Value":
+			response.addFieldData(4, value);
+			break;
+		case "Frequency":
+			response.addFieldData(5, value);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static void endComplex(String name, String value, List<String> real,
+			List<String> imaginary) {
+		if (name.equals("Real")) {
+			real.add(value);
+		} else if (name.equals("Imaginary")) {
+			imaginary.add(value);
+		}
+	}
+
+	/**
+	 * Adds complex values and their zero errors starting at a field, as the
+	 * four fields of a B053 zero or pole.
+	 */
+	private void addComplex(int firstField, List<String> real, List<String> imaginary) {
+		for (int i = 0; i < real.size(); i++) {
+			response.addFieldValue(firstField, real.get(i));
+			response.addFieldValue(firstField + 1, imaginary.get(i));
+			response.addFieldValue(firstField + 2, "0");
+			response.addFieldValue(firstField + 3, "0");
+		}
+	}
+
+	/**
+	 * Adds values to a field, with zero errors in the error field if it is
+	 * not 0.
+	 */
+	private void addValues(int field, List<String> values, int errorField) {
+		for (String value : values) {
+			response.addFieldValue(field, value);
+			if (errorField != 0) {
+				response.addFieldValue(errorField, "0");
+			}
+		}
+	}
+
+	/**
+	 * Formats the units read as rdseed prints a B034 lookup.
+	 */
+	private String toSeedUnits() {
+		String name = unitsName == null ? "" : unitsName.toUpperCase();
+		String description = unitsDescription;
+		if (description == null || description.isEmpty()) {
+			description = UNIT_DESCRIPTIONS.getOrDefault(name, "");
+		}
+		return name + " - " + description;
+	}
+
+	/**
+	 * Converts a StationXML date time to a SEED time, "(null)" if there is
+	 * none.
+	 */
+	static String toSeedTime(String dateTime) {
+		if (dateTime == null || dateTime.trim().isEmpty()) {
+			return "(null)";
+		}
+		try {
+			return LocalDateTime.from(DateTimeFormatter.ISO_DATE_TIME.parse(dateTime.trim()))
+					.format(SEED_TIME);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid date " + dateTime, e);
+		}
+	}
+}
@@ -61,6 +61,10 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 
 	private Station station;
 
+	/** Evaluated responses, shared by every channel. */
+	private static final ResponseCache responseCache = new ResponseCache(
+			64L * 1024 * 1024);
+
 	public enum ResponseUnits {
 		DISPLACEMENT, VELOCITY, ACCELERATION, SEEDUNITS
 	}
@@ -87,10 +91,25 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 	}
 
 	ChannelMeta copy(Channel channel){
-		return copy(channel.getChannel());
+		return copy(channel.getChannel(), this.getTimestamp());
+	}
+
+	/**
+	 * Copies this channel's metadata for another timestamp within the same
+	 * epoch, without processing the epoch's blockettes again.
+	 *
+	 * @param metaTimestamp
+	 *            the timestamp of the copy
+	 * @return a deep copy of this channel for metaTimestamp
+	 */
+	public ChannelMeta copy(LocalDateTime metaTimestamp) {
+		ChannelMeta copyChan = copy(null, metaTimestamp);
+		copyChan.station = this.station;
+		copyChan.elevation = this.elevation;
+		return copyChan;
 	}
 
-	private ChannelMeta copy(String name){
+	private ChannelMeta copy(String name, LocalDateTime metaTimestamp){
 		String useName = null;
 		if (name != null) {
 			useName = name;
@@ -98,7 +117,7 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 			useName = this.getName();
 		}
 		ChannelMeta copyChan = new ChannelMeta(this.getLocation(), useName,
-				this.getTimestamp());
+				metaTimestamp);
 		copyChan.sampleRate = this.sampleRate;
 		copyChan.dip = this.dip;
 		copyChan.azimuth = this.azimuth;
@@ -237,7 +256,7 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 	}
 
 	// Stages
-	private void addStage(Integer stageID, ResponseStage responseStage) {
+	void addStage(Integer stageID, ResponseStage responseStage) {
 		stages.put(stageID, responseStage);
 	}
 
@@ -261,16 +280,17 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 		return stages.size();
 	}
 
+	private boolean isSeismicChannel() {
+		String seismicCodes = "HN"; // The 2nd char of channels: BH?, LH?, UH?,
+									// VH?, EH?, HH?, EN?, LN?, HN?
+		return seismicCodes.contains(this.getName().substring(1, 2));
+	}
+
 	// Return true if any errors found in loaded ResponseStages
 	private boolean invalidResponse() {
 		// If we have a seismic channel we need to ensure a valid response
 
-		boolean isSeismicChannel = false;
-		String seismicCodes = "HN"; // The 2nd char of channels: BH?, LH?, UH?,
-									// VH?, EH?, HH?, EN?, LN?, HN?
-		if (seismicCodes.contains(this.getName().substring(1, 2))) {
-			isSeismicChannel = true;
-		}
+		boolean isSeismicChannel = isSeismicChannel();
 
 		/*
 		  String excludeCodes = "MDIKRW"; // Channel codes that we DON'T expect
@@ -352,12 +372,93 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 
 	public Complex[] getResponse(double[] freqs, ResponseUnits responseOut)
 			throws ChannelMetaException {
-		Complex[] response = getResponseUnscaled(freqs, responseOut);
-		// Scale polezero response by stage1Gain * stage2Gain:
-		// Unless stage1Gain*stage2Gain is different from stage0Gain
-		// (=Sensitivity) by more than 10%,
-		// in which case, use the Sensitivity (Adam says this is a problem with
-		// Q680's, e.g., IC_ENH
+		return toComplex(getResponseArray(freqs, responseOut));
+	}
+
+	public Complex[] getResponseUnscaled(double[] freqs, ResponseUnits responseOut)
+			throws ChannelMetaException {
+		return toComplex(getResponseUnscaledArray(freqs, responseOut));
+	}
+
+	/**
+	 * Returns the response at the given frequencies, scaled by the stage
+	 * gains, from the {@link ResponseCache}.
+	 *
+	 * @param freqs
+	 *            frequencies in Hz
+	 * @param responseOut
+	 *            units of the response
+	 * @return interleaved real and imaginary parts of the response at each
+	 *         frequency. The array is shared and must not be modified.
+	 * @throws ChannelMetaException
+	 *             if the response is invalid or could not be evaluated
+	 */
+	public double[] getResponseArray(double[] freqs, ResponseUnits responseOut)
+			throws ChannelMetaException {
+		return getCachedResponse(freqs, responseOut, true);
+	}
+
+	/**
+	 * Returns the response at the given frequencies without the stage gains,
+	 * from the {@link ResponseCache}.
+	 *
+	 * @param freqs
+	 *            frequencies in Hz
+	 * @param responseOut
+	 *            units of the response
+	 * @return interleaved real and imaginary parts of the response at each
+	 *         frequency. The array is shared and must not be modified.
+	 * @throws ChannelMetaException
+	 *             if the response is invalid or could not be evaluated
+	 */
+	public double[] getResponseUnscaledArray(double[] freqs,
+			ResponseUnits responseOut) throws ChannelMetaException {
+		return getCachedResponse(freqs, responseOut, false);
+	}
+
+	/**
+	 * @return the cache shared by every ChannelMeta
+	 */
+	public static ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	private double[] getCachedResponse(double[] freqs,
+			ResponseUnits responseOut, boolean scaled)
+			throws ChannelMetaException {
+		ResponseStage stage1 = stages.get(1);
+		ResponseCache.Key key = new ResponseCache.Key(getDigestBytes().array(),
+				isSeismicChannel(), stage1 == null ? 0 : stage1.getInputUnits(),
+				responseOut, scaled, freqs);
+		double[] response = responseCache.get(key);
+		if (response == null) {
+			response = evaluateResponse(freqs, responseOut);
+			if (scaled) {
+				double scale = getResponseScale();
+				for (int i = 0; i < response.length; i++) {
+					response[i] *= scale;
+				}
+			}
+			responseCache.put(key, response);
+		}
+		return response;
+	}
+
+	private static Complex[] toComplex(double[] values) {
+		Complex[] response = new Complex[values.length / 2];
+		for (int i = 0; i < response.length; i++) {
+			response[i] = new Complex(values[2 * i], values[2 * i + 1]);
+		}
+		return response;
+	}
+
+	/**
+	 * Scale polezero response by stage1Gain * stage2Gain: Unless
+	 * stage1Gain*stage2Gain is different from stage0Gain (=Sensitivity) by
+	 * more than 10%, in which case, use the Sensitivity (Adam says this is a
+	 * problem with Q680's, e.g., IC_ENH
+	 */
+	private double getResponseScale() {
 		double stage0Gain = stages.get(0).getStageGain();
 		double stage1Gain = stages.get(1).getStageGain();
 		double stage2Gain = stages.get(2).getStageGain();
@@ -367,23 +468,21 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 		double diff = 100 * (stage0Gain - (stage1Gain * stage2Gain))
 				/ stage0Gain;
 
-		double scale;
 		if (diff > 10) {
-			// System.out.println("== ChannelMeta.getResponse(): WARNING: Sensitivity != Stage1Gain * Stage2Gain "
-			// + "--> Use Sensitivity to scale!");
 			logger.warn("== getResponse WARNING: Sensitivity != Stage1Gain * Stage2Gain "
 					+ "--> Use Sensitivity to scale!");
-			scale = stage0Gain;
+			return stage0Gain;
 		} else {
-			scale = stage1Gain * stage2Gain;
+			return stage1Gain * stage2Gain;
 		}
-		for (int i = 0; i < freqs.length; i++) {
-			response[i] = response[i].multiply(scale);
-		}
-		return response;
 	}
 
-	public Complex[] getResponseUnscaled(double[] freqs, ResponseUnits responseOut)
+	/**
+	 * Evaluates the unscaled response in the requested units.
+	 *
+	 * @return interleaved real and imaginary parts of the response
+	 */
+	private double[] evaluateResponse(double[] freqs, ResponseUnits responseOut)
 			throws ChannelMetaException {
 		int outUnits = 0;
 		switch (responseOut) {
@@ -407,7 +506,7 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 		if (invalidResponse()) {
 			throw new ChannelMetaException("getResponse: Invalid Response!");
 		}
-		Complex[] response = null;
+		double[] response = null;
 
 		// Set response = polezero response (with A0 factored in):
 		ResponseStage stage = stages.get(1);
@@ -418,7 +517,7 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 		} else {
 			PoleZeroStage pz = (PoleZeroStage) stage;
 			try {
-				response = pz.getResponse(freqs);
+				response = pz.evaluateResponse(freqs);
 			} catch (PoleZeroStageException e) {
 				logger.error("PoleZeroStageException:", e);
 				throw new ChannelMetaException("PoleZeroStageException");
@@ -466,22 +565,23 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 				// response type as was previous
 				double s = 2. * Math.PI;
 
-				// Here we integrate
-				if (n < 0) { // INTEGRATION RESPONSE I(w) x (iw)^n
-					for (int i = 0; i < freqs.length; i++) {
-						Complex iw = new Complex(0.0, s * freqs[i]);
-						for (int j = 1; j < Math.abs(n); j++)
-							iw = iw.multiply(iw);
-						response[i] = iw.multiply(response[i]);
-					}
-				}
-				// Here we differentiate
-				else if (n > 0) { // DIFFERENTIATION RESPONSE I(w) / (iw)^n
+				if (n != 0) {
 					for (int i = 0; i < freqs.length; i++) {
-						Complex iw = new Complex(0.0, -1.0 / (s * freqs[i]));
-						for (int j = 1; j < Math.abs(n); j++)
-							iw = iw.multiply(iw);
-						response[i] = iw.multiply(response[i]);
+						// INTEGRATION RESPONSE I(w) x (iw)^n
+						// DIFFERENTIATION RESPONSE I(w) / (iw)^n
+						double iwr = 0.0;
+						double iwi = (n < 0) ? s * freqs[i] : -1.0 / (s * freqs[i]);
+						for (int j = 1; j < Math.abs(n); j++) {
+							if (Double.isInfinite(iwi)) {
+								iwr = Double.POSITIVE_INFINITY;
+								iwi = Double.POSITIVE_INFINITY;
+							} else {
+								double real = iwr * iwr - iwi * iwi;
+								iwi = iwr * iwi + iwi * iwr;
+								iwr = real;
+							}
+						}
+						multiply(iwr, iwi, response, i);
 					}
 				}
 			} // Convert
@@ -490,6 +590,27 @@ public class ChannelMeta extends MemberDigest implements Serializable,
 		return response;
 	}
 
+	/**
+	 * Multiplies response value i by a, with the NaN and infinite handling of
+	 * Complex.multiply (e.g. differentiating at f=0 gives an infinite value).
+	 */
+	private static void multiply(double ar, double ai, double[] response, int i) {
+		double br = response[2 * i];
+		double bi = response[2 * i + 1];
+		if (Double.isNaN(ar) || Double.isNaN(ai) || Double.isNaN(br)
+				|| Double.isNaN(bi)) {
+			response[2 * i] = Double.NaN;
+			response[2 * i + 1] = Double.NaN;
+		} else if (Double.isInfinite(ar) || Double.isInfinite(ai)
+				|| Double.isInfinite(br) || Double.isInfinite(bi)) {
+			response[2 * i] = Double.POSITIVE_INFINITY;
+			response[2 * i + 1] = Double.POSITIVE_INFINITY;
+		} else {
+			response[2 * i] = ar * br - ai * bi;
+			response[2 * i + 1] = ar * bi + ai * br;
+		}
+	}
+
 	/**
 	 * processEpochData Convert EpochData = {@literal Hashtable<StageNumber, StageData>}
 	 * for this Channel + Epoch Into a sequence of ResponseStages, one for each
@@ -114,26 +114,10 @@ public class PoleZeroStage extends ResponseStage implements Cloneable, Serializa
 	 * really check that length > 0
 	 */
 	Complex[] getResponse(double[] freqs) throws PoleZeroStageException {
-		// Some polezero responses (e.g., ANMO.IU.20.BN?) appear to have NO
-		// zeros
-		if (!poleAdded || !normalizationSet) {
-			throw new PoleZeroStageException(
-					"[ PoleZeroStage-->getResponse Error: PoleZero info does not appear to be loaded! ]");
-		}
-
-		// Looks like the polezero info has been loaded ... so continue ...
-
-		if (!(freqs.length > 0)) {
-			throw new PoleZeroStageException(
-					"[ PoleZeroStage-->getResponse Error: Input freqs[] has no zero length! ]");
-		}
+		double[] values = evaluateResponse(freqs);
 		Complex[] response = new Complex[freqs.length];
 		for (int i = 0; i < freqs.length; i++) {
-			try {
-				response[i] = evalResp(freqs[i]);
-			} catch (PoleZeroStageException e) {
-				logger.error("PoleZeroStageException:", e);
-			}
+			response[i] = new Complex(values[2 * i], values[2 * i + 1]);
 		}
 		return response;
 	}
@@ -159,36 +143,100 @@ public class PoleZeroStage extends ResponseStage implements Cloneable, Serializa
 	 * type B
 	 */
 
-	/*
-	 * Evaluate the polezero response at a single frequency, f Return G(f) = A0
-	 * * pole zero expansion Note that the stage sensitivity Sd is *not*
-	 * included, so that the response from this stage should be approx. 1 (flat)
-	 * at the mid range.
+	/**
+	 * Evaluates G(f) = A0 * pole zero expansion at every frequency, without
+	 * creating a Complex per frequency. Note that the stage sensitivity Sd is
+	 * *not* included, so that the response from this stage should be approx.
+	 * 1 (flat) at the mid range. The arithmetic is that of Complex, so the
+	 * values are the same as evaluating each frequency with Complex.
+	 *
+	 * @param freqs
+	 *            frequencies in Hz
+	 * @return interleaved real and imaginary parts of G(f) at each frequency
+	 * @throws PoleZeroStageException
+	 *             if the polezero info is not loaded, freqs is empty or this
+	 *             is not a PoleZero stage
 	 */
-	private Complex evalResp(double f) throws PoleZeroStageException {
-		Complex numerator = Complex.ONE;
-		Complex denomenator = Complex.ONE;
-		Complex s;
-		Complex Gf;
+	double[] evaluateResponse(double[] freqs) throws PoleZeroStageException {
+		// Some polezero responses (e.g., ANMO.IU.20.BN?) appear to have NO
+		// zeros
+		if (!poleAdded || !normalizationSet) {
+			throw new PoleZeroStageException(
+					"[ PoleZeroStage-->getResponse Error: PoleZero info does not appear to be loaded! ]");
+		}
+
+		// Looks like the polezero info has been loaded ... so continue ...
+
+		if (!(freqs.length > 0)) {
+			throw new PoleZeroStageException(
+					"[ PoleZeroStage-->getResponse Error: Input freqs[] has no zero length! ]");
+		}
 
+		double omega;
 		if (getStageType() == 'A') {
-			s = new Complex(0.0, 2 * Math.PI * f);
+			omega = 2 * Math.PI;
 		} else if (getStageType() == 'B') {
-			s = new Complex(0.0, f);
+			omega = 1.0;
 		} else {
 			throw new PoleZeroStageException(
 					"[ PoleZeroStage-->evalResponse Error: Cannot evalResp a non-PoleZero Stage!]");
 		}
 
-		for (int j = 0; j < getNumberOfZeros(); j++) {
-			numerator = numerator.multiply(s.subtract(zeros.get(j)));
+		double[] roots = new double[2 * (zeros.size() + poles.size())];
+		for (int j = 0; j < zeros.size(); j++) {
+			roots[2 * j] = zeros.get(j).getReal();
+			roots[2 * j + 1] = zeros.get(j).getImaginary();
 		}
-		for (int j = 0; j < getNumberOfPoles(); j++) {
-			denomenator = denomenator.multiply(s.subtract(poles.get(j)));
+		int firstPole = 2 * zeros.size();
+		for (int j = 0; j < poles.size(); j++) {
+			roots[firstPole + 2 * j] = poles.get(j).getReal();
+			roots[firstPole + 2 * j + 1] = poles.get(j).getImaginary();
 		}
-		Gf = numerator.multiply(normalizationConstant);
-		Gf = Gf.divide(denomenator);
-		return Gf;
+
+		double[] response = new double[2 * freqs.length];
+		for (int i = 0; i < freqs.length; i++) {
+			// s = i * omega * f, s - root = (-root.re, omega * f - root.im)
+			double s = omega * freqs[i];
+			double nr = 1.0;
+			double ni = 0.0;
+			for (int j = 0; j < firstPole; j += 2) {
+				double ar = 0.0 - roots[j];
+				double ai = s - roots[j + 1];
+				double real = nr * ar - ni * ai;
+				ni = nr * ai + ni * ar;
+				nr = real;
+			}
+			double dr = 1.0;
+			double di = 0.0;
+			for (int j = firstPole; j < roots.length; j += 2) {
+				double ar = 0.0 - roots[j];
+				double ai = s - roots[j + 1];
+				double real = dr * ar - di * ai;
+				di = dr * ai + di * ar;
+				dr = real;
+			}
+			nr *= normalizationConstant;
+			ni *= normalizationConstant;
+
+			// Complex.divide, including its handling of a zero denominator
+			if (dr == 0.0 && di == 0.0) {
+				double value = (nr == 0.0 && ni == 0.0) ? Double.NaN
+						: Double.POSITIVE_INFINITY;
+				response[2 * i] = value;
+				response[2 * i + 1] = value;
+			} else if (Math.abs(dr) < Math.abs(di)) {
+				double q = dr / di;
+				double denominator = dr * q + di;
+				response[2 * i] = (nr * q + ni) / denominator;
+				response[2 * i + 1] = (ni * q - nr) / denominator;
+			} else {
+				double q = di / dr;
+				double denominator = di * q + dr;
+				response[2 * i] = (ni * q + nr) / denominator;
+				response[2 * i + 1] = (ni - nr * q) / denominator;
+			}
+		}
+		return response;
 	}
 
 }
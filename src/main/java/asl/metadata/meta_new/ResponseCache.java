@@ -0,0 +1,187 @@
+package asl.metadata.meta_new;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Instrument responses already evaluated by {@link ChannelMeta}, so that the
+ * metrics of a station day evaluate each channel's response once per
+ * frequency grid instead of once per call.
+ *
+ * Responses are keyed by the channel epoch's digest, which covers the sample
+ * rate, gains, poles and zeros of its stages, so channels with identical
+ * responses share an entry. The digest is combined with the requested units,
+ * scaling and frequency grid. Responses are stored as interleaved real and
+ * imaginary parts and are shared between callers, so they must not be
+ * modified.
+ *
+ * The cache is bounded by the size of its responses and evicts the least
+ * recently used ones first.
+ */
+public class ResponseCache {
+
+	static class Key {
+		private final byte[] digest;
+		private final boolean seismic;
+		private final int inputUnits;
+		private final ChannelMeta.ResponseUnits units;
+		private final boolean scaled;
+		private final double[] freqs;
+		private final int hash;
+
+		/**
+		 * @param freqs
+		 *            the frequency grid, copied
+		 */
+		Key(byte[] digest, boolean seismic, int inputUnits,
+				ChannelMeta.ResponseUnits units, boolean scaled, double[] freqs) {
+			this.digest = digest;
+			this.seismic = seismic;
+			this.inputUnits = inputUnits;
+			this.units = units;
+			this.scaled = scaled;
+			this.freqs = freqs.clone();
+
+			// Grids are hashed by their ends and step only, equals compares
+			// every frequency.
+			int h = Arrays.hashCode(digest);
+			h = 31 * h + Boolean.hashCode(seismic);
+			h = 31 * h + inputUnits;
+			h = 31 * h + units.hashCode();
+			h = 31 * h + Boolean.hashCode(scaled);
+			h = 31 * h + freqs.length;
+			if (freqs.length > 1) {
+				h = 31 * h + Double.hashCode(freqs[0]);
+				h = 31 * h + Double.hashCode(freqs[1]);
+				h = 31 * h + Double.hashCode(freqs[freqs.length - 1]);
+			}
+			hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && seismic == other.seismic
+					&& inputUnits == other.inputUnits && units == other.units
+					&& scaled == other.scaled
+					&& Arrays.equals(digest, other.digest)
+					&& Arrays.equals(freqs, other.freqs);
+		}
+	}
+
+	private final long maxBytes;
+
+	/** Responses in least recently used order. Guarded by this. */
+	private final LinkedHashMap<Key, double[]> entries = new LinkedHashMap<>(
+			16, 0.75f, true);
+	private long size = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @param maxBytes
+	 *            the maximum size of the cached responses
+	 */
+	public ResponseCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the cached response or null if it has not been evaluated
+	 */
+	synchronized double[] get(Key key) {
+		double[] response = entries.get(key);
+		if (response != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return response;
+	}
+
+	/**
+	 * Adds an evaluated response, evicting the least recently used ones if
+	 * the cache is full.
+	 */
+	synchronized void put(Key key, double[] response) {
+		double[] previous = entries.put(key, response);
+		if (previous != null) {
+			size -= sizeOf(key, previous);
+		}
+		size += sizeOf(key, response);
+
+		Iterator<Map.Entry<Key, double[]>> iterator = entries.entrySet()
+				.iterator();
+		while (size > maxBytes && iterator.hasNext()) {
+			Map.Entry<Key, double[]> next = iterator.next();
+			if (next.getKey() == key) {
+				continue;
+			}
+			iterator.remove();
+			size -= sizeOf(next.getKey(), next.getValue());
+			evictions++;
+		}
+	}
+
+	/**
+	 * Size of an entry's response and frequency grid in bytes.
+	 */
+	private static long sizeOf(Key key, double[] response) {
+		return 8L * (response.length + key.freqs.length);
+	}
+
+	/**
+	 * Removes every cached response. The counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return the number of lookups that found an evaluated response
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that had to evaluate the response
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of responses removed to keep the cache within its
+	 *         size
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the size of the cached responses in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of cached responses
+	 */
+	public synchronized int getCount() {
+		return entries.size();
+	}
+}
@@ -115,6 +115,26 @@ public class StationMeta implements Serializable {
 		this.blockette50 = blockette;
 	}
 
+	/**
+	 * Instantiates a copy of a station meta. The copy has its own channel table
+	 * and whitelist, so channels added to it, such as rotated channels, are not
+	 * added to the original. The channel metadata itself is shared.
+	 *
+	 * @param other the station meta to copy
+	 */
+	public StationMeta(StationMeta other) {
+		this.network = other.network;
+		this.name = other.name;
+		this.latitude = other.latitude;
+		this.longitude = other.longitude;
+		this.elevation = other.elevation;
+		this.channels = new Hashtable<>(other.channels);
+		this.locationWhitelist = new HashSet<>(other.locationWhitelist);
+		this.metaTimestamp = other.metaTimestamp;
+		this.metaDate = other.metaDate;
+		this.blockette50 = other.blockette50;
+	}
+
 	/**
 	 * Adds the channel to channels HashTable.
 	 *
@@ -170,6 +190,19 @@ public class StationMeta implements Serializable {
 		return elevation;
 	}
 
+	/**
+	 * Copies the channel keys in sorted order. Rotated channels can be added
+	 * by one metric while another lists the channels, so the copy is made
+	 * holding the table's lock.
+	 *
+	 * @return the sorted channel keys
+	 */
+	private TreeSet<ChannelKey> sortedChannelKeys() {
+		synchronized (channels) {
+			return new TreeSet<>(channels.keySet());
+		}
+	}
+
 	/**
 	 * Gets the number of channels.
 	 *
@@ -247,7 +280,7 @@ public class StationMeta implements Serializable {
 	 */
 	public List<Channel> getChannelArray(String bands, boolean ignoreTriggered, boolean ignoreDerived) {
 		// converting to treeset in order to get sorted iteration
-		TreeSet<ChannelKey> keys = new TreeSet<>(channels.keySet());
+		TreeSet<ChannelKey> keys = sortedChannelKeys();
 
 		ArrayList<Channel> channelArrayList = new ArrayList<>();
 
@@ -363,7 +396,7 @@ public class StationMeta implements Serializable {
 	 */
 	public List<Channel> getContinuousChannels() {
 		// once again, convert for iteration in sort order
-		TreeSet<ChannelKey> keys = new TreeSet<>(channels.keySet());
+		TreeSet<ChannelKey> keys = sortedChannelKeys();
 
 		ArrayList<Channel> channelArrayList = new ArrayList<>();
 
@@ -387,7 +420,7 @@ public class StationMeta implements Serializable {
 	 */
 	public List<Channel> getRotatableChannels() {
 		// once again treeset conversion to get sorted order of channels
-		TreeSet<ChannelKey> keys = new TreeSet<>(channels.keySet());
+		TreeSet<ChannelKey> keys = sortedChannelKeys();
 
 		ArrayList<Channel> channelArrayList = new ArrayList<>();
 
@@ -577,6 +610,17 @@ public class StationMeta implements Serializable {
 		this.addChannel(new ChannelKey(derivedChannel), derivedChannelMeta);
 	}
 
+	/**
+	 * Gets the station blockette (B050) this metadata was built from. All
+	 * metadata built from the same loaded dataless shares it, so it identifies
+	 * the metadata snapshot.
+	 *
+	 * @return the station blockette
+	 */
+	public Blockette getStationBlockette() {
+		return blockette50;
+	}
+
 	/**
 	 * Prints blockette 50 which is the station identifier blockette.
 	 */
@@ -5,6 +5,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
@@ -125,6 +126,21 @@ public abstract class MemberDigest implements Serializable {
 		addToDigest(ByteBuffer.allocate(4).putInt(data));
 	}
 
+	/**
+	 * Adds a range of int values to digest, encoded as
+	 * {@link #addToDigest(Integer)} encodes each of them.
+	 *
+	 * @param data
+	 *            the data
+	 * @param offset
+	 *            the offset of the first value
+	 * @param length
+	 *            the number of values
+	 */
+	protected void addToDigest(int[] data, int offset, int length) {
+		updateDigest(digest, data, offset, length);
+	}
+
 	/**
 	 * Adds a Long to digest.
 	 *
@@ -145,6 +161,49 @@ public abstract class MemberDigest implements Serializable {
 		addToDigest(ByteBuffer.allocate(8).putDouble(data));
 	}
 
+	/**
+	 * Adds a range of int values to a digest kept outside of this class, such
+	 * as one updated while the values are appended. Each value is encoded as
+	 * {@link #addToDigest(Integer)} encodes it, so the result matches the
+	 * digest computed by {@link #addDigestMembers()}.
+	 *
+	 * @param digest
+	 *            the digest to update
+	 * @param data
+	 *            the data
+	 * @param offset
+	 *            the offset of the first value
+	 * @param length
+	 *            the number of values
+	 */
+	protected static void updateDigest(MessageDigest digest, int[] data,
+			int offset, int length) {
+		byte[] bytes = new byte[4 * Math.min(length, 1024)];
+		IntBuffer ints = ByteBuffer.wrap(bytes).asIntBuffer();
+		while (length > 0) {
+			int count = Math.min(length, ints.capacity());
+			ints.clear();
+			ints.put(data, offset, count);
+			digest.update(bytes, 0, 4 * count);
+			offset += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Creates a new digest using the algorithm of this MemberDigest.
+	 *
+	 * @return the new, empty digest
+	 */
+	protected MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(digest.getAlgorithm());
+		} catch (NoSuchAlgorithmException ex) {
+			// The algorithm was already instantiated for this object
+			throw new RuntimeException(ex);
+		}
+	}
+
 	/**
 	 * Combines multiple ByteBuffers into a single ByteBuffer
 	 *
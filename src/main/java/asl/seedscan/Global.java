@@ -53,6 +53,20 @@ public abstract class Global {
   protected static String eventsDir;
   protected static String qualityflags;
   protected static String lockfile;
+  protected static int splitterThreads;
+  protected static int loaderThreads;
+  protected static int metricThreads;
+  protected static String dataCacheDir;
+  protected static int dataCacheSize;
+  protected static int metricDataCacheSize;
+  protected static double arrivalTableStep;
+  protected static int monitorPort;
+  protected static String monitorSummaryFile;
+  protected static int monitorSummaryInterval;
+  protected static String slowDayFile;
+  protected static double slowDayThreshold;
+  protected static int scanLeaseTime;
+  protected static int legacyMoveChunkSize;
 
 
   /**
@@ -124,6 +138,38 @@ public abstract class Global {
     dataDir = CONFIG.getPath();
 
     eventsDir = CONFIG.getEventsDir();
+
+    splitterThreads = (CONFIG.getSplitterThreads() == null) ? 1 : CONFIG.getSplitterThreads();
+
+    loaderThreads = (CONFIG.getLoaderThreads() == null) ? 0 : CONFIG.getLoaderThreads();
+
+    metricThreads = (CONFIG.getMetricThreads() == null) ? 0 : CONFIG.getMetricThreads();
+
+    dataCacheDir = CONFIG.getDataCacheDir();
+
+    dataCacheSize = (CONFIG.getDataCacheSize() == null) ? 0 : CONFIG.getDataCacheSize();
+
+    metricDataCacheSize =
+        (CONFIG.getMetricDataCacheSize() == null) ? 0 : CONFIG.getMetricDataCacheSize();
+
+    arrivalTableStep = (CONFIG.getArrivalTableStep() == null) ? 0 : CONFIG.getArrivalTableStep();
+
+    monitorPort = (CONFIG.getMonitorPort() == null) ? 0 : CONFIG.getMonitorPort();
+
+    monitorSummaryFile = CONFIG.getMonitorSummaryFile();
+
+    monitorSummaryInterval =
+        (CONFIG.getMonitorSummaryInterval() == null) ? 0 : CONFIG.getMonitorSummaryInterval();
+
+    slowDayFile = CONFIG.getSlowDayFile();
+
+    slowDayThreshold =
+        (CONFIG.getSlowDayThreshold() == null) ? 60 : CONFIG.getSlowDayThreshold();
+
+    scanLeaseTime = (CONFIG.getScanLeaseTime() == null) ? 0 : CONFIG.getScanLeaseTime();
+
+    legacyMoveChunkSize =
+        (CONFIG.getLegacyMoveChunkSize() == null) ? 0 : CONFIG.getLegacyMoveChunkSize();
   }
 
   public static List<String> getNetworkRestrictions() {
@@ -170,4 +216,163 @@ public abstract class Global {
   public static String getLockfile() {
     return lockfile;
   }
+
+  /**
+   * Number of record processing threads each SeedSplitter may use. Defaults to 1, which keeps the
+   * original serial splitter.
+   *
+   * @return the configured thread count, never less than 1
+   */
+  public static int getSplitterThreads() {
+    if (splitterThreads < 1) {
+      // this can happen if no config file was loaded, such as in test cases
+      splitterThreads = 1;
+    }
+    return splitterThreads;
+  }
+
+  /**
+   * Number of threads the ScanManager uses to load station metadata and data ahead of the metric
+   * computations. Defaults to 2.
+   *
+   * @return the configured thread count, never less than 1
+   */
+  public static int getLoaderThreads() {
+    if (loaderThreads < 1) {
+      loaderThreads = 2;
+    }
+    return loaderThreads;
+  }
+
+  /**
+   * Number of threads shared by all station days for computing their metrics. Defaults to the
+   * number of available processors.
+   *
+   * @return the configured thread count, never less than 1
+   */
+  public static int getMetricThreads() {
+    if (metricThreads < 1) {
+      metricThreads = Runtime.getRuntime().availableProcessors();
+    }
+    return metricThreads;
+  }
+
+  /**
+   * Directory of the decoded station day cache.
+   *
+   * @return the cache directory, or null if the cache is disabled
+   */
+  public static String getDataCacheDir() {
+    return dataCacheDir;
+  }
+
+  /**
+   * Maximum size of the decoded station day cache in megabytes. Defaults to 10240.
+   *
+   * @return the configured size, never less than 1
+   */
+  public static int getDataCacheSize() {
+    if (dataCacheSize < 1) {
+      dataCacheSize = 10240;
+    }
+    return dataCacheSize;
+  }
+
+  /**
+   * Maximum estimated heap size of the station days kept in memory between scans, in megabytes.
+   * Defaults to a quarter of the maximum heap.
+   *
+   * @return the configured size, never less than 1
+   */
+  public static int getMetricDataCacheSize() {
+    if (metricDataCacheSize < 1) {
+      metricDataCacheSize = (int) Math.max(1, Runtime.getRuntime().maxMemory() / 4 / (1024 * 1024));
+    }
+    return metricDataCacheSize;
+  }
+
+  /**
+   * Distance spacing in degrees of the table P arrival times are interpolated from.
+   *
+   * @return the configured spacing, 0 if P arrivals are calculated for each event and station
+   */
+  public static double getArrivalTableStep() {
+    return arrivalTableStep;
+  }
+
+  /**
+   * Local port the scan metrics are served on in the Prometheus text format.
+   *
+   * @return the configured port, 0 if the metrics are not served
+   */
+  public static int getMonitorPort() {
+    return monitorPort;
+  }
+
+  /**
+   * File a JSON summary of the scan metrics is periodically written to.
+   *
+   * @return the summary file, or null if no summary is written
+   */
+  public static String getMonitorSummaryFile() {
+    return monitorSummaryFile;
+  }
+
+  /**
+   * Seconds between JSON summaries of the scan metrics. Defaults to 60.
+   *
+   * @return the configured interval, never less than 1
+   */
+  public static int getMonitorSummaryInterval() {
+    if (monitorSummaryInterval < 1) {
+      monitorSummaryInterval = 60;
+    }
+    return monitorSummaryInterval;
+  }
+
+  /**
+   * File the traces of slow station days are appended to, one JSON object per line.
+   *
+   * @return the file, or null if no traces are written
+   */
+  public static String getSlowDayFile() {
+    return slowDayFile;
+  }
+
+  /**
+   * Seconds a station day must take for its trace to be written to the slow day file. Defaults to
+   * 60.
+   *
+   * @return the configured threshold, 0 to write the trace of every station day
+   */
+  public static double getSlowDayThreshold() {
+    return slowDayThreshold;
+  }
+
+  /**
+   * Seconds a scan taken from the database stays leased to this scanner without being renewed. A
+   * running scanner renews its leases every third of this time, and scans whose lease expired are
+   * taken again by any scanner. Defaults to 600.
+   *
+   * @return the configured lease time, or the default if not configured
+   */
+  public static int getScanLeaseTime() {
+    if (scanLeaseTime < 1) {
+      scanLeaseTime = 600;
+    }
+    return scanLeaseTime;
+  }
+
+  /**
+   * Most metric values moved from tblmetricdata_legacy into the partitions of tblmetricdata in one
+   * transaction. Defaults to 10000.
+   *
+   * @return the configured chunk size, or the default if not configured
+   */
+  public static int getLegacyMoveChunkSize() {
+    if (legacyMoveChunkSize < 1) {
+      legacyMoveChunkSize = 10000;
+    }
+    return legacyMoveChunkSize;
+  }
 }
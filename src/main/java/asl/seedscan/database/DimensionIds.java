@@ -0,0 +1,302 @@
+package asl.seedscan.database;
+
+import asl.metadata.Channel;
+import asl.metadata.Station;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.JulianFields;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Surrogate IDs of the networks, stations, sensors, channels, metrics, dates and digests that
+ * metric values refer to, looked up once and kept for the life of the MetricDatabase.
+ *
+ * spInsertMetricData resolves every one of them for every value it inserts, and locks each of their
+ * tables while it does. Here a missing row is inserted once with ON CONFLICT DO NOTHING, which only
+ * waits on a concurrent insert of the same row, so scanners writing side by side take no table
+ * locks. How much this speeds up concurrent writers has not been measured; MetricInsertBenchmark
+ * compares the two paths against a PostgreSQL database. Rows are created outside the transaction
+ * writing the values, on a connection in auto-commit mode, so a cached ID never refers to a row
+ * that was rolled back.
+ *
+ * The IDs of stations, channels and metrics are never deleted while scanning. If they are, inserts
+ * referring to them fail and {@link #clear()} forgets the cached IDs.
+ */
+class DimensionIds {
+
+  /**
+   * Most digest IDs kept. Digests are rarely shared between values, so they are only kept long
+   * enough for a batch that is retried.
+   */
+  private static final int MAX_HASHES = 50000;
+
+  private final Map<String, Integer> networks = new ConcurrentHashMap<>();
+  private final Map<String, Integer> stations = new ConcurrentHashMap<>();
+  private final Map<String, Integer> sensors = new ConcurrentHashMap<>();
+  private final Map<String, Integer> channels = new ConcurrentHashMap<>();
+  private final Map<String, Integer> metrics = new ConcurrentHashMap<>();
+  private final Set<Integer> dates = ConcurrentHashMap.newKeySet();
+
+  private final Map<ByteBuffer, Long> hashes = new LinkedHashMap<ByteBuffer, Long>(16, 0.75f,
+      true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+      return size() > MAX_HASHES;
+    }
+  };
+
+  /**
+   * Forget every cached ID.
+   */
+  void clear() {
+    networks.clear();
+    stations.clear();
+    sensors.clear();
+    channels.clear();
+    metrics.clear();
+    dates.clear();
+    synchronized (hashes) {
+      hashes.clear();
+    }
+  }
+
+  /**
+   * Get the ID of a channel, creating its network, station, sensor and channel rows if needed.
+   *
+   * @param connection connection in auto-commit mode
+   * @param station the network and station
+   * @param channel the location and channel
+   * @return the channel's pkchannelid
+   * @throws SQLException for any exception from the JDBC driver
+   */
+  int getChannelID(Connection connection, Station station, Channel channel)
+      throws SQLException {
+    String channelKey = station.getNetwork() + "." + station.getStation() + "."
+        + channel.getLocation() + "." + channel.getChannel();
+    Integer channelID = channels.get(channelKey);
+    if (channelID != null) {
+      return channelID;
+    }
+
+    int networkID = getNetworkID(connection, station.getNetwork());
+    int stationID = getStationID(connection, networkID, station.getStation());
+
+    String sensorKey = stationID + "." + channel.getLocation();
+    Integer sensorID = sensors.get(sensorKey);
+    if (sensorID == null) {
+      sensorID = resolve(connection,
+          "SELECT pksensorid FROM tblsensor WHERE fkstationid = ? AND location = ?",
+          "INSERT INTO tblsensor (fkstationid, location) VALUES (?, ?) ON CONFLICT DO NOTHING",
+          stationID, channel.getLocation());
+      sensors.put(sensorKey, sensorID);
+    }
+
+    channelID = resolve(connection,
+        "SELECT pkchannelid FROM tblchannel WHERE fksensorid = ? AND name = ?",
+        "INSERT INTO tblchannel (fksensorid, name) VALUES (?, ?) ON CONFLICT DO NOTHING",
+        sensorID, channel.getChannel());
+    channels.put(channelKey, channelID);
+    return channelID;
+  }
+
+  private int getNetworkID(Connection connection, String network) throws SQLException {
+    Integer networkID = networks.get(network);
+    if (networkID == null) {
+      // Like spInsertMetricData, reuses a group of the same name, preferring a network
+      networkID = resolve(connection,
+          "SELECT pkgroupid FROM \"tblGroup\" WHERE name = ? "
+              + "ORDER BY \"fkGroupTypeID\" IS DISTINCT FROM 1, pkgroupid LIMIT 1",
+          // Group Type 1 is Network
+          "INSERT INTO \"tblGroup\" (name, \"fkGroupTypeID\") VALUES (?, 1) "
+              + "ON CONFLICT DO NOTHING",
+          network);
+      networks.put(network, networkID);
+    }
+    return networkID;
+  }
+
+  private int getStationID(Connection connection, int networkID, String station)
+      throws SQLException {
+    String stationKey = networkID + "." + station;
+    Integer stationID = stations.get(stationKey);
+    if (stationID == null) {
+      stationID = resolve(connection,
+          "SELECT pkstationid FROM tblstation WHERE fknetworkid = ? AND name = ?",
+          "INSERT INTO tblstation (fknetworkid, name) VALUES (?, ?) ON CONFLICT DO NOTHING",
+          networkID, station);
+      // Ties the Station to its Network for the GUI to use.
+      execute(connection, "INSERT INTO \"tblStationGroupTie\" (\"fkGroupID\", \"fkStationID\") "
+          + "VALUES (?, ?) ON CONFLICT DO NOTHING", networkID, stationID);
+      stations.put(stationKey, stationID);
+    }
+    return stationID;
+  }
+
+  /**
+   * Get the ID of a metric, creating it if needed.
+   *
+   * @param connection connection in auto-commit mode
+   * @param metricName name of the metric
+   * @return the metric's pkmetricid
+   * @throws SQLException for any exception from the JDBC driver
+   */
+  int getMetricID(Connection connection, String metricName) throws SQLException {
+    Integer metricID = metrics.get(metricName);
+    if (metricID == null) {
+      metricID = resolve(connection,
+          "SELECT pkmetricid FROM tblmetric WHERE name = ?",
+          // Compute Type 1 is averaged over channel and days.
+          "INSERT INTO tblmetric (name, fkcomputetypeid, displayname) "
+              + "SELECT v.name, 1, v.name FROM (VALUES (?::varchar)) AS v(name) "
+              + "ON CONFLICT DO NOTHING",
+          metricName);
+      metrics.put(metricName, metricID);
+    }
+    return metricID;
+  }
+
+  /**
+   * Get the ID of a date, its Julian day number, creating its tbldate row if needed.
+   *
+   * @param connection connection in auto-commit mode
+   * @param date the date
+   * @return the date's pkdateid
+   * @throws SQLException for any exception from the JDBC driver
+   */
+  int getDateID(Connection connection, LocalDate date) throws SQLException {
+    int dateID = (int) date.getLong(JulianFields.JULIAN_DAY);
+    if (!dates.contains(dateID)) {
+      execute(connection,
+          "INSERT INTO tbldate (pkdateid, date) VALUES (?, ?) ON CONFLICT DO NOTHING",
+          dateID, date);
+      dates.add(dateID);
+    }
+    return dateID;
+  }
+
+  /**
+   * Get the IDs of digests, inserting the missing ones together.
+   *
+   * @param connection connection in auto-commit mode
+   * @param digests the digests
+   * @return the pkHashID of each digest
+   * @throws SQLException for any exception from the JDBC driver
+   */
+  Map<ByteBuffer, Long> getHashIDs(Connection connection, Collection<byte[]> digests)
+      throws SQLException {
+    Map<ByteBuffer, Long> ids = new HashMap<>();
+    List<byte[]> missing = new ArrayList<>();
+    synchronized (hashes) {
+      for (byte[] digest : digests) {
+        ByteBuffer key = ByteBuffer.wrap(digest);
+        Long id = hashes.get(key);
+        if (id != null) {
+          ids.put(key, id);
+        } else if (!ids.containsKey(key)) {
+          ids.put(key, null);
+          missing.add(digest);
+        }
+      }
+    }
+    if (missing.isEmpty()) {
+      return ids;
+    }
+
+    // Passed as hex text, the driver cannot build bytea arrays
+    String[] hex = new String[missing.size()];
+    for (int i = 0; i < hex.length; i++) {
+      hex[i] = toHex(missing.get(i));
+    }
+    execute(connection, "INSERT INTO tblhash (hash) SELECT decode(h, 'hex') "
+            + "FROM unnest(?::text[]) AS h ON CONFLICT DO NOTHING",
+        connection.createArrayOf("text", hex));
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT \"pkHashID\", hash FROM tblhash "
+            + "WHERE hash IN (SELECT decode(h, 'hex') FROM unnest(?::text[]) AS h)")) {
+      statement.setArray(1, connection.createArrayOf("text", hex));
+      try (ResultSet resultSet = statement.executeQuery()) {
+        synchronized (hashes) {
+          while (resultSet.next()) {
+            ByteBuffer key = ByteBuffer.wrap(resultSet.getBytes(2));
+            long id = resultSet.getLong(1);
+            ids.put(key, id);
+            hashes.put(key, id);
+          }
+        }
+      }
+    }
+    if (ids.containsValue(null)) {
+      throw new SQLException("Unable to find the pkHashID of an inserted digest");
+    }
+    return ids;
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Select a row's ID, inserting the row if it does not exist yet.
+   *
+   * @param connection connection in auto-commit mode
+   * @param select query returning the ID, taking the parameters
+   * @param insert statement inserting the row unless it exists, taking the same parameters
+   * @param parameters the parameters
+   * @return the ID
+   * @throws SQLException for any exception from the JDBC driver, or if the row was not found
+   */
+  private static int resolve(Connection connection, String select, String insert,
+      Object... parameters) throws SQLException {
+    Integer id = selectID(connection, select, parameters);
+    if (id == null) {
+      execute(connection, insert, parameters);
+      id = selectID(connection, select, parameters);
+      if (id == null) {
+        throw new SQLException("Unable to find the inserted row: " + select);
+      }
+    }
+    return id;
+  }
+
+  private static Integer selectID(Connection connection, String select, Object... parameters)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(select)) {
+      setParameters(statement, parameters);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        return resultSet.next() ? resultSet.getInt(1) : null;
+      }
+    }
+  }
+
+  private static void execute(Connection connection, String sql, Object... parameters)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      setParameters(statement, parameters);
+      statement.executeUpdate();
+    }
+  }
+
+  private static void setParameters(PreparedStatement statement, Object... parameters)
+      throws SQLException {
+    for (int i = 0; i < parameters.length; i++) {
+      statement.setObject(i + 1, parameters[i]);
+    }
+  }
+}
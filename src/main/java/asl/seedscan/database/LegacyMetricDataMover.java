@@ -0,0 +1,119 @@
+package asl.seedscan.database;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the metric values written before tblmetricdata was partitioned by year from
+ * tblmetricdata_legacy into the partitions, a chunk at a time while scanning goes on.
+ *
+ * Each chunk is moved in its own short transaction, following the key of the last chunk so dead
+ * rows at the start of the table are not read again. Values locked by scanners writing them are
+ * skipped, and are either deleted by the writer or moved on a later pass over the table. Several
+ * scanners sharing a database may all move values, each skips the chunks the others are moving.
+ * Until every value is moved, readers see both tables through metricdataview.
+ */
+public class LegacyMetricDataMover {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.database.LegacyMetricDataMover.class);
+
+  /**
+   * Milliseconds to wait between chunks, so scans writing values are not crowded out.
+   */
+  private static final long CHUNK_DELAY = 1000;
+
+  /**
+   * Milliseconds to wait before trying again after a failure, or while the values left are locked.
+   */
+  private static final long RETRY_DELAY = 60000;
+
+  private final MetricDatabase database;
+  private final int chunkSize;
+  private final ScheduledExecutorService executor;
+
+  /**
+   * Key of the last value moved in the current pass, null at the start of a pass.
+   */
+  private List<Integer> lastKey;
+
+  private long chunks;
+
+  /**
+   * Start moving values.
+   *
+   * @param database the database
+   * @param chunkSize most values moved in one transaction
+   */
+  LegacyMetricDataMover(MetricDatabase database, int chunkSize) {
+    this.database = database;
+    this.chunkSize = chunkSize;
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "legacy-metric-data");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.execute(this::start);
+  }
+
+  private void start() {
+    try {
+      if (!database.hasLegacyMetricData()) {
+        logger.debug("No metric values left in tblmetricdata_legacy");
+        executor.shutdown();
+        return;
+      }
+    } catch (SQLException e) {
+      logger.warn("Unable to check for metric values in tblmetricdata_legacy: {}", e.toString());
+      executor.shutdown();
+      return;
+    }
+    logger.info("Moving metric values from tblmetricdata_legacy in chunks of [{}]", chunkSize);
+    moveChunk();
+  }
+
+  private void moveChunk() {
+    try {
+      List<Integer> key = database.moveLegacyMetricDataChunk(lastKey, chunkSize);
+      if (key != null) {
+        lastKey = key;
+        if (++chunks % 100 == 0) {
+          logger.info("Moved [{}] chunks of metric values from tblmetricdata_legacy", chunks);
+        }
+        schedule(CHUNK_DELAY);
+      } else if (lastKey != null) {
+        // End of a pass, start over for the values skipped
+        lastKey = null;
+        schedule(CHUNK_DELAY);
+      } else if (database.hasLegacyMetricData()) {
+        // Only values locked by others are left
+        schedule(RETRY_DELAY);
+      } else {
+        logger.info("Moved every metric value from tblmetricdata_legacy");
+        executor.shutdown();
+      }
+    } catch (SQLException e) {
+      logger.warn("Unable to move metric values from tblmetricdata_legacy, retrying in [{}] ms: {}",
+          RETRY_DELAY, e.toString());
+      schedule(RETRY_DELAY);
+    }
+  }
+
+  private void schedule(long delay) {
+    if (!executor.isShutdown()) {
+      executor.schedule(this::moveChunk, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stop moving values. A chunk being moved is still committed.
+   */
+  public void close() {
+    executor.shutdownNow();
+  }
+}
@@ -2,6 +2,7 @@
 package asl.seedscan.database;
 
 import java.beans.PropertyVetoException;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.sql.CallableStatement;
 import java.sql.Connection;
@@ -9,7 +10,21 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.temporal.JulianFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,6 +35,7 @@ import asl.metadata.Channel;
 import asl.metadata.Station;
 import asl.seedscan.config.DatabaseT;
 import asl.seedscan.metrics.MetricResult;
+import asl.seedscan.monitor.ScanMetrics;
 
 /**
  * The Class MetricDatabase. This contains methods for inserting and retrieving data from the
@@ -51,9 +67,78 @@ public class MetricDatabase {
    */
   private String username;
 
-  // lock object used to synchronize scans so taken-but-unpopulated scans aren't marked as finished
-  // both the finishScan and takeNextScan methods are synchronized on this object
-  private final Object lockObject = new Object();
+  /**
+   * The password, kept for the connection listening for new scans.
+   */
+  private String password;
+
+  /**
+   * Identifies this scanner as the owner of the scans it leases.
+   */
+  private final String leaseOwner = ManagementFactory.getRuntimeMXBean().getName() + ":"
+      + UUID.randomUUID();
+
+  /**
+   * Seconds a lease lasts without being renewed.
+   */
+  private int leaseTime = 600;
+
+  /**
+   * Scans leased by this scanner and not yet finished or released, renewed by
+   * {@link #renewScanLeases()}.
+   */
+  private final Set<UUID> leasedScans = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Stored digests of a station over a date range, loaded in one query for a scan.
+   */
+  private static class StoredDigests {
+
+    private final Station station;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final Map<MetricValueIdentifier, ByteBuffer> digests;
+
+    private StoredDigests(Station station, LocalDate startDate, LocalDate endDate,
+        Map<MetricValueIdentifier, ByteBuffer> digests) {
+      this.station = station;
+      this.startDate = startDate;
+      this.endDate = endDate;
+      this.digests = digests;
+    }
+
+    private boolean covers(Station station, LocalDate date) {
+      return this.station.equals(station) && !date.isBefore(startDate) && !date.isAfter(endDate);
+    }
+
+    /**
+     * @return the keys of the station days covered, for {@link #digestsByDay}
+     */
+    private List<List<Object>> days() {
+      List<List<Object>> days = new ArrayList<>();
+      for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+        days.add(Arrays.asList(station, date));
+      }
+      return days;
+    }
+  }
+
+  /**
+   * Digests loaded by {@link #loadMetricValueDigests(UUID, Station, LocalDate, LocalDate)}, by the
+   * scan that loaded them.
+   */
+  private final Map<UUID, StoredDigests> storedDigests = new ConcurrentHashMap<>();
+
+  /**
+   * The loaded digests covering each station day, keyed by station and date, so a lookup does not
+   * go through every scan's digests. When scans overlap, the digests loaded last are used.
+   */
+  private final Map<List<Object>, StoredDigests> digestsByDay = new ConcurrentHashMap<>();
+
+  /**
+   * IDs of the rows metric values refer to, resolved once per database.
+   */
+  private final DimensionIds dimensionIds = new DimensionIds();
 
   /**
    * Used for testing purposes only. Where java requires call to super() in mock Class.
@@ -82,6 +167,7 @@ public class MetricDatabase {
   MetricDatabase(String URI, String username, String password) throws SQLException {
     this.URI = URI;
     this.username = username;
+    this.password = password;
     logger.info("MetricDatabase Constructor(): Attempting to connect to the database");
 
     logger.info("Connection String = \"{}\", User = \"{}\"", this.URI, this.username);
@@ -120,37 +206,29 @@ public class MetricDatabase {
    * Mark a scan as finished. The database handles further work, such as completing parent scans and
    * collapsing finished scans.
    *
+   * Parent scans are only completed once their lease is released, so a parent scan whose child
+   * scans are still being added cannot be completed by the children already added.
+   *
    * @param pkScanID The UUID of the finished station scan.
    */
   public void finishScan(UUID pkScanID) {
-  	// lock prevents this from running if we are taking a scan or enumerating its child scans
-		// otherwise a taken scan whose children are not in the DB yet could get removed by this
-    synchronized (lockObject) {
-			try {
-				try (Connection connection = dataSource
-						.getConnection(); CallableStatement callStatement = connection
-						.prepareCall("SELECT * from fnfinishscan(?)")) {
-					callStatement.setObject(1, pkScanID);
-					callStatement.executeQuery();
+    leasedScans.remove(pkScanID);
+    long start = System.nanoTime();
+		try {
+			try (Connection connection = dataSource
+					.getConnection(); CallableStatement callStatement = connection
+					.prepareCall("SELECT * from fnfinishscan(?)")) {
+				callStatement.setObject(1, pkScanID);
+				callStatement.executeQuery();
 
-				}
-      } catch (SQLException e) {
-        logger.error("SQLException:", e);
-      }
+			}
+    } catch (SQLException e) {
+      logger.error("SQLException:", e);
+    } finally {
+      ScanMetrics.getInstance().database("finish_scan").recordSince(start);
     }
   }
 
-	/**
-	 * Return the lock object. Used to synchronize taking and adding child scans to the database,
-	 * which happens together in the run method of RetrieveScan. These operations need to be locked
-	 * together in order to prevent scans being marked as finished when the scan is taken and the
-	 * child scans have not yet been populated.
-	 * @return Lock Object, object solely used to control synchronization of scan data.
-	 */
-	public Object getLockObject() {
-  	return lockObject;
-	}
-
   /**
    * Gets the metric value for a particular channel, metric, day.
    *
@@ -204,6 +282,9 @@ public class MetricDatabase {
   /**
    * Gets the metric value digest for a particular channel, metric, day.
    *
+   * If the digests of the station were loaded in bulk for a scan covering the date, the digest is
+   * taken from those without querying the database.
+   *
    * @param date the date
    * @param metricName the metric name
    * @param station the network and station information
@@ -212,10 +293,18 @@ public class MetricDatabase {
    */
   public ByteBuffer getMetricValueDigest(LocalDate date, String metricName, Station station,
       Channel channel) {
+    StoredDigests stored = digestsByDay.get(Arrays.asList(station, date));
+    if (stored != null) {
+      ByteBuffer digest = stored.digests
+          .get(new MetricValueIdentifier(date, metricName, station, channel));
+      return (digest == null) ? null : digest.duplicate();
+    }
+
     ByteBuffer digest = null;
     Connection connection = null;
     CallableStatement callStatement = null;
     ResultSet resultSet = null;
+    long start = System.nanoTime();
     try {
       try {
         connection = dataSource.getConnection();
@@ -251,60 +340,199 @@ public class MetricDatabase {
     } catch (SQLException e) {
       logger.error("SQLException:", e);
     }
+    ScanMetrics.getInstance().database("get_metric_value_digest").recordSince(start);
 
     return digest;
   }
 
+  /**
+   * Load every stored digest of a station over a date range in a single query. Until released,
+   * {@link #getMetricValueDigest(LocalDate, String, Station, Channel)} answers from these for the
+   * station and dates covered, so a scan does not query the database for every metric and channel.
+   *
+   * Results inserted after loading are not seen, which is fine for a scan since it checks each
+   * metric value once before computing it. The dates are bound as Julian day numbers, so the
+   * planner only reads the partitions of tblmetricdata holding them.
+   *
+   * @param scanID the scan the digests are loaded for
+   * @param station the network and station
+   * @param startDate first day loaded
+   * @param endDate last day loaded
+   */
+  public void loadMetricValueDigests(UUID scanID, Station station, LocalDate startDate,
+      LocalDate endDate) {
+    Map<MetricValueIdentifier, ByteBuffer> digests = new HashMap<>();
+    long start = System.nanoTime();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(
+            "SELECT "
+                + "tblMetric.name AS metric, "
+                + "tblSensor.location, "
+                + "tblChannel.name AS channel, "
+                + "tblMetricData.date, "
+                + "tblHash.hash "
+                + "FROM metricDataView tblMetricData "
+                + "JOIN tblHash ON tblMetricData.\"fkHashID\" = tblHash.\"pkHashID\" "
+                + "JOIN tblMetric ON tblMetricData.fkMetricID = tblMetric.pkMetricID "
+                + "JOIN tblChannel ON tblMetricData.fkChannelID = tblChannel.pkChannelID "
+                + "JOIN tblSensor ON tblChannel.fkSensorID = tblSensor.pkSensorID "
+                + "JOIN tblStation ON tblSensor.fkStationID = tblStation.pkStationID "
+                + "JOIN \"tblGroup\" ON tblStation.fkNetworkID = \"tblGroup\".pkGroupID "
+                + "WHERE \"tblGroup\".name = ? "
+                + "AND tblStation.name = ? "
+                + "AND tblMetricData.date BETWEEN ? AND ?")) {
+      statement.setString(1, station.getNetwork());
+      statement.setString(2, station.getStation());
+      statement.setInt(3, (int) startDate.getLong(JulianFields.JULIAN_DAY));
+      statement.setInt(4, (int) endDate.getLong(JulianFields.JULIAN_DAY));
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          byte[] digest = resultSet.getBytes("hash");
+          if (digest == null) {
+            continue;
+          }
+          LocalDate date = LocalDate.MIN
+              .with(JulianFields.JULIAN_DAY, resultSet.getInt("date"));
+          Channel channel = new Channel(resultSet.getString("location"),
+              resultSet.getString("channel"));
+          digests.put(
+              new MetricValueIdentifier(date, resultSet.getString("metric"), station, channel),
+              ByteBuffer.wrap(digest));
+        }
+      }
+    } catch (SQLException e) {
+      // Digests are then queried one at a time
+      logger.error("SQLException:", e);
+      return;
+    } finally {
+      ScanMetrics.getInstance().database("load_metric_value_digests").recordSince(start);
+    }
+
+    logger.debug("Loaded {} digests for {} from {} to {}", digests.size(), station, startDate,
+        endDate);
+    StoredDigests stored = new StoredDigests(station, startDate, endDate, digests);
+    storedDigests.put(scanID, stored);
+    for (List<Object> day : stored.days()) {
+      digestsByDay.put(day, stored);
+    }
+  }
+
+  /**
+   * Release the digests loaded for a scan.
+   *
+   * @param scanID the scan the digests were loaded for
+   */
+  public void releaseMetricValueDigests(UUID scanID) {
+    StoredDigests stored = storedDigests.remove(scanID);
+    if (stored != null) {
+      for (List<Object> day : stored.days()) {
+        // Days loaded again by another scan since keep its digests
+        if (digestsByDay.remove(day, stored)) {
+          // Fall back on an earlier scan still covering the day
+          for (StoredDigests other : storedDigests.values()) {
+            if (other.covers((Station) day.get(0), (LocalDate) day.get(1))) {
+              digestsByDay.putIfAbsent(day, other);
+              break;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Insert a child scan of a scan.
+   *
+   * @param parentID the scan split into child scans
+   * @param network the child scan's network
+   * @param station the child scan's station
+   * @param location the location filter
+   * @param channel the channel filter
+   * @param metric the metric filter
+   * @param startDate first day of the child scan
+   * @param endDate last day of the child scan
+   * @param priority the priority
+   * @param deleteExisting whether existing values are deleted
+   */
   public void insertChildScan(UUID parentID, String network, String station, String location,
       String channel,
       String metric, LocalDate startDate, LocalDate endDate, int priority, boolean deleteExisting) {
-    Connection connection = null;
-    PreparedStatement statement = null;
-    try {
-      try {
-        //@formatter:off
-        connection = dataSource.getConnection();
-        //We will let the db set the timestamp.
-        statement = connection.prepareStatement(
-            "INSERT INTO tblscan("
-                + "fkparentscan, "
-                + "networkfilter, "
-                + "stationfilter, "
-                + "locationfilter, "
-                + "channelfilter, "
-                + "metricfilter, "
-                + "startdate, "
-                + "enddate, "
-                + "priority, "
-                + "deleteexisting)"
-                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?);");
-        int i = 1;
-        statement.setObject(i++, parentID);
-        statement.setString(i++, network);
-        statement.setString(i++, station);
-        statement.setString(i++, location);
-        statement.setString(i++, channel);
-        statement.setString(i++, metric);
-        statement.setObject(i++, startDate);
-        statement.setObject(i++, endDate);
-        statement.setInt(i++, priority);
-        statement.setBoolean(i++, deleteExisting);
-        //@formatter:on
+    insertChildScans(parentID, Collections.singletonList(new DatabaseScan(null, parentID, metric,
+        network, station, location, channel, startDate, endDate, priority, deleteExisting)));
+  }
 
-        if (statement.executeUpdate() != 1) {
-          throw new SQLException("Failed to insert following scan into database:");
-        }
-      } finally {
-				if (statement != null) {
-					statement.close();
-				}
-				if (connection != null) {
-					connection.close();
-				}
-      }
+  /**
+   * Insert child scans of a scan with one statement, so they are added together or not at all.
+   * Child scans the parent already has, with the same network, station and start date, are
+   * skipped, so a scan split again after its scanner stopped part way does not get duplicate
+   * children.
+   *
+   * @param parentID the scan split into child scans
+   * @param children the child scans, their scanIDs are ignored
+   * @return true if the child scans were inserted
+   */
+  public boolean insertChildScans(UUID parentID, List<DatabaseScan> children) {
+    if (children.isEmpty()) {
+      return true;
+    }
+    int size = children.size();
+    String[] networks = new String[size];
+    String[] stations = new String[size];
+    String[] locations = new String[size];
+    String[] channels = new String[size];
+    String[] metrics = new String[size];
+    String[] startDates = new String[size];
+    String[] endDates = new String[size];
+    Integer[] priorities = new Integer[size];
+    Boolean[] deleteExisting = new Boolean[size];
+    for (int i = 0; i < size; i++) {
+      DatabaseScan child = children.get(i);
+      networks[i] = child.network;
+      stations[i] = child.station;
+      locations[i] = child.location;
+      channels[i] = child.channel;
+      metrics[i] = child.metricName;
+      startDates[i] = child.startDate.toString();
+      endDates[i] = child.endDate.toString();
+      priorities[i] = child.priority;
+      deleteExisting[i] = child.deleteExisting;
+    }
+
+    long start = System.nanoTime();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(
+            //We will let the db set the timestamp.
+            "INSERT INTO tblscan(fkparentscan, networkfilter, stationfilter, locationfilter, "
+                + "channelfilter, metricfilter, startdate, enddate, priority, deleteexisting) "
+                + "SELECT ?, c.* FROM unnest(?::varchar[], ?::varchar[], ?::varchar[], "
+                + "?::varchar[], ?::varchar[], ?::date[], ?::date[], ?::int[], ?::boolean[]) "
+                + "AS c(network, station, location, channel, metric, startdate, enddate, "
+                + "priority, deleteexisting) "
+                + "WHERE NOT EXISTS (SELECT 1 FROM tblscan s WHERE s.fkparentscan = ? "
+                + "AND s.networkfilter IS NOT DISTINCT FROM c.network "
+                + "AND s.stationfilter IS NOT DISTINCT FROM c.station "
+                + "AND s.startdate = c.startdate)")) {
+      int i = 1;
+      statement.setObject(i++, parentID);
+      statement.setArray(i++, connection.createArrayOf("varchar", networks));
+      statement.setArray(i++, connection.createArrayOf("varchar", stations));
+      statement.setArray(i++, connection.createArrayOf("varchar", locations));
+      statement.setArray(i++, connection.createArrayOf("varchar", channels));
+      statement.setArray(i++, connection.createArrayOf("varchar", metrics));
+      statement.setArray(i++, connection.createArrayOf("varchar", startDates));
+      statement.setArray(i++, connection.createArrayOf("varchar", endDates));
+      statement.setArray(i++, connection.createArrayOf("int4", priorities));
+      statement.setArray(i++, connection.createArrayOf("bool", deleteExisting));
+      statement.setObject(i, parentID);
+      statement.executeUpdate();
+      return true;
     } catch (SQLException e) {
-      this.insertScanMessage(parentID, network, station, location, channel, metric,
-          "Unable to add child scan");
+      logger.error("SQLException:", e);
+      this.insertScanMessage(parentID, null, null, null, null, null,
+          "Unable to add " + size + " child scans");
+      return false;
+    } finally {
+      ScanMetrics.getInstance().database("insert_child_scans").recordSince(start);
     }
   }
 
@@ -337,50 +565,264 @@ public class MetricDatabase {
    * @return 0 if successful
    */
   public int insertMetricData(MetricResult results) {
-    int result = -1;
-    Connection connection = null;
-    CallableStatement callStatement = null;
-    try {
-      try {
-        connection = dataSource.getConnection();
-
-        callStatement = connection.prepareCall("SELECT spInsertMetricData(?, ?, ?, ?, ?, ?, ?, ?)");
+    return insertMetricData(Collections.singletonList(results));
+  }
 
+  /**
+   * Insert several metric results in a single transaction. Either every value is committed or none
+   * is.
+   *
+   * Unlike spInsertMetricData, which locks every table it touches for each value, the IDs values
+   * refer to are resolved through {@link DimensionIds} beforehand and the values are upserted with
+   * one statement per table. Concurrent scans only wait on each other when they write the same
+   * values or months of the same channel, and rows are written in key order so those waits cannot
+   * deadlock. Values that are not finite are logged to the error log instead, as
+   * spInsertMetricData does. The monthly rollups of the months written are recomputed in the same
+   * transaction. Copies of the values still in tblmetricdata_legacy are deleted first, so each
+   * value is stored once.
+   *
+   * @param resultsList the metric results to insert
+   * @return 0 if successful
+   */
+  public int insertMetricData(List<MetricResult> resultsList) {
+    int result = -1;
+    long start = System.nanoTime();
+    try (Connection connection = dataSource.getConnection()) {
+      // Keyed by metric, date and channel, the primary key, so rows are deduplicated and locked in
+      // the same order by every scan
+      Map<List<Integer>, Object[]> numericRows = new TreeMap<>(ROW_KEY_ORDER);
+      Map<List<Integer>, Object[]> textRows = new TreeMap<>(ROW_KEY_ORDER);
+      List<byte[]> digests = new ArrayList<>();
+      for (MetricResult results : resultsList) {
+        boolean calibration = results.getMetricName().equals("CalibrationMetric");
+        int metricID = dimensionIds.getMetricID(connection, results.getMetricName());
+        int dateID = dimensionIds.getDateID(connection, results.getDate());
         for (String id : results.getIdSet()) {
           Channel channel = MetricResult.createChannel(id);
-
-          callStatement.setObject(1, results.getDate());
-          callStatement.setString(2, results.getMetricName());
-          callStatement.setString(3, results.getStation().getNetwork());
-          callStatement.setString(4, results.getStation().getStation());
-          callStatement.setString(5, channel.getLocation());
-          callStatement.setString(6, channel.getChannel());
-          callStatement.setBytes(8, results.getDigest(id).array());
-
-          if (results.getMetricName().equals("CalibrationMetric")) {
-            callStatement.setString(7, id);
-          } else {
-            callStatement.setDouble(7, results.getResult(id));
+          Object value = calibration ? id : results.getResult(id);
+          if (!calibration && (value == null || !Double.isFinite((Double) value))) {
+            insertError("Non Numeric value: Nothing Inserted " + results.getDate() + " "
+                + channel.getLocation() + " " + channel.getChannel() + " "
+                + results.getStation().getStation() + " " + results.getMetricName() + " "
+                + value);
+            continue;
           }
-
-          callStatement.executeQuery();
+          int channelID = dimensionIds.getChannelID(connection, results.getStation(), channel);
+          byte[] digest = results.getDigest(id).array();
+          digests.add(digest);
+          (calibration ? textRows : numericRows).put(
+              Arrays.asList(metricID, dateID, channelID),
+              new Object[]{channelID, dateID, metricID, value, digest});
         }
+      }
+      Map<ByteBuffer, Long> hashIDs = dimensionIds.getHashIDs(connection, digests);
+
+      connection.setAutoCommit(false);
+      try {
+        deleteLegacyMetricRows(connection, numericRows.keySet());
+        upsertMetricRows(connection, "tblmetricdata", "float8", numericRows.values(), hashIDs);
+        upsertMetricRows(connection, "tblmetricstringdata", "varchar", textRows.values(),
+            hashIDs);
+        refreshMonthlyRollups(connection, numericRows.keySet());
+        connection.commit();
         result = 0;
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
       } finally {
-				if (callStatement != null) {
-					callStatement.close();
-				}
-				if (connection != null) {
-					connection.close();
-				}
+        connection.setAutoCommit(true);
       }
     } catch (SQLException e) {
+      // A cached ID may refer to a row deleted since
+      dimensionIds.clear();
       logger.error("SQLException:", e);
     }
+    ScanMetrics.getInstance().database("insert_metric_data_batch").recordSince(start);
 
     return result;
   }
 
+  /**
+   * Recompute the tblmetricmonthly rollups of the months numeric values were written to, from the
+   * month's daily values.
+   *
+   * Each rollup row is locked before it is recomputed, and the recomputing statement starts after
+   * the lock is granted. A concurrent transaction writing other days of the same month therefore
+   * commits first and its days are counted, or waits and recomputes the month after this one.
+   *
+   * The months are read through metricdataview, bounded by the first and last month written so
+   * only the partitions of their years are planned.
+   *
+   * @param connection connection with an open transaction, after the values were written
+   * @param rowKeys metric, date and channel IDs of the values written
+   * @throws SQLException for any exception from the JDBC driver
+   */
+  static void refreshMonthlyRollups(Connection connection,
+      Collection<List<Integer>> rowKeys) throws SQLException {
+    // Sorted, so concurrent writers lock the rollups in the same order
+    Set<List<Integer>> months = new TreeSet<>(ROW_KEY_ORDER);
+    for (List<Integer> key : rowKeys) {
+      LocalDate date = LocalDate.MIN.with(JulianFields.JULIAN_DAY, key.get(1));
+      months.add(Arrays.asList(key.get(0), key.get(2),
+          (int) date.withDayOfMonth(1).getLong(JulianFields.JULIAN_DAY)));
+    }
+    if (months.isEmpty()) {
+      return;
+    }
+    Integer[] metricIDs = new Integer[months.size()];
+    Integer[] channelIDs = new Integer[months.size()];
+    Integer[] monthIDs = new Integer[months.size()];
+    int firstMonth = Integer.MAX_VALUE;
+    int lastMonth = Integer.MIN_VALUE;
+    int i = 0;
+    for (List<Integer> month : months) {
+      firstMonth = Math.min(firstMonth, month.get(2));
+      lastMonth = Math.max(lastMonth, month.get(2));
+      metricIDs[i] = month.get(0);
+      channelIDs[i] = month.get(1);
+      monthIDs[i] = month.get(2);
+      i++;
+    }
+
+    String keys = "FROM unnest(?::int[], ?::int[], ?::int[]) AS k(metric, channel, month)";
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT INTO tblmetricmonthly (fkmetricid, fkchannelid, month, valuecount, valuesum) "
+            + "SELECT k.metric, k.channel, k.month, 0, 0 " + keys
+            + " ON CONFLICT DO NOTHING")) {
+      setRollupKeys(connection, statement, metricIDs, channelIDs, monthIDs);
+      statement.executeUpdate();
+    }
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT 1 FROM tblmetricmonthly mm JOIN (SELECT * " + keys + ") k "
+            + "ON mm.fkmetricid = k.metric AND mm.fkchannelid = k.channel "
+            + "AND mm.month = k.month "
+            + "ORDER BY mm.fkmetricid, mm.fkchannelid, mm.month FOR UPDATE OF mm")) {
+      setRollupKeys(connection, statement, metricIDs, channelIDs, monthIDs);
+      statement.executeQuery().close();
+    }
+    try (PreparedStatement statement = connection.prepareStatement(
+        "UPDATE tblmetricmonthly mm "
+            + "SET valuecount = r.valuecount, valuesum = r.valuesum, "
+            + "valuemin = r.valuemin, valuemax = r.valuemax "
+            + "FROM (SELECT k.metric, k.channel, k.month, count(md.value) AS valuecount, "
+            + "coalesce(sum(md.value), 0) AS valuesum, "
+            + "min(md.value) AS valuemin, max(md.value) AS valuemax "
+            + keys + " LEFT JOIN metricdataview md "
+            + "ON md.fkmetricid = k.metric AND md.fkchannelid = k.channel "
+            + "AND md.date >= k.month "
+            + "AND md.date < to_char(to_date(k.month::text, 'J') + interval '1 month', 'J')::int "
+            + "AND md.date >= ? AND md.date < ? "
+            + "GROUP BY k.metric, k.channel, k.month) r "
+            + "WHERE mm.fkmetricid = r.metric AND mm.fkchannelid = r.channel "
+            + "AND mm.month = r.month")) {
+      setRollupKeys(connection, statement, metricIDs, channelIDs, monthIDs);
+      statement.setInt(4, firstMonth);
+      statement.setInt(5, (int) LocalDate.MIN.with(JulianFields.JULIAN_DAY, lastMonth)
+          .plusMonths(1).getLong(JulianFields.JULIAN_DAY));
+      statement.executeUpdate();
+    }
+  }
+
+  /**
+   * Delete the copies of metric values still in tblmetricdata_legacy, before the values are
+   * written to tblmetricdata. Like moving a value, writing one locks its legacy row before its row
+   * in tblmetricdata, so the two cannot deadlock.
+   *
+   * @param connection connection with an open transaction
+   * @param rowKeys metric, date and channel IDs of the values about to be written
+   * @throws SQLException for any exception from the JDBC driver
+   */
+  static void deleteLegacyMetricRows(Connection connection,
+      Collection<List<Integer>> rowKeys) throws SQLException {
+    if (rowKeys.isEmpty()) {
+      return;
+    }
+    Integer[] metricIDs = new Integer[rowKeys.size()];
+    Integer[] dateIDs = new Integer[rowKeys.size()];
+    Integer[] channelIDs = new Integer[rowKeys.size()];
+    int i = 0;
+    for (List<Integer> key : rowKeys) {
+      metricIDs[i] = key.get(0);
+      dateIDs[i] = key.get(1);
+      channelIDs[i] = key.get(2);
+      i++;
+    }
+    try (PreparedStatement statement = connection.prepareStatement(
+        "DELETE FROM tblmetricdata_legacy l "
+            + "USING unnest(?::int[], ?::int[], ?::int[]) AS k(metric, date, channel) "
+            + "WHERE l.fkmetricid = k.metric AND l.date = k.date AND l.fkchannelid = k.channel")) {
+      statement.setArray(1, connection.createArrayOf("int4", metricIDs));
+      statement.setArray(2, connection.createArrayOf("int4", dateIDs));
+      statement.setArray(3, connection.createArrayOf("int4", channelIDs));
+      statement.executeUpdate();
+    }
+  }
+
+  private static void setRollupKeys(Connection connection, PreparedStatement statement,
+      Integer[] metricIDs, Integer[] channelIDs, Integer[] monthIDs) throws SQLException {
+    statement.setArray(1, connection.createArrayOf("int4", metricIDs));
+    statement.setArray(2, connection.createArrayOf("int4", channelIDs));
+    statement.setArray(3, connection.createArrayOf("int4", monthIDs));
+  }
+
+  /**
+   * Orders rows by their metric, date and channel IDs.
+   */
+  private static final Comparator<List<Integer>> ROW_KEY_ORDER = (a, b) -> {
+    for (int i = 0; i < a.size(); i++) {
+      int compare = Integer.compare(a.get(i), b.get(i));
+      if (compare != 0) {
+        return compare;
+      }
+    }
+    return 0;
+  };
+
+  /**
+   * Insert metric values, replacing the value and digest of those already stored. The rows are
+   * passed as one array per column, so any number of them takes a single statement.
+   *
+   * @param connection connection with an open transaction
+   * @param table tblmetricdata or tblmetricstringdata
+   * @param valueType SQL type of the table's value column
+   * @param rows channel, date, metric IDs, value and digest of each value
+   * @param hashIDs the pkHashID of each digest
+   * @throws SQLException for any exception from the JDBC driver
+   */
+  private static void upsertMetricRows(Connection connection, String table, String valueType,
+      Collection<Object[]> rows, Map<ByteBuffer, Long> hashIDs) throws SQLException {
+    if (rows.isEmpty()) {
+      return;
+    }
+    Integer[] channelIDs = new Integer[rows.size()];
+    Integer[] dateIDs = new Integer[rows.size()];
+    Integer[] metricIDs = new Integer[rows.size()];
+    Object[] values = new Object[rows.size()];
+    Long[] hashIDArray = new Long[rows.size()];
+    int i = 0;
+    for (Object[] row : rows) {
+      channelIDs[i] = (Integer) row[0];
+      dateIDs[i] = (Integer) row[1];
+      metricIDs[i] = (Integer) row[2];
+      values[i] = row[3];
+      hashIDArray[i] = hashIDs.get(ByteBuffer.wrap((byte[]) row[4]));
+      i++;
+    }
+
+    try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + table
+        + " (fkchannelid, date, fkmetricid, value, \"fkHashID\") "
+        + "SELECT * FROM unnest(?::int[], ?::int[], ?::int[], ?::" + valueType + "[], ?::bigint[]) "
+        + "ON CONFLICT (fkmetricid, date, fkchannelid) "
+        + "DO UPDATE SET value = EXCLUDED.value, \"fkHashID\" = EXCLUDED.\"fkHashID\"")) {
+      statement.setArray(1, connection.createArrayOf("int4", channelIDs));
+      statement.setArray(2, connection.createArrayOf("int4", dateIDs));
+      statement.setArray(3, connection.createArrayOf("int4", metricIDs));
+      statement.setArray(4, connection.createArrayOf(valueType, values));
+      statement.setArray(5, connection.createArrayOf("int8", hashIDArray));
+      statement.executeUpdate();
+    }
+  }
+
   /**
    * Insert a message (usually an error message) into the database regarding a scan.
    *
@@ -443,8 +885,9 @@ public class MetricDatabase {
   }
 
   /**
-   * Reset any existing station scans that are taken. This prevents orphaned scans, if seedscan dies
-   * while running a scan.
+   * Reset any existing station scans that are taken without a lease. This prevents orphaned scans,
+   * if seedscan dies while running a scan. Leased scans are left to expire, as they may belong to
+   * another scanner that is still running.
    *
    * @throws SQLException for any exception from the JDBC driver
    */
@@ -456,6 +899,7 @@ public class MetricDatabase {
 						+ "WHERE "
             + "finished = FALSE "
             + "AND taken = TRUE "
+            + "AND leaseexpires IS NULL "
             + "AND pkscanid NOT IN ( "
             + "SELECT DISTINCT fkparentscan FROM tblscan WHERE fkparentscan IS NOT NULL "
             + ")")) {
@@ -473,36 +917,215 @@ public class MetricDatabase {
    * @return A Scan object to be added to the Priority Queue or null if empty
    */
   public DatabaseScan takeNextScan() {
+    List<DatabaseScan> scans = takeNextScans(1);
+    return scans.isEmpty() ? null : scans.get(0);
+  }
+
+  /**
+   * Lease the next priority scans from the database in one call. Scans other scanners are taking
+   * at the same time are skipped rather than waited on. Leases are kept by
+   * {@link #renewScanLeases()} until the scan is finished or its lease released.
+   *
+   * @param count the most scans to lease
+   * @return the leased scans, empty if there are none or the database could not be reached
+   */
+  public List<DatabaseScan> takeNextScans(int count) {
+    List<DatabaseScan> scans = new ArrayList<>();
+    long start = System.nanoTime();
 		try {
 			try (Connection connection = dataSource
-					.getConnection(); CallableStatement callStatement = connection
-					.prepareCall("SELECT * from fntakenextscan()"); ResultSet rs = callStatement
-					.executeQuery()) {
-
-				//If we have a scan return it
-				if (rs.next()) {
-					//@formatter:off
-					return new DatabaseScan(
-							(UUID) rs.getObject("pkscanid"),
-							(UUID) rs.getObject("fkparentscan"),
-							rs.getString("metricfilter"),
-							rs.getString("networkfilter"),
-							rs.getString("stationfilter"),
-							rs.getString("locationfilter"),
-							rs.getString("channelfilter"),
-							rs.getObject("startdate", LocalDate.class),
-							rs.getObject("enddate", LocalDate.class),
-							rs.getInt("priority"),
-							rs.getBoolean("deleteexisting"));
-					//@formatter:on
-				} else {
-					return null;
+					.getConnection(); PreparedStatement statement = connection
+					.prepareStatement("SELECT * from fnleasescans(?, ?, ?)")) {
+				statement.setString(1, leaseOwner);
+				statement.setInt(2, count);
+				statement.setInt(3, leaseTime);
+				try (ResultSet rs = statement.executeQuery()) {
+					while (rs.next()) {
+						//@formatter:off
+						DatabaseScan scan = new DatabaseScan(
+								(UUID) rs.getObject("pkscanid"),
+								(UUID) rs.getObject("fkparentscan"),
+								rs.getString("metricfilter"),
+								rs.getString("networkfilter"),
+								rs.getString("stationfilter"),
+								rs.getString("locationfilter"),
+								rs.getString("channelfilter"),
+								rs.getObject("startdate", LocalDate.class),
+								rs.getObject("enddate", LocalDate.class),
+								rs.getInt("priority"),
+								rs.getBoolean("deleteexisting"));
+						//@formatter:on
+						leasedScans.add(scan.scanID);
+						scans.add(scan);
+					}
 				}
 			}
     } catch (SQLException e) {
       logger.error("SQLException:", e);
+    } finally {
+      ScanMetrics.getInstance().database("take_next_scan").recordSince(start);
+    }
+    return scans;
+  }
+
+  /**
+   * Release the lease of a scan that was split into child scans. Once released, the scan is
+   * finished when its child scans are, and finished right away if it has none left.
+   *
+   * @param scanID the parent scan
+   */
+  public void releaseScanLease(UUID scanID) {
+    if (!leasedScans.remove(scanID)) {
+      return;
+    }
+		try (Connection connection = dataSource
+				.getConnection(); PreparedStatement statement = connection.prepareStatement(
+				"UPDATE tblscan parent "
+						+ "SET leaseexpires = NULL, lastupdate = current_timestamp, "
+						+ "finished = NOT EXISTS ( "
+						+ "SELECT 1 FROM tblscan child "
+						+ "WHERE child.fkparentscan = parent.pkscanid AND child.finished = FALSE) "
+						+ "WHERE parent.pkscanid = ? AND parent.leaseowner = ?")) {
+			statement.setObject(1, scanID);
+			statement.setString(2, leaseOwner);
+			statement.executeUpdate();
+    } catch (SQLException e) {
+      logger.error("SQLException:", e);
+    }
+  }
+
+  /**
+   * Stop renewing the lease of a scan that could not be completed, such as a scan that could not be
+   * split or whose results could not all be written, so it is taken again once its lease expires.
+   *
+   * @param scanID the scan
+   */
+  public void abandonScanLease(UUID scanID) {
+    leasedScans.remove(scanID);
+  }
+
+  /**
+   * Renew the leases of the scans this scanner holds. Scans whose lease already expired and was
+   * taken by another scanner are no longer renewed and are logged, as they may be scanned twice.
+   */
+  public void renewScanLeases() {
+    if (leasedScans.isEmpty()) {
+      return;
+    }
+    UUID[] scanIDs = leasedScans.toArray(new UUID[0]);
+    long start = System.nanoTime();
+		try (Connection connection = dataSource
+				.getConnection(); PreparedStatement statement = connection.prepareStatement(
+				"UPDATE tblscan "
+						+ "SET leaseexpires = current_timestamp + ? * interval '1 second' "
+						+ "WHERE pkscanid = ANY(?) AND leaseowner = ? AND finished = FALSE "
+						+ "AND leaseexpires IS NOT NULL "
+						+ "RETURNING pkscanid")) {
+			statement.setInt(1, leaseTime);
+			statement.setArray(2, connection.createArrayOf("uuid", scanIDs));
+			statement.setString(3, leaseOwner);
+			Set<UUID> renewed = new HashSet<>();
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next()) {
+					renewed.add((UUID) rs.getObject(1));
+				}
+			}
+			for (UUID scanID : scanIDs) {
+				// Scans finished or released since are already gone from leasedScans
+				if (!renewed.contains(scanID) && leasedScans.remove(scanID)) {
+					logger.warn("Lost the lease of scan [{}], another scanner may take it", scanID);
+				}
+			}
+    } catch (SQLException e) {
+      logger.error("SQLException:", e);
+    } finally {
+      ScanMetrics.getInstance().database("renew_scan_leases").recordSince(start);
+    }
+  }
+
+  /**
+   * Set how long leases of scans taken from now on last without being renewed.
+   *
+   * @param seconds the lease time in seconds
+   */
+  public void setScanLeaseTime(int seconds) {
+    leaseTime = seconds;
+  }
+
+  /**
+   * Listen for scans inserted into the database.
+   *
+   * @param onScan run whenever scans were inserted, on the listening thread
+   * @return the listener, to close once no longer needed
+   */
+  public ScanListener listenForScans(Runnable onScan) {
+    return new ScanListener(URI, username, password, onScan);
+  }
+
+  /**
+   * Start moving the metric values written before tblmetricdata was partitioned into its
+   * partitions, in the background.
+   *
+   * @param chunkSize most values moved in one transaction
+   * @return the mover, to close once no longer needed
+   */
+  public LegacyMetricDataMover moveLegacyMetricData(int chunkSize) {
+    return new LegacyMetricDataMover(this, chunkSize);
+  }
+
+  /**
+   * Move a chunk of values from tblmetricdata_legacy into tblmetricdata, the values following a
+   * key in key order. Values being written or moved by others are skipped rather than waited on.
+   * A value already in tblmetricdata was written since and is kept.
+   *
+   * @param after metric, date and channel IDs of the last value moved, null to start at the first
+   * @param chunkSize most values moved
+   * @return metric, date and channel IDs of the last value moved, null if none followed the key
+   * @throws SQLException for any exception from the JDBC driver
+   */
+  List<Integer> moveLegacyMetricDataChunk(List<Integer> after, int chunkSize)
+      throws SQLException {
+    long start = System.nanoTime();
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(
+            "WITH chunk AS ("
+                + "DELETE FROM tblmetricdata_legacy WHERE ctid IN ("
+                + "SELECT ctid FROM tblmetricdata_legacy "
+                + "WHERE (fkmetricid, date, fkchannelid) > (?, ?, ?) "
+                + "ORDER BY fkmetricid, date, fkchannelid LIMIT ? FOR UPDATE SKIP LOCKED) "
+                + "RETURNING *), "
+                + "moved AS ("
+                + "INSERT INTO tblmetricdata (fkchannelid, date, fkmetricid, value, \"fkHashID\") "
+                + "SELECT fkchannelid, date, fkmetricid, value, \"fkHashID\" FROM chunk "
+                + "ON CONFLICT (fkmetricid, date, fkchannelid) DO NOTHING) "
+                + "SELECT fkmetricid, date, fkchannelid FROM chunk "
+                + "ORDER BY fkmetricid DESC, date DESC, fkchannelid DESC LIMIT 1")) {
+      for (int i = 0; i < 3; i++) {
+        statement.setInt(i + 1, after == null ? Integer.MIN_VALUE : after.get(i));
+      }
+      statement.setInt(4, chunkSize);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (!resultSet.next()) {
+          return null;
+        }
+        return Arrays.asList(resultSet.getInt(1), resultSet.getInt(2), resultSet.getInt(3));
+      }
+    } finally {
+      ScanMetrics.getInstance().database("move_legacy_metric_data").recordSince(start);
+    }
+  }
+
+  /**
+   * @return true if tblmetricdata_legacy still holds values
+   * @throws SQLException for any exception from the JDBC driver
+   */
+  boolean hasLegacyMetricData() throws SQLException {
+    try (Connection connection = dataSource.getConnection();
+        PreparedStatement statement = connection.prepareStatement(
+            "SELECT EXISTS (SELECT 1 FROM tblmetricdata_legacy)");
+        ResultSet resultSet = statement.executeQuery()) {
+      return resultSet.next() && resultSet.getBoolean(1);
     }
-    return null;
   }
 
 }
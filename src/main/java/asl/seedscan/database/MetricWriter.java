@@ -0,0 +1,348 @@
+package asl.seedscan.database;
+
+import asl.seedscan.metrics.MetricResult;
+import asl.seedscan.monitor.ScanMetrics;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes metric results to the database from a background thread, so scans do not wait on a round
+ * trip for every value.
+ *
+ * Results are queued and sent in batches through {@link MetricDatabase#insertMetricData(List)}. A
+ * batch is sent once it holds enough values or its oldest result has waited long enough. The queue
+ * is bounded, when the database falls behind {@link #write(UUID, MetricResult)} blocks the scans until
+ * there is room again.
+ *
+ * Finishing a scan goes through the same queue, so a scan is only marked finished after every
+ * result queued before it has been committed. A scan with a result that could not be written is not
+ * finished, its lease is abandoned instead so it is scanned again once the lease expires. A scan
+ * that failed can have its lease abandoned through the queue as well.
+ */
+public class MetricWriter {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.database.MetricWriter.class);
+
+  /**
+   * A queued result of a scan, or a scan to finish or abandon once the results before it are
+   * written.
+   */
+  private static class Entry {
+
+    private final UUID scanID;
+    private final MetricResult results;
+    private final boolean abandon;
+
+    private Entry(UUID scanID, MetricResult results, boolean abandon) {
+      this.scanID = scanID;
+      this.results = results;
+      this.abandon = abandon;
+    }
+  }
+
+  /**
+   * Tells the writer thread to write what it has and stop.
+   */
+  private static final Entry STOP = new Entry(null, null, false);
+
+  private final MetricDatabase database;
+  private final BlockingQueue<Entry> queue;
+  private final int batchSize;
+  private final long flushMillis;
+  private final Thread writer;
+
+  /**
+   * Held while putting an entry in the queue. Fair, so results blocked on a full queue when the
+   * writer is closed are queued before it stops.
+   */
+  private final ReentrantLock putLock = new ReentrantLock(true);
+
+  /**
+   * Set once the writer is closed. Guarded by putLock.
+   */
+  private boolean closed = false;
+
+  /**
+   * Scans with a result that could not be written. Only used by the writer thread.
+   */
+  private final Set<UUID> failedScans = new HashSet<>();
+
+  private long batchesWritten = 0;
+  private long resultsWritten = 0;
+  private long resultsFailed = 0;
+
+  /**
+   * Start a writer.
+   *
+   * @param database the database written to
+   * @param capacity most results and scans waiting to be written before scans are blocked
+   * @param batchSize number of values that causes a batch to be sent
+   * @param flushMillis longest time a result waits before its batch is sent
+   */
+  public MetricWriter(MetricDatabase database, int capacity, int batchSize, long flushMillis) {
+    this.database = database;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.batchSize = batchSize;
+    this.flushMillis = flushMillis;
+
+    writer = new Thread(this::run, "metric-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Queue a metric result to be written. Blocks while the queue is full.
+   *
+   * @param scanID the UUID of the scan the result belongs to
+   * @param results the metric result to insert
+   * @throws InterruptedException if interrupted while waiting for room in the queue
+   * @throws IllegalStateException if the writer was closed
+   */
+  public void write(UUID scanID, MetricResult results) throws InterruptedException {
+    put(new Entry(scanID, results, false));
+  }
+
+  /**
+   * Mark a scan as finished once all results queued before this call are written. If any of its
+   * results could not be written the scan's lease is abandoned instead. Blocks while the queue is
+   * full.
+   *
+   * @param pkScanID The UUID of the finished station scan.
+   * @throws InterruptedException if interrupted while waiting for room in the queue
+   * @throws IllegalStateException if the writer was closed
+   */
+  public void finishScan(UUID pkScanID) throws InterruptedException {
+    put(new Entry(pkScanID, null, false));
+  }
+
+  /**
+   * Abandon the lease of a scan that failed once all results queued before this call are written,
+   * so the scan is taken again once the lease expires instead of having it renewed. Blocks while
+   * the queue is full.
+   *
+   * @param scanID The UUID of the failed station scan.
+   * @throws InterruptedException if interrupted while waiting for room in the queue
+   * @throws IllegalStateException if the writer was closed
+   */
+  public void abandonScan(UUID scanID) throws InterruptedException {
+    put(new Entry(scanID, null, true));
+  }
+
+  private void put(Entry entry) throws InterruptedException {
+    putLock.lockInterruptibly();
+    try {
+      if (closed) {
+        throw new IllegalStateException("The metric writer is closed");
+      }
+      queue.put(entry);
+    } finally {
+      putLock.unlock();
+    }
+  }
+
+  /**
+   * Write everything queued so far, including results waiting for room in the queue, and stop the
+   * writer thread. Results and scans written after this call are refused, so those scans are not
+   * finished and are taken again once their leases expire.
+   *
+   * @throws InterruptedException if interrupted while waiting for the writer
+   */
+  public void close() throws InterruptedException {
+    putLock.lockInterruptibly();
+    try {
+      if (!closed) {
+        closed = true;
+        queue.put(STOP);
+      }
+    } finally {
+      putLock.unlock();
+    }
+    writer.join();
+  }
+
+  /**
+   * @return the number of results and scans waiting in the queue
+   */
+  public int getQueued() {
+    return queue.size();
+  }
+
+  /**
+   * @return the number of batches sent to the database
+   */
+  public synchronized long getBatchesWritten() {
+    return batchesWritten;
+  }
+
+  /**
+   * @return the number of results written to the database
+   */
+  public synchronized long getResultsWritten() {
+    return resultsWritten;
+  }
+
+  /**
+   * @return the number of results that could not be written
+   */
+  public synchronized long getResultsFailed() {
+    return resultsFailed;
+  }
+
+  /**
+   * Body of the writer thread.
+   */
+  private void run() {
+    List<Entry> batch = new ArrayList<>();
+    int values = 0;
+    long deadline = 0;
+    while (true) {
+      Entry entry;
+      try {
+        if (batch.isEmpty()) {
+          entry = queue.take();
+        } else {
+          entry = queue.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+      } catch (InterruptedException e) {
+        logger.warn("Metric writer interrupted, writing {} queued results", batch.size());
+        entry = STOP;
+      }
+
+      try {
+        if (entry == null) {
+          // Oldest result has waited long enough
+          flush(batch);
+          values = 0;
+        } else if (entry == STOP) {
+          flush(batch);
+          List<Entry> remaining = new ArrayList<>();
+          queue.drainTo(remaining);
+          for (Entry left : remaining) {
+            write(left, batch);
+          }
+          flush(batch);
+          return;
+        } else if (entry.results != null) {
+          if (batch.isEmpty()) {
+            deadline = System.currentTimeMillis() + flushMillis;
+          }
+          batch.add(entry);
+          values += entry.results.getIdSet().size();
+          if (values >= batchSize) {
+            flush(batch);
+            values = 0;
+          }
+        } else {
+          flush(batch);
+          values = 0;
+          finish(entry);
+        }
+      } catch (RuntimeException e) {
+        // Keep the writer alive, the scans depend on it
+        logger.error("Metric writer failed:", e);
+        for (Entry dropped : batch) {
+          failed(dropped);
+        }
+        batch.clear();
+        values = 0;
+        if (entry == STOP) {
+          return;
+        }
+        if (entry != null && entry.results == null) {
+          // The scan may not have been finished
+          failedScans.remove(entry.scanID);
+          database.abandonScanLease(entry.scanID);
+        }
+      }
+    }
+  }
+
+  /**
+   * Write a single entry while stopping.
+   */
+  private void write(Entry entry, List<Entry> batch) {
+    if (entry == STOP) {
+      return;
+    }
+    if (entry.results != null) {
+      batch.add(entry);
+    } else {
+      flush(batch);
+      finish(entry);
+    }
+  }
+
+  /**
+   * Finish a scan, unless it failed or one of its results could not be written. Its lease is then
+   * abandoned so the scan is taken again once the lease expires.
+   */
+  private void finish(Entry entry) {
+    UUID scanID = entry.scanID;
+    if (entry.abandon) {
+      failedScans.remove(scanID);
+      database.abandonScanLease(scanID);
+    } else if (failedScans.remove(scanID)) {
+      logger.error("Not finishing scan [{}], some of its results could not be written. "
+          + "It is scanned again once its lease expires.", scanID);
+      database.abandonScanLease(scanID);
+    } else {
+      database.finishScan(scanID);
+    }
+  }
+
+  /**
+   * Record a result that could not be written, so its scan is not finished.
+   */
+  private void failed(Entry entry) {
+    if (entry.scanID != null) {
+      failedScans.add(entry.scanID);
+    }
+    synchronized (this) {
+      resultsFailed++;
+    }
+  }
+
+  /**
+   * Send a batch to the database and empty it. If the batch cannot be committed as a whole, its
+   * results are inserted one at a time so a single bad value does not lose the others, and the
+   * scans of the results that still fail are recorded.
+   */
+  private void flush(List<Entry> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    long start = System.nanoTime();
+    List<MetricResult> resultsList = new ArrayList<>(batch.size());
+    for (Entry entry : batch) {
+      resultsList.add(entry.results);
+    }
+    int written = batch.size();
+    if (database.insertMetricData(resultsList) != 0) {
+      logger.warn("Batch of {} metric results failed, inserting them one at a time", batch.size());
+      for (Entry entry : batch) {
+        if (database.insertMetricData(entry.results) != 0) {
+          logger.error("Unable to write {} of scan [{}]", entry.results.getMetricName(),
+              entry.scanID);
+          failed(entry);
+          written--;
+        }
+      }
+    }
+    ScanMetrics.getInstance().stage(ScanMetrics.STAGE_DB_WRITE).recordSince(start);
+    synchronized (this) {
+      batchesWritten++;
+      resultsWritten += written;
+    }
+    batch.clear();
+  }
+}
@@ -0,0 +1,105 @@
+package asl.seedscan.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens for scans inserted into tblscan, which the tblscan_notify trigger announces on the
+ * seedscan_scan channel, so idle scanners take new scans right away instead of on their next poll.
+ *
+ * Listening needs a connection of its own for as long as the scanner runs, so it is opened outside
+ * the connection pool. If the connection is lost, it is opened again after a delay. Scanners keep
+ * polling as well, so a missed notification only delays a scan until the next poll.
+ */
+public class ScanListener {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.database.ScanListener.class);
+
+  /**
+   * Channel the tblscan_notify trigger notifies.
+   */
+  static final String CHANNEL = "seedscan_scan";
+
+  /**
+   * Milliseconds to wait for notifications before checking whether the listener was closed.
+   */
+  private static final int WAIT_TIME = 5000;
+
+  /**
+   * Milliseconds to wait before reconnecting after the connection failed.
+   */
+  private static final long RECONNECT_TIME = 30000;
+
+  private final String uri;
+  private final String username;
+  private final String password;
+  private final Runnable onScan;
+  private final Thread thread;
+
+  private volatile boolean running = true;
+
+  /**
+   * Start listening.
+   *
+   * @param uri the location of the database
+   * @param username the username
+   * @param password the password
+   * @param onScan run on the listening thread whenever scans were inserted
+   */
+  ScanListener(String uri, String username, String password, Runnable onScan) {
+    this.uri = uri;
+    this.username = username;
+    this.password = password;
+    this.onScan = onScan;
+    thread = new Thread(this::listen, "scan-listener");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void listen() {
+    while (running) {
+      try (Connection connection = DriverManager.getConnection(uri, username, password)) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("LISTEN " + CHANNEL);
+        }
+        logger.info("Listening for new scans on [{}]", CHANNEL);
+        // Scans inserted while not listening
+        onScan.run();
+
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        while (running) {
+          PGNotification[] notifications = pgConnection.getNotifications(WAIT_TIME);
+          if (notifications != null && notifications.length > 0) {
+            onScan.run();
+          }
+        }
+      } catch (SQLException | RuntimeException e) {
+        if (!running) {
+          break;
+        }
+        logger.warn("Lost the connection listening for new scans, reconnecting in [{}] ms: {}",
+            RECONNECT_TIME, e.toString());
+        try {
+          Thread.sleep(RECONNECT_TIME);
+        } catch (InterruptedException interrupted) {
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Stop listening. The connection is closed within a few seconds.
+   */
+  public void close() {
+    running = false;
+    thread.interrupt();
+  }
+}
@@ -0,0 +1,360 @@
+package asl.seedscan.event;
+
+import asl.metadata.meta_new.StationMeta;
+import edu.sc.seis.TauP.Arrival;
+import edu.sc.seis.TauP.SphericalCoords;
+import edu.sc.seis.TauP.TauModel;
+import edu.sc.seis.TauP.TauModelException;
+import edu.sc.seis.TauP.TauModelLoader;
+import edu.sc.seis.TauP.TauP_Time;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Travel times of event phases to stations, shared by every metric.
+ *
+ * The velocity model is loaded once. Each thread calculates with its own TauP_Time over it, as
+ * TauP_Time keeps the phases and source depth of its last calculation. Arrivals are cached by
+ * event, station and phases, so the metrics of a station day calculate each once.
+ *
+ * P arrival times can instead be interpolated from a table of first P arrivals over distance and
+ * source depth, see {@link #setTableStep(double)}. Rows of the table are calculated the first
+ * time a depth needs them.
+ */
+public class ArrivalTimeService {
+
+  private static final Logger logger = LoggerFactory.getLogger(ArrivalTimeService.class);
+
+  /**
+   * Number of event, station and phase combinations whose arrivals are kept.
+   */
+  private static final int CACHE_SIZE = 10000;
+
+  /**
+   * Depth spacing of the P arrival table in km.
+   */
+  static final double TABLE_DEPTH_STEP = 10.0;
+
+  private static ArrivalTimeService instance;
+
+  private final TauModel tauModel;
+
+  private final ThreadLocal<TauP_Time> timeTools;
+
+  /**
+   * Arrivals in least recently used order. Guarded by itself.
+   */
+  private final Map<ArrivalKey, List<Arrival>> arrivals;
+
+  /**
+   * The P arrival table, null if P arrivals are calculated.
+   */
+  private volatile PArrivalTable table = null;
+
+  /**
+   * @param modelName the TauP velocity model, e.g. "prem"
+   * @param cacheSize the number of event, station and phase combinations to keep
+   * @throws TauModelException if the model can't be loaded
+   */
+  ArrivalTimeService(String modelName, int cacheSize) throws TauModelException {
+    tauModel = TauModelLoader.load(modelName);
+    if (tauModel == null) {
+      throw new TauModelException("Unable to load velocity model " + modelName);
+    }
+    timeTools = ThreadLocal.withInitial(() -> {
+      try {
+        return new TauP_Time(tauModel);
+      } catch (TauModelException e) {
+        // The model already loaded
+        throw new IllegalStateException(e);
+      }
+    });
+    arrivals = new LinkedHashMap<ArrivalKey, List<Arrival>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ArrivalKey, List<Arrival>> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * The service for the PREM model.
+   *
+   * @return the shared service
+   * @throws TauModelException if PREM can't be loaded
+   */
+  public static synchronized ArrivalTimeService getInstance() throws TauModelException {
+    if (instance == null) {
+      instance = new ArrivalTimeService("prem", CACHE_SIZE);
+    }
+    return instance;
+  }
+
+  /**
+   * Interpolate P arrival times from a table with the given distance spacing and 10 km depth
+   * spacing instead of calculating each. Arrivals where the table has no P wave are still
+   * calculated.
+   *
+   * @param degrees the distance spacing, 0 to calculate every P arrival
+   */
+  public void setTableStep(double degrees) {
+    PArrivalTable current = table;
+    if (degrees <= 0) {
+      table = null;
+    } else if (current == null || current.step != degrees) {
+      table = new PArrivalTable(degrees);
+    }
+  }
+
+  /**
+   * Arrivals of phases from an event at a station, sorted by time.
+   *
+   * @param eventCMT the event
+   * @param stationMeta the station
+   * @param phases comma separated TauP phase names, e.g. "P,S"
+   * @return the arrivals, shared and unmodifiable
+   * @throws TauModelException if the arrivals can't be calculated
+   */
+  public List<Arrival> getArrivals(EventCMT eventCMT, StationMeta stationMeta, String phases)
+      throws TauModelException {
+    ArrivalKey key = new ArrivalKey(eventCMT, stationMeta, phases);
+    List<Arrival> cached;
+    synchronized (arrivals) {
+      cached = arrivals.get(key);
+    }
+    if (cached != null) {
+      return cached;
+    }
+
+    double greatCircleArc = SphericalCoords.distance(eventCMT.getLatitude(),
+        eventCMT.getLongitude(), stationMeta.getLatitude(), stationMeta.getLongitude());
+    List<Arrival> calculated = Collections
+        .unmodifiableList(calculate(phases, eventCMT.getDepth(), greatCircleArc));
+    synchronized (arrivals) {
+      arrivals.put(key, calculated);
+    }
+    return calculated;
+  }
+
+  /**
+   * The first P arrival time of an event at a station.
+   *
+   * @param eventCMT the event
+   * @param stationMeta the station
+   * @return the travel time in seconds, or NaN if there is no P arrival
+   * @throws TauModelException if the arrival can't be calculated
+   */
+  public double getPArrivalTime(EventCMT eventCMT, StationMeta stationMeta)
+      throws TauModelException {
+    PArrivalTable pTable = table;
+    if (pTable != null) {
+      double greatCircleArc = SphericalCoords.distance(eventCMT.getLatitude(),
+          eventCMT.getLongitude(), stationMeta.getLatitude(), stationMeta.getLongitude());
+      double arrivalTime = pTable.interpolate(eventCMT.getDepth(), greatCircleArc);
+      if (!Double.isNaN(arrivalTime)) {
+        return arrivalTime;
+      }
+    }
+    List<Arrival> pArrivals = getArrivals(eventCMT, stationMeta, "P");
+    if (pArrivals.size() > 0 && pArrivals.get(0).getName().equals("P")) {
+      return pArrivals.get(0).getTime();
+    }
+    return Double.NaN;
+  }
+
+  /**
+   * Calculates arrivals without the cache.
+   *
+   * @param phases comma separated TauP phase names
+   * @param depth the source depth in km
+   * @param greatCircleArc the distance in degrees
+   * @return the arrivals, sorted by time
+   * @throws TauModelException if the arrivals can't be calculated
+   */
+  List<Arrival> calculate(String phases, double depth, double greatCircleArc)
+      throws TauModelException {
+    TauP_Time timeTool = timeTools.get();
+    if (!phases.equals(timeTool.getPhaseNameString())) {
+      timeTool.clearPhaseNames();
+      timeTool.parsePhaseList(phases);
+    }
+    timeTool.setSourceDepth(depth);
+    timeTool.calculate(greatCircleArc);
+    return new ArrayList<>(timeTool.getArrivals());
+  }
+
+  /**
+   * Removes every cached arrival and table row.
+   */
+  public void clear() {
+    synchronized (arrivals) {
+      arrivals.clear();
+    }
+    PArrivalTable current = table;
+    if (current != null) {
+      table = new PArrivalTable(current.step);
+    }
+  }
+
+  /**
+   * First P arrival times over distance and source depth. Rows of a depth are calculated when
+   * first needed.
+   *
+   * Along distance, times are interpolated with cubic Hermite polynomials using the ray parameter
+   * as the slope. The first arrival jumps where a triplication brings in a faster branch, so
+   * cells whose ends don't agree with their slopes are left to the calculation. Rows are
+   * interpolated linearly in depth.
+   */
+  private final class PArrivalTable {
+
+    /**
+     * Largest difference in seconds between a cell's end time and the time extrapolated from its
+     * start along the mean slope, for the cell to be interpolated.
+     */
+    private static final double MAX_SLOPE_MISMATCH = 0.05;
+
+    /**
+     * Largest difference in seconds per degree between the ray parameters of neighbouring rows
+     * for them to be interpolated in depth.
+     */
+    private static final double MAX_RAY_PARAMETER_CHANGE = 0.2;
+
+    /**
+     * Distance spacing in degrees.
+     */
+    private final double step;
+    private final int maxColumn;
+
+    /**
+     * Travel times and ray parameters in seconds per degree by distance, interleaved, of each
+     * calculated row by depth index. NaN where there is no P arrival.
+     */
+    private final Map<Integer, double[]> rows = new ConcurrentHashMap<>();
+
+    PArrivalTable(double step) {
+      this.step = step;
+      this.maxColumn = (int) Math.ceil(180.0 / step);
+    }
+
+    /**
+     * Interpolates the first P arrival.
+     *
+     * @param depth the source depth in km
+     * @param greatCircleArc the distance in degrees
+     * @return the travel time in seconds, or NaN if it has to be calculated
+     * @throws TauModelException if a row can't be calculated
+     */
+    double interpolate(double depth, double greatCircleArc) throws TauModelException {
+      double column = Math.min(Math.max(greatCircleArc / step, 0.0), maxColumn);
+      double row = Math.max(depth / TABLE_DEPTH_STEP, 0.0);
+      int column0 = Math.min((int) column, maxColumn - 1);
+      int row0 = (int) row;
+      double columnFraction = column - column0;
+      double rowFraction = row - row0;
+
+      double[] upper = getRow(row0);
+      double[] lower = getRow(row0 + 1);
+      // Rows on different branches, where a triplication moves with depth
+      if (!(Math.abs(upper[2 * column0 + 1] - lower[2 * column0 + 1]) <= MAX_RAY_PARAMETER_CHANGE
+          && Math.abs(upper[2 * column0 + 3] - lower[2 * column0 + 3])
+          <= MAX_RAY_PARAMETER_CHANGE)) {
+        return Double.NaN;
+      }
+      double upperTime = interpolate(upper, column0, columnFraction);
+      double lowerTime = interpolate(lower, column0, columnFraction);
+      return upperTime + rowFraction * (lowerTime - upperTime);
+    }
+
+    private double interpolate(double[] row, int column, double fraction) {
+      double time0 = row[2 * column];
+      double slope0 = row[2 * column + 1] * step;
+      double time1 = row[2 * column + 2];
+      double slope1 = row[2 * column + 3] * step;
+      // Also NaN if either end has no P arrival
+      if (!(Math.abs(time1 - time0 - 0.5 * (slope0 + slope1)) <= MAX_SLOPE_MISMATCH)) {
+        return Double.NaN;
+      }
+      double fraction2 = fraction * fraction;
+      double fraction3 = fraction2 * fraction;
+      return (2 * fraction3 - 3 * fraction2 + 1) * time0
+          + (fraction3 - 2 * fraction2 + fraction) * slope0
+          + (-2 * fraction3 + 3 * fraction2) * time1
+          + (fraction3 - fraction2) * slope1;
+    }
+
+    private double[] getRow(int row) throws TauModelException {
+      double[] times = rows.get(row);
+      if (times == null) {
+        times = new double[2 * (maxColumn + 1)];
+        double depth = row * TABLE_DEPTH_STEP;
+        for (int column = 0; column <= maxColumn; column++) {
+          List<Arrival> pArrivals = calculate("P", depth, Math.min(column * step, 180.0));
+          if (pArrivals.size() > 0 && pArrivals.get(0).getName().equals("P")) {
+            times[2 * column] = pArrivals.get(0).getTime();
+            times[2 * column + 1] = pArrivals.get(0).getRayParamDeg();
+          } else {
+            times[2 * column] = Double.NaN;
+            times[2 * column + 1] = Double.NaN;
+          }
+        }
+        logger.debug("Calculated P arrival table row for depth {} km", depth);
+        rows.put(row, times);
+      }
+      return times;
+    }
+  }
+
+  /**
+   * An event, station and phases. Locations are compared too, so events sharing an ID or stations
+   * moved between epochs aren't given each other's arrivals.
+   */
+  private static final class ArrivalKey {
+
+    private final String eventID;
+    private final double eventLatitude;
+    private final double eventLongitude;
+    private final double eventDepth;
+    private final String network;
+    private final String station;
+    private final double latitude;
+    private final double longitude;
+    private final String phases;
+
+    ArrivalKey(EventCMT eventCMT, StationMeta stationMeta, String phases) {
+      this.eventID = eventCMT.getEventID();
+      this.eventLatitude = eventCMT.getLatitude();
+      this.eventLongitude = eventCMT.getLongitude();
+      this.eventDepth = eventCMT.getDepth();
+      this.network = stationMeta.getNetwork();
+      this.station = stationMeta.getStation();
+      this.latitude = stationMeta.getLatitude();
+      this.longitude = stationMeta.getLongitude();
+      this.phases = phases;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(eventID, network, station, phases);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ArrivalKey)) {
+        return false;
+      }
+      ArrivalKey other = (ArrivalKey) obj;
+      return Objects.equals(eventID, other.eventID) && eventLatitude == other.eventLatitude
+          && eventLongitude == other.eventLongitude && eventDepth == other.eventDepth
+          && Objects.equals(network, other.network) && Objects.equals(station, other.station)
+          && latitude == other.latitude && longitude == other.longitude
+          && phases.equals(other.phases);
+    }
+  }
+}
@@ -1,11 +1,8 @@
 package asl.seedscan.event;
 
 import asl.metadata.meta_new.StationMeta;
-import edu.sc.seis.TauP.Arrival;
 import edu.sc.seis.TauP.SphericalCoords;
 import edu.sc.seis.TauP.TauModelException;
-import edu.sc.seis.TauP.TauP_Time;
-import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,29 +15,20 @@ public class ArrivalTimeUtils {
     // we include the logger so we can figure out which metric is throwing up the error
     double eventLatitude = eventCMT.getLatitude();
     double eventLongitude = eventCMT.getLongitude();
-    double eventDepth = eventCMT.getDepth();
     double stationLatitude = stationMeta.getLatitude();
     double stationLongitude = stationMeta.getLongitude();
     double greatCircleArc = SphericalCoords
         .distance(eventLatitude, eventLongitude, stationLatitude, stationLongitude);
-    TauP_Time timeTool;
+    double arrivalTimeP;
     try {
-      timeTool = new TauP_Time("prem");
-      timeTool.parsePhaseList("P");
-      timeTool.setSourceDepth(eventDepth);
-      timeTool.calculate(greatCircleArc);
+      arrivalTimeP = ArrivalTimeService.getInstance().getPArrivalTime(eventCMT, stationMeta);
     } catch (TauModelException e) {
       //Arrival times are not determinable.
       logger.error("{} -- called by metric {}", e.getMessage(), callingMetric);
       throw new ArrivalTimeException(e.getMessage());
     }
 
-    List<Arrival> arrivals = timeTool.getArrivals();
-
-    double arrivalTimeP;
-    if (arrivals.size() > 0 && arrivals.get(0).getName().equals("P")) {
-      arrivalTimeP = arrivals.get(0).getTime();
-    } else {
+    if (Double.isNaN(arrivalTimeP)) {
       logger.info("Got an arrival, but it was not a P-wave, called by metric {}", callingMetric);
       throw new ArrivalTimeException("Arrival time found was not a P-wave");
     }
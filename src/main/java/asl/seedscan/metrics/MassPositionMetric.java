@@ -13,6 +13,7 @@ import asl.metadata.meta_new.ChannelMeta;
 import asl.metadata.meta_new.PolynomialStage;
 import asl.metadata.meta_new.ResponseStage;
 import asl.seedsplitter.DataSet;
+import asl.seedsplitter.SeriesView;
 
 /**
  * The Class MassPositionMetric.
@@ -97,9 +98,9 @@ public class MassPositionMetric extends Metric {
 		int ndata = 0;
 
 		for (DataSet dataset : datasets) {
-			int[] intArray = dataset.getSeries();
-			for (int i : intArray) {
-				massPosition += Math.pow((a0 + i * a1), 2);
+			SeriesView series = dataset.getView();
+			for (int i = 0; i < series.getLength(); i++) {
+				massPosition += Math.pow((a0 + series.get(i) * a1), 2);
 			}
 			ndata += dataset.getLength();
 		} // end for each dataset
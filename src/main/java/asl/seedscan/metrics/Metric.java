@@ -13,8 +13,10 @@ import asl.metadata.meta_new.ChannelMetaException;
 import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.database.MetricValueIdentifier;
 import asl.seedscan.event.EventCMT;
+import asl.seedscan.monitor.ScanMetrics;
 import asl.timeseries.CrossPower;
 import asl.timeseries.CrossPowerKey;
+import asl.util.KeyedFutures;
 import sac.SacTimeSeries;
 
 /**
@@ -32,8 +34,8 @@ public abstract class Metric {
 	/** The arguments. */
 	private Hashtable<String, String> arguments;
 	
-	/** The cross power map. */
-	private Hashtable<CrossPowerKey, CrossPower> crossPowerMap;
+	/** The cross power map, shared by the metrics of a station day. */
+	private KeyedFutures<CrossPowerKey, CrossPower> crossPowerMap;
 
 	/** Determines if metric will be forced to recompute and update the database.*/
 	private boolean forceUpdate = false;
@@ -67,7 +69,7 @@ public abstract class Metric {
 	 */
 	public Metric() {
 		arguments = new Hashtable<>();
-		crossPowerMap = new Hashtable<>();
+		crossPowerMap = new KeyedFutures<>();
 
 		// MTH: 03-18-13: Added to allow these optional arguments to each
 		// cfg:metric in config.xml
@@ -150,17 +152,18 @@ public abstract class Metric {
 	 *
 	 * @return the cross power map
 	 */
-	public Hashtable<CrossPowerKey, CrossPower> getCrossPowerMap() {
+	public KeyedFutures<CrossPowerKey, CrossPower> getCrossPowerMap() {
 		return crossPowerMap;
 	}
 
 	/**
-	 * Sets the cross power map.
+	 * Sets the cross power map. Metrics of the same station day running at
+	 * the same time may share one map, each CrossPower is then computed once.
 	 *
 	 * @param crossPowerMap the cross power map
 	 */
 	public void setCrossPowerMap(
-			Hashtable<CrossPowerKey, CrossPower> crossPowerMap) {
+			KeyedFutures<CrossPowerKey, CrossPower> crossPowerMap) {
 		this.crossPowerMap = crossPowerMap;
 	}
 
@@ -174,19 +177,16 @@ public abstract class Metric {
 	 */
 	protected CrossPower getCrossPower(Channel channelA, Channel channelB) throws MetricException {
 		CrossPowerKey key = new CrossPowerKey(channelA, channelB);
-		CrossPower crossPower = null;
-
-		if (crossPowerMap.containsKey(key)) {
-			crossPower = crossPowerMap.get(key);
-		} else {
+		return crossPowerMap.get(key, () -> {
+			long start = System.nanoTime();
 			try {
-				crossPower = new CrossPower(channelA, channelB, metricData);
-				crossPowerMap.put(key, crossPower);
+				return new CrossPower(channelA, channelB, metricData);
 			} catch (MetricPSDException | ChannelMetaException e) {
 				throw new MetricException("Unable to create CrossPower", e);
+			} finally {
+				ScanMetrics.getInstance().stage(ScanMetrics.STAGE_PSD).recordSince(start);
 			}
-		}
-		return crossPower;
+		});
 	}
 
 	/**
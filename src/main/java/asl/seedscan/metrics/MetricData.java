@@ -4,7 +4,6 @@ import static asl.utils.FFTResult.cosineTaper;
 import static asl.utils.FFTResult.singleSidedFFT;
 import static asl.utils.NumericUtils.demeanInPlace;
 import static asl.utils.NumericUtils.detrend;
-import static asl.utils.TimeSeriesUtils.concatAll;
 
 import asl.metadata.Channel;
 import asl.metadata.ChannelArray;
@@ -17,11 +16,14 @@ import asl.metadata.meta_new.StationMeta;
 import asl.security.MemberDigest;
 import asl.seedscan.database.MetricDatabase;
 import asl.seedscan.database.MetricValueIdentifier;
+import asl.seedscan.monitor.ScanMetrics;
+import asl.seedscan.monitor.StationDayTrace;
 import asl.seedsplitter.BlockLocator;
 import asl.seedsplitter.ContiguousBlock;
 import asl.seedsplitter.DataSet;
 import asl.seedsplitter.IllegalSampleRateException;
 import asl.seedsplitter.SequenceRangeException;
+import asl.seedsplitter.SeriesView;
 import asl.timeseries.PreprocessingUtils;
 import asl.timeseries.TimeseriesException;
 import asl.util.Logging;
@@ -33,11 +35,12 @@ import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.DoubleStream;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.math3.complex.Complex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,6 +88,11 @@ public class MetricData implements Serializable {
    */
   private transient MetricDatabase metricReader;
 
+  /**
+   * How the data was decoded, null if not known.
+   */
+  private transient StationDayTrace.Decode decode;
+
   /**
    * Used exclusively in unit testing to plugin a reader after importing data from file
    *
@@ -105,11 +113,123 @@ public class MetricData implements Serializable {
   private transient MetricData previousMetricData;
 
   /**
-   * Gets the next metric data.
+   * Shared cache of loaded days, used to find the neighbouring days when they were not attached.
+   */
+  private transient MetricDataCache dataCache;
+
+  /**
+   * Digests of the channel arrays requested by metrics, keyed by their channels. The digests of the
+   * datasets are frozen once they are split, so these only change when rotated channels are added.
+   */
+  private transient HashMap<List<Channel>, ByteBuffer> hashes;
+
+  /**
+   * Keys of the data, quality and calibration tables by channel. Built on first use, since a
+   * deserialized MetricData doesn't run its constructor.
+   */
+  private transient volatile ChannelIndex channelIndex;
+
+  /**
+   * Index of the table keys, which look like "IU_ANMO 00-BHZ (20.0 Hz)", by their channel. When a
+   * channel is in a table under several sample rates, the first key of the table is kept as the
+   * scan of the keys found it.
+   */
+  private static final class ChannelIndex {
+
+    private final Map<Channel, String> dataKeys = new ConcurrentHashMap<>();
+    private final Set<String> dataNames = ConcurrentHashMap.newKeySet();
+    private final Map<Channel, String> qualityKeys = new HashMap<>();
+    private final Map<Channel, String> calKeys = new HashMap<>();
+
+    private ChannelIndex(Map<String, ?> data, Map<String, ?> qualityData,
+        Map<String, ?> randomCal) {
+      if (data != null) {
+        // Rotated channels may be added by another metric while this one looks
+        synchronized (data) {
+          for (String key : data.keySet()) {
+            addData(key);
+          }
+        }
+      }
+      index(qualityData, qualityKeys);
+      index(randomCal, calKeys);
+    }
+
+    private static void index(Map<String, ?> table, Map<Channel, String> keys) {
+      if (table == null) {
+        return;
+      }
+      for (String key : table.keySet()) {
+        Channel channel = channelOf(key);
+        if (channel != null) {
+          keys.putIfAbsent(channel, key);
+        }
+      }
+    }
+
+    /**
+     * Parses the channel from a table key.
+     *
+     * @param key key like "IU_ANMO 00-BHZ (20.0 Hz)"
+     * @return the channel, 00-BHZ, or null if the key has no channel
+     */
+    private static Channel channelOf(String key) {
+      int start = key.indexOf(' ') + 1;
+      int end = key.indexOf(" (", start);
+      if (end < 0) {
+        end = key.length();
+      }
+      // Locations may be "--", channel names have no dash
+      int dash = key.lastIndexOf('-', end - 1);
+      if (dash < start || dash == end - 1) {
+        logger.warn("Unable to find the channel of data key [{}]", key);
+        return null;
+      }
+      return new Channel(key.substring(start, dash), key.substring(dash + 1, end));
+    }
+
+    private void addData(String key) {
+      Channel channel = channelOf(key);
+      if (channel != null) {
+        dataKeys.putIfAbsent(channel, key);
+        dataNames.add(channel.getChannel());
+      }
+    }
+  }
+
+  /**
+   * Gets the channel index, building it if this MetricData was deserialized.
+   *
+   * @return the channel index
+   */
+  private ChannelIndex getChannelIndex() {
+    ChannelIndex index = channelIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = channelIndex;
+        if (index == null) {
+          index = new ChannelIndex(data, qualityData, randomCal);
+          channelIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Gets the next metric data. If none was attached, a copy of the next day is taken from the data
+   * cache when it is already loaded there, and kept attached.
    *
    * @return the next metric data
    */
   public MetricData getNextMetricData() {
+    if (nextMetricData == null) {
+      synchronized (this) {
+        if (nextMetricData == null) {
+          nextMetricData = getCachedDay(1);
+        }
+      }
+    }
     return nextMetricData;
   }
 
@@ -121,10 +241,137 @@ public class MetricData implements Serializable {
   }
 
 
+  /**
+   * Gets the previous day's metric data. If none was attached, a copy of the previous day is taken
+   * from the data cache when it is already loaded there, and kept attached.
+   *
+   * @return the previous metric data
+   */
   public MetricData getPreviousMetricData() {
+    if (previousMetricData == null) {
+      synchronized (this) {
+        if (previousMetricData == null) {
+          previousMetricData = getCachedDay(-1);
+        }
+      }
+    }
     return previousMetricData;
   }
 
+  /**
+   * Set the cache used to look up neighbouring days.
+   *
+   * @param dataCache the shared cache of loaded days, may be null
+   */
+  public void setDataCache(MetricDataCache dataCache) {
+    this.dataCache = dataCache;
+  }
+
+  /**
+   * Look up a day relative to this one in the data cache. Only a day loaded with the same metadata
+   * snapshot is used.
+   *
+   * @param offset number of days from this day
+   * @return a copy of the cached day or null if it is not loaded
+   */
+  private MetricData getCachedDay(int offset) {
+    if (dataCache == null || metadata == null || metadata.getTimestamp() == null) {
+      return null;
+    }
+    MetricData cached = dataCache.peek(new Station(metadata.getNetwork(), metadata.getStation()),
+        metadata.getTimestamp().toLocalDate().plusDays(offset), metadata);
+    return (cached == null) ? null : cached.copy();
+  }
+
+  /**
+   * Make a private copy of this day for scanning, as days shared through the {@link
+   * MetricDataCache} must not be changed. The copy shares the decoded samples but has its own
+   * tables and metadata, so rotated channels are only added to it, and has no neighbouring days
+   * attached.
+   *
+   * @return the copy
+   */
+  public MetricData copy() {
+    MetricData copy = new MetricData(metricReader, data == null ? null : new Hashtable<>(data),
+        qualityData == null ? null : new Hashtable<>(qualityData),
+        metadata == null ? null : new StationMeta(metadata),
+        randomCal == null ? null : new Hashtable<>(randomCal));
+    copy.dataCache = dataCache;
+    copy.decode = decode;
+    return copy;
+  }
+
+  /**
+   * Detach the previous day, and this day from it, once this day has been scanned.
+   */
+  public synchronized void releasePreviousMetricData() {
+    if (previousMetricData != null) {
+      previousMetricData.setNextMetricDataToNull();
+      previousMetricData = null;
+    }
+  }
+
+  /**
+   * Rough estimate of the heap used by this day's data. Used to bound the {@link MetricDataCache}.
+   *
+   * @return the estimated size in bytes
+   */
+  public long getEstimatedSize() {
+    long size = 0;
+    if (data != null) {
+      for (ArrayList<DataSet> dataSets : data.values()) {
+        for (DataSet dataSet : dataSets) {
+          // Blocks of 4 byte samples plus the object headers
+          size += 4L * dataSet.getBlockCount() * dataSet.getBlockPool().getBlockSize() + 256;
+        }
+      }
+    }
+    if (qualityData != null) {
+      for (ArrayList<Integer> qualities : qualityData.values()) {
+        size += 16L * qualities.size() + 64;
+      }
+    }
+    if (randomCal != null) {
+      for (ArrayList<Blockette320> blockettes : randomCal.values()) {
+        size += 256L * blockettes.size() + 64;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Record how this day's data was decoded, for the traces of the days scanning it.
+   *
+   * @param decode how the data was decoded
+   */
+  public void setDecode(StationDayTrace.Decode decode) {
+    this.decode = decode;
+  }
+
+  /**
+   * Add how this day's data was decoded and its channels, segments and samples to a station day's
+   * trace.
+   *
+   * @param trace the trace of the day being scanned
+   */
+  public void addToTrace(StationDayTrace trace) {
+    int channels = 0;
+    int segments = 0;
+    long samples = 0;
+    double maxSampleRate = 0;
+    if (data != null) {
+      for (ArrayList<DataSet> dataSets : data.values()) {
+        channels++;
+        segments += dataSets.size();
+        for (DataSet dataSet : dataSets) {
+          samples += dataSet.getLength();
+          maxSampleRate = Math.max(maxSampleRate, dataSet.getSampleRate());
+        }
+      }
+    }
+    trace.setData(decode, channels, segments, samples, maxSampleRate);
+  }
+
   public void setPreviousMetricData(MetricData previousMetricData) {
     this.previousMetricData = previousMetricData;
   }
@@ -150,6 +397,7 @@ public class MetricData implements Serializable {
     this.qualityData = qualityData;
     this.randomCal = randomCal;
     this.metadata = metadata;
+    this.channelIndex = new ChannelIndex(data, qualityData, randomCal);
   }
 
   /**
@@ -234,28 +482,7 @@ public class MetricData implements Serializable {
    * @return true, if successful
    */
   boolean hasChannelData(Channel channel) {
-    return hasChannelData(channel.getLocation(), channel.getChannel());
-  }
-
-  /**
-   * Checks for channel data.
-   *
-   * @param location the location
-   * @param name the name
-   * @return true, if successful
-   */
-  private boolean hasChannelData(String location, String name) {
-    if (data == null) {
-      return false;
-    }
-    String locationName = location + "-" + name;
-    Set<String> keys = data.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return true;
-      }
-    }
-    return false;
+    return data != null && getChannelIndex().dataKeys.containsKey(channel);
   }
 
   /**
@@ -266,17 +493,7 @@ public class MetricData implements Serializable {
    * @return true, if successful
    */
   private boolean hasChannelData(String name) {
-    if (data == null) {
-      return false;
-    }
-    String locationName = "-" + name;
-    Set<String> keys = data.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return true;
-      }
-    }
-    return false;
+    return data != null && getChannelIndex().dataNames.contains(name);
   }
 
   /**
@@ -298,33 +515,18 @@ public class MetricData implements Serializable {
     }
   }
 
-  /**
-   * Gets the channel data.
-   *
-   * @param location the location
-   * @param name the name
-   * @return {@code ArrayList<DataSet>} = All DataSets for a given channel (e.g., "00-BHZ")
-   */
-  private ArrayList<DataSet> getChannelData(String location, String name) {
-    String locationName = location + "-" + name;
-    Set<String> keys = data.keySet();
-    for (String key : keys) {
-      // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return data.get(key);
-      }
-    }
-    return null;
-  }
-
   /**
    * Gets the channel data.
    *
    * @param channel the channel
-   * @return the channel data
+   * @return {@code ArrayList<DataSet>} = All DataSets for a given channel (e.g., "00-BHZ")
    */
   public ArrayList<DataSet> getChannelData(Channel channel) {
-    return getChannelData(channel.getLocation(), channel.getChannel());
+    if (data == null) {
+      return null;
+    }
+    String key = getChannelIndex().dataKeys.get(channel);
+    return (key == null) ? null : data.get(key);
   }
 
   /**
@@ -357,29 +559,15 @@ public class MetricData implements Serializable {
    * @return the channel cal data
    */
   ArrayList<Blockette320> getChannelCalData(Channel channel) {
-    return getChannelCalData(channel.getLocation(), channel.getChannel());
-  }
-
-  /**
-   * Gets the channel cal data.
-   *
-   * @param location the location
-   * @param name the name
-   * @return the channel cal data
-   */
-  private ArrayList<Blockette320> getChannelCalData(String location, String name) {
     if (!hasCalibrationData()) {
       return null; // randomCal was never created --> Probably not a
     }
     // calibration day
-    String locationName = location + "-" + name;
-    Set<String> keys = randomCal.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return randomCal.get(key);
-      }
+    if (randomCal == null) {
+      return null;
     }
-    return null;
+    String key = getChannelIndex().calKeys.get(channel);
+    return (key == null) ? null : randomCal.get(key);
   }
 
   /**
@@ -389,30 +577,13 @@ public class MetricData implements Serializable {
    * @return the channel timing quality data
    */
   ArrayList<Integer> getChannelTimingQualityData(Channel channel) {
-    return getChannelTimingQualityData(channel.getLocation(), channel.getChannel());
-  }
-
-  /**
-   * Gets the channel timing quality data.
-   *
-   * @param location the location
-   * @param name the name
-   * @return the channel timing quality data
-   */
-  private ArrayList<Integer> getChannelTimingQualityData(String location, String name) {
-    String locationName = location + "-" + name;
-    // there's a null check in the calling class but we still need to make sure the keySet
+    // there's a null check in the calling class but we still need to make sure the table
     // actually instantiated or else we'll break before that exception can be handled
     if (qualityData == null) {
       return null;
     }
-    Set<String> keys = qualityData.keySet();
-    for (String key : keys) { // key looks like "IU_ANMO 00-BHZ (20.0 Hz)"
-      if (key.contains(locationName)) {
-        return qualityData.get(key);
-      }
-    }
-    return null;
+    String key = getChannelIndex().qualityKeys.get(channel);
+    return (key == null) ? null : qualityData.get(key);
   }
 
   /**
@@ -571,7 +742,30 @@ public class MetricData implements Serializable {
         windowEndEpochMillis * 1000);
   }
 
+  /**
+   * Gets the windowed data.
+   *
+   * @param channel the channel
+   * @param windowStartEpoch the window start epoch microseconds
+   * @param windowEndEpoch the window end epoch microseconds
+   * @return the windowed data
+   */
   double[] getWindowedDataMicroSeconds(Channel channel, long windowStartEpoch, long windowEndEpoch) {
+    SeriesView view = getWindowedView(channel, windowStartEpoch, windowEndEpoch);
+    return (view == null) ? null : view.toArray();
+  }
+
+  /**
+   * Gets a view of the windowed data over the blocks of the channel's DataSets, including the
+   * previous and next days' DataSets if the window spans midnight. Nothing is copied until the
+   * view is read.
+   *
+   * @param channel the channel
+   * @param windowStartEpoch the window start epoch microseconds
+   * @param windowEndEpoch the window end epoch microseconds
+   * @return the view of the windowed data or null if the window isn't covered by data
+   */
+  SeriesView getWindowedView(Channel channel, long windowStartEpoch, long windowEndEpoch) {
     if (windowStartEpoch > windowEndEpoch) {
       logger.error("Requested window Epoch (ms timestamp) [{} - {}] is NOT VALID (start > end)",
           windowStartEpoch,
@@ -623,8 +817,7 @@ public class MetricData implements Serializable {
     if (wholeData != null){
       //Yes, return trimmed values or null if error occurs
       try {
-        return Arrays.stream(wholeData.getSeries(windowStartEpoch, windowEndEpoch))
-            .asDoubleStream().toArray();
+        return wholeData.getView(windowStartEpoch, windowEndEpoch);
       } catch (SequenceRangeException e) {
         logger.warn("Sequence Exception caught reading data for channel=[{}] date=[{}] "
             + "window (in epoch millis): {} msto {} ms", channel, metadata.getDate(),
@@ -661,18 +854,20 @@ public class MetricData implements Serializable {
     }
 
     //Merge parts together since it overlaps day boundaries
+    MetricData previousMetricData = getPreviousMetricData();
+    MetricData nextMetricData = getNextMetricData();
 
     //First do other days have data loaded?
     //HasChannelData ends up being checked twice once on the sub getWindowedData call and here.
     if(getPreviousDay &&
-        (this.previousMetricData == null
-            || !this.previousMetricData.hasChannelData(channel))){
+        (previousMetricData == null
+            || !previousMetricData.hasChannelData(channel))){
       logger.warn("Missing Previous day's data for channel=[{}] date=[{}] window "
           + "(in epoch millis): {} msto {} ms", channel, metadata.getDate(),
           windowStartEpoch, windowEndEpoch);
       return null;
     }
-    if(getNextDay && (this.nextMetricData == null || !this.nextMetricData.hasChannelData(channel))){
+    if(getNextDay && (nextMetricData == null || !nextMetricData.hasChannelData(channel))){
       logger.warn("Missing Next day's data for channel=[{}] date=[{}] window (in epoch millis): "
           + "{} msto {} ms", channel, metadata.getDate(), windowStartEpoch, windowEndEpoch);
       return null;
@@ -685,7 +880,7 @@ public class MetricData implements Serializable {
     //Data found, do sample rates match?
     //Grab interval while checking samplerates.
     if(getPreviousDay){
-      ArrayList<DataSet> prevDataSets = this.previousMetricData.getChannelData(channel);
+      ArrayList<DataSet> prevDataSets = previousMetricData.getChannelData(channel);
       //Compare last dataset of previous day to first dataset of today.
       //This compares doubles, but I don't see a clean way to refactor this to something else.
       //Pre-existing code did this same type of comparison.
@@ -699,7 +894,7 @@ public class MetricData implements Serializable {
       }
     }
     if(getNextDay){
-      ArrayList<DataSet> nextDataSets = this.nextMetricData.getChannelData(channel);
+      ArrayList<DataSet> nextDataSets = nextMetricData.getChannelData(channel);
       //Compare first set of next day to last set of today
       //Same double comparison concerns as above.
       sampleDelta = nextDataSets.get(0).getInterval();
@@ -732,53 +927,54 @@ public class MetricData implements Serializable {
     }
 
     //Load actual data
-    double[] todaysResults = this.getWindowedDataMicroSeconds(channel, currentDayStart, currentDayEnd);
+    SeriesView todaysResults = this.getWindowedView(channel, currentDayStart, currentDayEnd);
     if(todaysResults == null){
       logger.warn("Could not get data for current day for channel=[{}] date=[{}] window "
           + "(in epoch millis): {} msto {} ms", channel, metadata.getDate(),
           windowStartEpoch, windowEndEpoch);
       return null;
     }
-    DoubleStream results = Arrays.stream(todaysResults);
+    SeriesView.Builder results = new SeriesView.Builder();
 
     if(getPreviousDay){
-      double[] prevResults =
-          this.previousMetricData.getWindowedDataMicroSeconds(channel, prevDayStart, prevDayEnd);
+      SeriesView prevResults =
+          previousMetricData.getWindowedView(channel, prevDayStart, prevDayEnd);
       if(prevResults == null){
         logger.warn("Could not get data for previous day for channel=[{}] date=[{}] window "
             + "(in epoch millis): {} msto {} ms", channel, metadata.getDate(),
             windowStartEpoch, windowEndEpoch);
         return null;
       }
-      results = DoubleStream.concat(Arrays.stream(prevResults), results);
+      results.add(prevResults);
     }
+    results.add(todaysResults);
 
     if(getNextDay){
-      double[] nextResults =
-          this.nextMetricData.getWindowedDataMicroSeconds(channel, nextDayStart, nextDayEnd);
+      SeriesView nextResults =
+          nextMetricData.getWindowedView(channel, nextDayStart, nextDayEnd);
       if(nextResults == null){
         logger.warn("Could not get data for next day for channel=[{}] date=[{}] window "
             + "(in epoch millis): {} msto {} ms", channel, metadata.getDate(),
             windowStartEpoch, windowEndEpoch);
         return null;
       }
-      results = DoubleStream.concat(results, Arrays.stream(nextResults));
+      results.add(nextResults);
     }
 
-    return results.toArray();
+    return results.build();
   }
 
   /**
-   * Return segments representing contiguous regions of a full day (86400 sec) of data
-   * assembled from a channel's DataSets, with any gaps zero-padded.
+   * Return a view of a full day (86400 sec) of data assembled from a channel's DataSets, with any
+   * gaps zero-padded.
    *
    * @param channel the channel
    * @return the padded day data
    */
-  double[][] getPaddedDayData(Channel channel) {
+  SeriesView getPaddedDayView(Channel channel) {
     if (!hasChannelData(channel)) {
       logger.warn(String
-          .format("== getPaddedDayData(): We have NO data for channel=[%s] date=[%s]\n", channel,
+          .format("== getPaddedDayView(): We have NO data for channel=[%s] date=[%s]\n", channel,
               metadata.getDate()));
       return null;
     }
@@ -789,7 +985,7 @@ public class MetricData implements Serializable {
     long interval = datasets.get(0).getInterval(); // sample dt in microsecs
 
     int nPointsPerDay = (int) (86400000000L / interval);
-    List<double[]> segments = new ArrayList<>();
+    SeriesView.Builder segments = new SeriesView.Builder();
 
     long lastEndTime = dayStartTime;
     int totalPointCount = 0; // easy way to keep track of the number of points added to the list
@@ -801,27 +997,21 @@ public class MetricData implements Serializable {
       int npad = (int) ((startTime - lastEndTime) / interval) - 1;
       if (npad > 0) {
         totalPointCount += npad;
-        segments.add(new double[npad]);
-      }
-      // now convert the series to doubles and add it to the list of data
-      int[] series = dataset.getSeries();
-      double[] seriesAsDoubles = new double[series.length];
-      for (int j = 0; j < series.length; ++j) {
-        seriesAsDoubles[j] = (double) series[j];
+        segments.addGap(npad);
       }
-      segments.add(seriesAsDoubles);
-      totalPointCount += series.length;
+      // now add the series to the data
+      segments.add(dataset);
+      totalPointCount += dataset.getLength();
       // now the current time will be used to account for gap between this and next dataset start
       lastEndTime = endTime;
     }
 
     // in event the last segment doesn't reach the end of the day length, pad out until data does
     if (totalPointCount < nPointsPerDay) {
-      double[] lastGapFiller = new double[nPointsPerDay - totalPointCount];
-      segments.add(lastGapFiller);
+      segments.addGap(nPointsPerDay - totalPointCount);
     }
 
-    return segments.toArray(new double[][]{});
+    return segments.build();
   }
 
   /**
@@ -835,14 +1025,14 @@ public class MetricData implements Serializable {
   public double[] getDetrendedPaddedDayData(Channel channel) {
     if (!hasChannelData(channel)) {
       logger.warn(String
-          .format("== getPaddedDayData(): We have NO data for channel=[%s] date=[%s]\n", channel,
+          .format("== getPaddedDayView(): We have NO data for channel=[%s] date=[%s]\n", channel,
               metadata.getDate()));
       return null;
     }
-    double[][] segments = getPaddedDayData(channel);
+    SeriesView segments = getPaddedDayView(channel);
 
-    // now concatenate the segments and detrend the whole thing
-    double[] toDetrend = concatAll(segments);
+    // now copy the segments and detrend the whole thing
+    double[] toDetrend = segments.toArray();
     return detrend(toDetrend);
   }
 
@@ -861,8 +1051,6 @@ public class MetricData implements Serializable {
   private synchronized void createRotatedChannelData(String location, String channelPrefix)
       throws MetricException {
     try {
-      boolean use12 = true; // Use ?H1,?H2 to rotate, else use ?HN,?HE
-
       // Raw horizontal channels used for rotation
       Channel channel1 = new Channel(location, String.format("%s1", channelPrefix));
       Channel channel2 = new Channel(location, String.format("%s2", channelPrefix));
@@ -871,7 +1059,6 @@ public class MetricData implements Serializable {
       if (!hasChannelData(channel1) || !hasChannelData(channel2)) {
         channel1.setChannel(String.format("%sN", channelPrefix));
         channel2.setChannel(String.format("%sE", channelPrefix));
-        use12 = false;
 
         // If we still can't find 2 horizontals to rotate then give up
         if (!hasChannelData(channel1) || !hasChannelData(channel2)) {
@@ -942,32 +1129,17 @@ public class MetricData implements Serializable {
 
       // Make new channelData keys based on existing ones
 
-      String northKey = null;
-      String eastKey = null;
-
       // keys look like "IU_ANMO 00-BH1 (20.0 Hz)"
       // or "IU_ANMO 10-BH1 (20.0 Hz)"
-      String lookupString;
-      if (use12) {
-        lookupString = location + "-" + channelPrefix + "1"; // e.g.,
-        // "10-BH1"
-      } else {
-        lookupString = location + "-" + channelPrefix + "N"; // e.g.,
-        // "10-BHN"
-      }
+      // channel1 is e.g. "10-BH1" or "10-BHN"
+      String lookupString = channel1.toString();
+      String northString = channelN.toString(); // e.g., "10-BHND"
+      String eastString = channelE.toString(); // e.g., "10-BHED"
 
-      String northString = location + "-" + channelPrefix + "ND"; // e.g.,
-      // "10-BHND"
-      String eastString = location + "-" + channelPrefix + "ED"; // e.g.,
-      // "10-BHED"
-
-      Set<String> keys = data.keySet();
-      for (String key : keys) {
-        if (key.contains(lookupString)) { // "LH1" --> "LHND" and "LHED"
-          northKey = key.replaceAll(lookupString, northString);
-          eastKey = key.replaceAll(lookupString, eastString);
-        }
-      }
+      ChannelIndex index = getChannelIndex();
+      String key = index.dataKeys.get(channel1);
+      String northKey = key.replace(lookupString, northString);
+      String eastKey = key.replace(lookupString, eastString);
 
       DataSet ch1Temp = getChannelData(channel1).get(0);
       String network = ch1Temp.getNetwork();
@@ -992,6 +1164,7 @@ public class MetricData implements Serializable {
       ArrayList<DataSet> dataList = new ArrayList<>();
       dataList.add(northDataSet);
       data.put(northKey, dataList);
+      index.addData(northKey);
 
       DataSet eastDataSet = new DataSet();
       eastDataSet.setNetwork(network);
@@ -1010,6 +1183,8 @@ public class MetricData implements Serializable {
       dataList = new ArrayList<>();
       dataList.add(eastDataSet);
       data.put(eastKey, dataList);
+      index.addData(eastKey);
+      hashes = null;
     } catch (TimeseriesException | ChannelException | IllegalSampleRateException e) {
       throw new MetricException("Data rotation failed", e);
     }
@@ -1220,6 +1395,7 @@ public class MetricData implements Serializable {
                     + "forceUpdate=[true] so compute the metric anyway.",
                 metricName, strdate);
           } else {
+            ScanMetrics.getInstance().increment(ScanMetrics.Count.DIGEST_SKIPS);
             newDigest = null;
           }
         } else if (!hasChannelArrayData(channelArray) && !forceUpdate) {
@@ -1243,12 +1419,34 @@ public class MetricData implements Serializable {
   }
 
   /**
-   * Gets the hash.
+   * Gets the hash. The hash of each channel array is computed once and reused by the other metrics.
    *
    * @param channelArray the channel array
    * @return the hash
    */
   private synchronized ByteBuffer getHash(ChannelArray channelArray) {
+    List<Channel> key = new ArrayList<>(channelArray.getChannels());
+    if (hashes == null) {
+      hashes = new HashMap<>();
+    }
+    ByteBuffer hash = hashes.get(key);
+    if (hash == null) {
+      hash = computeHash(channelArray);
+      if (hash == null) {
+        return null;
+      }
+      hashes.put(key, hash);
+    }
+    return hash.duplicate();
+  }
+
+  /**
+   * Combines the digests of the metadata and data of each channel in the channel array.
+   *
+   * @param channelArray the channel array
+   * @return the hash
+   */
+  private ByteBuffer computeHash(ChannelArray channelArray) {
     ArrayList<ByteBuffer> digests = new ArrayList<>();
 
     List<Channel> channels = channelArray.getChannels();
@@ -1312,6 +1510,7 @@ public class MetricData implements Serializable {
       // need to repeat it
       if (!metadata.hasChannel(channel)) {
         metadata.addRotatedChannelMeta(channel.getLocation(), channelPrefix);
+        hashes = null;
       }
       // MTH: Only try to add rotated channel data if we were successful
       // in adding the rotated channel
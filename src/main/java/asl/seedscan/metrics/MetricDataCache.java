@@ -0,0 +1,243 @@
+package asl.seedscan.metrics;
+
+import asl.metadata.Blockette;
+import asl.metadata.Station;
+import asl.metadata.meta_new.StationMeta;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps recently loaded station days in memory so that the next day's scan, the previous day
+ * reload for events near midnight and cross day windows in {@link MetricData} reuse them instead of
+ * decoding the same day again.
+ *
+ * Days are keyed by station, date and the metadata snapshot they were loaded with, and each is tied
+ * to a source key describing the files it was loaded from, so a day whose files or metadata changed
+ * is loaded again. The cache is bounded by the estimated heap size of its days and evicts the least
+ * recently used ones first. Concurrent requests for a day that is still loading wait for that load
+ * rather than starting their own.
+ *
+ * The cached days are shared, so they must never be linked to other days or changed. Callers scan
+ * a {@link MetricData#copy()} of them.
+ */
+public class MetricDataCache {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.metrics.MetricDataCache.class);
+
+  private static class Key {
+
+    private final Station station;
+    private final LocalDate date;
+    /**
+     * The station blockette of the metadata, compared by identity. Null without metadata.
+     */
+    private final Blockette snapshot;
+
+    private Key(Station station, LocalDate date, StationMeta metadata) {
+      this.station = station;
+      this.date = date;
+      this.snapshot = (metadata == null) ? null : metadata.getStationBlockette();
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * station.hashCode() + date.hashCode()) + System.identityHashCode(snapshot);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return station.equals(other.station) && date.equals(other.date)
+          && snapshot == other.snapshot;
+    }
+  }
+
+  private static class Entry {
+
+    private final String sourceKey;
+    private final FutureTask<MetricData> task;
+    private long size = 0;
+
+    private Entry(String sourceKey, Supplier<MetricData> loader) {
+      this.sourceKey = sourceKey;
+      this.task = new FutureTask<>(loader::get);
+    }
+  }
+
+  private final long maxBytes;
+
+  /**
+   * Days in least recently used order. Guarded by this.
+   */
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long size = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  /**
+   * @param maxBytes the maximum estimated heap size of the cached days
+   */
+  public MetricDataCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns a station day, loading it if it is not cached or was loaded from different files.
+   *
+   * @param station the station
+   * @param date the day
+   * @param metadata the metadata the day is loaded with
+   * @param sourceKey describes the files the day is loaded from
+   * @param loader loads the day, may return null if there is no data
+   * @return the shared day's data or null if the loader returned null
+   */
+  public MetricData get(Station station, LocalDate date, StationMeta metadata, String sourceKey,
+      Supplier<MetricData> loader) {
+    Key key = new Key(station, date, metadata);
+    Entry entry;
+    boolean load = false;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry != null && entry.sourceKey.equals(sourceKey)) {
+        hits++;
+      } else {
+        if (entry != null) {
+          size -= entry.size;
+        }
+        entry = new Entry(sourceKey, loader);
+        entries.put(key, entry);
+        misses++;
+        load = true;
+      }
+    }
+
+    if (load) {
+      entry.task.run();
+    }
+
+    MetricData data;
+    try {
+      data = entry.task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      remove(key, entry);
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+
+    if (load) {
+      synchronized (this) {
+        if (data == null) {
+          // Days without data are not kept
+          remove(key, entry);
+        } else if (entries.get(key) == entry) {
+          entry.size = data.getEstimatedSize();
+          size += entry.size;
+          evict();
+        }
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Returns a station day only if it is already loaded. This is not counted as a lookup.
+   *
+   * @param station the station
+   * @param date the day
+   * @param metadata the metadata the day was loaded with
+   * @return the shared day's data or null if it is not cached or still loading
+   */
+  public synchronized MetricData peek(Station station, LocalDate date, StationMeta metadata) {
+    Entry entry = entries.get(new Key(station, date, metadata));
+    if (entry == null || !entry.task.isDone()) {
+      return null;
+    }
+    try {
+      return entry.task.get();
+    } catch (InterruptedException | ExecutionException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Removes an entry if it is still the cached one for its key.
+   */
+  private synchronized void remove(Key key, Entry entry) {
+    if (entries.get(key) == entry) {
+      entries.remove(key);
+      size -= entry.size;
+    }
+  }
+
+  /**
+   * Removes the least recently used days until the cache fits. Days that are still loading are
+   * skipped. Must hold the lock.
+   */
+  private void evict() {
+    Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+    while (size > maxBytes && iterator.hasNext()) {
+      Map.Entry<Key, Entry> next = iterator.next();
+      Entry entry = next.getValue();
+      if (!entry.task.isDone()) {
+        continue;
+      }
+      iterator.remove();
+      size -= entry.size;
+      evictions++;
+      logger.debug("Evicted {} {} from the MetricData cache", next.getKey().station,
+          next.getKey().date);
+    }
+  }
+
+  /**
+   * @return the number of lookups that found a loaded or loading day
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of lookups that had to load a day
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return the number of days removed to keep the cache within its size
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * @return the estimated heap size of the cached days in bytes
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the number of cached days, including ones still loading
+   */
+  public synchronized int getCount() {
+    return entries.size();
+  }
+}
@@ -13,6 +13,7 @@ import asl.metadata.meta_new.ChannelMeta;
 import asl.metadata.meta_new.ResponseStage;
 import asl.metadata.meta_new.PolynomialStage;
 import asl.seedsplitter.DataSet;
+import asl.seedsplitter.SeriesView;
 
 /**
  * Pressure metric for atmospheric sensors -- computes RMS value of the sensor.
@@ -159,8 +160,9 @@ public class PressureMetric extends Metric {
         int pointCount = 0;
 
         for (DataSet dataset : datasets) {
-            int[] intArray = dataset.getSeries();
-            for (int dataPoint : intArray) {
+            SeriesView series = dataset.getView();
+            for (int i = 0; i < series.getLength(); i++) {
+                double dataPoint = series.get(i);
                 double polynomialAccumulator = 0.; // a0 + a1 * x + a2 * x^2, etc.
                 // we expect there to be only a0 and a1 but won't enforce this as a constraint
                 for (int k = 0; k < coefficients.length; ++k) {
@@ -1,11 +1,9 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
-import asl.metadata.ChannelKey;
 import asl.metadata.meta_new.ChannelMetaException;
 import asl.seedscan.metrics.PulseDetectionMetric.PulseDetectionData.PulseDetectionPoint;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -88,14 +86,8 @@ public class PulseDetectionCountMetric extends PulseDetectionMetric {
     } catch (NoSuchFieldException | NumberFormatException ignored) {
     }
 
-    if (pulseDetectionResultMap == null) {
-      pulseDetectionResultMap = new HashMap<>();
-    }
-
     // iterate over channels but ignore triggered and derived channels
     for (Channel channel : stationMeta.getChannelArray(preSplitBands, true, true)) {
-      ChannelKey key = new ChannelKey(channel);
-
         ByteBuffer digest = metricData.valueDigestChanged(channel, createIdentifier(channel),
                 getForceUpdate());
         if (digest == null) {
@@ -104,17 +96,15 @@ public class PulseDetectionCountMetric extends PulseDetectionMetric {
             continue;
         }
 
-      // only calculate a new result if the map is currently unpopulated
-      if (!pulseDetectionResultMap.containsKey(key)) {
-        try {
-          pulseDetectionResultMap.put(key, calculatePulseResults(channel));
-        } catch (ChannelMetaException e) {
-          logger.error("Could not get metadata for channel [{}-{}]", getStation(), channel, e);
-          continue;
-        }
+      // only calculate a new result if no other metric has
+      PulseDetectionData result;
+      try {
+        result = getPulseResults(channel);
+      } catch (ChannelMetaException e) {
+        logger.error("Could not get metadata for channel [{}-{}]", getStation(), channel, e);
+        continue;
       }
 
-      PulseDetectionData result = pulseDetectionResultMap.get(key);
       logger.info("Number of non-contiguous potentially valid points: {}",
           result.correlationsWithAmplitude.size());
       int count = 0;
@@ -3,7 +3,6 @@ package asl.seedscan.metrics;
 import static asl.utils.NumericUtils.demeanInPlace;
 import static asl.utils.NumericUtils.detrend;
 import static asl.utils.NumericUtils.detrendEnds;
-import static asl.utils.NumericUtils.getMean;
 import static java.lang.Math.PI;
 import static java.util.Collections.sort;
 
@@ -12,6 +11,8 @@ import asl.metadata.ChannelKey;
 import asl.metadata.meta_new.ChannelMeta;
 import asl.metadata.meta_new.ChannelMeta.ResponseUnits;
 import asl.metadata.meta_new.ChannelMetaException;
+import asl.timeseries.FFTPlan;
+import asl.util.KeyedFutures;
 import asl.utils.FFTResult;
 import asl.utils.FilterUtils;
 import java.time.Instant;
@@ -22,7 +23,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import org.apache.commons.math3.complex.Complex;
 import org.slf4j.Logger;
@@ -65,27 +65,41 @@ public abstract class PulseDetectionMetric extends Metric {
    * Map from ChannelKeys to the pulse detection data, a list of lists of paired
    * correlations with their associated amplitudes.
    */
-  protected Map<ChannelKey, PulseDetectionData> pulseDetectionResultMap;
+  protected KeyedFutures<ChannelKey, PulseDetectionData> pulseDetectionResultMap =
+      new KeyedFutures<>();
 
   /**
    * Method to pass the pulse detection data from one implementing metric to another
    * @return Pulse Detection Data, a list of lists of amplitude-correlation pairs, see
    * {@link PulseDetectionData}
    */
-  public Map<ChannelKey, PulseDetectionData> getPulseDetectionData() {
+  public KeyedFutures<ChannelKey, PulseDetectionData> getPulseDetectionData() {
     return pulseDetectionResultMap;
   }
 
   /**
    * Method to pass in pulse detection data from a metric that has already calculated results for
    * a station. If the implementing metric runs over a channel not in the key set, then it will
-   * create a new result for that channel and add it to the map.
+   * create a new result for that channel and add it to the map. Metrics running at the same time
+   * may share one map, each channel's result is then calculated once.
    * @param cached Map of ChannelKeys to PulseDetectionData, see {@link PulseDetectionData}
    */
-  public void setPulseDetectionData(Map<ChannelKey, PulseDetectionData> cached) {
+  public void setPulseDetectionData(KeyedFutures<ChannelKey, PulseDetectionData> cached) {
     pulseDetectionResultMap = cached;
   }
 
+  /**
+   * Get the pulse detection results for a channel, calculating them only if no other metric
+   * sharing the map has.
+   *
+   * @param channel Channel to get the results for
+   * @return List of lists of amplitude-correlation pairs {@link PulseDetectionData}
+   * @throws ChannelMetaException if the channel's response could not be read
+   */
+  PulseDetectionData getPulseResults(Channel channel) throws ChannelMetaException {
+    return pulseDetectionResultMap.get(new ChannelKey(channel), () -> calculatePulseResults(channel));
+  }
+
   /**
    * Calculate the pulse detection metric for a given channel according to the procedure stated
    * in the prior documentation.
@@ -275,34 +289,127 @@ public abstract class PulseDetectionMetric extends Metric {
     for (int i = 0; i < stepFunctionProcessed.length; ++i) {
       stepFunctionProcessed[i] /= summedSquares;
     }
+    double scalDenom = 0;
+    for (int j = 0; j < stepFunction.length; ++j) {
+      scalDenom += stepFunction[j] * stepFunctionProcessed[j];
+    }
     // pre-trim the outputted arrays; anything past this boundary will be zero
     int corrLen = trace.length - stepFunction.length;
     double[] correl = new double[corrLen];
     double[] scal = new double[corrLen];
-    // double[] xerr = new double[trace.length]; // this value was taken from old matlab code
-    for (int i = 0; i < corrLen; ++i) {
-      double[] tr2 = Arrays.copyOfRange(trace, i, i + stepFunction.length);
-      tr2 = detrend(tr2);
-      // now some inner loops to do the calculations of cross-correlation over this trimmed range
-      double sumSqd = 0;
-      for (double v : tr2) {
-        sumSqd += Math.pow(v, 2);
+
+    // The processed step function is orthogonal to any line, so the product of a detrended window
+    // with it is the product of the raw window with it. Those products are computed for all windows
+    // at once by FFT (overlap-save), and the windows are then normalized by the norm of their
+    // residual from a least squares line, kept with running sums.
+    int stepLength = stepFunction.length;
+    int fftLength = 2;
+    while (fftLength < Math.min(4 * stepLength, trace.length)) {
+      fftLength *= 2;
+    }
+    // number of correlation values from each block
+    int blockStep = fftLength - stepLength + 1;
+    FFTPlan plan = FFTPlan.forSize(fftLength);
+
+    double[] stepSpectrum = new double[2 * fftLength];
+    for (int j = 0; j < stepLength; ++j) {
+      stepSpectrum[2 * j] = stepFunctionProcessed[j];
+    }
+    plan.transform(stepSpectrum);
+
+    double[] buffer = new double[2 * fftLength];
+    double[][] blocks = {new double[fftLength], new double[fftLength]};
+    for (int start = 0; start < corrLen; start += 2 * blockStep) {
+      // two blocks at once as the real and imaginary parts of one transform
+      Arrays.fill(buffer, 0.);
+      for (int part = 0; part < 2; ++part) {
+        int blockStart = start + part * blockStep;
+        Arrays.fill(blocks[part], 0.);
+        if (blockStart < corrLen) {
+          // lines do not change the correlation of a window within the block, removing one keeps
+          // the values, and so the rounding, on the scale of the residuals
+          int length = Math.min(fftLength, trace.length - blockStart);
+          System.arraycopy(trace, blockStart, blocks[part], 0, length);
+          removeLine(blocks[part], length);
+          for (int j = 0; j < length; ++j) {
+            buffer[2 * j + part] = blocks[part][j];
+          }
+        }
+      }
+
+      plan.transform(buffer);
+      for (int k = 0; k < fftLength; ++k) {
+        double a = buffer[2 * k];
+        double b = buffer[2 * k + 1];
+        double c = stepSpectrum[2 * k];
+        double d = stepSpectrum[2 * k + 1];
+        // (a + ib) * conj(c + id), conjugated for the inverse transform
+        buffer[2 * k] = a * c + b * d;
+        buffer[2 * k + 1] = -(b * c - a * d);
       }
-      sumSqd = Math.sqrt(sumSqd);
-      double scalNumer = 0;
-      double scalDenom = 0;
-      for (int j = 0; j < tr2.length; ++j) {
-        double correlPoint = tr2[j] / sumSqd;
-        correl[i] += correlPoint * stepFunctionProcessed[j];
-        scalNumer += tr2[j] * stepFunctionProcessed[j];
-        scalDenom += stepFunction[j] * stepFunctionProcessed[j];
+      plan.transform(buffer);
+
+      for (int part = 0; part < 2; ++part) {
+        int blockStart = start + part * blockStep;
+        int count = Math.min(blockStep, corrLen - blockStart);
+        double sign = part == 0 ? 1. : -1.;
+        double[] block = blocks[part];
+        double sumY = 0;
+        double sumXY = 0;
+        double sumSquares = 0;
+        double meanX = (stepLength - 1) / 2.;
+        double sumXXCentered = stepLength * (stepLength * (double) stepLength - 1) / 12.;
+        for (int k = 0; k < count; ++k) {
+          if (k % stepLength == 0) {
+            // start over periodically so rounding does not accumulate
+            sumY = 0;
+            sumXY = 0;
+            sumSquares = 0;
+            for (int j = 0; j < stepLength; ++j) {
+              double value = block[k + j];
+              sumY += value;
+              sumXY += j * value;
+              sumSquares += value * value;
+            }
+          } else {
+            double leaving = block[k - 1];
+            double entering = block[k + stepLength - 1];
+            sumXY += (stepLength - 1) * entering - (sumY - leaving);
+            sumY += entering - leaving;
+            sumSquares += entering * entering - leaving * leaving;
+          }
+          double sumXYCentered = sumXY - meanX * sumY;
+          double residual = sumSquares - sumY * sumY / stepLength
+              - sumXYCentered * sumXYCentered / sumXXCentered;
+
+          double product = sign * buffer[2 * k + part] / fftLength;
+          correl[blockStart + k] = residual > 0 ? product / Math.sqrt(residual) : Double.NaN;
+          scal[blockStart + k] = product / scalDenom;
+        }
       }
-      scal[i] = scalNumer / scalDenom;
-      // xerr[i] = std(tr2 - scal(n). * q);
     }
     return new double[][]{correl, scal};
   }
 
+  /**
+   * Subtracts the least squares line through the first length values of the data.
+   */
+  private static void removeLine(double[] data, int length) {
+    double sumY = 0;
+    double sumXY = 0;
+    for (int i = 0; i < length; ++i) {
+      sumY += data[i];
+      sumXY += i * data[i];
+    }
+    double meanX = (length - 1) / 2.;
+    double sumXXCentered = length * (length * (double) length - 1) / 12.;
+    double slope = sumXXCentered > 0 ? (sumXY - meanX * sumY) / sumXXCentered : 0;
+    double offset = sumY / length - slope * meanX;
+    for (int i = 0; i < length; ++i) {
+      data[i] -= offset + slope * i;
+    }
+  }
+
   /**
    * Performs an averaging of the values centered at a given point over a range specified by
    * windowLength. Used to perform some basic high-pass filtering and to get the 15-min and
@@ -322,11 +429,29 @@ public abstract class PulseDetectionMetric extends Metric {
     // the solution to this is either to add 120 seconds on either end of the data or
     // to ignore that time range (obviously the former is preferred, which is why we get data
     // that extends past the day boundary)
+    // the window's sum is kept as it slides, and computed again every window length
+    int recompute = Math.max(1, 2 * singleSide);
+    int minBound = 0;
+    int maxBound = 0;
+    double sum = 0;
     for (int i = 0; i < data.length; ++i) {
-      int minBound = Math.max(0, i - singleSide);
-      int maxBound = Math.min(data.length, i + singleSide);
-      double[] window = Arrays.copyOfRange(data, minBound, maxBound);
-      mean[i] = getMean(window);
+      int nextMin = Math.max(0, i - singleSide);
+      int nextMax = Math.min(data.length, i + singleSide);
+      if (i % recompute == 0) {
+        minBound = nextMin;
+        maxBound = Math.max(nextMin, nextMax);
+        sum = 0;
+        for (int j = minBound; j < maxBound; ++j) {
+          sum += data[j];
+        }
+      }
+      while (maxBound < nextMax) {
+        sum += data[maxBound++];
+      }
+      while (minBound < nextMin) {
+        sum -= data[minBound++];
+      }
+      mean[i] = sum / (maxBound - minBound);
     }
     return mean;
   }
@@ -356,21 +481,107 @@ public abstract class PulseDetectionMetric extends Metric {
     // and last 120 seconds will not be centered in the moving average
     // the solution to this is either to add 120 seconds on either end of the data or
     // to ignore that time range (obviously the former is preferred)
+    // rather than sorting each window, the window's values are kept ranked as it slides
+    RankedWindow window = new RankedWindow(data);
+    int minBound = 0;
+    int maxBound = 0;
     for (int i = 0; i < data.length; ++i) {
-      int minBound = Math.max(0, i - singleSide);
-      int maxBound = Math.min(data.length, i + singleSide);
-      double[] window = Arrays.copyOfRange(data, minBound, maxBound);
-      // need to sort here in order to get the percentile windows for each point
-      Arrays.sort(window);
-      int firstDivider = window.length / 3;
-      int secondDivider = (int) (window.length / 1.5);
-      lowestThird[i] = getMean(Arrays.copyOfRange(window, 0, firstDivider));
-      middleThird[i] = getMean(Arrays.copyOfRange(window, firstDivider, secondDivider));
-      upperThird[i] = getMean(Arrays.copyOfRange(window, secondDivider, window.length));
+      int nextMin = Math.max(0, i - singleSide);
+      int nextMax = Math.min(data.length, i + singleSide);
+      while (maxBound < nextMax) {
+        window.add(maxBound++);
+      }
+      while (minBound < nextMin && minBound < maxBound) {
+        window.remove(minBound++);
+      }
+      int windowSize = maxBound - minBound;
+      int firstDivider = windowSize / 3;
+      int secondDivider = (int) (windowSize / 1.5);
+      double firstSum = window.sumOfSmallest(firstDivider);
+      double secondSum = window.sumOfSmallest(secondDivider);
+      double totalSum = window.sumOfSmallest(windowSize);
+      lowestThird[i] = firstSum / firstDivider;
+      middleThird[i] = (secondSum - firstSum) / (secondDivider - firstDivider);
+      upperThird[i] = (totalSum - secondSum) / (windowSize - secondDivider);
     }
     return new double[][]{lowestThird, middleThird, upperThird};
   }
 
+  /**
+   * A sliding window over data that can sum its k smallest values. The data's values are ranked
+   * once, and the counts and sums of the values in the window are kept by rank in Fenwick trees.
+   */
+  private static class RankedWindow {
+
+    /**
+     * Distinct values of the data in ascending order.
+     */
+    private final double[] values;
+    private final int[] ranks;
+    private final int[] counts;
+    private final double[] sums;
+    private final double[] data;
+
+    RankedWindow(double[] data) {
+      this.data = data;
+      double[] sorted = data.clone();
+      Arrays.sort(sorted);
+      int distinct = 0;
+      for (int i = 0; i < sorted.length; ++i) {
+        if (distinct == 0 || Double.compare(sorted[distinct - 1], sorted[i]) != 0) {
+          sorted[distinct++] = sorted[i];
+        }
+      }
+      values = Arrays.copyOf(sorted, distinct);
+      ranks = new int[data.length];
+      for (int i = 0; i < data.length; ++i) {
+        ranks[i] = Arrays.binarySearch(values, data[i]);
+      }
+      counts = new int[distinct + 1];
+      sums = new double[distinct + 1];
+    }
+
+    void add(int index) {
+      update(index, 1);
+    }
+
+    void remove(int index) {
+      update(index, -1);
+    }
+
+    private void update(int index, int sign) {
+      double value = sign * data[index];
+      for (int node = ranks[index] + 1; node < counts.length; node += node & -node) {
+        counts[node] += sign;
+        sums[node] += value;
+      }
+    }
+
+    /**
+     * @param k number of values, at most the number in the window
+     * @return the sum of the k smallest values in the window
+     */
+    double sumOfSmallest(int k) {
+      // descend to the largest rank whose values and those below number at most k
+      int node = 0;
+      int remaining = k;
+      double sum = 0;
+      for (int bit = Integer.highestOneBit(counts.length - 1); bit > 0; bit >>= 1) {
+        int next = node + bit;
+        if (next < counts.length && counts[next] <= remaining) {
+          node = next;
+          remaining -= counts[next];
+          sum += sums[next];
+        }
+      }
+      // the rest are copies of the next value
+      if (remaining > 0) {
+        sum += remaining * values[node];
+      }
+      return sum;
+    }
+  }
+
   /**
    * Evaluate an envelope constraint on the data.
    * This checks that the percentile windowed averages (see
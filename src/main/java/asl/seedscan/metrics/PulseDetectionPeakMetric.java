@@ -1,11 +1,9 @@
 package asl.seedscan.metrics;
 
 import asl.metadata.Channel;
-import asl.metadata.ChannelKey;
 import asl.metadata.meta_new.ChannelMetaException;
 import asl.seedscan.metrics.PulseDetectionMetric.PulseDetectionData.PulseDetectionPoint;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,10 +61,6 @@ public class PulseDetectionPeakMetric extends PulseDetectionMetric {
       logger.info("No band restriction set, using: {}", preSplitBands);
     }
 
-    if (pulseDetectionResultMap == null) {
-      pulseDetectionResultMap = new HashMap<>();
-    }
-
     try {
       coefficientThreshold = Double.parseDouble(get("coefficient-threshold"));
     } catch (NoSuchFieldException | NumberFormatException | NullPointerException ignored) {
@@ -80,8 +74,6 @@ public class PulseDetectionPeakMetric extends PulseDetectionMetric {
     // iterate over channels but ignore triggered and derived channels
     for (Channel channel : stationMeta.getChannelArray(preSplitBands,
         true, true)) {
-      ChannelKey key = new ChannelKey(channel);
-
       ByteBuffer digest = metricData.valueDigestChanged(channel, createIdentifier(channel),
           getForceUpdate());
       if (digest == null) {
@@ -90,19 +82,16 @@ public class PulseDetectionPeakMetric extends PulseDetectionMetric {
         continue;
       }
 
-      // only calculate a new result if the map is currently unpopulated
-      if (!pulseDetectionResultMap.containsKey(key)) {
-        try {
-          PulseDetectionData result = calculatePulseResults(channel);
-          pulseDetectionResultMap.put(key, result);
-        } catch (ChannelMetaException e) {
-          logger.error("Could not get metadata for channel [{}-{}]", getStation(), channel, e);
-          continue;
-        }
+      // only calculate a new result if no other metric has
+      PulseDetectionData result;
+      try {
+        result = getPulseResults(channel);
+      } catch (ChannelMetaException e) {
+        logger.error("Could not get metadata for channel [{}-{}]", getStation(), channel, e);
+        continue;
       }
 
       double maxPeak = 0;
-      PulseDetectionData result = pulseDetectionResultMap.get(key);
       List<List<PulseDetectionPoint>> allData = result.correlationsWithAmplitude;
       for (List<PulseDetectionPoint> points : allData) {
         for (PulseDetectionPoint point : points) {
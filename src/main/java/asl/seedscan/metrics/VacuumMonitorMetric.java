@@ -11,6 +11,7 @@ import asl.metadata.Channel;
 import asl.metadata.meta_new.ChannelMeta;
 import asl.metadata.meta_new.ResponseStage;
 import asl.seedsplitter.DataSet;
+import asl.seedsplitter.SeriesView;
 
 /**
  * The Class MassPositionMetric.
@@ -65,9 +66,9 @@ public class VacuumMonitorMetric extends Metric {
 		int totalDataPoints = 0;
 
 		for (DataSet dataset : datasets) {
-			int timeSeries[] = dataset.getSeries();
-			for (int value : timeSeries) {
-				totalPressure += value / totalGain;
+			SeriesView timeSeries = dataset.getView();
+			for (int i = 0; i < timeSeries.getLength(); i++) {
+				totalPressure += timeSeries.get(i) / totalGain;
 			}
 			totalDataPoints += dataset.getLength();
 		}
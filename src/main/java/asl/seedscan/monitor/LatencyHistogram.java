@@ -0,0 +1,129 @@
+package asl.seedscan.monitor;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long an operation takes in fixed buckets, from a millisecond to five minutes.
+ *
+ * Recording is lock free and cheap enough to time every metric, load and database call. Percentiles
+ * are estimated from the buckets, so they are only as precise as the bucket bounds.
+ */
+public final class LatencyHistogram {
+
+  /**
+   * Upper bounds of the buckets in seconds. Durations over the last bound are only counted in the
+   * total.
+   */
+  static final double[] BOUNDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0,
+      2.5, 5.0, 10.0, 30.0, 60.0, 120.0, 300.0};
+
+  private static final long[] BOUND_NANOS = new long[BOUNDS.length];
+
+  static {
+    for (int i = 0; i < BOUNDS.length; i++) {
+      BOUND_NANOS[i] = (long) (BOUNDS[i] * 1e9);
+    }
+  }
+
+  /**
+   * Durations in each bucket, not cumulative. The last one counts durations over every bound.
+   */
+  private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sumNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  LatencyHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Record a duration.
+   *
+   * @param nanos the duration in nanoseconds, negative durations count as 0
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    int bucket = 0;
+    while (bucket < BOUND_NANOS.length && nanos > BOUND_NANOS[bucket]) {
+      bucket++;
+    }
+    buckets[bucket].increment();
+    count.increment();
+    sumNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  /**
+   * Record the time since an operation started.
+   *
+   * @param startNanos the {@link System#nanoTime()} when the operation started
+   */
+  public void recordSince(long startNanos) {
+    record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * @return the number of recorded durations
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @return the total of the recorded durations in seconds
+   */
+  public double getSum() {
+    return sumNanos.sum() / 1e9;
+  }
+
+  /**
+   * @return the longest recorded duration in seconds
+   */
+  public double getMax() {
+    return maxNanos.get() / 1e9;
+  }
+
+  /**
+   * Cumulative bucket counts, as Prometheus expects them.
+   *
+   * @return the number of durations up to each of {@link #BOUNDS}, followed by the total
+   */
+  long[] getCumulativeCounts() {
+    long[] counts = new long[buckets.length];
+    long total = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      total += buckets[i].sum();
+      counts[i] = total;
+    }
+    return counts;
+  }
+
+  /**
+   * Estimate a percentile of the recorded durations.
+   *
+   * @param quantile the percentile as a fraction, between 0 and 1
+   * @return the upper bound of the bucket holding the percentile in seconds, the longest duration
+   * if that is lower or the percentile is over every bound, 0 if nothing was recorded
+   */
+  public double getQuantile(double quantile) {
+    long[] counts = getCumulativeCounts();
+    long total = counts[counts.length - 1];
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(quantile * total);
+    double max = getMax();
+    for (int i = 0; i < BOUNDS.length; i++) {
+      if (counts[i] >= rank) {
+        return Math.min(BOUNDS[i], max);
+      }
+    }
+    return max;
+  }
+}
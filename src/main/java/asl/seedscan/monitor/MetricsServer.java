@@ -0,0 +1,79 @@
+package asl.seedscan.monitor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the scan metrics over HTTP on the loopback interface. /metrics answers in the Prometheus
+ * text format and /metrics.json with the same summary {@link MetricsSummaryWriter} writes.
+ *
+ * Only local clients can connect, a Prometheus server on another host should scrape through a
+ * local agent or a proxy.
+ */
+public class MetricsServer {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.monitor.MetricsServer.class);
+
+  private final HttpServer server;
+
+  /**
+   * Start serving metrics.
+   *
+   * @param metrics the metrics served
+   * @param port the local port, 0 for any free port
+   * @throws IOException if the port cannot be bound
+   */
+  public MetricsServer(ScanMetrics metrics, int port) throws IOException {
+    server = HttpServer
+        .create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/metrics",
+        exchange -> respond(exchange, "text/plain; version=0.0.4; charset=utf-8",
+            metrics::toPrometheus));
+    server.createContext("/metrics.json",
+        exchange -> respond(exchange, "application/json", metrics::toJson));
+    server.start();
+    logger.info("Serving scan metrics on http://{}:{}/metrics",
+        server.getAddress().getHostString(), server.getAddress().getPort());
+  }
+
+  private static void respond(HttpExchange exchange, String contentType, Supplier<String> body)
+      throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] bytes = body.get().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * @return the port metrics are served on
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Stop serving metrics.
+   */
+  public void stop() {
+    server.stop(0);
+  }
+}
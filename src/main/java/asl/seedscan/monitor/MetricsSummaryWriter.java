@@ -0,0 +1,100 @@
+package asl.seedscan.monitor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically writes a JSON summary of the scan metrics to a file.
+ *
+ * Besides {@link ScanMetrics#toJson()}, the summary holds the time it was written and the station
+ * days scanned per second since the previous summary. The file is replaced as a whole, so readers
+ * never see a partly written summary.
+ */
+public class MetricsSummaryWriter {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.monitor.MetricsSummaryWriter.class);
+
+  private final ScanMetrics metrics;
+  private final Path file;
+  private final ScheduledExecutorService executor;
+
+  private long lastStationDays;
+  private long lastNanos;
+
+  /**
+   * Start writing summaries.
+   *
+   * @param metrics the metrics summarized
+   * @param file the file replaced with each summary
+   * @param intervalSeconds seconds between summaries
+   */
+  public MetricsSummaryWriter(ScanMetrics metrics, Path file, long intervalSeconds) {
+    this.metrics = metrics;
+    this.file = file;
+    this.lastStationDays = metrics.get(ScanMetrics.Count.STATION_DAYS);
+    this.lastNanos = System.nanoTime();
+
+    executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "metrics-summary");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.scheduleWithFixedDelay(this::write, intervalSeconds, intervalSeconds,
+        TimeUnit.SECONDS);
+    logger.info("Writing scan metrics to [{}] every [{}] seconds", file, intervalSeconds);
+  }
+
+  /**
+   * Write a summary now.
+   */
+  synchronized void write() {
+    long stationDays = metrics.get(ScanMetrics.Count.STATION_DAYS);
+    long nanos = System.nanoTime();
+    double rate = (nanos > lastNanos) ? (stationDays - lastStationDays) * 1e9 / (nanos - lastNanos)
+        : 0;
+    lastStationDays = stationDays;
+    lastNanos = nanos;
+
+    String summary = "{\"time\":" + ScanMetrics.jsonString(Instant.now().toString())
+        + ",\"station_days_per_second\":" + String.format(Locale.ROOT, "%.6f", rate)
+        + ",\"scan\":" + metrics.toJson() + "}\n";
+    try {
+      Path directory = file.toAbsolutePath().getParent();
+      Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+      try {
+        Files.write(temp, summary.getBytes(StandardCharsets.UTF_8));
+        try {
+          Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    } catch (IOException | RuntimeException e) {
+      // Keep the schedule going, the next summary may succeed
+      logger.warn("Unable to write scan metrics to [{}]: {}", file, e.toString());
+    }
+  }
+
+  /**
+   * Write a last summary and stop.
+   */
+  public void close() {
+    executor.shutdownNow();
+    write();
+  }
+}
@@ -0,0 +1,306 @@
+package asl.seedscan.monitor;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Timings and counts of the scanner, shared by every scan of the process.
+ *
+ * Latencies are kept per pipeline stage, per metric class and per database call. Counters track the
+ * station days scanned and the work skipped or abandoned, and gauges report values such as queue
+ * depths when they are read. Everything can be written in the Prometheus text format, served by
+ * {@link MetricsServer}, or as a JSON summary, written by {@link MetricsSummaryWriter}.
+ */
+public final class ScanMetrics {
+
+  /**
+   * Stage timing all of {@code DataLoader.getMetricData}, including days found in memory.
+   */
+  public static final String STAGE_LOAD = "load";
+  /**
+   * Stage timing the SeedSplitter decoding a station day.
+   */
+  public static final String STAGE_SPLIT = "split";
+  /**
+   * Stage timing reads of the decoded data cache.
+   */
+  public static final String STAGE_DECODED_CACHE = "decoded_cache";
+  /**
+   * Stage timing station metadata lookups.
+   */
+  public static final String STAGE_METADATA = "metadata";
+  /**
+   * Stage timing the computation of power spectra.
+   */
+  public static final String STAGE_PSD = "psd";
+  /**
+   * Stage timing the metric writer sending a batch of results.
+   */
+  public static final String STAGE_DB_WRITE = "db_write";
+
+  /**
+   * Counted events.
+   */
+  public enum Count {
+    STATION_DAYS("seedscan_station_days_total", "Station days scanned."),
+    STATION_DAYS_WITHOUT_METADATA("seedscan_station_days_without_metadata_total",
+        "Station days skipped because the station had no metadata."),
+    STATION_DAY_FAILURES("seedscan_station_day_failures_total",
+        "Station days abandoned because of an exception."),
+    DIGEST_SKIPS("seedscan_digest_skips_total",
+        "Metric values not recomputed because their stored digest is unchanged."),
+    SPLIT_TIMEOUTS("seedscan_split_timeouts_total",
+        "Station days not scanned because splitting their data timed out.");
+
+    private final String name;
+    private final String help;
+
+    Count(String name, String help) {
+      this.name = name;
+      this.help = help;
+    }
+  }
+
+  /**
+   * A read only value such as a queue depth.
+   */
+  private static class Gauge {
+
+    private final String help;
+    private final LongSupplier value;
+
+    private Gauge(String help, LongSupplier value) {
+      this.help = help;
+      this.value = value;
+    }
+  }
+
+  private static final ScanMetrics instance = new ScanMetrics();
+
+  private final long startMillis = System.currentTimeMillis();
+
+  private final ConcurrentMap<String, LatencyHistogram> stages = new ConcurrentSkipListMap<>();
+  private final ConcurrentMap<String, LatencyHistogram> metrics = new ConcurrentSkipListMap<>();
+  private final ConcurrentMap<String, LatencyHistogram> databaseCalls =
+      new ConcurrentSkipListMap<>();
+  private final Map<Count, LongAdder> counts = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+  ScanMetrics() {
+    for (Count count : Count.values()) {
+      counts.put(count, new LongAdder());
+    }
+  }
+
+  /**
+   * @return the metrics of this process
+   */
+  public static ScanMetrics getInstance() {
+    return instance;
+  }
+
+  /**
+   * Latency of a pipeline stage.
+   *
+   * @param stage one of the STAGE constants
+   * @return the stage's histogram
+   */
+  public LatencyHistogram stage(String stage) {
+    return stages.computeIfAbsent(stage, key -> new LatencyHistogram());
+  }
+
+  /**
+   * Latency of computing a metric for a station day.
+   *
+   * @param metricClass the simple class name of the metric
+   * @return the metric's histogram
+   */
+  public LatencyHistogram metric(String metricClass) {
+    return metrics.computeIfAbsent(metricClass, key -> new LatencyHistogram());
+  }
+
+  /**
+   * Latency of a MetricDatabase call.
+   *
+   * @param call name of the call
+   * @return the call's histogram
+   */
+  public LatencyHistogram database(String call) {
+    return databaseCalls.computeIfAbsent(call, key -> new LatencyHistogram());
+  }
+
+  /**
+   * Count an event.
+   *
+   * @param count the event
+   */
+  public void increment(Count count) {
+    counts.get(count).increment();
+  }
+
+  /**
+   * @param count the event
+   * @return the number of times it was counted
+   */
+  public long get(Count count) {
+    return counts.get(count).sum();
+  }
+
+  /**
+   * Report a value that is read each time the metrics are written. Registering a name again
+   * replaces its value.
+   *
+   * @param name the Prometheus name of the gauge
+   * @param help description of the gauge
+   * @param value supplies the current value
+   */
+  public void registerGauge(String name, String help, LongSupplier value) {
+    gauges.put(name, new Gauge(help, value));
+  }
+
+  /**
+   * Stop reporting a gauge.
+   *
+   * @param name the Prometheus name of the gauge
+   */
+  public void removeGauge(String name) {
+    gauges.remove(name);
+  }
+
+  /**
+   * Write all metrics in the Prometheus text exposition format.
+   *
+   * @return the metrics as text
+   */
+  public String toPrometheus() {
+    StringBuilder out = new StringBuilder();
+    appendHistograms(out, "seedscan_stage_seconds", "Time spent in each stage of a scan.",
+        "stage", stages);
+    appendHistograms(out, "seedscan_metric_seconds",
+        "Time spent computing each metric class for a station day.", "metric", metrics);
+    appendHistograms(out, "seedscan_database_seconds", "Time spent in each database call.",
+        "call", databaseCalls);
+    for (Count count : Count.values()) {
+      out.append("# HELP ").append(count.name).append(' ').append(count.help).append('\n');
+      out.append("# TYPE ").append(count.name).append(" counter\n");
+      out.append(count.name).append(' ').append(get(count)).append('\n');
+    }
+    for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+      String name = entry.getKey();
+      out.append("# HELP ").append(name).append(' ').append(entry.getValue().help).append('\n');
+      out.append("# TYPE ").append(name).append(" gauge\n");
+      out.append(name).append(' ').append(entry.getValue().value.getAsLong()).append('\n');
+    }
+    return out.toString();
+  }
+
+  private static void appendHistograms(StringBuilder out, String name, String help, String label,
+      Map<String, LatencyHistogram> histograms) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(" histogram\n");
+    for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+      String labelValue = escapeLabel(entry.getKey());
+      long[] counts = entry.getValue().getCumulativeCounts();
+      for (int i = 0; i < counts.length; i++) {
+        String bound = (i < LatencyHistogram.BOUNDS.length)
+            ? Double.toString(LatencyHistogram.BOUNDS[i]) : "+Inf";
+        out.append(name).append("_bucket{").append(label).append("=\"").append(labelValue)
+            .append("\",le=\"").append(bound).append("\"} ").append(counts[i]).append('\n');
+      }
+      out.append(name).append("_sum{").append(label).append("=\"").append(labelValue)
+          .append("\"} ").append(entry.getValue().getSum()).append('\n');
+      // The +Inf bucket, so the count always agrees with the buckets
+      out.append(name).append("_count{").append(label).append("=\"").append(labelValue)
+          .append("\"} ").append(counts[counts.length - 1]).append('\n');
+    }
+  }
+
+  private static String escapeLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /**
+   * Summarize all metrics as a JSON object. Latencies are given as count, total, mean, estimated
+   * percentiles and maximum in seconds.
+   *
+   * @return the summary
+   */
+  public String toJson() {
+    StringBuilder out = new StringBuilder("{");
+    long uptimeMillis = System.currentTimeMillis() - startMillis;
+    out.append("\"uptime_seconds\":").append(uptimeMillis / 1000.0);
+    out.append(",\"stages\":");
+    appendHistograms(out, stages);
+    out.append(",\"metrics\":");
+    appendHistograms(out, metrics);
+    out.append(",\"database\":");
+    appendHistograms(out, databaseCalls);
+
+    out.append(",\"counters\":{");
+    String separator = "";
+    for (Count count : Count.values()) {
+      out.append(separator).append(jsonString(count.name)).append(':').append(get(count));
+      separator = ",";
+    }
+    out.append("},\"gauges\":{");
+    separator = "";
+    for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+      out.append(separator).append(jsonString(entry.getKey())).append(':')
+          .append(entry.getValue().value.getAsLong());
+      separator = ",";
+    }
+    out.append("}}");
+    return out.toString();
+  }
+
+  private static void appendHistograms(StringBuilder out,
+      Map<String, LatencyHistogram> histograms) {
+    out.append('{');
+    String separator = "";
+    for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+      LatencyHistogram histogram = entry.getValue();
+      long count = histogram.getCount();
+      double sum = histogram.getSum();
+      out.append(separator).append(jsonString(entry.getKey())).append(":{")
+          .append("\"count\":").append(count)
+          .append(",\"sum\":").append(number(sum))
+          .append(",\"mean\":").append(number(count == 0 ? 0 : sum / count))
+          .append(",\"p50\":").append(number(histogram.getQuantile(0.5)))
+          .append(",\"p95\":").append(number(histogram.getQuantile(0.95)))
+          .append(",\"p99\":").append(number(histogram.getQuantile(0.99)))
+          .append(",\"max\":").append(number(histogram.getMax()))
+          .append('}');
+      separator = ",";
+    }
+    out.append('}');
+  }
+
+  private static String number(double value) {
+    return String.format(Locale.ROOT, "%.6f", value);
+  }
+
+  /**
+   * Quote a string for JSON.
+   *
+   * @param value the string
+   * @return the quoted and escaped string
+   */
+  static String jsonString(String value) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", (int) c));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
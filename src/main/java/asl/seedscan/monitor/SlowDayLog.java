@@ -0,0 +1,55 @@
+package asl.seedscan.monitor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends the traces of station days that took longer than a threshold to a file, one JSON object
+ * per line.
+ */
+public class SlowDayLog {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(asl.seedscan.monitor.SlowDayLog.class);
+
+  private final Path file;
+  private final long thresholdNanos;
+
+  /**
+   * @param file the file traces are appended to, created if missing
+   * @param thresholdSeconds days taking longer than this are written, 0 writes every day
+   */
+  public SlowDayLog(Path file, double thresholdSeconds) {
+    this.file = file;
+    this.thresholdNanos = (long) (thresholdSeconds * 1e9);
+    logger.info("Writing station days over [{}] seconds to [{}]", thresholdSeconds, file);
+  }
+
+  /**
+   * Write a finished trace if its day was slow.
+   *
+   * @param trace the station day's trace
+   * @return true if the trace was written
+   */
+  public boolean record(StationDayTrace trace) {
+    if (trace.getTotalNanos() < thresholdNanos) {
+      return false;
+    }
+    byte[] line = (trace.toJson() + "\n").getBytes(StandardCharsets.UTF_8);
+    // Whole lines, so concurrent scans don't interleave their traces
+    synchronized (this) {
+      try {
+        Files.write(file, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        logger.warn("Unable to write station day trace to [{}]: {}", file, e.toString());
+        return false;
+      }
+    }
+    return true;
+  }
+}
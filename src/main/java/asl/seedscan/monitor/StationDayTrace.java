@@ -0,0 +1,220 @@
+package asl.seedscan.monitor;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * What scanning a single station day involved and where its time went: the data decoded, the
+ * channels and samples scanned, the time spent in each metric and how many power spectra were
+ * computed or shared between metrics.
+ *
+ * A StationScan fills in its trace as it runs and hands it to the ScanManager, which writes traces
+ * of slow days to the slow day log as a line of JSON. Metric times are set from the metric threads,
+ * each into its own slot, and read once they have all finished.
+ */
+public class StationDayTrace {
+
+  /**
+   * How a station day's data was decoded.
+   */
+  public static class Decode {
+
+    /**
+     * Decoded from miniSEED by the SeedSplitter.
+     */
+    public static final String SPLIT = "split";
+    /**
+     * Read from the decoded data cache.
+     */
+    public static final String DECODED_CACHE = "decoded_cache";
+
+    private final String source;
+    private final int files;
+    private final long bytes;
+    private final int records;
+    private final long nanos;
+
+    /**
+     * @param source {@link #SPLIT} or {@link #DECODED_CACHE}
+     * @param files number of miniSEED files of the day
+     * @param bytes bytes read, from the miniSEED when split, the day's file sizes otherwise
+     * @param records MiniSEED records read, 0 when read from the cache
+     * @param nanos time spent decoding or reading the cache
+     */
+    public Decode(String source, int files, long bytes, int records, long nanos) {
+      this.source = source;
+      this.files = files;
+      this.bytes = bytes;
+      this.records = records;
+      this.nanos = nanos;
+    }
+  }
+
+  private final String network;
+  private final String station;
+  private final LocalDate date;
+  private final UUID scanID;
+  private final long startNanos = System.nanoTime();
+
+  private long totalNanos;
+  private long loadNanos;
+  private String outcome = "scanned";
+
+  private Decode decode;
+  private int channels;
+  private int segments;
+  private long samples;
+  private double maxSampleRate;
+
+  private String[] metricNames = new String[0];
+  private long[] metricNanos = new long[0];
+  private long psdsComputed;
+  private long psdsReused;
+
+  /**
+   * Start tracing a station day.
+   *
+   * @param network the network code
+   * @param station the station code
+   * @param date the day scanned
+   * @param scanID the station scan the day belongs to
+   */
+  public StationDayTrace(String network, String station, LocalDate date, UUID scanID) {
+    this.network = network;
+    this.station = station;
+    this.date = date;
+    this.scanID = scanID;
+  }
+
+  /**
+   * Record the time spent loading the day's metadata and data, including waiting for loads started
+   * by the previous day.
+   *
+   * @param startNanos the {@link System#nanoTime()} when loading started
+   */
+  public void setLoadSince(long startNanos) {
+    loadNanos = System.nanoTime() - startNanos;
+  }
+
+  /**
+   * @param outcome how the day ended, such as scanned, no_metadata or failed
+   */
+  public void setOutcome(String outcome) {
+    this.outcome = outcome;
+  }
+
+  /**
+   * Record the data scanned.
+   *
+   * @param decode how the data was decoded, may be null if unknown
+   * @param channels number of channels with data
+   * @param segments number of contiguous data segments over all channels
+   * @param samples number of samples over all channels
+   * @param maxSampleRate highest sample rate of any channel
+   */
+  public void setData(Decode decode, int channels, int segments, long samples,
+      double maxSampleRate) {
+    this.decode = decode;
+    this.channels = channels;
+    this.segments = segments;
+    this.samples = samples;
+    this.maxSampleRate = maxSampleRate;
+  }
+
+  /**
+   * Make room for the time of each metric computed.
+   *
+   * @param count number of metrics
+   */
+  public void setMetricCount(int count) {
+    metricNames = new String[count];
+    metricNanos = new long[count];
+  }
+
+  /**
+   * Record the time spent computing a metric.
+   *
+   * @param index the metric's position in the configured metrics
+   * @param name the metric's name
+   * @param nanos the time spent
+   */
+  public void setMetric(int index, String name, long nanos) {
+    metricNames[index] = name;
+    metricNanos[index] = nanos;
+  }
+
+  /**
+   * Record how the metrics obtained their power spectra.
+   *
+   * @param computed number of spectra computed
+   * @param reused number of times a metric used a spectrum computed for another
+   */
+  public void setPsds(long computed, long reused) {
+    psdsComputed = computed;
+    psdsReused = reused;
+  }
+
+  /**
+   * Stop the clock on the station day.
+   */
+  public void finish() {
+    totalNanos = System.nanoTime() - startNanos;
+  }
+
+  /**
+   * @return the time from the start of the trace until {@link #finish()}, in nanoseconds
+   */
+  public long getTotalNanos() {
+    return totalNanos;
+  }
+
+  /**
+   * @return the trace as a single line of JSON
+   */
+  public String toJson() {
+    StringBuilder out = new StringBuilder("{");
+    out.append("\"network\":").append(ScanMetrics.jsonString(network));
+    out.append(",\"station\":").append(ScanMetrics.jsonString(station));
+    out.append(",\"date\":").append(ScanMetrics.jsonString(date.toString()));
+    out.append(",\"scan_id\":")
+        .append(scanID == null ? "null" : ScanMetrics.jsonString(scanID.toString()));
+    out.append(",\"outcome\":").append(ScanMetrics.jsonString(outcome));
+    out.append(",\"seconds\":").append(seconds(totalNanos));
+    out.append(",\"load_seconds\":").append(seconds(loadNanos));
+    out.append(",\"decode\":");
+    if (decode == null) {
+      out.append("null");
+    } else {
+      out.append("{\"source\":").append(ScanMetrics.jsonString(decode.source))
+          .append(",\"files\":").append(decode.files)
+          .append(",\"bytes\":").append(decode.bytes)
+          .append(",\"records\":").append(decode.records)
+          .append(",\"seconds\":").append(seconds(decode.nanos))
+          .append('}');
+    }
+    out.append(",\"channels\":").append(channels);
+    out.append(",\"segments\":").append(segments);
+    out.append(",\"samples\":").append(samples);
+    out.append(",\"max_sample_rate\":").append(maxSampleRate);
+    out.append(",\"psds_computed\":").append(psdsComputed);
+    out.append(",\"psds_reused\":").append(psdsReused);
+    out.append(",\"metrics\":[");
+    String separator = "";
+    for (int i = 0; i < metricNames.length; i++) {
+      if (metricNames[i] == null) {
+        // Not computed, an earlier metric failed
+        continue;
+      }
+      out.append(separator).append("{\"metric\":").append(ScanMetrics.jsonString(metricNames[i]))
+          .append(",\"seconds\":").append(seconds(metricNanos[i])).append('}');
+      separator = ",";
+    }
+    out.append("]}");
+    return out.toString();
+  }
+
+  private static String seconds(long nanos) {
+    return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+  }
+}
@@ -5,7 +5,10 @@ import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.ArchivePath;
 import asl.seedscan.Global;
 import asl.seedscan.metrics.MetricData;
+import asl.seedscan.monitor.ScanMetrics;
+import asl.seedscan.monitor.StationDayTrace;
 import asl.seedsplitter.DataSet;
+import asl.seedsplitter.DecodedDataCache;
 import asl.seedsplitter.SeedSplitter;
 import java.io.File;
 import java.io.FilenameFilter;
@@ -29,6 +32,23 @@ public abstract class DataLoader {
   private static final Logger logger = LoggerFactory
       .getLogger(asl.seedscan.scanner.DataLoader.class);
 
+  /**
+   * Cache of decoded station days, null until first used or when no data_cache_dir is configured.
+   */
+  private static DecodedDataCache dataCache;
+  private static boolean dataCacheChecked = false;
+
+  private static synchronized DecodedDataCache getDataCache() {
+    if (!dataCacheChecked) {
+      dataCacheChecked = true;
+      if (Global.getDataCacheDir() != null) {
+        dataCache = new DecodedDataCache(new File(Global.getDataCacheDir()),
+            Global.getDataCacheSize() * 1024L * 1024L);
+      }
+    }
+    return dataCache;
+  }
+
   // Class to assign seedplitter object and seedsplitter table
   private static class SplitterObject {
 
@@ -64,7 +84,7 @@ public abstract class DataLoader {
   private static SplitterObject executeSplitter(File[] files, int timeout, LocalDate timestamp)
       throws TimeoutException, ExecutionException, InterruptedException {
     Hashtable<String, ArrayList<DataSet>> table = null;
-    SeedSplitter splitter = new SeedSplitter(files);
+    SeedSplitter splitter = new SeedSplitter(files, Global.getSplitterThreads());
     ExecutorService executor = Executors.newSingleThreadExecutor();
     Future<Hashtable<String, ArrayList<DataSet>>> future = executor.submit(new Task(splitter));
 
@@ -90,8 +110,42 @@ public abstract class DataLoader {
    * @return complete MetricData object for station day.
    */
   public static MetricData getMetricData(LocalDate date, Station station, ScanManager manager) {
+    long start = System.nanoTime();
+    try {
+      return findMetricData(date, station, manager);
+    } finally {
+      ScanMetrics.getInstance().stage(ScanMetrics.STAGE_LOAD).recordSince(start);
+    }
+  }
 
-    StationMeta stationMeta = manager.metaGenerator.getStationMeta(station, date.atStartOfDay());
+  /**
+   * Return the metadata of a station for a day.
+   *
+   * @param date The date to load
+   * @param station Station to load
+   * @param manager ScanManager that contains the metadata
+   * @return the station's metadata, or null if there is none for the day
+   */
+  public static StationMeta getStationMeta(LocalDate date, Station station, ScanManager manager) {
+    long start = System.nanoTime();
+    try {
+      return manager.metaGenerator.getStationMeta(station, date.atStartOfDay());
+    } finally {
+      ScanMetrics.getInstance().stage(ScanMetrics.STAGE_METADATA).recordSince(start);
+    }
+  }
+
+  /**
+   * Find the files of a station day and load them, or reuse the day if it is already in memory.
+   *
+   * @param date The date to load
+   * @param station Station to load
+   * @param manager ScanManager that contains metadata and database for the MetricData
+   * @return complete MetricData object for station day.
+   */
+  private static MetricData findMetricData(LocalDate date, Station station, ScanManager manager) {
+
+    StationMeta stationMeta = getStationMeta(date, station, manager);
     if (stationMeta == null) {
       return null;
     }
@@ -137,10 +191,58 @@ public abstract class DataLoader {
 
     logger.info(dir.getPath() + " contains " + files.length + " files.");
 
+    // Reuse the day if it was already loaded from these same files and metadata. The cached day is
+    // shared, so scan a copy of it.
+    File[] dayFiles = files;
+    MetricData shared = manager.metricDataCache.get(station, date, stationMeta,
+        DecodedDataCache.sourceKey(files, Global.getQualityflags()),
+        () -> loadMetricData(date, station, manager, stationMeta, dayFiles));
+    return (shared == null) ? null : shared.copy();
+  }
+
+  /**
+   * Decode a station day, from the decoded data cache when it is enabled and current, otherwise
+   * with the SeedSplitter.
+   *
+   * @param date The date to load
+   * @param station Station to load
+   * @param manager ScanManager that contains the database for the MetricData
+   * @param stationMeta The station's metadata for the day
+   * @param files The day's miniSEED files
+   * @return complete MetricData object for station day, or null if splitting failed.
+   */
+  private static MetricData loadMetricData(LocalDate date, Station station, ScanManager manager,
+      StationMeta stationMeta, File[] files) {
+    DecodedDataCache cache = getDataCache();
+    if (cache != null) {
+      long start = System.nanoTime();
+      DecodedDataCache.Entry entry = cache.load(station.getNetwork(), station.getStation(), date,
+          files, Global.getQualityflags());
+      long nanos = System.nanoTime() - start;
+      ScanMetrics.getInstance().stage(ScanMetrics.STAGE_DECODED_CACHE).record(nanos);
+      if (entry != null) {
+        logger.debug("Loaded [{}]:[{}] from the decoded data cache", station,
+            date.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+        MetricData metricData = new MetricData(manager.database, entry.getTable(),
+            entry.getQualityTable(), stationMeta, entry.getCalTable());
+        metricData.setDataCache(manager.metricDataCache);
+        long bytes = 0;
+        for (File file : files) {
+          bytes += file.length();
+        }
+        metricData.setDecode(new StationDayTrace.Decode(StationDayTrace.Decode.DECODED_CACHE,
+            files.length, bytes, 0, nanos));
+        return metricData;
+      }
+    }
+
     // execute SeedSplitter process (180 sec timer will be issued)
     try {
       int timeout = 180;
+      long start = System.nanoTime();
       SplitterObject splitObj = executeSplitter(files, timeout, date);
+      long nanos = System.nanoTime() - start;
+      ScanMetrics.getInstance().stage(ScanMetrics.STAGE_SPLIT).record(nanos);
       SeedSplitter splitter = splitObj.splitter;
       Hashtable<String, ArrayList<DataSet>> table = splitObj.table;
 
@@ -150,8 +252,20 @@ public abstract class DataLoader {
       Hashtable<String, ArrayList<Blockette320>> calibrationTable = null;
       calibrationTable = splitter.getCalTable();
 
-      return new MetricData(manager.database, table, qualityTable, stationMeta, calibrationTable);
+      if (cache != null && table != null) {
+        cache.store(station.getNetwork(), station.getStation(), date, files,
+            Global.getQualityflags(),
+            new DecodedDataCache.Entry(table, qualityTable, calibrationTable));
+      }
+
+      MetricData metricData = new MetricData(manager.database, table, qualityTable, stationMeta,
+          calibrationTable);
+      metricData.setDataCache(manager.metricDataCache);
+      metricData.setDecode(new StationDayTrace.Decode(StationDayTrace.Decode.SPLIT, files.length,
+          splitter.getByteCount(), splitter.getRecordCount(), nanos));
+      return metricData;
     } catch (TimeoutException e) {
+      ScanMetrics.getInstance().increment(ScanMetrics.Count.SPLIT_TIMEOUTS);
       logger.error("== TimeoutException: Skipping to next day for [{}]:[{}]\n", station,
           date.format(DateTimeFormatter.ISO_ORDINAL_DATE));
       return null;
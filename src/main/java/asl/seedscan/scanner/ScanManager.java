@@ -1,13 +1,38 @@
 package asl.seedscan.scanner;
 
 import asl.metadata.MetaGenerator;
+import asl.metadata.meta_new.ChannelMeta;
+import asl.metadata.meta_new.ResponseCache;
+import asl.seedscan.Global;
+import asl.seedscan.database.LegacyMetricDataMover;
 import asl.seedscan.database.MetricDatabase;
+import asl.seedscan.database.MetricWriter;
+import asl.seedscan.database.ScanListener;
+import asl.seedscan.event.ArrivalTimeService;
+import asl.seedscan.metrics.MetricDataCache;
+import asl.seedscan.monitor.MetricsServer;
+import asl.seedscan.monitor.MetricsSummaryWriter;
+import asl.seedscan.monitor.ScanMetrics;
+import asl.seedscan.monitor.SlowDayLog;
+import asl.seedscan.monitor.StationDayTrace;
 import asl.seedscan.scanner.scanworker.RetrieveScan;
 import asl.seedscan.scanner.scanworker.ScanWorker;
+import edu.sc.seis.TauP.TauModelException;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +44,16 @@ public class ScanManager {
   public final MetricDatabase database;
   public final MetaGenerator metaGenerator;
 
+  /**
+   * Station days loaded by any scan, shared so consecutive and overlapping days are decoded once.
+   */
+  public final MetricDataCache metricDataCache;
+
+  /**
+   * Writes metric results and finishes scans in the background, in batches.
+   */
+  public final MetricWriter metricWriter;
+
   private long queryWaitTime = 300000;
   private Boolean running = false;
   private Thread scanThread;
@@ -32,9 +67,61 @@ public class ScanManager {
 
   private final BlockingQueue<Runnable> workQueue;
 
+  /**
+   * Pool for loading station metadata and data. Kept apart from the scanning threads so that a
+   * station's next day is read from disk while its current day is computed, and so that slow reads
+   * do not hold the threads that compute metrics.
+   */
+  private final ThreadPoolExecutor loaderPool;
+
+  /**
+   * Work stealing pool computing the metrics of all station days being scanned, so that a day's
+   * metrics run side by side and idle threads pick up work from other stations.
+   */
+  private final ForkJoinPool metricPool;
+
+  /**
+   * Serves the scan metrics, null unless a monitor_port is configured.
+   */
+  private MetricsServer metricsServer;
+
+  /**
+   * Writes the scan metrics summary, null unless a monitor_summary_file is configured.
+   */
+  private MetricsSummaryWriter metricsSummaryWriter;
+
+  /**
+   * Writes the traces of slow station days, null unless a slow_day_file is configured.
+   */
+  private SlowDayLog slowDayLog;
+
+  /**
+   * Renews the leases of the scans taken from the database.
+   */
+  private final ScheduledExecutorService leaseRenewer;
+
+  /**
+   * Wakes the scan loop when scans are inserted, null if the database cannot be listened to.
+   */
+  private ScanListener scanListener;
+
+  /**
+   * Moves the metric values written before tblmetricdata was partitioned, null if there is no
+   * database to move them in.
+   */
+  private LegacyMetricDataMover legacyMetricDataMover;
+
+  /**
+   * Released when scans were inserted, so the scan loop takes them before its next poll.
+   */
+  private final Semaphore scansInserted = new Semaphore(0);
+
   public ScanManager(MetricDatabase database, MetaGenerator metaGenerator) {
     this.database = database;
     this.metaGenerator = metaGenerator;
+    this.metricDataCache = new MetricDataCache(Global.getMetricDataCacheSize() * 1024L * 1024L);
+    // Up to 10000 results waiting, sent 1000 values or 5 seconds at a time
+    this.metricWriter = new MetricWriter(database, 10000, 1000, 5000);
 
     int threadCount = Runtime.getRuntime().availableProcessors() - 1;
     if(threadCount < 2){
@@ -46,6 +133,87 @@ public class ScanManager {
 
     this.threadPool = new ThreadPoolExecutor(threadCount, threadCount, 10, TimeUnit.MINUTES,
         workQueue);
+
+    int loaderCount = Global.getLoaderThreads();
+    logger.info("Number of Loader Threads to Use = [{}]", loaderCount);
+    AtomicInteger loaderNumber = new AtomicInteger();
+    this.loaderPool = new ThreadPoolExecutor(loaderCount, loaderCount, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "loader-" + loaderNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    int metricCount = Global.getMetricThreads();
+    logger.info("Number of Metric Threads to Use = [{}]", metricCount);
+    this.metricPool = new ForkJoinPool(metricCount);
+
+    if (Global.getArrivalTableStep() > 0) {
+      try {
+        ArrivalTimeService.getInstance().setTableStep(Global.getArrivalTableStep());
+        logger.info("P arrival table step = [{}] degrees", Global.getArrivalTableStep());
+      } catch (TauModelException e) {
+        logger.error("Unable to load the travel time model for the P arrival table:", e);
+      }
+    }
+
+    startMonitoring();
+
+    int leaseTime = Global.getScanLeaseTime();
+    database.setScanLeaseTime(leaseTime);
+    this.leaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "scan-lease");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long renewPeriod = Math.max(1, leaseTime / 3);
+    leaseRenewer.scheduleWithFixedDelay(database::renewScanLeases, renewPeriod, renewPeriod,
+        TimeUnit.SECONDS);
+  }
+
+  /**
+   * Report this manager's queues with the scan metrics, and serve and write the metrics and slow
+   * day traces if configured.
+   */
+  private void startMonitoring() {
+    ScanMetrics scanMetrics = ScanMetrics.getInstance();
+    scanMetrics.registerGauge("seedscan_work_queue_depth",
+        "Scans and station days waiting for a scanning thread.", workQueue::size);
+    scanMetrics.registerGauge("seedscan_active_scans",
+        "Scanning threads running a scan or station day.", threadPool::getActiveCount);
+    scanMetrics.registerGauge("seedscan_loader_queue_depth",
+        "Metadata and data loads waiting for a loader thread.", () -> loaderPool.getQueue().size());
+    scanMetrics.registerGauge("seedscan_metric_writer_queue_depth",
+        "Metric results and finished scans waiting to be written.", metricWriter::getQueued);
+    scanMetrics.registerGauge("seedscan_metric_data_cache_bytes",
+        "Estimated size of the station days kept in memory.", metricDataCache::getSize);
+
+    if (Global.getMonitorPort() > 0) {
+      try {
+        metricsServer = new MetricsServer(scanMetrics, Global.getMonitorPort());
+      } catch (IOException e) {
+        logger.error("Unable to serve scan metrics on port [{}]:", Global.getMonitorPort(), e);
+      }
+    }
+    if (Global.getMonitorSummaryFile() != null) {
+      metricsSummaryWriter = new MetricsSummaryWriter(scanMetrics,
+          Paths.get(Global.getMonitorSummaryFile()), Global.getMonitorSummaryInterval());
+    }
+    if (Global.getSlowDayFile() != null) {
+      slowDayLog = new SlowDayLog(Paths.get(Global.getSlowDayFile()),
+          Global.getSlowDayThreshold());
+    }
+  }
+
+  /**
+   * Keep the trace of a finished station day if it was slow and slow days are logged.
+   *
+   * @param trace the finished trace
+   */
+  public void recordTrace(StationDayTrace trace) {
+    if (slowDayLog != null) {
+      slowDayLog.record(trace);
+    }
   }
 
   /**
@@ -72,6 +240,8 @@ public class ScanManager {
     for (int i = 0; i <= this.threadPool.getCorePoolSize(); i++) {
       threadPool.execute(new RetrieveScan(this));
     }
+    scanListener = database.listenForScans(scansInserted::release);
+    legacyMetricDataMover = database.moveLegacyMetricData(Global.getLegacyMoveChunkSize());
 
     while (running) {
       if (workQueue.isEmpty()) {
@@ -79,8 +249,23 @@ public class ScanManager {
         threadPool.execute(new RetrieveScan(this));
       }
       try {
-        /*We want to wait a little bit so as to not overload the db with getScan requests.*/
-        Thread.sleep(queryWaitTime);
+        /*We want to wait a little bit so as to not overload the db with getScan requests.
+         * Inserted scans end the wait early.*/
+        if (scansInserted.tryAcquire(queryWaitTime, TimeUnit.MILLISECONDS)) {
+          scansInserted.drainPermits();
+          continue;
+        }
+        logger.info("MetricData cache: days=[{}] size=[{} MB] hits=[{}] misses=[{}] evictions=[{}]",
+            metricDataCache.getCount(), metricDataCache.getSize() / (1024 * 1024),
+            metricDataCache.getHits(), metricDataCache.getMisses(),
+            metricDataCache.getEvictions());
+        ResponseCache responseCache = ChannelMeta.getResponseCache();
+        logger.info("Response cache: responses=[{}] size=[{} MB] hits=[{}] misses=[{}] evictions=[{}]",
+            responseCache.getCount(), responseCache.getSize() / (1024 * 1024),
+            responseCache.getHits(), responseCache.getMisses(), responseCache.getEvictions());
+        logger.info("Metric writer: queued=[{}] batches=[{}] results=[{}] failed=[{}]",
+            metricWriter.getQueued(), metricWriter.getBatchesWritten(),
+            metricWriter.getResultsWritten(), metricWriter.getResultsFailed());
         /*Update incase available processors changes.
 				 * This is not a constant, but can vary with the OS according to Oracle Javadoc.
 				 */
@@ -96,6 +281,17 @@ public class ScanManager {
     scanThread = null;
   }
 
+  /**
+   * Number of scans to take from the database at once, one for each idle scanning thread, counting
+   * the thread asking.
+   *
+   * @return the number of scans, at least 1
+   */
+  public int getScanCapacity() {
+    int idle = threadPool.getCorePoolSize() - threadPool.getActiveCount() - workQueue.size();
+    return Math.max(1, idle + 1);
+  }
+
   public void addTask(ScanWorker task) {
 		/* We cannot use .submit() because of issues when wrapping the Runnable
 		 * into a FutureTask. Our PriorityQueue requires our task to be
@@ -104,6 +300,29 @@ public class ScanManager {
     threadPool.execute(task);
   }
 
+  /**
+   * Run a loading task on the loader threads. Used by scans to read the data they will need next
+   * while they compute.
+   *
+   * @param loader the task that loads the data
+   * @param <T> type of the loaded data
+   * @return the pending result of the loader
+   */
+  public <T> Future<T> load(Callable<T> loader) {
+    return loaderPool.submit(loader);
+  }
+
+  /**
+   * Run computations on the metric threads and wait for all of them to finish.
+   *
+   * @param computations the computations to run
+   * @param <T> type of the computed results
+   * @return the finished computations, in the same order
+   */
+  public <T> List<Future<T>> compute(List<Callable<T>> computations) {
+    return metricPool.invokeAll(computations);
+  }
+
   /**
    * Used for testing
    *
@@ -120,6 +339,31 @@ public class ScanManager {
     if (scanThread != null) {
       scanThread.interrupt();
     }
+    //Wake the scan loop
+    scansInserted.release();
+    if (scanListener != null) {
+      scanListener.close();
+    }
+    if (legacyMetricDataMover != null) {
+      legacyMetricDataMover.close();
+    }
+    leaseRenewer.shutdownNow();
+    threadPool.shutdown();
+    try {
+      // Write the results already computed before interrupting the scans, so scans waiting for
+      // room in the writer's queue are not interrupted and counted as failed
+      metricWriter.close();
+    } catch (InterruptedException e) {
+      logger.warn("Interrupted while writing the remaining metric results");
+    }
     threadPool.shutdownNow();
+    loaderPool.shutdownNow();
+    metricPool.shutdownNow();
+    if (metricsServer != null) {
+      metricsServer.stop();
+    }
+    if (metricsSummaryWriter != null) {
+      metricsSummaryWriter.close();
+    }
   }
 }
@@ -6,12 +6,13 @@ import asl.seedscan.scanner.ScanManager;
 import asl.util.Logging;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This worker retrieves a Scan from the database. Determines if it is a
+ * This worker retrieves Scans from the database. Determines if each is a
  * Station and splits it into station scans if it is not.
  *
  * @author jholland - USGS
@@ -28,23 +29,32 @@ public class RetrieveScan extends ScanWorker {
   @Override
   public void run() {
     //Runtime Exceptions thrown here are not caught anywhere else.
-    Object lock = manager.database.getLockObject();
     try {
-      synchronized (lock) {
-        DatabaseScan newScan = manager.database.takeNextScan();
+      // Enough scans for the idle threads, other scanners may take the rest
+      List<DatabaseScan> newScans = manager.database.takeNextScans(manager.getScanCapacity());
 
-        if (newScan != null) {
-          parseScan(newScan);
-          // Add new Retriever to queue since we know more probably exist.
-          manager.addTask(new RetrieveScan(manager));
-        } else {
-          logger.info("Database has no Scans left!");
+      if (!newScans.isEmpty()) {
+        for (DatabaseScan newScan : newScans) {
+          // A scan that fails to parse must not lose the others leased with it
+          try {
+            parseScan(newScan);
+          } catch (Exception e) {
+            String message = Logging.prettyExceptionWithCause(e);
+            logger.error(message);
+            manager.database.insertError(message);
+            // Taken again once the lease expires instead of being renewed forever
+            manager.database.abandonScanLease(newScan.scanID);
+          }
         }
-        /*
-         * Don't bother adding a new Retrieving Task since DB is empty. A
-         * different process will handle this.
-         */
+        // Add new Retriever to queue since we know more probably exist.
+        manager.addTask(new RetrieveScan(manager));
+      } else {
+        logger.info("Database has no Scans left!");
       }
+      /*
+       * Don't bother adding a new Retrieving Task since DB is empty. A
+       * different process will handle this.
+       */
 
     } catch (Exception e) {
       String message = Logging.prettyExceptionWithCause(e);
@@ -71,29 +81,58 @@ public class RetrieveScan extends ScanWorker {
     }
     // Split the non Station Scan into Station Scans
     else {
-      List<Station> possibleStations = manager.metaGenerator.getStationList(networks, stations);
-      LocalDate start = newScan.startDate;
-      LocalDate end;
-      do {
-        end = start.plusDays(30);
-        if (end.compareTo(newScan.endDate) > 0) {
-          end = newScan.endDate;
-        }
-        for (Station station : possibleStations) {
-          manager.database.insertChildScan(
-              newScan.scanID,
-              station.getNetwork(),
-              station.getStation(),
-              newScan.location,
-              newScan.channel,
-              newScan.metricName,
-              start, end,
-              newScan.priority,
-              newScan.deleteExisting);
-        }
+      try {
+        splitScan(newScan, networks, stations);
+      } catch (RuntimeException e) {
+        // Split again once the lease expires
+        manager.database.abandonScanLease(newScan.scanID);
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Split a scan into station scans of at most 31 days and insert them as its child scans.
+   */
+  private void splitScan(DatabaseScan newScan, String[] networks, String[] stations) {
+    List<Station> possibleStations = manager.metaGenerator.getStationList(networks, stations);
+    List<DatabaseScan> children = new ArrayList<>();
+    int lastWindow = 0;
+    LocalDate start = newScan.startDate;
+    LocalDate end;
+    do {
+      end = start.plusDays(30);
+      if (end.compareTo(newScan.endDate) > 0) {
+        end = newScan.endDate;
+      }
+      lastWindow = children.size();
+      for (Station station : possibleStations) {
+        children.add(new DatabaseScan(
+            null,
+            newScan.scanID,
+            newScan.metricName,
+            station.getNetwork(),
+            station.getStation(),
+            newScan.location,
+            newScan.channel,
+            start, end,
+            newScan.priority,
+            newScan.deleteExisting));
+      }
+
+      start = end.plusDays(1);
+    } while (!end.equals(newScan.endDate));
 
-        start = end.plusDays(1);
-      } while (!end.equals(newScan.endDate));
+    // Scans are taken latest first, so the last window goes in first and can be scanned while
+    // the rest are inserted
+    if (manager.database.insertChildScans(newScan.scanID,
+        children.subList(lastWindow, children.size()))
+        && manager.database.insertChildScans(newScan.scanID, children.subList(0, lastWindow))) {
+      // Its child scans are in, so the scan can finish with them
+      manager.database.releaseScanLease(newScan.scanID);
+    } else {
+      // Split again once the lease expires, skipping the children already inserted
+      manager.database.abandonScanLease(newScan.scanID);
     }
   }
 
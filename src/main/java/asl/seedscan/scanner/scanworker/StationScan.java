@@ -13,16 +13,24 @@ import asl.seedscan.metrics.MetricResult;
 import asl.seedscan.metrics.MetricWrapper;
 import asl.seedscan.metrics.PulseDetectionMetric;
 import asl.seedscan.metrics.PulseDetectionMetric.PulseDetectionData;
+import asl.seedscan.monitor.ScanMetrics;
+import asl.seedscan.monitor.StationDayTrace;
 import asl.seedscan.scanner.DataLoader;
 import asl.seedscan.scanner.ScanManager;
 import asl.timeseries.CrossPower;
 import asl.timeseries.CrossPowerKey;
+import asl.util.KeyedFutures;
 import asl.util.Logging;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Hashtable;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sac.SacTimeSeries;
@@ -54,6 +62,21 @@ public class StationScan extends ScanWorker {
   MetricData nextMetricData;
   MetricData previousMetricData;
 
+  /**
+   * Pending load of this day's metadata, started by the previous day's scan. Can be null.
+   */
+  private Future<StationMeta> metadataLoad;
+  /**
+   * Pending load of the day after this one, started by the previous day's scan. Can be null.
+   */
+  private Future<MetricData> nextDayLoad;
+
+  /**
+   * Loads started for the following day's scan while this day computes.
+   */
+  Future<StationMeta> followingMetadataLoad;
+  Future<MetricData> followingDayLoad;
+
 
   /**
    * Start the first day of the scan
@@ -85,16 +108,92 @@ public class StationScan extends ScanWorker {
     this.currentMetricData = metricData;
   }
 
+  /**
+   * Scan a specified day whose metadata and following day are already being loaded
+   *
+   * @param manager The managing object
+   * @param databaseScan The correct database for results.
+   * @param date The day to scan
+   * @param metricData The days preloaded MetricData. Can be null
+   * @param metadataLoad Pending load of the day's metadata. Can be null
+   * @param nextDayLoad Pending load of the following day's MetricData. Can be null
+   */
+  StationScan(ScanManager manager, DatabaseScan databaseScan, LocalDate date,
+      MetricData metricData, Future<StationMeta> metadataLoad, Future<MetricData> nextDayLoad) {
+    this(manager, databaseScan, date, metricData);
+    this.metadataLoad = metadataLoad;
+    this.nextDayLoad = nextDayLoad;
+  }
+
+  /**
+   * Wait for a load started by the previous day's scan.
+   *
+   * @param load the pending load, may be null
+   * @param loader loads the value in this thread if there was no pending load or it failed
+   * @return the loaded value
+   */
+  private <T> T await(Future<T> load, Supplier<T> loader) {
+    if (load != null) {
+      try {
+        return load.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        logger.warn("Preloading Station={} Day={} failed: {}", station,
+            currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE), e.getCause().toString());
+      }
+    }
+    return loader.get();
+  }
+
+  /**
+   * Start loading what the following day's scan needs, its metadata and the day after it, so that
+   * it is read while this day's metrics are computed.
+   */
+  private void startFollowingLoads() {
+    LocalDate followingDate = currentDate.plusDays(1);
+    if (followingDate.compareTo(databaseScan.endDate) > 0) {
+      return;
+    }
+    followingMetadataLoad = manager.load(
+        () -> DataLoader.getStationMeta(followingDate, station, manager));
+    followingDayLoad = manager.load(
+        () -> DataLoader.getMetricData(followingDate.plusDays(1), station, manager));
+  }
+
+  /**
+   * Give up the lease of a scan whose day failed once the results it queued are written. The scan
+   * is not finished, so it is taken again once the lease expires.
+   */
+  private void abandonScan() {
+    try {
+      manager.metricWriter.abandonScan(databaseScan.scanID);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      manager.database.abandonScanLease(databaseScan.scanID);
+    } catch (IllegalStateException e) {
+      // The writer is closed, nothing more is written for this scan
+      manager.database.abandonScanLease(databaseScan.scanID);
+    }
+  }
+
   /**
    * Load the scan data independently of the run method. This allows better testing.
    */
   void loadScanData(){
+    // Stored digests for the whole scan are read once, on its first day
+    if (currentDate.equals(databaseScan.startDate) && manager.database.isConnected()) {
+      manager.database.loadMetricValueDigests(databaseScan.scanID, station,
+          databaseScan.startDate, databaseScan.endDate);
+    }
+
     // CMT Event loader - use to load events for each day
     EventLoader eventLoader = new EventLoader(Global.getEventsDir());
 
     // Get all the channel metadata for this station, for this day
-    currentMetadata = manager.metaGenerator
-        .getStationMeta(station, currentDate.atStartOfDay());
+    currentMetadata = await(metadataLoad,
+        () -> DataLoader.getStationMeta(currentDate, station, manager));
+    metadataLoad = null;
 
     if (databaseScan.location != null && databaseScan.location.length() > 0) {
       // expect that the channel filter is a list of comma-delineated locations
@@ -119,14 +218,18 @@ public class StationScan extends ScanWorker {
     if (currentMetricData == null) {
       currentMetricData = DataLoader.getMetricData(currentDate, station, manager);
     }
-    nextMetricData = DataLoader.getMetricData(currentDate.plusDays(1), station, manager);
+    nextMetricData = await(nextDayLoad,
+        () -> DataLoader.getMetricData(currentDate.plusDays(1), station, manager));
+    nextDayLoad = null;
 
+    startFollowingLoads();
 
     if (currentMetricData != null) {
       // This doesn't mean nextMetricData isn't null!
       currentMetricData.setNextMetricData(nextMetricData);
       if (eventNearStartOfDay){
-        // This doesn't use previously loaded data. It reloads metricdata for the day.
+        // The previous day is normally still in the MetricDataCache from its own scan, so this
+        // returns a copy of it and only reloads the day if it was evicted or never loaded.
         previousMetricData = DataLoader.getMetricData(currentDate.minusDays(1), station, manager);
         currentMetricData.setPreviousMetricData(previousMetricData);
       }
@@ -135,100 +238,174 @@ public class StationScan extends ScanWorker {
 
   @Override
   public void run() {
+    boolean nextDayAdded = false;
+    StationDayTrace trace = new StationDayTrace(station.getNetwork(), station.getStation(),
+        currentDate, databaseScan.scanID);
     try {
       logger.debug("Scan Station={} Day={} Thread id=[{}]", station,
           currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE), Thread.currentThread().getId());
 
+      long loadStart = System.nanoTime();
       loadScanData();
+      trace.setLoadSince(loadStart);
+      if (currentMetricData != null) {
+        currentMetricData.addToTrace(trace);
+      }
 
       // No Metadata found for this station-day --> skip day
       if (currentMetadata == null) {
+        trace.setOutcome("no_metadata");
         logger.info("== Scanner: No Metadata found for Station:{}_{} for Day:{} --> Skipping",
             station.getNetwork(), station.getStation(),
             currentDate.format(DateTimeFormatter.ISO_ORDINAL_DATE));
+        ScanMetrics.getInstance().increment(ScanMetrics.Count.STATION_DAYS_WITHOUT_METADATA);
       } else {
         currentMetadata.printStationInfo();
 
-        // Loop over Metrics to compute, for this station, for this day
-        Hashtable<CrossPowerKey, CrossPower> crossPowerMap = null;
-        Map<ChannelKey, PulseDetectionData> pulseDetectionMap = null;
-
-				/*
-         * TODO: The contents of this for loop should be extracted out into a task and run in the pool.
-				 * Skipping adding tests for it now.
-				 */
-        for (MetricWrapper wrapper : Global.getMetrics()) {
-          Metric metric = wrapper.getNewInstance();
-          metric.setBaseOutputDir(Global.getPlotsDir());
-
-          if (currentMetricData == null) {
-            metric.setData(new MetricData(manager.database, currentMetadata));
-          } else {
-            metric.setData(currentMetricData);
-          }
-          if (eventCMTs != null) {
-            metric.setEventTable(eventCMTs);
-            if (eventSynthetics != null) {
-              metric.setEventSynthetics(eventSynthetics);
-            }
-          }
-
-          // Hand off the crossPowerMap from metric to metric,
-          // adding to it each time
-          if (crossPowerMap != null) {
-            metric.setCrossPowerMap(crossPowerMap);
-          }
-          // Do the same for pulseDetectionMap, if this is a pulse detection metric
-          if (metric instanceof PulseDetectionMetric && pulseDetectionMap != null) {
-            ((PulseDetectionMetric) metric).setPulseDetectionData(pulseDetectionMap);
-          }
-
-          metric.process();
-          // Save the current crossPowerMap for the next metric:
-          crossPowerMap = metric.getCrossPowerMap();
-          // And similar for pulse detection as necessary
-          if (metric instanceof PulseDetectionMetric) {
-            pulseDetectionMap = ((PulseDetectionMetric) metric).getPulseDetectionData();
-          }
+        // Compute the Metrics for this station, for this day, side by side.
+        // They share one crossPowerMap and pulseDetectionMap so each PSD and
+        // pulse detection is computed once, by whichever metric needs it first.
+        KeyedFutures<CrossPowerKey, CrossPower> crossPowerMap = new KeyedFutures<>();
+        KeyedFutures<ChannelKey, PulseDetectionData> pulseDetectionMap = new KeyedFutures<>();
+
+        List<MetricWrapper> wrappers = Global.getMetrics();
+        trace.setMetricCount(wrappers.size());
+        List<Callable<MetricResult>> computations = new ArrayList<>();
+        for (int i = 0; i < wrappers.size(); i++) {
+          MetricWrapper wrapper = wrappers.get(i);
+          int index = i;
+          computations.add(
+              () -> computeMetric(wrapper, crossPowerMap, pulseDetectionMap, trace, index));
+        }
 
-          MetricResult results = metric.getMetricResult();
+        // Store results in the configured metric order, stopping at the first
+        // failed metric as the previous one at a time loop did.
+        List<Future<MetricResult>> finished = manager.compute(computations);
+        trace.setPsds(crossPowerMap.getComputations(),
+            crossPowerMap.getRequests() - crossPowerMap.getComputations());
+        for (Future<MetricResult> computation : finished) {
+          MetricResult results = getResult(computation);
           if (results != null) {
             if (manager.database.isConnected()) {
-              manager.database.insertMetricData(results);
+              manager.metricWriter.write(databaseScan.scanID, results);
             }
           }
         } // end loop over metrics
+        ScanMetrics.getInstance().increment(ScanMetrics.Count.STATION_DAYS);
       }
       // Insert Next Day task
       if (currentDate.plusDays(1).compareTo(databaseScan.endDate) <= 0) {
         manager.addTask(
             new StationScan(this.manager, this.databaseScan, currentDate.plusDays(1),
-                this.nextMetricData));
+                this.nextMetricData, followingMetadataLoad, followingDayLoad));
+        followingMetadataLoad = null;
+        followingDayLoad = null;
+        nextDayAdded = true;
       } else {
-        // We have finished this station
-        manager.database.finishScan(databaseScan.scanID);
+        // We have finished this station, once its results are written
+        manager.metricWriter.finishScan(databaseScan.scanID);
       }
 
     } catch (Exception e) {
+      trace.setOutcome("failed");
+      ScanMetrics.getInstance().increment(ScanMetrics.Count.STATION_DAY_FAILURES);
       String message = "Scan Date: " + this.currentDate + "\n" + Logging.prettyExceptionWithCause(e);
       logger.error(message);
       manager.database
           .insertScanMessage(databaseScan.parentScanID, station.getNetwork(), station.getStation(),
               null, null, null, message);
+      abandonScan();
     } finally {
       // Cleanup
+      if (!nextDayAdded) {
+        manager.database.releaseMetricValueDigests(databaseScan.scanID);
+      }
 
       // Release the previous day since we are done with it.
       if (currentMetricData != null) {
-        if (currentMetricData.getPreviousMetricData() != null) {
-          currentMetricData.getPreviousMetricData().setNextMetricDataToNull();
-        }
-        currentMetricData.setPreviousMetricDataToNull();
+        currentMetricData.releasePreviousMetricData();
+      }
+
+      // Loads for a following day that will not be scanned
+      if (followingMetadataLoad != null) {
+        followingMetadataLoad.cancel(false);
+      }
+      if (followingDayLoad != null) {
+        followingDayLoad.cancel(false);
       }
 
       currentMetricData = null;
       nextMetricData = null;
       previousMetricData = null;
+      followingMetadataLoad = null;
+      followingDayLoad = null;
+
+      trace.finish();
+      manager.recordTrace(trace);
+    }
+  }
+
+  /**
+   * Compute a single metric of this station day.
+   *
+   * @param wrapper the configured metric
+   * @param crossPowerMap the day's shared cross powers
+   * @param pulseDetectionMap the day's shared pulse detections
+   * @param trace the station day's trace
+   * @param index the metric's position in the configured metrics
+   * @return the metric's result, may be null
+   * @throws Exception if the metric could not be created or failed
+   */
+  private MetricResult computeMetric(MetricWrapper wrapper,
+      KeyedFutures<CrossPowerKey, CrossPower> crossPowerMap,
+      KeyedFutures<ChannelKey, PulseDetectionData> pulseDetectionMap, StationDayTrace trace,
+      int index) throws Exception {
+    Metric metric = wrapper.getNewInstance();
+    metric.setBaseOutputDir(Global.getPlotsDir());
+
+    if (currentMetricData == null) {
+      metric.setData(new MetricData(manager.database, currentMetadata));
+    } else {
+      metric.setData(currentMetricData);
+    }
+    if (eventCMTs != null) {
+      metric.setEventTable(eventCMTs);
+      if (eventSynthetics != null) {
+        metric.setEventSynthetics(eventSynthetics);
+      }
+    }
+
+    metric.setCrossPowerMap(crossPowerMap);
+    if (metric instanceof PulseDetectionMetric) {
+      ((PulseDetectionMetric) metric).setPulseDetectionData(pulseDetectionMap);
+    }
+
+    long start = System.nanoTime();
+    try {
+      metric.process();
+    } finally {
+      long nanos = System.nanoTime() - start;
+      ScanMetrics.getInstance().metric(metric.getClass().getSimpleName()).record(nanos);
+      trace.setMetric(index, metric.getName(), nanos);
+    }
+    return metric.getMetricResult();
+  }
+
+  /**
+   * Wait for a metric computation and rethrow its failure as if it had run in this thread.
+   *
+   * @param computation the finished computation
+   * @return the metric's result, may be null
+   * @throws Exception the exception thrown by the metric
+   */
+  private static MetricResult getResult(Future<MetricResult> computation) throws Exception {
+    try {
+      return computation.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw (Error) e.getCause();
     }
   }
 
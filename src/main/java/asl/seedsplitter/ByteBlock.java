@@ -19,6 +19,8 @@
 
 package asl.seedsplitter;
 
+import java.nio.ByteBuffer;
+
 /**
  * @author Joel Edwards
  * 
@@ -26,6 +28,7 @@ package asl.seedsplitter;
  */
 public class ByteBlock {
 	private byte[] m_data = null;
+	private ByteBuffer m_buffer = null;
 	private int m_skippedBytes = 0;
 	private boolean m_fileEnd = false;
 	private boolean m_lastBlock = false;
@@ -91,6 +94,21 @@ public class ByteBlock {
 		init(data, length, skipped, fileEnd, isLast);
 	}
 
+	/**
+	 * Constructor for a record which is already held in a buffer, such as a
+	 * slice of a memory mapped file. The record is not copied.
+	 * 
+	 * @param record
+	 *            Buffer holding exactly one record between its position and
+	 *            limit.
+	 * @param skipped
+	 *            Number of bytes skipped when reading data.
+	 */
+	public ByteBlock(ByteBuffer record, int skipped) {
+		m_buffer = record;
+		m_skippedBytes = skipped;
+	}
+
 	/**
 	 * Hidden initializer called by all constructors.
 	 * 
@@ -119,18 +137,35 @@ public class ByteBlock {
 	/**
 	 * Returns the data buffer.
 	 * 
-	 * @return The data buffer.
+	 * @return The data buffer, or null if this block wraps a
+	 *         {@link ByteBuffer}.
 	 */
 	public byte[] getData() {
 		return m_data;
 	}
 
+	/**
+	 * Returns the data as a buffer without copying it.
+	 * 
+	 * @return A buffer positioned at the start of the data, or null if there
+	 *         is no data.
+	 */
+	public ByteBuffer getBuffer() {
+		if (m_buffer != null) {
+			return m_buffer;
+		}
+		return (m_data == null) ? null : ByteBuffer.wrap(m_data);
+	}
+
 	/**
 	 * Returns the length of the buffer.
 	 * 
 	 * @return The length of the buffer.
 	 */
 	public int getLength() {
+		if (m_buffer != null) {
+			return m_buffer.remaining();
+		}
 		return (m_data == null) ? 0 : m_data.length;
 
 	}
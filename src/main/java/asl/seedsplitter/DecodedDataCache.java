@@ -0,0 +1,580 @@
+package asl.seedsplitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import seed.Blockette320;
+
+/**
+ * An on disk cache of the decoded output of a {@link SeedSplitter} run, one
+ * file per station day.
+ *
+ * Each cache file starts with a directory describing the source files it was
+ * built from, the quality flags in effect and the shape of every table,
+ * followed by the columns: every DataSet series as raw ints, then the timing
+ * quality values, then the 64 byte Blockette320 entries. A cache file is only
+ * used while the name, size and modification time of every source file still
+ * match. Loading memory maps the file and reads the series straight into the
+ * DataSet blocks.
+ *
+ * The total size of the cache directory is bounded. The cache files and their
+ * sizes are listed once when the cache is created, oldest modification time
+ * first, and kept in least recently used order from then on. Every hit
+ * refreshes the modification time of the cache file, and the least recently
+ * used files are deleted once the bound is exceeded. The directory is only
+ * listed again when over the bound, to pick up files written by other
+ * processes sharing it.
+ */
+public class DecodedDataCache {
+	private static final Logger logger = LoggerFactory
+			.getLogger(asl.seedsplitter.DecodedDataCache.class);
+
+	/** "SSDC" */
+	private static final int MAGIC = 0x53534443;
+	private static final int VERSION = 1;
+	private static final int CAL_SIZE = 64;
+	private static final String SUFFIX = ".cache";
+
+	private File m_directory = null;
+	private long m_maxBytes = 0;
+	/** Size of each cache file, least recently used first. */
+	private LinkedHashMap<File, Long> m_index = new LinkedHashMap<>(16,
+			0.75f, true);
+	/** Total size of the files in m_index. */
+	private long m_totalBytes = 0;
+
+	/**
+	 * The decoded tables of one station day, as produced by the
+	 * {@link SeedSplitter}.
+	 */
+	public static class Entry {
+		private Hashtable<String, ArrayList<DataSet>> m_table;
+		private Hashtable<String, ArrayList<Integer>> m_qualityTable;
+		private Hashtable<String, ArrayList<Blockette320>> m_calTable;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param table
+		 *            The DataSets of each channel.
+		 * @param qualityTable
+		 *            The timing quality values of each channel.
+		 * @param calTable
+		 *            The calibration blockettes of each channel.
+		 */
+		public Entry(Hashtable<String, ArrayList<DataSet>> table,
+				Hashtable<String, ArrayList<Integer>> qualityTable,
+				Hashtable<String, ArrayList<Blockette320>> calTable) {
+			m_table = table;
+			m_qualityTable = qualityTable;
+			m_calTable = calTable;
+		}
+
+		public Hashtable<String, ArrayList<DataSet>> getTable() {
+			return m_table;
+		}
+
+		public Hashtable<String, ArrayList<Integer>> getQualityTable() {
+			return m_qualityTable;
+		}
+
+		public Hashtable<String, ArrayList<Blockette320>> getCalTable() {
+			return m_calTable;
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param directory
+	 *            The directory holding the cache files. It is created if it
+	 *            does not exist.
+	 * @param maxBytes
+	 *            The maximum total size of the cache files.
+	 */
+	public DecodedDataCache(File directory, long maxBytes) {
+		m_directory = directory;
+		m_maxBytes = maxBytes;
+		synchronized (this) {
+			List<File> cacheFiles = listFiles();
+			if (cacheFiles != null) {
+				for (File file : cacheFiles) {
+					long length = file.length();
+					m_index.put(file, length);
+					m_totalBytes += length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the cache file of a station day.
+	 *
+	 * @param network
+	 *            The network code.
+	 * @param station
+	 *            The station code.
+	 * @param date
+	 *            The day.
+	 * @return The cache file, which may not exist.
+	 */
+	File getFile(String network, String station, LocalDate date) {
+		return new File(new File(m_directory, network + "_" + station),
+				String.format("%04d_%03d%s", date.getYear(), date.getDayOfYear(),
+						SUFFIX));
+	}
+
+	/**
+	 * Loads a station day from the cache.
+	 *
+	 * @param network
+	 *            The network code.
+	 * @param station
+	 *            The station code.
+	 * @param date
+	 *            The day.
+	 * @param files
+	 *            The miniSEED files of the day.
+	 * @param qualityFlags
+	 *            The record quality flags the data is split with.
+	 * @return The cached tables, or null if the day is not cached or the
+	 *         source files have changed since it was cached.
+	 */
+	public Entry load(String network, String station, LocalDate date,
+			File[] files, String qualityFlags) {
+		File cacheFile = getFile(network, station, date);
+		if (!cacheFile.isFile()) {
+			forget(cacheFile);
+			return null;
+		}
+		Entry entry = null;
+		try (FileChannel channel = FileChannel.open(cacheFile.toPath(),
+				StandardOpenOption.READ)) {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+			entry = read(map, sourceKey(files, qualityFlags));
+		} catch (IOException | BufferUnderflowException
+				| IllegalArgumentException | IllegalSampleRateException e) {
+			logger.warn("Discarding unreadable cache file {}: {}", cacheFile,
+					e.toString());
+		}
+		if (entry == null) {
+			if (!cacheFile.delete()) {
+				logger.warn("Unable to delete stale cache file {}", cacheFile);
+			}
+			forget(cacheFile);
+			return null;
+		}
+		if (!cacheFile.setLastModified(System.currentTimeMillis())) {
+			logger.debug("Unable to touch cache file {}", cacheFile);
+		}
+		synchronized (this) {
+			if (m_index.get(cacheFile) == null) {
+				// Written by another process sharing the directory
+				long length = cacheFile.length();
+				m_index.put(cacheFile, length);
+				m_totalBytes += length;
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Stores a station day in the cache, replacing any earlier copy, and then
+	 * evicts the least recently used days if the cache is over its size.
+	 *
+	 * @param network
+	 *            The network code.
+	 * @param station
+	 *            The station code.
+	 * @param date
+	 *            The day.
+	 * @param files
+	 *            The miniSEED files the tables were split from.
+	 * @param qualityFlags
+	 *            The record quality flags the data was split with.
+	 * @param entry
+	 *            The tables to store.
+	 */
+	public void store(String network, String station, LocalDate date,
+			File[] files, String qualityFlags, Entry entry) {
+		File cacheFile = getFile(network, station, date);
+		Path temp = null;
+		try {
+			byte[] directory = directory(sourceKey(files, qualityFlags), entry);
+			// Pad so the columns start on an 8 byte boundary
+			long columnsStart = (12L + directory.length + 7) & ~7L;
+			long size = columnsStart + columnsSize(entry);
+			if (size > Integer.MAX_VALUE || size > m_maxBytes) {
+				logger.info("Not caching {}_{} {}: {} bytes is too large", network,
+						station, date, size);
+				return;
+			}
+
+			Files.createDirectories(cacheFile.getParentFile().toPath());
+			temp = Files.createTempFile(cacheFile.getParentFile().toPath(),
+					cacheFile.getName(), ".tmp");
+			try (FileChannel channel = FileChannel.open(temp,
+					StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE,
+						0, size);
+				map.putInt(MAGIC);
+				map.putInt(VERSION);
+				map.putInt(directory.length);
+				map.put(directory);
+				map.position((int) columnsStart);
+				writeColumns(map, entry);
+			}
+			synchronized (this) {
+				Files.move(temp, cacheFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				temp = null;
+				Long replaced = m_index.put(cacheFile, size);
+				m_totalBytes += size - (replaced == null ? 0 : replaced);
+			}
+		} catch (IOException e) {
+			logger.error("Unable to write cache file {}:", cacheFile, e);
+		} finally {
+			if (temp != null) {
+				temp.toFile().delete();
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * Drops a cache file that no longer exists from the index.
+	 *
+	 * @param cacheFile
+	 *            The cache file.
+	 */
+	private synchronized void forget(File cacheFile) {
+		Long length = m_index.remove(cacheFile);
+		if (length != null) {
+			m_totalBytes -= length;
+		}
+	}
+
+	/**
+	 * Lists the cache files on disk.
+	 *
+	 * @return The cache files, oldest modification time first, or null if the
+	 *         directory cannot be listed.
+	 */
+	private List<File> listFiles() {
+		if (!m_directory.isDirectory()) {
+			return new ArrayList<>();
+		}
+		try (Stream<Path> paths = Files.walk(m_directory.toPath(), 2)) {
+			return paths.map(Path::toFile)
+					.filter(file -> file.isFile() && file.getName().endsWith(SUFFIX))
+					.sorted(Comparator.comparingLong(File::lastModified))
+					.collect(Collectors.toList());
+		} catch (IOException | RuntimeException e) {
+			logger.error("Unable to list cache directory {}:", m_directory, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Deletes the least recently used cache files until the cache is within
+	 * its maximum size. Nothing is read from disk while the cache is within
+	 * its size.
+	 */
+	synchronized void evict() {
+		if (m_totalBytes <= m_maxBytes) {
+			return;
+		}
+		resync();
+		Iterator<Map.Entry<File, Long>> iterator = m_index.entrySet().iterator();
+		while (m_totalBytes > m_maxBytes && iterator.hasNext()) {
+			Map.Entry<File, Long> indexed = iterator.next();
+			File file = indexed.getKey();
+			if (file.delete() || !file.exists()) {
+				logger.debug("Evicted cache file {}", file);
+				m_totalBytes -= indexed.getValue();
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Brings the index up to date with the directory, which other processes
+	 * may share. Files not yet indexed are taken as the least recently used,
+	 * files that are gone are dropped, and the order of the others is kept.
+	 */
+	private void resync() {
+		List<File> cacheFiles = listFiles();
+		if (cacheFiles == null) {
+			return;
+		}
+		LinkedHashMap<File, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+		Set<File> onDisk = new HashSet<>(cacheFiles);
+		long total = 0;
+		for (File file : cacheFiles) {
+			if (!m_index.containsKey(file)) {
+				long length = file.length();
+				index.put(file, length);
+				total += length;
+			}
+		}
+		for (File file : m_index.keySet()) {
+			if (onDisk.contains(file)) {
+				long length = file.length();
+				index.put(file, length);
+				total += length;
+			}
+		}
+		m_index = index;
+		m_totalBytes = total;
+	}
+
+	/**
+	 * Describes the inputs that the cached tables were built from. The cache
+	 * file is valid only while this is unchanged.
+	 *
+	 * @param files
+	 *            The miniSEED files.
+	 * @param qualityFlags
+	 *            The record quality flags.
+	 * @return One line per file plus the quality flags.
+	 */
+	public static String sourceKey(File[] files, String qualityFlags) {
+		File[] sorted = files.clone();
+		Arrays.sort(sorted);
+		StringBuilder key = new StringBuilder(qualityFlags);
+		for (File file : sorted) {
+			key.append('\n').append(file.getAbsolutePath()).append(' ')
+					.append(file.length()).append(' ').append(file.lastModified());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Builds the directory of a cache file.
+	 *
+	 * @param sourceKey
+	 *            The source key from {@link #sourceKey(File[], String)}.
+	 * @param entry
+	 *            The tables to describe.
+	 * @return The serialized directory.
+	 * @throws IOException
+	 *             if the directory cannot be serialized.
+	 */
+	private static byte[] directory(String sourceKey, Entry entry)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			byte[] key = sourceKey.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(key.length);
+			out.write(key);
+
+			out.writeInt(entry.getTable().size());
+			for (Map.Entry<String, ArrayList<DataSet>> channel : entry.getTable()
+					.entrySet()) {
+				out.writeUTF(channel.getKey());
+				out.writeInt(channel.getValue().size());
+				for (DataSet dataSet : channel.getValue()) {
+					out.writeUTF(dataSet.getNetwork());
+					out.writeUTF(dataSet.getStation());
+					out.writeUTF(dataSet.getLocation());
+					out.writeUTF(dataSet.getChannel());
+					out.writeLong(dataSet.getStartTime());
+					out.writeDouble(dataSet.getSampleRate());
+					out.writeInt(dataSet.getLength());
+				}
+			}
+
+			out.writeInt(entry.getQualityTable().size());
+			for (Map.Entry<String, ArrayList<Integer>> channel : entry
+					.getQualityTable().entrySet()) {
+				out.writeUTF(channel.getKey());
+				out.writeInt(channel.getValue().size());
+			}
+
+			out.writeInt(entry.getCalTable().size());
+			for (Map.Entry<String, ArrayList<Blockette320>> channel : entry
+					.getCalTable().entrySet()) {
+				out.writeUTF(channel.getKey());
+				out.writeInt(channel.getValue().size());
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Returns the size of the columns that follow the directory.
+	 *
+	 * @param entry
+	 *            The tables.
+	 * @return The size in bytes.
+	 */
+	private static long columnsSize(Entry entry) {
+		long size = 0;
+		for (ArrayList<DataSet> dataSets : entry.getTable().values()) {
+			for (DataSet dataSet : dataSets) {
+				size += 4L * dataSet.getLength();
+			}
+		}
+		for (ArrayList<Integer> qualities : entry.getQualityTable().values()) {
+			size += 4L * qualities.size();
+		}
+		for (ArrayList<Blockette320> blockettes : entry.getCalTable().values()) {
+			size += (long) CAL_SIZE * blockettes.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Writes the columns in the order of the directory.
+	 *
+	 * @param map
+	 *            The cache file, positioned at the start of the columns.
+	 * @param entry
+	 *            The tables.
+	 */
+	private static void writeColumns(ByteBuffer map, Entry entry) {
+		for (ArrayList<DataSet> dataSets : entry.getTable().values()) {
+			for (DataSet dataSet : dataSets) {
+				IntBuffer ints = map.asIntBuffer();
+				dataSet.copyTo(ints);
+				map.position(map.position() + 4 * ints.position());
+			}
+		}
+		for (ArrayList<Integer> qualities : entry.getQualityTable().values()) {
+			for (Integer quality : qualities) {
+				map.putInt(quality);
+			}
+		}
+		for (ArrayList<Blockette320> blockettes : entry.getCalTable().values()) {
+			for (Blockette320 blockette : blockettes) {
+				map.put(Arrays.copyOf(blockette.getBytes(), CAL_SIZE));
+			}
+		}
+	}
+
+	/**
+	 * Reads a cache file.
+	 *
+	 * @param map
+	 *            The mapped cache file.
+	 * @param sourceKey
+	 *            The source key of the current files.
+	 * @return The tables, or null if the file is from another format version
+	 *         or the source files have changed.
+	 * @throws IllegalSampleRateException
+	 *             if a cached sample rate is invalid.
+	 */
+	private static Entry read(ByteBuffer map, String sourceKey)
+			throws IllegalSampleRateException {
+		if (map.getInt() != MAGIC || map.getInt() != VERSION) {
+			return null;
+		}
+		int directoryLength = map.getInt();
+		long columnsStart = (12L + directoryLength + 7) & ~7L;
+
+		byte[] key = new byte[map.getInt()];
+		map.get(key);
+		if (!sourceKey.equals(new String(key, StandardCharsets.UTF_8))) {
+			return null;
+		}
+
+		ByteBuffer columns = map.duplicate();
+		columns.position((int) columnsStart);
+
+		Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+		int channels = map.getInt();
+		for (int i = 0; i < channels; i++) {
+			String channel = readUTF(map);
+			int count = map.getInt();
+			ArrayList<DataSet> dataSets = new ArrayList<>(count);
+			for (int j = 0; j < count; j++) {
+				DataSet dataSet = new DataSet();
+				dataSet.setNetwork(readUTF(map));
+				dataSet.setStation(readUTF(map));
+				dataSet.setLocation(readUTF(map));
+				dataSet.setChannel(readUTF(map));
+				dataSet.setStartTime(map.getLong());
+				dataSet.setSampleRate(map.getDouble());
+				int length = map.getInt();
+				IntBuffer ints = columns.asIntBuffer();
+				dataSet.extend(ints, length);
+				columns.position(columns.position() + 4 * length);
+				dataSet.freezeDigest();
+				dataSets.add(dataSet);
+			}
+			table.put(channel, dataSets);
+		}
+
+		Hashtable<String, ArrayList<Integer>> qualityTable = new Hashtable<>();
+		channels = map.getInt();
+		for (int i = 0; i < channels; i++) {
+			String channel = readUTF(map);
+			int count = map.getInt();
+			ArrayList<Integer> qualities = new ArrayList<>(count);
+			for (int j = 0; j < count; j++) {
+				qualities.add(columns.getInt());
+			}
+			qualityTable.put(channel, qualities);
+		}
+
+		Hashtable<String, ArrayList<Blockette320>> calTable = new Hashtable<>();
+		channels = map.getInt();
+		for (int i = 0; i < channels; i++) {
+			String channel = readUTF(map);
+			int count = map.getInt();
+			ArrayList<Blockette320> blockettes = new ArrayList<>(count);
+			for (int j = 0; j < count; j++) {
+				byte[] bytes = new byte[CAL_SIZE];
+				columns.get(bytes);
+				blockettes.add(new Blockette320(bytes));
+			}
+			calTable.put(channel, blockettes);
+		}
+
+		return new Entry(table, qualityTable, calTable);
+	}
+
+	/**
+	 * Reads a string written by {@link DataOutputStream#writeUTF(String)}.
+	 * Cached names are plain ASCII, so modified UTF-8 decodes as UTF-8.
+	 *
+	 * @param buffer
+	 *            The buffer positioned at the string.
+	 * @return The string.
+	 */
+	private static String readUTF(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
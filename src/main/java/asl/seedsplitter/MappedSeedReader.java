@@ -0,0 +1,157 @@
+package asl.seedsplitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import asl.seedscan.Global;
+import seed.BlockSizeException;
+import seed.IllegalSeednameException;
+import seed.MiniSeedView;
+
+/**
+ * Reads MiniSEED records from a memory mapped file, and pushes them into a
+ * queue to be processed by a {@link SeedSplitProcessor}.
+ *
+ * Each queued {@link ByteBlock} wraps a slice of the mapping, so records are
+ * never copied onto the heap. Records are located and filtered with the same
+ * rules as {@link SeedInputStream}. Unlike SeedInputStream, no MD5 digest of
+ * the whole file is kept: nothing ever read it, and the digests stored with
+ * metric values are computed from the decoded data.
+ */
+public class MappedSeedReader implements Runnable {
+	private static final Logger logger = LoggerFactory
+			.getLogger(asl.seedsplitter.MappedSeedReader.class);
+
+	private static final int MAX_RECORD_SIZE = 16384;
+	private static final int BLOCK_SIZE = 256;
+
+	/** Largest region mapped at once. Station day files are far smaller. */
+	private static final long MAP_WINDOW = 1L << 30;
+
+	private File m_file = null;
+	private LinkedBlockingQueue<ByteBlock> m_queue = null;
+	private volatile boolean m_running = false;
+	private boolean m_indicateLast = true;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            The file from which to read MiniSEED records.
+	 * @param queue
+	 *            The processing queue into which the MiniSEED records are
+	 *            placed.
+	 * @param indicateLast
+	 *            An indicator of whether this is the last record for this
+	 *            stream.
+	 */
+	public MappedSeedReader(File file, LinkedBlockingQueue<ByteBlock> queue,
+			boolean indicateLast) {
+		m_file = file;
+		m_queue = queue;
+		m_indicateLast = indicateLast;
+	}
+
+	/**
+	 * Stops reading after the current record. The thread running this reader
+	 * should be interrupted if it may be waiting on a full queue.
+	 */
+	public void halt() {
+		m_running = false;
+	}
+
+	/**
+	 * Maps the file, walks it a record at a time and pushes each record's
+	 * slice into the queue for processing.
+	 */
+	@Override
+	public void run() {
+		m_running = true;
+		List<String> qualityFlags = Arrays.asList(Global.getQualityflags()
+				.split(","));
+		try (FileChannel channel = FileChannel.open(m_file.toPath(),
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			long mapStart = 0;
+			long mapEnd = 0;
+			MappedByteBuffer map = null;
+			int skippedBytes = 0;
+
+			while (m_running && position + BLOCK_SIZE <= size) {
+				long needed = Math.min(MAX_RECORD_SIZE, size - position);
+				if (map == null || position + needed > mapEnd) {
+					mapStart = position;
+					mapEnd = Math.min(size, position + MAP_WINDOW);
+					map = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+							mapEnd - mapStart);
+				}
+				int offset = (int) (position - mapStart);
+				map.limit(map.capacity());
+				map.position(offset);
+
+				int indicator = map.get(offset + 6) & 0xFF;
+				// Restrict the data to the allowed quality flags. Typically
+				// 'D' 'M' 'Q' 'R'
+				if (!qualityFlags.contains("All")
+						&& !qualityFlags.contains(String.valueOf((char) indicator))) {
+					logger.error(String.format("Skipping bad indicator: 0x%x",
+							indicator));
+					skippedBytes += BLOCK_SIZE;
+					position += BLOCK_SIZE;
+					continue;
+				}
+
+				int recordLength;
+				try {
+					recordLength = MiniSeedView.crackBlockSize(map);
+				} catch (IllegalSeednameException | BlockSizeException e) {
+					logger.debug("Invalid Format, Skipping Chunk.");
+					logger.error(e.getMessage());
+					skippedBytes += BLOCK_SIZE;
+					position += BLOCK_SIZE;
+					continue;
+				}
+				if (recordLength < BLOCK_SIZE || recordLength > MAX_RECORD_SIZE) {
+					logger.error("Unsupported record length {} in {}, Skipping Chunk.",
+							recordLength, m_file.getName());
+					skippedBytes += BLOCK_SIZE;
+					position += BLOCK_SIZE;
+					continue;
+				}
+				if (position + recordLength > size) {
+					logger.debug("Truncated record at end of {}", m_file.getName());
+					break;
+				}
+
+				map.limit(offset + recordLength);
+				ByteBuffer record = map.slice();
+				m_queue.put(new ByteBlock(record, skippedBytes));
+				skippedBytes = 0;
+				position += recordLength;
+			}
+		} catch (IOException e) {
+			logger.error("IOException:", e);
+		} catch (InterruptedException e) {
+			logger.error("InterruptedException:", e);
+			return;
+		}
+
+		logger.debug("MappedSeedReader Thread> I think we're done here...");
+		try {
+			m_queue.put(new ByteBlock(null, 0, true, m_indicateLast));
+		} catch (InterruptedException e) {
+			logger.error("InterruptedException:", e);
+		}
+	}
+}
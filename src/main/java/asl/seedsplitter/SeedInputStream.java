@@ -34,7 +34,7 @@ public class SeedInputStream implements Runnable {
 
 	private DataInputStream m_inputStream = null;
 	private LinkedBlockingQueue<ByteBlock> m_queue = null;
-	private boolean m_running = false;
+	private volatile boolean m_running = false;
 	private byte[] m_buffer = null;
 	private int m_bufferBytes = 0;
 	private int m_skippedBytes = 0;
@@ -107,6 +107,14 @@ public class SeedInputStream implements Runnable {
 		return result;
 	}
 
+	/**
+	 * Stops reading after the current chunk. The thread running this stream
+	 * should be interrupted if it may be waiting on a full queue.
+	 */
+	public void halt() {
+		m_running = false;
+	}
+
 	/**
 	 * Reads data from the input stream, assembles full SEED records and pushes
 	 * them into the queue for processing.
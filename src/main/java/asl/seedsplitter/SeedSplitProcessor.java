@@ -2,6 +2,7 @@ package asl.seedsplitter;
 
 import asl.util.Time;
 import edu.iris.dmc.seedcodec.SteimException;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Hashtable;
@@ -15,7 +16,7 @@ import org.slf4j.LoggerFactory;
 import seed.BlockSizeException;
 import seed.Blockette320;
 import seed.IllegalSeednameException;
-import seed.MiniSeed;
+import seed.MiniSeedView;
 
 /**
  * @author Joel D. Edwards
@@ -32,7 +33,7 @@ public class SeedSplitProcessor implements Runnable {
 			.getLogger(asl.seedsplitter.SeedSplitProcessor.class);
 
 	private LinkedBlockingQueue<ByteBlock> m_queue;
-	private boolean m_running;
+	private volatile boolean m_running;
 	private Hashtable<String, TreeSet<DataSet>> m_trees = null;
 	private Hashtable<String, ArrayList<DataSet>> m_table = null;
 
@@ -45,6 +46,10 @@ public class SeedSplitProcessor implements Runnable {
 	private Pattern m_patternLocation = null;
 	private Pattern m_patternChannel = null;
 
+	/** Bytes and MiniSEED records taken from the queue, set once run ends. */
+	private volatile long m_byteCount = 0;
+	private volatile int m_recordCount = 0;
+
 	/**
 	 * Constructor.
 	 * 
@@ -129,6 +134,58 @@ public class SeedSplitProcessor implements Runnable {
 		return m_calTable;
 	}
 
+	/**
+	 * Get the number of bytes received, including those skipped by the
+	 * reader. Only complete once processing has finished.
+	 * 
+	 * @return The number of bytes received.
+	 */
+	public long getByteCount() {
+		return m_byteCount;
+	}
+
+	/**
+	 * Get the number of MiniSEED records received, kept or discarded by the
+	 * filters. Only complete once processing has finished.
+	 * 
+	 * @return The number of records received.
+	 */
+	public int getRecordCount() {
+		return m_recordCount;
+	}
+
+	/**
+	 * Stops processing after the current record. The thread running this
+	 * processor should be interrupted if it may be waiting on the queue.
+	 */
+	public void halt() {
+		m_running = false;
+	}
+
+	/**
+	 * Replaces the blank and high resolution location codes with the default
+	 * codes used in channel keys.
+	 * 
+	 * @param channel
+	 *            The channel name, used for logging only.
+	 * @param location
+	 *            The trimmed location code from the MiniSEED header.
+	 * @return The location code used for this record's channel key.
+	 */
+	static String normalizeLocation(String channel, String location) {
+		if (location == null || location.equals("--") || location.equals("")) {
+			logger.debug("miniseed channel=[{}] location=[{}] was changed to [00]",
+					channel, location);
+			return "00";
+		}
+		if (location.equals("HR")) {
+			logger.debug("miniseed channel=[{}] location=[{}] was changed to [10]",
+					channel, location);
+			return "10";
+		}
+		return location;
+	}
+
 	private volatile int lastSequenceNumber = 0;
 
 	/**
@@ -139,7 +196,7 @@ public class SeedSplitProcessor implements Runnable {
 	public void run() {
 
 		ByteBlock block = null;
-		MiniSeed record = null;
+		MiniSeedView record = null;
 		DataSet tempData = null;
 
 		String network = null;
@@ -151,8 +208,9 @@ public class SeedSplitProcessor implements Runnable {
 
 		long startTime = 0;
 
-		byte[] recordBytes = null;
-		int[] samples = null;
+		ByteBuffer recordBuffer = null;
+		// Decodes each record's samples straight into its DataSet
+		SteimDecoder decoder = new SteimDecoder();
 
 		String seedstring = null;
 		// total number of bytes that have been received from the queue
@@ -178,15 +236,16 @@ public class SeedSplitProcessor implements Runnable {
 					byteTotal += block.getLength();
 					byteTotal += block.getSkippedBytes();
 					progress = new SeedSplitProgress(byteTotal);
-					recordBytes = block.getData();
+					recordBuffer = block.getBuffer();
 					if (block.isLast()) {
 						m_running = false;
 					} else if (block.isEnd()) {
 						progress.setFileDone(true);
-					} else if (MiniSeed.crackIsHeartBeat(recordBytes)) {
+					} else if (MiniSeedView.isHeartBeat(recordBuffer)) {
 						logger.debug("Found HEARTBEAT record!");
 					} else { // MTH
-						seedstring = MiniSeed.crackSeedname(recordBytes);
+						record = new MiniSeedView(recordBuffer);
+						seedstring = record.getSeedName();
 						network = seedstring.substring(0, 2).trim();
 						if (m_patternNetwork != null) {
 							matcher = m_patternNetwork.matcher(network);
@@ -221,24 +280,13 @@ public class SeedSplitProcessor implements Runnable {
 						}
 
 						// Set the default location codes
-						if (location.equals("--") || location.equals("")
-								|| location == null) {
-							logger.debug("miniseed channel=[{}] location=[{}] was changed to [00]",
-											channel, location);
-							location = "00";
-						}
-						if (location.equals("HR")) {
-							logger.debug("miniseed channel=[{}] location=[{}] was changed to [10]",
-											channel, location);
-							location = "10";
-						}
+						location = normalizeLocation(channel, location);
 
-						sampleRate = MiniSeed.crackRate(recordBytes);
+						sampleRate = record.getRate();
 						try {
 							interval = DataSet.sampleRateToInterval(sampleRate);
 						} catch (IllegalSampleRateException e) {
-							MiniSeed ms = new MiniSeed(recordBytes);
-							logger.error("Illegal Sample Rate: sequence #{}, rate = {}", ms.getSequence(), sampleRate);
+							logger.error("Illegal Sample Rate: sequence #{}, rate = {}", record.getSequence(), sampleRate);
 							discarded++;
 							break progress;
 						}
@@ -254,11 +302,11 @@ public class SeedSplitProcessor implements Runnable {
 							recordCounts.put(key, recordCounts.get(key) + 1);
 						}
 
-						int year = MiniSeed.crackYear(recordBytes);
-						int doy = MiniSeed.crackDOY(recordBytes);
+						int year = record.getYear();
+						int doy = record.getDoy();
 
 						/*See SEED manual Chapter 3*/
-						int[] btime = MiniSeed.crackTime(recordBytes);
+						int[] btime = record.getTime();
 
 						LocalDateTime dateTime = Time.btimeToLocalDateTime(year, doy, btime[0], btime[1], btime[2], btime[3]);
 
@@ -293,7 +341,7 @@ public class SeedSplitProcessor implements Runnable {
 							// (VIM-HACK) }
 							replaceDataSet = true;
 						} else {
-							MiniSeed ms = new MiniSeed(recordBytes);
+							MiniSeedView ms = record;
 							if ((startTime - tempData.getEndTime()) < (interval - intervalAdjustment)) {
 								// if ((startTime - tempData.getEndTime()) <
 								// interval) {
@@ -342,19 +390,17 @@ public class SeedSplitProcessor implements Runnable {
 								try {
 									tempData.setSampleRate(sampleRate);
 								} catch (RuntimeException e) {
-									MiniSeed ms = new MiniSeed(recordBytes);
 									logger.error(String.format(
 											"Invalid Start Time: sequence #%d",
-											ms.getSequence()), e.getMessage());
+											record.getSequence()), e.getMessage());
 									tempData = null;
 									break progress;
 								} catch (IllegalSampleRateException e) {
-									MiniSeed ms = new MiniSeed(recordBytes);
 									logger
 											.error(String
 													.format("Invalid Sample Rate: sequence #%d, rate = %f",
-															ms.getSequence(),
-															ms.getRate()), e.getMessage());
+															record.getSequence(),
+															record.getRate()), e.getMessage());
 									tempData = null;
 									break progress;
 								}
@@ -364,13 +410,10 @@ public class SeedSplitProcessor implements Runnable {
 							logger.error("RuntimeException:", e.getMessage());
 						}
 
-						record = new MiniSeed(recordBytes);
-
-						samples = record.decomp();
+						decoder.decode(record, tempData);
 
 						// blockettes = record.getBlockettes();
 						lastSequenceNumber = record.getSequence();
-						tempData.extend(samples, 0, samples.length);
 
 						// MTH: Get timing quality from the current miniseed
 						// block and store it for this key
@@ -427,6 +470,8 @@ public class SeedSplitProcessor implements Runnable {
 				}
 			}
 		}
+		m_byteCount = byteTotal;
+		m_recordCount = kept + discarded;
 		for (String tempKey : temps.keySet()) {
 			tempData = null;
 			tree = null;
@@ -505,6 +550,11 @@ public class SeedSplitProcessor implements Runnable {
 					}
 				}
 				list.add(lastDataSet);
+				// Full blocks were digested while decoding, finish with the
+				// last one so metrics don't hash the data again.
+				for (DataSet dataSet : list) {
+					dataSet.freezeDigest();
+				}
 				m_table.put(chanKey, list);
 			} else {
 				logger.debug("Empty tree for '" + chanKey + "'");
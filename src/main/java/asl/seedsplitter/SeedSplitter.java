@@ -18,11 +18,8 @@
  */
 package asl.seedsplitter;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -34,6 +31,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import seed.Blockette320;
+import seed.MiniSeedView;
 
 /**
  * @author Joel D. Edwards
@@ -54,9 +52,12 @@ public class SeedSplitter extends
 	// along the lines of (file # out of total, byte count out of total, percent
 	// complete)
 	private File[] m_files;
+	private int m_processorCount;
 	private Hashtable<String, ArrayList<DataSet>> m_table;
 	private LinkedBlockingQueue<ByteBlock> m_recordQueue;
 	private SeedSplitProgress m_lastProgress = null;
+	private long m_byteCount = 0;
+	private int m_recordCount = 0;
 
 	private Pattern m_patternNetwork = null;
 	private Pattern m_patternStation = null;
@@ -73,8 +74,9 @@ public class SeedSplitter extends
 	 * @param fileList
 	 *            List of files from which to read in the MiniSEED data.
 	 */
-	private void _construct(File[] fileList) {
+	private void _construct(File[] fileList, int processorCount) {
 		m_files = fileList;
+		m_processorCount = processorCount;
 		m_table = null;
 
 		m_recordQueue = new LinkedBlockingQueue<>(1024);
@@ -90,7 +92,25 @@ public class SeedSplitter extends
 	 */
 	public SeedSplitter(File[] fileList) {
 		super();
-		_construct(fileList);
+		_construct(fileList, 1);
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * If more than one processor is requested the files are read concurrently
+	 * and records are sharded by channel across that many
+	 * {@link SeedSplitProcessor} threads. The resulting tables are identical
+	 * to those produced by a single processor.
+	 * 
+	 * @param fileList
+	 *            List of files from which to read in the MiniSEED data.
+	 * @param processorCount
+	 *            Number of record processing threads to use.
+	 */
+	public SeedSplitter(File[] fileList, int processorCount) {
+		super();
+		_construct(fileList, processorCount);
 	}
 
 	/**
@@ -121,6 +141,27 @@ public class SeedSplitter extends
 		return m_lastProgress;
 	}
 
+	/**
+	 * Get the number of bytes read after the SeedSplitter has finished
+	 * processing all files.
+	 * 
+	 * @return The number of bytes read from the files.
+	 */
+	public long getByteCount() {
+		return m_byteCount;
+	}
+
+	/**
+	 * Get the number of MiniSEED records read after the SeedSplitter has
+	 * finished processing all files, including those discarded by the
+	 * filters.
+	 * 
+	 * @return The number of records read from the files.
+	 */
+	public int getRecordCount() {
+		return m_recordCount;
+	}
+
 	/**
 	 * Overrides the doInBackground method of SwingWorker, launching and
 	 * monitoring two threads which read the files and process MiniSEED Data.
@@ -130,6 +171,9 @@ public class SeedSplitter extends
 	 */
 	@Override
 	public Hashtable<String, ArrayList<DataSet>> doInBackground() {
+		if (m_processorCount > 1 && m_files.length > 1) {
+			return splitParallel();
+		}
 		int progressPercent = 0; // 0 - 100
 		int lastPercent = 0;
 		long totalBytes = 0;
@@ -166,22 +210,22 @@ public class SeedSplitter extends
 			// if (file.length() == 0) {
 			// continue;
 			// }
-			DataInputStream inputStream;
 			Thread inputThread = null;
-			try {
-				inputStream = new DataInputStream(new BufferedInputStream(
-						new FileInputStream(file)));
-				SeedInputStream stream = new SeedInputStream(inputStream,
+			if (file.canRead()) {
+				MappedSeedReader reader = new MappedSeedReader(file,
 						m_recordQueue, finalFile);
-				inputThread = new Thread(stream);
+				inputThread = new Thread(reader);
 				logger.debug("Processing file " + file.getName() + "...");
 				inputThread.start();
-			} catch (FileNotFoundException e) {
-				// logger.debug("File '" +file.getName()+ "' not found\n");
+			} else {
 				String message = "FileNotFoundException: File '"
 						+ file.getName() + "' not found\n";
-				datalogger.error(message, e);
-				// Should we do something more? Throw an exception?
+				datalogger.error(message);
+				if (finalFile) {
+					// The processor would otherwise wait forever for the
+					// last block.
+					m_recordQueue.offer(new ByteBlock(null, 0, true, true));
+				}
 			}
 			m_table = processor.getTable();
 			// MTH:
@@ -204,6 +248,8 @@ public class SeedSplitter extends
 				} catch (InterruptedException e) {
 					datalogger.error("InterruptedException:", e);
 				}
+				m_byteCount = processor.getByteCount();
+				m_recordCount = processor.getRecordCount();
 			}
 			logger.debug("Finished processing file " + file.getName() + "  "
 					+ progressPercent + "% complete");
@@ -213,4 +259,153 @@ public class SeedSplitter extends
 		this.setProgress(100);
 		return m_table;
 	}
+
+	/**
+	 * Reads up to m_processorCount files at a time, each into its own queue,
+	 * and routes their records to processors by channel.
+	 * 
+	 * The files are drained in list order so every channel's records reach
+	 * their processor in the same order as in the serial path. Each processor
+	 * owns a disjoint set of channel keys, so their tables are simply combined
+	 * once all of them have finished.
+	 * 
+	 * @return A hash table containing all of the data acquired from the file
+	 *         list.
+	 */
+	private Hashtable<String, ArrayList<DataSet>> splitParallel() {
+		SeedSplitProcessor[] processors = new SeedSplitProcessor[m_processorCount];
+		Thread[] processorThreads = new Thread[m_processorCount];
+		ArrayList<LinkedBlockingQueue<ByteBlock>> processorQueues = new ArrayList<>(
+				m_processorCount);
+		for (int i = 0; i < m_processorCount; i++) {
+			LinkedBlockingQueue<ByteBlock> queue = new LinkedBlockingQueue<>(1024);
+			processors[i] = new SeedSplitProcessor(queue);
+			processors[i].setNetworkPattern(m_patternNetwork);
+			processors[i].setStationPattern(m_patternStation);
+			processors[i].setLocationPattern(m_patternLocation);
+			processors[i].setChannelPattern(m_patternChannel);
+			processorQueues.add(queue);
+			processorThreads[i] = new Thread(processors[i]);
+			processorThreads[i].start();
+		}
+
+		MappedSeedReader[] readers = new MappedSeedReader[m_files.length];
+		Thread[] inputThreads = new Thread[m_files.length];
+		ArrayList<LinkedBlockingQueue<ByteBlock>> fileQueues = new ArrayList<>(
+				m_files.length);
+		for (int i = 0; i < m_files.length; i++) {
+			fileQueues.add(new LinkedBlockingQueue<>(256));
+		}
+
+		try {
+			int nextReader = 0;
+			for (int i = 0; i < m_files.length; i++) {
+				// Keep up to m_processorCount files being read ahead.
+				while (nextReader < m_files.length
+						&& nextReader < i + m_processorCount) {
+					File file = m_files[nextReader];
+					if (file.canRead()) {
+						readers[nextReader] = new MappedSeedReader(file,
+								fileQueues.get(nextReader), false);
+						inputThreads[nextReader] = new Thread(readers[nextReader]);
+						logger.debug("Processing file " + file.getName() + "...");
+						inputThreads[nextReader].start();
+					} else {
+						String message = "FileNotFoundException: File '"
+								+ file.getName() + "' not found\n";
+						datalogger.error(message);
+					}
+					nextReader++;
+				}
+
+				if (this.isCancelled()) {
+					haltAll(readers, inputThreads, processors, processorThreads);
+					m_table = null;
+					return null;
+				}
+
+				if (inputThreads[i] != null) {
+					LinkedBlockingQueue<ByteBlock> fileQueue = fileQueues.get(i);
+					ByteBlock block = fileQueue.take();
+					while (!block.isEnd()) {
+						processorQueues.get(shardFor(block.getBuffer())).put(block);
+						block = fileQueue.take();
+					}
+					inputThreads[i].join();
+				}
+				logger.debug("Finished processing file " + m_files[i].getName());
+			}
+
+			ByteBlock last = new ByteBlock(null, 0, true, true);
+			for (int i = 0; i < m_processorCount; i++) {
+				processorQueues.get(i).put(last);
+			}
+			for (Thread processorThread : processorThreads) {
+				processorThread.join();
+			}
+		} catch (InterruptedException e) {
+			datalogger.error("InterruptedException:", e);
+			haltAll(readers, inputThreads, processors, processorThreads);
+			m_table = null;
+			return null;
+		}
+
+		Hashtable<String, ArrayList<DataSet>> table = new Hashtable<>();
+		Hashtable<String, ArrayList<Integer>> qualityTable = new Hashtable<>();
+		Hashtable<String, ArrayList<Blockette320>> calTable = new Hashtable<>();
+		for (SeedSplitProcessor processor : processors) {
+			table.putAll(processor.getTable());
+			qualityTable.putAll(processor.getQualityTable());
+			calTable.putAll(processor.getCalTable());
+			m_byteCount += processor.getByteCount();
+			m_recordCount += processor.getRecordCount();
+		}
+		m_table = table;
+		m_qualityTable = qualityTable;
+		m_calTable = calTable;
+
+		logger.debug("All done. Setting progress to 100%");
+		this.setProgress(100);
+		return m_table;
+	}
+
+	/**
+	 * Selects the processor for a record. Records are grouped by network,
+	 * station, normalized location and channel, so every record which could
+	 * share a channel key reaches the same processor.
+	 * 
+	 * @param record
+	 *            The raw MiniSEED record.
+	 * @return The index of the processor which should receive this record.
+	 */
+	private int shardFor(ByteBuffer record) {
+		if (record == null || record.remaining() < 20) {
+			return 0;
+		}
+		String seedstring = new MiniSeedView(record).getSeedName();
+		String channel = seedstring.substring(7, 10).trim();
+		String location = SeedSplitProcessor.normalizeLocation(channel,
+				seedstring.substring(10, 12).trim());
+		String shardKey = seedstring.substring(0, 2).trim() + "_"
+				+ seedstring.substring(2, 7).trim() + " " + location + "-"
+				+ channel;
+		return Math.floorMod(shardKey.hashCode(), m_processorCount);
+	}
+
+	/**
+	 * Stops all readers and processors after a cancellation or interruption.
+	 */
+	private static void haltAll(MappedSeedReader[] readers, Thread[] inputThreads,
+			SeedSplitProcessor[] processors, Thread[] processorThreads) {
+		for (int i = 0; i < readers.length; i++) {
+			if (readers[i] != null) {
+				readers[i].halt();
+				inputThreads[i].interrupt();
+			}
+		}
+		for (int i = 0; i < processors.length; i++) {
+			processors[i].halt();
+			processorThreads[i].interrupt();
+		}
+	}
 }
@@ -1,6 +1,9 @@
 package asl.seedsplitter;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
@@ -62,6 +65,19 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 	/** The m_interval. */
 	private long m_interval = 0;
 
+	/**
+	 * Digest of the start time, sample rate and the full blocks in
+	 * m_blocks[0, m_digestedBlocks), updated as blocks are filled. Null until
+	 * the first block is digested.
+	 */
+	private transient MessageDigest m_blockDigest = null;
+
+	/** The number of blocks added to m_blockDigest. */
+	private transient int m_digestedBlocks = 0;
+
+	/** The frozen digest, null after any change to the series. */
+	private transient byte[] m_digest = null;
+
 	/**
 	 * Creates a new instance of this object.
 	 */
@@ -78,13 +94,16 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 	private void _reset() {
 		m_length = 0;
 		m_blocks = new ArrayList<>(8);
+		this._restartDigest();
 		this._addBlock();
 	}
 
 	/**
-	 * Creates a new empty data block and adds it to the block list.
+	 * Creates a new empty data block and adds it to the block list. Every
+	 * block already in the list is full, so it is added to the digest first.
 	 */
 	private void _addBlock() {
+		this._digestBlocks(m_blocks.size());
 		m_block = m_pool.getNewBlock();
 		m_blocks.add(m_block);
 		m_remainder = BLOCK_SIZE;
@@ -102,12 +121,93 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		int remaining = m_blocks.size();
 		for (int[] block : m_blocks) {
 			int numSamples = (--remaining > 0) ? BLOCK_SIZE : (BLOCK_SIZE - m_remainder);
-			for (int i = 0; i < numSamples; i++) {
-				addToDigest(block[i]);
+			addToDigest(block, 0, numSamples);
+		}
+	}
+
+	/**
+	 * Returns the digest of the start time, sample rate and data points. Full
+	 * blocks were digested as they were filled, so only the last partial
+	 * block is added here, and the result is kept until the series changes.
+	 * The result is the same as the one {@link #addDigestMembers()} computes.
+	 *
+	 * @return the digest ByteBuffer
+	 */
+	@Override
+	public synchronized ByteBuffer getDigestBytes() {
+		if (m_digest == null) {
+			this.freezeDigest();
+		}
+		return ByteBuffer.wrap(m_digest.clone());
+	}
+
+	/**
+	 * Completes the digest of the data points added so far. Called once
+	 * decoding has finished, so metrics reuse the digest rather than hashing
+	 * the series again. Further changes to the series unfreeze the digest.
+	 */
+	synchronized void freezeDigest() {
+		if (m_digest != null) {
+			return;
+		}
+		int lastBlock = m_blocks.size() - 1;
+		this._digestBlocks(lastBlock);
+		MessageDigest digest;
+		if (m_blockDigest == null) {
+			digest = this._newBlockDigest();
+		} else {
+			try {
+				digest = (MessageDigest) m_blockDigest.clone();
+			} catch (CloneNotSupportedException e) {
+				m_digest = super.getDigestBytes().array();
+				return;
+			}
+		}
+		updateDigest(digest, m_blocks.get(lastBlock), 0, BLOCK_SIZE - m_remainder);
+		m_digest = digest.digest();
+	}
+
+	/**
+	 * Adds full blocks to the running digest, starting it with the start time
+	 * and sample rate if no block was digested yet. Any frozen digest is
+	 * discarded, since the caller is changing the series.
+	 *
+	 * @param blockCount
+	 *            The blocks m_blocks[0, blockCount) are full.
+	 */
+	private void _digestBlocks(int blockCount) {
+		m_digest = null;
+		while (m_digestedBlocks < blockCount) {
+			if (m_blockDigest == null) {
+				m_blockDigest = this._newBlockDigest();
 			}
+			updateDigest(m_blockDigest, m_blocks.get(m_digestedBlocks++), 0, BLOCK_SIZE);
 		}
 	}
 
+	/**
+	 * Starts a digest with the start time and sample rate, as
+	 * {@link #addDigestMembers()} does.
+	 *
+	 * @return the digest, ready for the data points
+	 */
+	private MessageDigest _newBlockDigest() {
+		MessageDigest digest = newDigest();
+		digest.update(ByteBuffer.allocate(16).putLong(m_startTime).putDouble(m_sampleRate).array());
+		return digest;
+	}
+
+	/**
+	 * Discards the running digest, which is rebuilt from the first block when
+	 * needed. Used when a digested data point, the start time or the sample
+	 * rate changes.
+	 */
+	private void _restartDigest() {
+		m_blockDigest = null;
+		m_digestedBlocks = 0;
+		m_digest = null;
+	}
+
 	/**
 	 * Sets the timestamp of the first data point.
 	 * 
@@ -115,6 +215,9 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 	 *            timestamp of first data point
 	 */
 	public void setStartTime(long startTime) {
+		if (startTime != m_startTime) {
+			this._restartDigest();
+		}
 		m_startTime = startTime;
 	}
 
@@ -128,6 +231,9 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 	 */
 	public void setSampleRate(double sampleRate) throws IllegalSampleRateException {
 		m_interval = sampleRateToInterval(sampleRate);
+		if (Double.compare(sampleRate, m_sampleRate) != 0) {
+			this._restartDigest();
+		}
 		m_sampleRate = sampleRate;
 	}
 
@@ -161,6 +267,7 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 	 *             - if offset is null.
 	 */
 	public void extend(int[] buffer, int offset, int length) {
+		m_digest = null;
 		int copySize = 0;
 		while (length > 0) {
 			copySize = (m_remainder > length) ? length : m_remainder;
@@ -176,6 +283,95 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		}
 	}
 
+	/**
+	 * Extends the time-series by reading data points from a buffer straight
+	 * into the internal blocks.
+	 *
+	 * @param buffer
+	 *            The buffer from which the data points are read, starting at
+	 *            its position.
+	 * @param length
+	 *            The number of data points to read.
+	 * @throws java.nio.BufferUnderflowException
+	 *             if the buffer holds fewer than length data points.
+	 */
+	void extend(IntBuffer buffer, int length) {
+		m_digest = null;
+		int copySize = 0;
+		while (length > 0) {
+			copySize = (m_remainder > length) ? length : m_remainder;
+			buffer.get(m_block, BLOCK_SIZE - m_remainder, copySize);
+			if (m_remainder <= length) {
+				this._addBlock();
+			} else {
+				m_remainder -= copySize;
+			}
+			m_length += copySize;
+			length -= copySize;
+		}
+	}
+
+	/**
+	 * Writes all data points into a buffer, block by block, without building
+	 * the whole series as an array.
+	 *
+	 * @param buffer
+	 *            The buffer to which the data points are written, starting at
+	 *            its position.
+	 * @throws java.nio.BufferOverflowException
+	 *             if the buffer does not have room for {@link #getLength()}
+	 *             data points.
+	 */
+	void copyTo(IntBuffer buffer) {
+		int remaining = m_blocks.size();
+		for (int[] block : m_blocks) {
+			int numSamples = (--remaining > 0) ? BLOCK_SIZE : (BLOCK_SIZE - m_remainder);
+			buffer.put(block, 0, numSamples);
+		}
+	}
+
+	/**
+	 * Extends the time-series by a single data point, written directly into
+	 * the current block. This lets decoders fill the Sequence without an
+	 * intermediate array.
+	 *
+	 * @param sample
+	 *            The data point to append.
+	 */
+	void append(int sample) {
+		m_digest = null;
+		m_block[BLOCK_SIZE - m_remainder] = sample;
+		m_length++;
+		if (--m_remainder == 0) {
+			this._addBlock();
+		}
+	}
+
+	/**
+	 * Removes the most recently added data points, releasing any blocks that
+	 * are no longer needed. Used to back out a partially decoded record.
+	 *
+	 * @param count
+	 *            The number of data points to remove from the end.
+	 */
+	void rewind(int count) {
+		if (count <= 0) {
+			return;
+		}
+		m_length -= Math.min(count, m_length);
+		int blockCount = m_length / BLOCK_SIZE + 1;
+		while (m_blocks.size() > blockCount) {
+			m_blocks.remove(m_blocks.size() - 1);
+		}
+		if (m_digestedBlocks >= blockCount) {
+			// A digested block is partially filled again
+			this._restartDigest();
+		}
+		m_digest = null;
+		m_block = m_blocks.get(m_blocks.size() - 1);
+		m_remainder = BLOCK_SIZE - (m_length % BLOCK_SIZE);
+	}
+
 	/**
 	 * Trims the sequence such that its data is within the specified time range.
 	 * 
@@ -243,6 +439,9 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		long tempStartTime = m_startTime;
 		double tempSampleRate = m_sampleRate;
 		long tempInterval = m_interval;
+		MessageDigest tempBlockDigest = m_blockDigest;
+		int tempDigestedBlocks = m_digestedBlocks;
+		byte[] tempDigest = m_digest;
 
 		m_blocks = seq.m_blocks;
 		m_block = seq.m_block;
@@ -251,6 +450,9 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		m_startTime = seq.m_startTime;
 		m_sampleRate = seq.m_sampleRate;
 		m_interval = seq.m_interval;
+		m_blockDigest = seq.m_blockDigest;
+		m_digestedBlocks = seq.m_digestedBlocks;
+		m_digest = seq.m_digest;
 
 		seq.m_blocks = tempBlocks;
 		seq.m_block = tempBlock;
@@ -259,6 +461,9 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		seq.m_startTime = tempStartTime;
 		seq.m_sampleRate = tempSampleRate;
 		seq.m_interval = tempInterval;
+		seq.m_blockDigest = tempBlockDigest;
+		seq.m_digestedBlocks = tempDigestedBlocks;
+		seq.m_digest = tempDigest;
 	}
 
 	/**
@@ -548,6 +753,89 @@ public class Sequence extends MemberDigest implements Comparable<Sequence>, Seri
 		return series;
 	}
 
+	/**
+	 * Returns a data point.
+	 *
+	 * @param index
+	 *            The index of the data point, which must be less than
+	 *            {@link #getLength()}.
+	 * @return the data point
+	 */
+	int getSample(int index) {
+		return m_blocks.get(index / BLOCK_SIZE)[index % BLOCK_SIZE];
+	}
+
+	/**
+	 * Copies a range of data points into a double array, block by block.
+	 *
+	 * @param index
+	 *            The index of the first data point.
+	 * @param dest
+	 *            The array the data points are copied to.
+	 * @param destOffset
+	 *            The index within dest of the first data point.
+	 * @param count
+	 *            The number of data points, all within this Sequence.
+	 */
+	void copyTo(int index, double[] dest, int destOffset, int count) {
+		int blockIndex = index / BLOCK_SIZE;
+		int jump = index % BLOCK_SIZE;
+		while (count > 0) {
+			int[] block = m_blocks.get(blockIndex++);
+			int length = Math.min(count, BLOCK_SIZE - jump);
+			for (int i = 0; i < length; i++) {
+				dest[destOffset + i] = block[jump + i];
+			}
+			destOffset += length;
+			count -= length;
+			jump = 0;
+		}
+	}
+
+	/**
+	 * Returns a view of all of the data points in this sequence.
+	 *
+	 * @return a view over the blocks of this sequence
+	 */
+	public SeriesView getView() {
+		return new SeriesView.Builder().add(this).build();
+	}
+
+	/**
+	 * Returns a view of the data points that fall within the specified range,
+	 * the same data points {@link #getSeries(long, long)} returns, without
+	 * copying them.
+	 *
+	 * @param startTime
+	 *            The first value should be at or after this point in time.
+	 * @param endTime
+	 *            The last value should be at or before this point in time.
+	 * @return a view over the blocks of this sequence
+	 * @throws SequenceRangeException
+	 *             If the requested window is not contained within this
+	 *             Sequence.
+	 * @throws IndexOutOfBoundsException
+	 *             the index out of bounds exception
+	 */
+	public SeriesView getView(long startTime, long endTime) throws SequenceRangeException,
+			IndexOutOfBoundsException {
+		if (endTime > this.getEndTime()) {
+			throw new SequenceRangeException();
+		}
+		if (startTime < m_startTime) {
+			throw new SequenceRangeException();
+		}
+		int count = (int) ((endTime - startTime) / m_interval);
+		int index = (int) (((startTime - m_startTime) + (m_interval / 2)) / m_interval);
+		if (index >= m_length) {
+			throw new IndexOutOfBoundsException();
+		}
+		if ((index + count) > m_length) {
+			throw new SequenceRangeException();
+		}
+		return new SeriesView.Builder().add(this, index, count).build();
+	}
+
 	/**
 	 * Returns a new Array containing all of the data points in this sequence.
 	 * 
@@ -0,0 +1,215 @@
+package asl.seedsplitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A read-only view of data points held in the blocks of one or more
+ * Sequences, such as a window spanning the end of one day's DataSet and the
+ * start of the next, with zero filled gaps between them. Data points are read
+ * from the blocks when requested rather than copied into a new array.
+ *
+ * A view reflects the Sequences as they were when it was created. Merging or
+ * trimming a Sequence invalidates the views over it.
+ */
+public final class SeriesView {
+
+	/** An empty view. */
+	public static final SeriesView EMPTY = new Builder().build();
+
+	/** The Sequence of each segment, null for a gap. */
+	private final Sequence[] m_sequences;
+
+	/** Index within its Sequence of the first data point of each segment. */
+	private final int[] m_offsets;
+
+	/**
+	 * Index within the view of the first data point of each segment, followed
+	 * by the length of the view.
+	 */
+	private final int[] m_starts;
+
+	/**
+	 * Builds a view by appending segments of Sequences and gaps.
+	 */
+	public static final class Builder {
+		private final ArrayList<Sequence> sequences = new ArrayList<>();
+		private final ArrayList<Integer> offsets = new ArrayList<>();
+		private final ArrayList<Integer> lengths = new ArrayList<>();
+
+		/**
+		 * Appends a range of data points of a Sequence.
+		 *
+		 * @param sequence
+		 *            The Sequence holding the data points.
+		 * @param index
+		 *            The index of the first data point.
+		 * @param count
+		 *            The number of data points.
+		 * @return this Builder
+		 * @throws IndexOutOfBoundsException
+		 *             if the range is not within the Sequence.
+		 */
+		public Builder add(Sequence sequence, int index, int count) {
+			if (index < 0 || count < 0 || index + count > sequence.getLength()) {
+				throw new IndexOutOfBoundsException();
+			}
+			return this.addSegment(sequence, index, count);
+		}
+
+		/**
+		 * Appends all data points of a Sequence.
+		 *
+		 * @param sequence
+		 *            The Sequence holding the data points.
+		 * @return this Builder
+		 */
+		public Builder add(Sequence sequence) {
+			return this.addSegment(sequence, 0, sequence.getLength());
+		}
+
+		/**
+		 * Appends a gap of zero valued data points.
+		 *
+		 * @param count
+		 *            The number of data points in the gap.
+		 * @return this Builder
+		 */
+		public Builder addGap(int count) {
+			return this.addSegment(null, 0, count);
+		}
+
+		/**
+		 * Appends the segments of another view.
+		 *
+		 * @param view
+		 *            The view to append.
+		 * @return this Builder
+		 */
+		public Builder add(SeriesView view) {
+			for (int i = 0; i < view.m_sequences.length; i++) {
+				this.addSegment(view.m_sequences[i], view.m_offsets[i],
+						view.m_starts[i + 1] - view.m_starts[i]);
+			}
+			return this;
+		}
+
+		private Builder addSegment(Sequence sequence, int index, int count) {
+			if (count > 0) {
+				sequences.add(sequence);
+				offsets.add(index);
+				lengths.add(count);
+			}
+			return this;
+		}
+
+		/**
+		 * Creates the view.
+		 *
+		 * @return the view over the appended segments
+		 */
+		public SeriesView build() {
+			return new SeriesView(this);
+		}
+	}
+
+	private SeriesView(Builder builder) {
+		int count = builder.sequences.size();
+		m_sequences = builder.sequences.toArray(new Sequence[count]);
+		m_offsets = new int[count];
+		m_starts = new int[count + 1];
+		long length = 0;
+		for (int i = 0; i < count; i++) {
+			m_offsets[i] = builder.offsets.get(i);
+			m_starts[i] = (int) length;
+			length += builder.lengths.get(i);
+		}
+		if (length > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("View of " + length + " data points is too long");
+		}
+		m_starts[count] = (int) length;
+	}
+
+	/**
+	 * Returns the number of data points in the view.
+	 *
+	 * @return the number of data points
+	 */
+	public int getLength() {
+		return m_starts[m_starts.length - 1];
+	}
+
+	/**
+	 * Returns a data point.
+	 *
+	 * @param index
+	 *            The index of the data point within the view.
+	 * @return the data point, 0 within a gap
+	 * @throws IndexOutOfBoundsException
+	 *             if the index is not within the view.
+	 */
+	public double get(int index) {
+		if (index < 0 || index >= this.getLength()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + this.getLength());
+		}
+		int segment = 0;
+		if (m_sequences.length > 1) {
+			segment = Arrays.binarySearch(m_starts, index);
+			if (segment < 0) {
+				segment = -segment - 2;
+			}
+		}
+		Sequence sequence = m_sequences[segment];
+		if (sequence == null) {
+			return 0.0;
+		}
+		return sequence.getSample(m_offsets[segment] + index - m_starts[segment]);
+	}
+
+	/**
+	 * Copies a range of data points into an array, block by block.
+	 *
+	 * @param index
+	 *            The index within the view of the first data point.
+	 * @param dest
+	 *            The array the data points are copied to.
+	 * @param destOffset
+	 *            The index within dest of the first data point.
+	 * @param count
+	 *            The number of data points.
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is not within the view or dest.
+	 */
+	public void copyTo(int index, double[] dest, int destOffset, int count) {
+		if (index < 0 || count < 0 || index + count > this.getLength() || destOffset < 0
+				|| destOffset + count > dest.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		for (int i = 0; i < m_sequences.length && count > 0; i++) {
+			int segmentEnd = m_starts[i + 1];
+			if (index >= segmentEnd) {
+				continue;
+			}
+			int length = Math.min(count, segmentEnd - index);
+			if (m_sequences[i] == null) {
+				Arrays.fill(dest, destOffset, destOffset + length, 0.0);
+			} else {
+				m_sequences[i].copyTo(m_offsets[i] + index - m_starts[i], dest, destOffset, length);
+			}
+			index += length;
+			destOffset += length;
+			count -= length;
+		}
+	}
+
+	/**
+	 * Returns the data points in a new array.
+	 *
+	 * @return the data points
+	 */
+	public double[] toArray() {
+		double[] array = new double[this.getLength()];
+		this.copyTo(0, array, 0, array.length);
+		return array;
+	}
+}
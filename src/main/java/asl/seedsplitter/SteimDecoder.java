@@ -0,0 +1,276 @@
+package asl.seedsplitter;
+
+import java.nio.ByteBuffer;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.SteimException;
+import seed.BlockSizeException;
+import seed.IllegalSeednameException;
+import seed.MiniSeedView;
+
+/**
+ * Decodes Steim1 and Steim2 compressed MiniSEED data directly into a
+ * {@link Sequence}.
+ *
+ * The edu.iris.dmc.seedcodec decoders return a new int[] for every record,
+ * which the caller then copies into the Sequence. This decoder reads the
+ * frames in place from the record buffer and writes each sample straight
+ * into the Sequence's current block, so decoding a record allocates nothing.
+ * The frames are read as Steim1.decode() and Steim2.decode() read them. A
+ * code 0 word is a value only in the first three words of the first frame,
+ * and the first three values of the record are taken as the nibble word and
+ * the integration constants whatever the codes of the words holding them.
+ * The only difference is a first frame holding fewer than four values, which
+ * the seedcodec decoders fail on with an index exception and this decoder
+ * reports as a SteimException.
+ *
+ * An instance holds the decoding state of a single record and is not thread
+ * safe; each {@link SeedSplitProcessor} uses its own.
+ */
+public class SteimDecoder {
+	private static final int FRAME_SIZE = 64;
+	private static final int WORDS_PER_FRAME = 16;
+
+	private Sequence m_target = null;
+	private int m_numSamples = 0;
+	private int m_count = 0;
+	private int m_last = 0;
+	private int m_forward = 0;
+	/** Index of the next value unpacked, counted up to the first sample. */
+	private int m_slot = 0;
+
+	/**
+	 * Decodes the data of a record and appends it to the target Sequence. If
+	 * the record cannot be decoded nothing is appended.
+	 *
+	 * @param record
+	 *            The record to decode.
+	 * @param target
+	 *            The Sequence that the samples are appended to.
+	 * @return The number of samples appended.
+	 * @throws SteimException
+	 *             If the encoding is not Steim1 or Steim2, or the frames do
+	 *             not hold the number of samples in the header.
+	 * @throws BlockSizeException
+	 *             If the data offset is beyond the end of the record.
+	 * @throws IllegalSeednameException
+	 *             If the buffer clearly is not mini-seed.
+	 */
+	public int decode(MiniSeedView record, Sequence target)
+			throws SteimException, BlockSizeException, IllegalSeednameException {
+		int length = record.getDataLength();
+		int encoding = record.getEncoding();
+		if (encoding != B1000Types.STEIM1 && encoding != B1000Types.STEIM2) {
+			throw new SteimException("Unsupported encoding: " + encoding);
+		}
+		return decode(record.getRecord(), record.getDataOffset(), length,
+				record.getNsamp(), encoding == B1000Types.STEIM2, target);
+	}
+
+	/**
+	 * Decodes Steim frames and appends the samples to the target Sequence.
+	 *
+	 * @param buffer
+	 *            Buffer holding the frames, ordered to match the record's
+	 *            byte order. Only absolute reads are used.
+	 * @param offset
+	 *            Offset of the first frame in buffer.
+	 * @param length
+	 *            Length of the frames in bytes, a multiple of 64.
+	 * @param numSamples
+	 *            The number of samples in the record header.
+	 * @param steim2
+	 *            True for Steim2 frames, false for Steim1.
+	 * @param target
+	 *            The Sequence that the samples are appended to.
+	 * @return The number of samples appended.
+	 * @throws SteimException
+	 *             If the frames do not hold numSamples samples, in which
+	 *             case nothing is appended.
+	 */
+	int decode(ByteBuffer buffer, int offset, int length, int numSamples,
+			boolean steim2, Sequence target) throws SteimException {
+		if (length % FRAME_SIZE != 0) {
+			throw new SteimException(
+					"encoded data length is not multiple of 64 bytes (" + length
+							+ ")");
+		}
+		m_target = target;
+		m_numSamples = numSamples;
+		m_count = 0;
+		m_last = 0;
+		m_forward = 0;
+		m_slot = 0;
+
+		int frameCount = length / FRAME_SIZE;
+		for (int frame = 0; frame < frameCount && m_count < numSamples; frame++) {
+			int frameStart = offset + frame * FRAME_SIZE;
+			if (steim2) {
+				steim2Frame(buffer, frameStart, frame == 0);
+			} else {
+				steim1Frame(buffer, frameStart, frame == 0);
+			}
+		}
+
+		int count = m_count;
+		m_target = null;
+		if (count != numSamples) {
+			target.rewind(count);
+			throw new SteimException(
+					"Number of samples decompressed doesn't match number in header: "
+							+ count + " != " + numSamples);
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes one Steim1 frame.
+	 *
+	 * @param buffer
+	 *            The frames buffer.
+	 * @param frameStart
+	 *            Offset of the frame within buffer.
+	 * @param first
+	 *            True for the first frame of the record.
+	 */
+	private void steim1Frame(ByteBuffer buffer, int frameStart, boolean first) {
+		int nibbles = buffer.getInt(frameStart);
+		for (int i = 0; i < WORDS_PER_FRAME; i++) {
+			int position = frameStart + i * 4;
+			switch ((nibbles >> (30 - i * 2)) & 0x03) {
+			case 0:
+				// Non data words, except the constants of the first frame
+				if (first && i < 3) {
+					value(buffer.getInt(position));
+				}
+				break;
+			case 1:
+				for (int n = 0; n < 4; n++) {
+					value(buffer.get(position + n));
+				}
+				break;
+			case 2:
+				value(buffer.getShort(position));
+				value(buffer.getShort(position + 2));
+				break;
+			case 3:
+				value(buffer.getInt(position));
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Decodes one Steim2 frame.
+	 *
+	 * @param buffer
+	 *            The frames buffer.
+	 * @param frameStart
+	 *            Offset of the frame within buffer.
+	 * @param first
+	 *            True for the first frame of the record.
+	 */
+	private void steim2Frame(ByteBuffer buffer, int frameStart, boolean first) {
+		int nibbles = buffer.getInt(frameStart);
+		for (int i = 0; i < WORDS_PER_FRAME; i++) {
+			int position = frameStart + i * 4;
+			int word;
+			switch ((nibbles >> (30 - i * 2)) & 0x03) {
+			case 0:
+				// Non data words, except the constants of the first frame
+				if (first && i < 3) {
+					value(buffer.getInt(position));
+				}
+				break;
+			case 1:
+				for (int n = 0; n < 4; n++) {
+					value(buffer.get(position + n));
+				}
+				break;
+			case 2:
+				word = buffer.getInt(position);
+				switch ((word >> 30) & 0x03) {
+				case 1:
+					value((word << 2) >> 2);
+					break;
+				case 2:
+					value((word << 2) >> 17);
+					value((word << 17) >> 17);
+					break;
+				case 3:
+					value((word << 2) >> 22);
+					value((word << 12) >> 22);
+					value((word << 22) >> 22);
+					break;
+				default:
+					break;
+				}
+				break;
+			case 3:
+				word = buffer.getInt(position);
+				switch ((word >> 30) & 0x03) {
+				case 0:
+					differences(word, 2, 5, 6);
+					break;
+				case 1:
+					differences(word, 2, 6, 5);
+					break;
+				case 2:
+					differences(word, 4, 7, 4);
+					break;
+				default:
+					break;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Unpacks equally sized differences from a Steim2 word.
+	 *
+	 * @param word
+	 *            The data word.
+	 * @param headerBits
+	 *            Number of leading bits holding the sub-code.
+	 * @param count
+	 *            Number of differences in the word.
+	 * @param bits
+	 *            Size of each difference in bits.
+	 */
+	private void differences(int word, int headerBits, int count, int bits) {
+		for (int n = 0; n < count; n++) {
+			value((word << (headerBits + n * bits)) >> (32 - bits));
+		}
+	}
+
+	/**
+	 * Handles the next value unpacked from the frames. The first three values
+	 * of the record are the nibble word and the forward and reverse
+	 * integration constants, all other values are differences.
+	 *
+	 * @param value
+	 *            The unpacked value.
+	 */
+	private void value(int value) {
+		if (m_slot < 3) {
+			if (m_slot == 1) {
+				m_forward = value;
+			}
+			m_slot++;
+			return;
+		}
+		if (m_count < m_numSamples) {
+			// The first difference is ignored, the first sample is the
+			// forward integration constant.
+			m_last = (m_slot == 3) ? m_forward : m_last + value;
+			m_slot = 4;
+			m_target.append(m_last);
+			m_count++;
+		}
+	}
+}
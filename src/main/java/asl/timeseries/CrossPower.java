@@ -1,17 +1,20 @@
 package asl.timeseries;
 
-import asl.utils.FFTResult;
 import asl.utils.TimeSeriesUtils;
 import java.util.Arrays;
 
-import org.apache.commons.math3.complex.Complex;
-
 import asl.metadata.Channel;
 import asl.metadata.meta_new.ChannelMetaException;
 import asl.metadata.meta_new.ChannelMeta.ResponseUnits;
 import asl.seedscan.metrics.MetricData;
 import asl.seedscan.metrics.MetricPSDException;
 
+/**
+ * Power spectral density of a channel, or cross power of two channels, with
+ * the instrument response removed.
+ *
+ * The spectrum is computed by {@link CrossSpectrum}.
+ */
 public class CrossPower {
 	private double[] powerSpectrum;
 	private double[] frequencyArray;
@@ -87,36 +90,30 @@ public class CrossPower {
 		if (sampleRate == 0)
 			throw new MetricPSDException("Got srate=0");
 
-		FFTResult psdRaw = FFTResult.spectralCalc(xData, yData,
-				(long) (TimeSeriesUtils.ONE_HZ_INTERVAL / sampleRate));
-		Complex[] spectrumRaw = psdRaw.getFFT();
-		frequencyArray = psdRaw.getFreqs();
+		double period = (long) (TimeSeriesUtils.ONE_HZ_INTERVAL / sampleRate)
+				/ (double) TimeSeriesUtils.ONE_HZ_INTERVAL;
+		CrossSpectrum spectrum = CrossSpectrum.compute(xData, yData, period);
+		frequencyArray = spectrum.getFrequencies();
 
-		this.spectrumDeltaF = psdRaw.getFreq(1);
+		this.spectrumDeltaF = spectrum.getDeltaF();
 
 		// Get the instrument response for Acceleration and remove it from the
 		// PSD
-		Complex[] instrumentResponseX = metricData.getMetaData().getChannelMetadata(channelX)
-				.getResponse(frequencyArray, ResponseUnits.ACCELERATION);
-		Complex[] instrumentResponseY = metricData.getMetaData().getChannelMetadata(channelY)
-				.getResponse(frequencyArray, ResponseUnits.ACCELERATION);
-
-		// Will hold the 1-sided PSD magnitude
-		this.powerSpectrum = new double[frequencyArray.length];
-		this.powerSpectrum[0] = 0;
+		double[] instrumentResponseX = metricData.getMetaData().getChannelMetadata(channelX)
+				.getResponseArray(frequencyArray, ResponseUnits.ACCELERATION);
+		double[] instrumentResponseY = metricData.getMetaData().getChannelMetadata(channelY)
+				.getResponseArray(frequencyArray, ResponseUnits.ACCELERATION);
 
 		/*
-		 * We're computing the squared magnitude as we did with the FFT
-		 * above Start from k=1 to skip DC (k=0) where the response=0
+		 * Divide out the instrument response, the DC value (k=0) where the
+		 * response=0 is skipped. The 1-sided PSD is the magnitude of the result.
 		 */
-		for (int k = 1; k < frequencyArray.length; k++) {
-			Complex responseMagnitude = instrumentResponseX[k].multiply(instrumentResponseY[k].conjugate());
-			if (responseMagnitude.abs() == 0) {
-				throw new MetricPSDException("responseMagC[k]=0 --> divide by zero!\n");
-			}
-			// Divide out (squared)instrument response & Convert to dB:
-			this.powerSpectrum[k] = spectrumRaw[k].divide(responseMagnitude).abs();
+		try {
+			spectrum.removeResponse(instrumentResponseX, instrumentResponseY);
+		} catch (TimeseriesException e) {
+			throw new MetricPSDException(e.getMessage());
 		}
+		this.powerSpectrum = spectrum.getMagnitudes();
 	}
 
 	public double[] getSpectrum() {
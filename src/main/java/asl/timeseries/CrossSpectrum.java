@@ -0,0 +1,294 @@
+package asl.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Cross power spectral density of two time series, computed with Peterson's
+ * algorithm: the series are split into 13 segments of a quarter of their
+ * length overlapping by 75%. Each segment is detrended, demeaned, given a 10%
+ * cosine taper and zero padded to a power of 2 before its FFT. The segment
+ * cross spectra X * conj(Y) are averaged and normalized for the taper.
+ *
+ * The spectrum is kept as interleaved real and imaginary parts in a double[]
+ * rather than as Complex objects. Two real segments are transformed at once
+ * as the real and imaginary parts of a single complex FFT, and the buffers
+ * used for the transforms are kept per thread and reused between spectra.
+ */
+public class CrossSpectrum {
+
+	/** Fraction of each end of a segment tapered. */
+	private static final double TAPER_WIDTH = 0.10;
+
+	/** FFT buffer of the thread, grown as needed. */
+	private static final ThreadLocal<double[]> SCRATCH = ThreadLocal
+			.withInitial(() -> new double[0]);
+
+	/** Real and imaginary parts of the single sided spectrum. */
+	private final double[] spectrum;
+
+	private final double deltaF;
+
+	private CrossSpectrum(double[] spectrum, double deltaF) {
+		this.spectrum = spectrum;
+		this.deltaF = deltaF;
+	}
+
+	/**
+	 * Computes the cross spectrum of two series of equal length. Passing the
+	 * same data twice computes its power spectrum.
+	 *
+	 * @param x
+	 *            first series, not modified
+	 * @param y
+	 *            second series, not modified
+	 * @param period
+	 *            sample period of both series in seconds
+	 * @return the single sided cross spectrum
+	 */
+	public static CrossSpectrum compute(double[] x, double[] y, double period) {
+		if (x.length != y.length) {
+			throw new IllegalArgumentException("Series lengths " + x.length
+					+ " and " + y.length + " differ");
+		}
+		boolean sameData = x == y || Arrays.equals(x, y);
+
+		int range = x.length / 4;
+		int slider = range / 4;
+		int padding = 2;
+		while (padding < range) {
+			padding *= 2;
+		}
+		int singleSide = padding / 2 + 1;
+
+		FFTPlan plan = FFTPlan.forSize(padding);
+		double[] buffer = SCRATCH.get();
+		if (buffer.length < 2 * padding) {
+			buffer = new double[2 * padding];
+			SCRATCH.set(buffer);
+		}
+
+		double[] spectrum = new double[2 * singleSide];
+		double wss = 0;
+		int segments = 0;
+		int start = 0;
+		while (start + range <= x.length) {
+			int next = start + slider;
+			if (sameData) {
+				// Transform this segment and the next one together
+				wss = prepare(x, start, range, buffer, 0);
+				boolean pair = next + range <= x.length;
+				if (pair) {
+					prepare(x, next, range, buffer, 1);
+				} else {
+					clear(buffer, range, 1);
+				}
+				Arrays.fill(buffer, 2 * range, 2 * padding, 0.0);
+				plan.transform(buffer);
+				accumulatePower(buffer, padding, spectrum);
+				segments += pair ? 2 : 1;
+				start = pair ? next + slider : next;
+			} else {
+				wss = prepare(x, start, range, buffer, 0);
+				prepare(y, start, range, buffer, 1);
+				Arrays.fill(buffer, 2 * range, 2 * padding, 0.0);
+				plan.transform(buffer);
+				accumulateCross(buffer, padding, spectrum);
+				segments++;
+				start = next;
+			}
+		}
+
+		// The taper's power loss is that of the last segment, all segments
+		// have the same length.
+		double normalization = 2.0 * period / padding;
+		normalization /= wss / range;
+		normalization /= segments;
+		for (int i = 0; i < spectrum.length; i++) {
+			spectrum[i] *= normalization;
+		}
+
+		return new CrossSpectrum(spectrum, 1.0 / (padding * period));
+	}
+
+	/**
+	 * Copies a detrended, demeaned and tapered segment into the real (part 0)
+	 * or imaginary (part 1) parts of the buffer.
+	 *
+	 * @return the taper's power
+	 */
+	private static double prepare(double[] data, int start, int length,
+			double[] buffer, int part) {
+		// Least squares line through the segment
+		double sumY = 0;
+		double sumXY = 0;
+		for (int i = 0; i < length; i++) {
+			double value = data[start + i];
+			sumY += value;
+			sumXY += value * i;
+		}
+		double sumX = length * (length - 1.0) / 2.0;
+		double sumXSquared = (length - 1.0) * length * (2.0 * length - 1.0) / 6.0;
+		double del = sumXSquared - sumX * sumX / length;
+		double slope = (sumXY - sumX * sumY / length) / del;
+		double offset = (sumXSquared * sumY - sumX * sumXY) / (del * length);
+
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			double value = data[start + i] - (slope * i + offset);
+			buffer[2 * i + part] = value;
+			sum += value;
+		}
+		double mean = sum / length;
+		for (int i = 0; i < length; i++) {
+			buffer[2 * i + part] -= mean;
+		}
+
+		// Cosine taper, as PreprocessingUtils.costaper
+		double ramp = TAPER_WIDTH * length;
+		double wss = 0;
+		for (int i = 0; i < ramp; i++) {
+			double taper = 0.5 * (1.0 - Math.cos(i * Math.PI / ramp));
+			buffer[2 * i + part] *= taper;
+			buffer[2 * (length - i - 1) + part] *= taper;
+			wss += 2.0 * taper * taper;
+		}
+		wss += length - 2.0 * ramp;
+		return wss;
+	}
+
+	private static void clear(double[] buffer, int length, int part) {
+		for (int i = 0; i < length; i++) {
+			buffer[2 * i + part] = 0.0;
+		}
+	}
+
+	/**
+	 * Adds X[k] * conj(Y[k]) of the two real series transformed as z = x + iy.
+	 * With A = Z[k] and B = conj(Z[n - k]): X[k] = (A + B) / 2 and
+	 * Y[k] = (A - B) / 2i.
+	 */
+	private static void accumulateCross(double[] transform, int n,
+			double[] spectrum) {
+		for (int k = 0; k < spectrum.length / 2; k++) {
+			int mirror = (n - k) % n;
+			double ar = transform[2 * k];
+			double ai = transform[2 * k + 1];
+			double br = transform[2 * mirror];
+			double bi = -transform[2 * mirror + 1];
+			double xr = (ar + br) / 2;
+			double xi = (ai + bi) / 2;
+			double yr = (ai - bi) / 2;
+			double yi = -(ar - br) / 2;
+			spectrum[2 * k] += xr * yr + xi * yi;
+			spectrum[2 * k + 1] += xi * yr - xr * yi;
+		}
+	}
+
+	/**
+	 * Adds |X1[k]|^2 + |X2[k]|^2 of two segments of one series transformed as
+	 * z = x1 + ix2.
+	 */
+	private static void accumulatePower(double[] transform, int n,
+			double[] spectrum) {
+		for (int k = 0; k < spectrum.length / 2; k++) {
+			int mirror = (n - k) % n;
+			double ar = transform[2 * k];
+			double ai = transform[2 * k + 1];
+			double br = transform[2 * mirror];
+			double bi = -transform[2 * mirror + 1];
+			double xr = (ar + br) / 2;
+			double xi = (ai + bi) / 2;
+			double yr = (ai - bi) / 2;
+			double yi = -(ar - br) / 2;
+			spectrum[2 * k] += xr * xr + xi * xi + yr * yr + yi * yi;
+		}
+	}
+
+	/**
+	 * Divides the spectrum in place by the response Rx * conj(Ry) of the two
+	 * channels. The DC value is set to 0.
+	 *
+	 * @param responseX
+	 *            interleaved response of the first channel at
+	 *            {@link #getFrequencies()}
+	 * @param responseY
+	 *            interleaved response of the second channel
+	 * @throws TimeseriesException
+	 *             if the response is 0 at a frequency above DC
+	 */
+	public void removeResponse(double[] responseX, double[] responseY)
+			throws TimeseriesException {
+		spectrum[0] = 0;
+		spectrum[1] = 0;
+		for (int k = 1; k < spectrum.length / 2; k++) {
+			double xr = responseX[2 * k];
+			double xi = responseX[2 * k + 1];
+			double yr = responseY[2 * k];
+			double yi = responseY[2 * k + 1];
+			double rr = xr * yr + xi * yi;
+			double ri = xi * yr - xr * yi;
+			if (rr == 0 && ri == 0) {
+				throw new TimeseriesException("responseMagC[k]=0 --> divide by zero!\n");
+			}
+			double magnitude = rr * rr + ri * ri;
+			double sr = spectrum[2 * k];
+			double si = spectrum[2 * k + 1];
+			spectrum[2 * k] = (sr * rr + si * ri) / magnitude;
+			spectrum[2 * k + 1] = (si * rr - sr * ri) / magnitude;
+		}
+	}
+
+	/**
+	 * @return |S[k]| at each frequency
+	 */
+	public double[] getMagnitudes() {
+		double[] magnitudes = new double[spectrum.length / 2];
+		for (int k = 0; k < magnitudes.length; k++) {
+			magnitudes[k] = Math.hypot(spectrum[2 * k], spectrum[2 * k + 1]);
+		}
+		return magnitudes;
+	}
+
+	/**
+	 * @return the frequency of each spectrum value, k * deltaF
+	 */
+	public double[] getFrequencies() {
+		double[] frequencies = new double[spectrum.length / 2];
+		for (int k = 0; k < frequencies.length; k++) {
+			frequencies[k] = k * deltaF;
+		}
+		return frequencies;
+	}
+
+	/**
+	 * @return number of frequencies in the spectrum
+	 */
+	public int getSize() {
+		return spectrum.length / 2;
+	}
+
+	/**
+	 * @return the frequency step of the spectrum
+	 */
+	public double getDeltaF() {
+		return deltaF;
+	}
+
+	/**
+	 * @param k
+	 *            frequency index
+	 * @return real part of the spectrum at k
+	 */
+	public double getReal(int k) {
+		return spectrum[2 * k];
+	}
+
+	/**
+	 * @param k
+	 *            frequency index
+	 * @return imaginary part of the spectrum at k
+	 */
+	public double getImaginary(int k) {
+		return spectrum[2 * k + 1];
+	}
+}
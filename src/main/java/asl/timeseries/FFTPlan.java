@@ -0,0 +1,104 @@
+package asl.timeseries;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A forward complex FFT of a fixed power of 2 size, on data stored as
+ * interleaved real and imaginary parts in a double[].
+ *
+ * The twiddle factors are computed once per size. Plans are immutable, so a
+ * plan is shared by every thread transforming data of its size.
+ *
+ * The transform follows the sign convention of the Apache FFT with
+ * DftNormalization.STANDARD: X[k] = sum x[n] exp(-2 pi i n k / N), unscaled.
+ */
+public final class FFTPlan {
+
+	/** Plans already computed, by size. */
+	private static final ConcurrentHashMap<Integer, FFTPlan> PLANS = new ConcurrentHashMap<>();
+
+	private final int size;
+
+	/** cos(2 pi k / size), -sin(2 pi k / size) for k below size / 2 */
+	private final double[] twiddles;
+
+	/**
+	 * Returns the plan of a size, computing it on first use.
+	 *
+	 * @param size
+	 *            number of complex values transformed, a power of 2
+	 * @return the shared plan
+	 */
+	public static FFTPlan forSize(int size) {
+		return PLANS.computeIfAbsent(size, FFTPlan::new);
+	}
+
+	private FFTPlan(int size) {
+		if (size < 1 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("FFT size " + size
+					+ " is not a power of 2");
+		}
+		this.size = size;
+		twiddles = new double[size];
+		for (int k = 0; k < size / 2; k++) {
+			double angle = 2.0 * Math.PI * k / size;
+			twiddles[2 * k] = Math.cos(angle);
+			twiddles[2 * k + 1] = -Math.sin(angle);
+		}
+	}
+
+	/**
+	 * @return number of complex values transformed
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Transforms interleaved complex data in place.
+	 *
+	 * @param data
+	 *            real and imaginary parts of at least {@link #getSize()}
+	 *            values, replaced by their transform
+	 */
+	public void transform(double[] data) {
+		int n = size;
+
+		// Bit reversal permutation
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				double real = data[2 * i];
+				double imaginary = data[2 * i + 1];
+				data[2 * i] = data[2 * j];
+				data[2 * i + 1] = data[2 * j + 1];
+				data[2 * j] = real;
+				data[2 * j + 1] = imaginary;
+			}
+		}
+
+		// Radix 2 butterflies
+		for (int length = 2; length <= n; length <<= 1) {
+			int half = length >> 1;
+			int step = n / length;
+			for (int start = 0; start < n; start += length) {
+				for (int k = 0; k < half; k++) {
+					double wr = twiddles[2 * k * step];
+					double wi = twiddles[2 * k * step + 1];
+					int a = 2 * (start + k);
+					int b = a + 2 * half;
+					double tr = data[b] * wr - data[b + 1] * wi;
+					double ti = data[b] * wi + data[b + 1] * wr;
+					data[b] = data[a] - tr;
+					data[b + 1] = data[a + 1] - ti;
+					data[a] += tr;
+					data[a + 1] += ti;
+				}
+			}
+		}
+	}
+}
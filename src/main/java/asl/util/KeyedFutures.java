@@ -0,0 +1,117 @@
+package asl.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Values computed at most once per key and shared between threads.
+ *
+ * The first thread to ask for a key computes its value in its own thread, later threads asking for
+ * the same key wait for that computation instead of repeating it. A computation that throws is not
+ * kept, so the waiting threads get the same exception and a later request computes it again.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class KeyedFutures<K, V> {
+
+  /**
+   * Computes the value of a key.
+   *
+   * @param <V> the value type
+   * @param <E> the checked exception the computation may throw
+   */
+  @FunctionalInterface
+  public interface Computation<V, E extends Exception> {
+
+    V compute() throws E;
+  }
+
+  private final ConcurrentHashMap<K, FutureTask<V>> futures = new ConcurrentHashMap<>();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder computations = new LongAdder();
+
+  /**
+   * Returns the value of a key, computing it if no other thread has.
+   *
+   * All computations of a key must throw the same checked exception type, since a waiting thread
+   * is handed the exception thrown by the computing thread.
+   *
+   * @param key the key
+   * @param computation computes the value if it is not yet known
+   * @param <E> the checked exception the computation may throw
+   * @return the value, may be null if the computation returned null
+   * @throws E if the computation of this key threw
+   */
+  @SuppressWarnings("unchecked")
+  public <E extends Exception> V get(K key, Computation<V, E> computation) throws E {
+    requests.increment();
+    FutureTask<V> future = futures.get(key);
+    if (future == null) {
+      FutureTask<V> task = new FutureTask<>(computation::compute);
+      future = futures.putIfAbsent(key, task);
+      if (future == null) {
+        future = task;
+        computations.increment();
+        task.run();
+      }
+    }
+
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return future.get();
+        } catch (InterruptedException e) {
+          // The computing thread finishes regardless, so keep waiting for it
+          interrupted = true;
+        } catch (ExecutionException e) {
+          futures.remove(key, future);
+          Throwable cause = e.getCause();
+          if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          }
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw (E) cause;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * @param key the key
+   * @return true if a value for the key is computed or being computed
+   */
+  public boolean containsKey(K key) {
+    return futures.containsKey(key);
+  }
+
+  /**
+   * @return the number of keys computed or being computed
+   */
+  public int size() {
+    return futures.size();
+  }
+
+  /**
+   * @return the number of values asked for, computed or shared
+   */
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  /**
+   * @return the number of computations run, including those that threw
+   */
+  public long getComputations() {
+    return computations.sum();
+  }
+}
@@ -12,18 +12,14 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.GregorianCalendar;
-import java.util.List;
 import edu.iris.dmc.seedcodec.*;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import asl.seedscan.Global;
-
 
 /**
  * This class represents a mini-seed packet. It can translate binary data in a
@@ -33,8 +29,6 @@ import asl.seedscan.Global;
  * @author David Ketchum
  */
 public class MiniSeed {
-	/** The Constant datalogger. */
-	private static final Logger datalogger = LoggerFactory.getLogger("DataLog");
 	
 	/** The Constant logger. */
 	private static final Logger logger = LoggerFactory
@@ -418,8 +412,10 @@ public class MiniSeed {
 			startTime = new byte[10];
 		if (isHeartBeat())
 			return;
-		swap = swapNeeded(buf, ms);
-		if (swap)
+		swap = MiniSeedHeader.swapNeeded(ms);
+		// The record is read little endian once the blockette offset looked
+		// swapped, even when swap detection then gives up and assumes not.
+		if (swap || MiniSeedHeader.offsetLooksSwapped(ms))
 			ms.order(ByteOrder.LITTLE_ENDIAN);
 
 		// crack the seed name so we can check its legality
@@ -452,13 +448,7 @@ public class MiniSeed {
 	 * @return true, if successful
 	 */
 	public static boolean crackIsHeartBeat(byte[] buf) {
-		boolean is = true;
-		for (int i = 0; i < 6; i++)
-			if (buf[i] != 48 || buf[i + 6] != 32 || buf[i + 12] != 32) {
-				is = false;
-				break;
-			}
-		return is;
+		return MiniSeedHeader.isHeartBeat(ByteBuffer.wrap(buf));
 	}
 
 	/**
@@ -468,13 +458,7 @@ public class MiniSeed {
 	 * @return true if sequences is all zero and first 12 chars are blanks
 	 */
 	public boolean isHeartBeat() {
-		boolean is = true;
-		for (int i = 0; i < 6; i++)
-			if (buf[i] != 48 || buf[i + 6] != 32 || buf[i + 12] != 32) {
-				is = false;
-				break;
-			}
-		return is;
+		return MiniSeedHeader.isHeartBeat(ms);
 	}
 
 	/**
@@ -490,19 +474,7 @@ public class MiniSeed {
 	 *             if the buf is clearly not miniseed
 	 */
 	public static int[] crackTime(byte[] buf) throws IllegalSeednameException {
-		ByteBuffer bb = ByteBuffer.wrap(buf);
-		if (swapNeeded(buf))
-			bb.order(ByteOrder.LITTLE_ENDIAN);
-		bb.position(24);
-		// short year = bb.getShort();
-		// short day = bb.getShort();
-		int[] time = new int[4];
-		time[0] = bb.get() & 0x000000ff; // hour
-		time[1] = bb.get() & 0x000000ff; // minute
-		time[2] = bb.get() & 0x000000ff;
-		bb.get();
-		time[3] = bb.getShort() & 0x0000ffff;
-		return time;
+		return MiniSeedHeader.time(wrapOrdered(buf));
 	}
 
 	/**
@@ -513,11 +485,7 @@ public class MiniSeed {
 	 * @throws IllegalSeednameException             if the buffer clearly is not mini-seed
 	 */
 	public static int crackYear(byte[] buf) throws IllegalSeednameException {
-		ByteBuffer bb = ByteBuffer.wrap(buf);
-		if (swapNeeded(buf))
-			bb.order(ByteOrder.LITTLE_ENDIAN);
-		bb.position(20);
-		return (int) bb.getShort();
+		return (int) wrapOrdered(buf).getShort(20);
 	}
 
 	/**
@@ -528,11 +496,7 @@ public class MiniSeed {
 	 * @throws IllegalSeednameException             if the buffer clearly is not mini-seed
 	 */
 	public static int crackDOY(byte[] buf) throws IllegalSeednameException {
-		ByteBuffer bb = ByteBuffer.wrap(buf);
-		if (swapNeeded(buf))
-			bb.order(ByteOrder.LITTLE_ENDIAN);
-		bb.position(22);
-		return (int) bb.getShort();
+		return (int) wrapOrdered(buf).getShort(22);
 	}
 
 	/**
@@ -548,29 +512,8 @@ public class MiniSeed {
 	 *             if the buffer clearly is not mini-seed
 	 */
 	public static double crackRate(byte[] buf) throws IllegalSeednameException {
-		ByteBuffer bb = ByteBuffer.wrap(buf);
-		if (swapNeeded(buf))
-			bb.order(ByteOrder.LITTLE_ENDIAN);
-		bb.position(32);
-		short rateFactor = bb.getShort();
-		short rateMultiplier = bb.getShort();
-		double rate = rateFactor;
-		// if rate > 0 its in hz, < 0 its period.
-		// if multiplier > 0 it multiplies, if < 0 it divides.
-		if (rateFactor == 0 || rateMultiplier == 0)
-			return 0;
-		if (rate >= 0) {
-			if (rateMultiplier > 0)
-				rate *= rateMultiplier;
-			else
-				rate /= -rateMultiplier;
-		} else {
-			if (rateMultiplier > 0)
-				rate = -rateMultiplier / rate;
-			else
-				rate = -1. / (-rateMultiplier) / rate;
-		}
-		return rate;
+		ByteBuffer bb = wrapOrdered(buf);
+		return MiniSeedHeader.rate(bb.getShort(32), bb.getShort(34));
 	}
 
 	/**
@@ -584,172 +527,24 @@ public class MiniSeed {
 	 * @return The seedname in NSCL order
 	 */
 	public static String crackSeedname(byte[] buf) {
-		ByteBuffer bb = ByteBuffer.wrap(buf);
-		bb.position(8);
-		byte[] seed = new byte[12];
-		bb.get(seed);
-		String s = new String(seed);
-		return s.substring(10, 12) + s.substring(0, 5) + s.substring(7, 10)
-				+ s.substring(5, 7);
-	}
-
-	/**
-	 * Safe letter.
-	 *
-	 * @param b the b
-	 * @return the string
-	 */
-	private static String safeLetter(byte b) {
-		char c = (char) b;
-		return Character.isLetterOrDigit(c) || c == ' ' ? "" + c : Util
-				.toHex((byte) c);
+		return MiniSeedHeader.seedName(ByteBuffer.wrap(buf));
 	}
 
 	/**
-	 * To string raw.
+	 * Wraps a raw miniseed buffer in its byte order.
 	 *
-	 * @param buf the buf
-	 * @return the string
-	 */
-	private static String toStringRaw(byte[] buf) {
-		ByteBuffer bb = ByteBuffer.wrap(buf);
-		StringBuilder tmp = new StringBuilder(100);
-		bb.position(0);
-		for (int i = 0; i < 6; i++)
-			tmp.append(safeLetter(bb.get()));
-		tmp.append(" ");
-		bb.position(18);
-		for (int i = 0; i < 2; i++)
-			tmp.append(safeLetter(bb.get()));
-		bb.position(8);
-		for (int i = 0; i < 5; i++)
-			tmp.append(safeLetter(bb.get()));
-		bb.position(15);
-		for (int i = 0; i < 3; i++)
-			tmp.append(safeLetter(bb.get()));
-		bb.position(13);
-		for (int i = 0; i < 2; i++)
-			tmp.append(safeLetter(bb.get()));
-		bb.position(20);
-		short i2 = bb.getShort();
-		tmp.append(" " + i2 + " " + Util.toHex(i2));
-		i2 = bb.getShort();
-		tmp.append(" " + i2 + " " + Util.toHex(i2));
-		tmp.append(" " + bb.get() + ":" + bb.get() + ":" + bb.get());
-		bb.get();
-		i2 = bb.getShort();
-		tmp.append("." + i2 + " " + Util.toHex(i2));
-		i2 = bb.getShort();
-		tmp.append(" ns=" + i2);
-		i2 = bb.getShort();
-		tmp.append(" rt=" + i2);
-		i2 = bb.getShort();
-		tmp.append("*" + i2);
-		bb.position(39);
-		tmp.append(" nb=" + bb.get());
-		bb.position(44);
-		i2 = bb.getShort();
-		tmp.append(" d=" + i2);
-		i2 = bb.getShort();
-		tmp.append(" b=" + i2);
-		return tmp.toString();
-	}
-
-	/**
-	 * Swap needed.
-	 *
-	 * @param buf the buf
-	 * @return true, if successful
-	 * @throws IllegalSeednameException the illegal seedname exception
+	 * @param buf
+	 *            A array with a miniseed block in raw form
+	 * @return the wrapped buffer
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
 	 */
-	private static boolean swapNeeded(byte[] buf)
+	private static ByteBuffer wrapOrdered(byte[] buf)
 			throws IllegalSeednameException {
 		ByteBuffer bb = ByteBuffer.wrap(buf);
-		return swapNeeded(buf, bb);
-	}
-
-	/**
-	 * Swap needed.
-	 *
-	 * @param buf the buf
-	 * @param bb the bb
-	 * @return the boolean
-	 * @throws IllegalSeednameException the illegal seedname exception
-	 */
-	private static Boolean swapNeeded(byte[] buf, ByteBuffer bb)
-			throws IllegalSeednameException {
-		
-		String qualityFlagsStr = Global.getQualityflags();
-		List<String> qualityFlags = Arrays.asList(qualityFlagsStr.split(","));
-		
-		boolean swap = false;
-
-		if( (buf[0] >= '0' && buf[0] <= '9') && (buf[1] >= '0' && buf[1] <= '9') && (buf[2] >= '0' && buf[2] <= '9') && (buf[3] >= '0' && buf[3] <= '9') && buf[7] == ' ' &&
-		  (
-				  qualityFlags.contains("All") || 
-				  qualityFlags.contains(String.valueOf((char)buf[6]))
-		  )
-		)
-		{
-			
-			bb.position(39); // position # of blockettes that follow
-			int nblks = bb.get(); // get it
-			int offset;
-			if (nblks > 0) {
-				bb.position(46); // position offset to first blockette
-				offset = bb.getShort();
-				if (offset > 64 || offset < 48) { // This looks like swap is needed
-					bb.order(ByteOrder.LITTLE_ENDIAN);
-					bb.position(46);
-					offset = bb.getShort(); // get byte swapped version
-					if (offset > 200 || offset < 0) {
-						datalogger.error("MiniSEED: cannot figure out if this is swapped or not!!! Assume not. offset="
-								+ offset + " " + toStringRaw(buf));
-						RuntimeException e = new RuntimeException(
-								"Cannot figure swap from offset ");
-						datalogger.error("RuntimeException:", e);
-					} else
-						swap = true;
-				}
-				for (int i = 0; i < nblks; i++) {
-					if (offset < 48 || offset > 64) {
-						logger.error("Illegal offset trying to figure swapping off="
-								+ Util.toHex(offset) + " nblks=" + nblks
-								+ " seedname="
-								+ Util.toAllPrintable(crackSeedname(buf)) + " "
-								+ toStringRaw(buf));
-						break;
-					}
-					bb.position(offset);
-					int type = bb.getShort();
-					int oldoffset = offset;
-					offset = bb.getShort();
-					// ByteOrder order=null;
-					if (type == 1000) {
-						bb.position(oldoffset + 5); // this should be word order
-						if (bb.get() == 0) {
-							if (swap)
-								return true;
-							logger.error("Offset said swap but order byte in b1000 said not to! "
-									+ toStringRaw(buf));
-							return false;
-						} else
-							return false;
-					}
-				}
-			} else { // This block does not have blockette 1000, so make decision
-						// based on where the data starts!
-				bb.position(44);
-				offset = bb.getShort();
-				return offset < 0 || offset > 512;
-			}
-		}
-		else
-		{
-			throw new IllegalSeednameException("Bad seq # or [DQR] "
-					+ toStringRaw(buf));
-		}
-		return swap;
+		if (MiniSeedHeader.swapNeeded(bb))
+			bb.order(ByteOrder.LITTLE_ENDIAN);
+		return bb;
 	}
 
 	/**
@@ -771,41 +566,7 @@ public class MiniSeed {
 	 */
 	public static int crackBlockSize(byte[] buf)
 			throws IllegalSeednameException, BlockSizeException {
-		ByteBuffer bb = ByteBuffer.wrap(buf);
-		if (swapNeeded(buf))
-			bb.order(ByteOrder.LITTLE_ENDIAN);
-		bb.position(39); // position # of blockettes that follow
-		int nblks = bb.get(); // get it
-		bb.position(44); //The position of the data offset and end of data header.
-		int dataOffset = bb.getShort();
-		if(dataOffset == 0){
-			logger.warn("Data Offset is 0. Either there is no data or there is a problem. Treating as if it was 64.");
-			dataOffset = 64; //If it is a record with no data, set to 64.
-		}
-		bb.position(46); // position offset to first blockette and end of fixed data header
-		int offset = bb.getShort();
-		for (int i = 0; i < nblks; i++) {
-			if (offset < 48 || offset >= dataOffset) {
-				String message = "Illegal offset trying to crackBlockSize() blocketteOffset="
-						+ offset + " dataOffset= " + dataOffset + " nblks=" + nblks + " seedname="
-						+ crackSeedname(buf);
-				throw new BlockSizeException(message);
-			}
-			bb.position(offset);
-			int type = bb.getShort();
-			int oldoffset = offset;
-			offset = bb.getShort();
-			if (type == 1000) {
-				bb.position(oldoffset + 6);
-				return 1 << bb.get();
-			}
-		}
-		/*If we got here we never found a blockette 1000*/
-		String message = "Missing blockette 1000 trying to crackBlockSize() blocketteOffset="
-				+ offset + " dataOffset= " + dataOffset + " nblks=" + nblks + " seedname="
-				+ crackSeedname(buf);
-		throw new BlockSizeException(message);
-
+		return MiniSeedHeader.crackBlockSize(ByteBuffer.wrap(buf));
 	}
 
 	/**
@@ -905,14 +666,13 @@ public class MiniSeed {
 					// type);
 					// This is the problem when blockette 1001 was not swapped
 					// for a shor ttime 2009,128-133
-					if (type == -5885) {
-						if (time.get(Calendar.YEAR) == 2009
-								&& time.get(Calendar.DAY_OF_YEAR) >= 128
-								&& time.get(Calendar.DAY_OF_YEAR) <= 133) {
-							ms.position(ms.position() - 2);
-							ms.putShort((short) 1001);
-							type = 1001;
-						}
+					short fixedType = (short) MiniSeedHeader.blocketteType(type,
+							time.get(Calendar.YEAR),
+							time.get(Calendar.DAY_OF_YEAR));
+					if (fixedType != type) {
+						ms.position(ms.position() - 2);
+						ms.putShort(fixedType);
+						type = fixedType;
 					}
 
 					if (dbg)
@@ -1637,23 +1397,7 @@ public class MiniSeed {
 	 */
 	public double getRate() {
 		crack();
-		double rate = rateFactor;
-		// if rate > 0 its in hz, < 0 its period.
-		// if multiplier > 0 it multiplies, if < 0 it divides.
-		if (rateFactor == 0 || rateMultiplier == 0)
-			return 0;
-		if (rate >= 0) {
-			if (rateMultiplier > 0)
-				rate *= rateMultiplier;
-			else
-				rate /= -rateMultiplier;
-		} else {
-			if (rateMultiplier > 0)
-				rate = -rateMultiplier / rate;
-			else
-				rate = -1. / (-rateMultiplier) / rate;
-		}
-		return rate;
+		return MiniSeedHeader.rate(rateFactor, rateMultiplier);
 	}
 
 	/**
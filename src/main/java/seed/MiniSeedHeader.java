@@ -0,0 +1,335 @@
+/*
+ * MiniSeedHeader.java
+ */
+
+package seed;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import asl.seedscan.Global;
+
+/**
+ * Reads the fixed data header of a mini-seed record, shared by
+ * {@link MiniSeed} and {@link MiniSeedView} so both read a record the same
+ * way.
+ *
+ * The record starts at index 0 of the given buffers. Only absolute reads are
+ * used and the buffers' positions are never changed. Methods taking an
+ * ordered buffer expect its byte order to already be set from
+ * {@link #swapNeeded(ByteBuffer)}.
+ */
+final class MiniSeedHeader {
+
+	/** The Constant datalogger. */
+	private static final Logger datalogger = LoggerFactory.getLogger("DataLog");
+
+	/** The Constant logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(seed.MiniSeedHeader.class);
+
+	private MiniSeedHeader() {
+	}
+
+	/**
+	 * Is the record a heart beat. These packets have all zero sequence # and
+	 * all spaces in the net/station/location/channel
+	 *
+	 * @param record
+	 *            buffer holding a mini-seed record
+	 * @return true if sequences is all zero and first 12 chars are blanks
+	 */
+	static boolean isHeartBeat(ByteBuffer record) {
+		for (int i = 0; i < 6; i++)
+			if (record.get(i) != 48 || record.get(i + 6) != 32
+					|| record.get(i + 12) != 32) {
+				return false;
+			}
+		return true;
+	}
+
+	/**
+	 * Determines whether the record is little endian, from the offset of its
+	 * first blockette and the word order of blockette 1000, or from the data
+	 * offset if it has no blockettes. The buffer's byte order is not changed.
+	 *
+	 * @param record
+	 *            buffer holding a mini-seed record
+	 * @return true if the record must be read little endian
+	 * @throws IllegalSeednameException
+	 *             if the sequence number or quality indicator are not valid
+	 */
+	static boolean swapNeeded(ByteBuffer record)
+			throws IllegalSeednameException {
+		String qualityFlagsStr = Global.getQualityflags();
+		List<String> qualityFlags = Arrays.asList(qualityFlagsStr.split(","));
+
+		for (int i = 0; i < 4; i++) {
+			if (record.get(i) < '0' || record.get(i) > '9') {
+				throw new IllegalSeednameException("Bad seq # or [DQR] "
+						+ toStringRaw(record));
+			}
+		}
+		if (record.get(7) != ' '
+				|| !(qualityFlags.contains("All") || qualityFlags
+						.contains(String.valueOf((char) record.get(6))))) {
+			throw new IllegalSeednameException("Bad seq # or [DQR] "
+					+ toStringRaw(record));
+		}
+
+		ByteBuffer bb = record.duplicate().order(ByteOrder.BIG_ENDIAN);
+		boolean swap = false;
+		int nblks = bb.get(39);
+		int offset;
+		if (nblks > 0) {
+			offset = bb.getShort(46);
+			if (offsetLooksSwapped(record)) { // This looks like swap is needed
+				bb.order(ByteOrder.LITTLE_ENDIAN);
+				offset = bb.getShort(46); // get byte swapped version
+				if (offset > 200 || offset < 0) {
+					datalogger.error("MiniSEED: cannot figure out if this is swapped or not!!! Assume not. offset="
+							+ offset + " " + toStringRaw(record));
+					RuntimeException e = new RuntimeException(
+							"Cannot figure swap from offset ");
+					datalogger.error("RuntimeException:", e);
+				} else
+					swap = true;
+			}
+			for (int i = 0; i < nblks; i++) {
+				if (offset < 48 || offset > 64) {
+					logger.error("Illegal offset trying to figure swapping off="
+							+ Util.toHex(offset) + " nblks=" + nblks
+							+ " seedname="
+							+ Util.toAllPrintable(seedName(record)) + " "
+							+ toStringRaw(record));
+					break;
+				}
+				int type = bb.getShort(offset);
+				int oldoffset = offset;
+				offset = bb.getShort(offset + 2);
+				if (type == 1000) {
+					if (bb.get(oldoffset + 5) == 0) { // this should be word order
+						if (swap)
+							return true;
+						logger.error("Offset said swap but order byte in b1000 said not to! "
+								+ toStringRaw(record));
+						return false;
+					} else
+						return false;
+				}
+			}
+		} else { // This block does not have blockette 1000, so make decision
+					// based on where the data starts!
+			offset = bb.getShort(44);
+			return offset < 0 || offset > 512;
+		}
+		return swap;
+	}
+
+	/**
+	 * Whether the record has blockettes and the offset of the first one,
+	 * read big endian, is outside of the fixed header. This is where
+	 * {@link #swapNeeded(ByteBuffer)} starts to try little endian, whether or
+	 * not it then decides to swap.
+	 *
+	 * @param record
+	 *            buffer holding a mini-seed record
+	 * @return true if the first blockette offset looks swapped
+	 */
+	static boolean offsetLooksSwapped(ByteBuffer record) {
+		ByteBuffer bb = record.duplicate().order(ByteOrder.BIG_ENDIAN);
+		if (bb.get(39) <= 0) {
+			return false;
+		}
+		int offset = bb.getShort(46);
+		return offset > 64 || offset < 48;
+	}
+
+	/**
+	 * This method attempts to determine the block size in blockette 1000. If a
+	 * record has field 17 (position 44) is 0 it is changed to 64. This
+	 * prevents issues with CU stations having OCF channels that are invalid.
+	 * Only the first 256 bytes of the record need to be present.
+	 *
+	 * @param record
+	 *            buffer holding a mini-seed record
+	 * @return the block size
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 * @throws BlockSizeException
+	 *             occurs if either a blockette Offset is too small or too large
+	 *             OR if there is no blockette 1000.
+	 */
+	static int crackBlockSize(ByteBuffer record)
+			throws IllegalSeednameException, BlockSizeException {
+		ByteBuffer bb = record.duplicate().order(
+				swapNeeded(record) ? ByteOrder.LITTLE_ENDIAN
+						: ByteOrder.BIG_ENDIAN);
+		int nblks = bb.get(39); // # of blockettes that follow
+		int dataOffset = bb.getShort(44); // end of data header
+		if (dataOffset == 0) {
+			logger.warn("Data Offset is 0. Either there is no data or there is a problem. Treating as if it was 64.");
+			dataOffset = 64; // If it is a record with no data, set to 64.
+		}
+		int offset = bb.getShort(46); // offset to first blockette
+		for (int i = 0; i < nblks; i++) {
+			if (offset < 48 || offset >= dataOffset) {
+				throw new BlockSizeException(
+						"Illegal offset trying to crackBlockSize() blocketteOffset="
+								+ offset + " dataOffset= " + dataOffset
+								+ " nblks=" + nblks + " seedname="
+								+ seedName(record));
+			}
+			int type = bb.getShort(offset);
+			int oldoffset = offset;
+			offset = bb.getShort(offset + 2);
+			if (type == 1000) {
+				return 1 << bb.get(oldoffset + 6);
+			}
+		}
+		/* If we got here we never found a blockette 1000 */
+		throw new BlockSizeException(
+				"Missing blockette 1000 trying to crackBlockSize() blocketteOffset="
+						+ offset + " dataOffset= " + dataOffset + " nblks="
+						+ nblks + " seedname=" + seedName(record));
+	}
+
+	/**
+	 * This returns the seedname in NSCL order.
+	 *
+	 * @param record
+	 *            buffer holding a mini-seed record
+	 * @return The seedname in NSCL order
+	 */
+	static String seedName(ByteBuffer record) {
+		byte[] seed = new byte[12];
+		for (int i = 0; i < 12; i++) {
+			seed[i] = record.get(8 + i);
+		}
+		String s = new String(seed);
+		return s.substring(10, 12) + s.substring(0, 5) + s.substring(7, 10)
+				+ s.substring(5, 7);
+	}
+
+	/**
+	 * This returns the time data as a 4 element array with hour, minute, sec,
+	 * and hsec.
+	 *
+	 * @param ordered
+	 *            buffer holding a mini-seed record, in its byte order
+	 * @return The time in a 4 integer array
+	 */
+	static int[] time(ByteBuffer ordered) {
+		int[] time = new int[4];
+		time[0] = ordered.get(24) & 0x000000ff; // hour
+		time[1] = ordered.get(25) & 0x000000ff; // minute
+		time[2] = ordered.get(26) & 0x000000ff;
+		time[3] = ordered.getShort(28) & 0x0000ffff;
+		return time;
+	}
+
+	/**
+	 * This returns the digitizing rate from the header's rate factor and
+	 * multiplier.
+	 *
+	 * @param rateFactor
+	 *            the sample rate factor
+	 * @param rateMultiplier
+	 *            the sample rate multiplier
+	 * @return The digitizing rate as a double. 0. if the block factor and
+	 *         multipler are invalid.
+	 */
+	static double rate(short rateFactor, short rateMultiplier) {
+		double rate = rateFactor;
+		// if rate > 0 its in hz, < 0 its period.
+		// if multiplier > 0 it multiplies, if < 0 it divides.
+		if (rateFactor == 0 || rateMultiplier == 0)
+			return 0;
+		if (rate >= 0) {
+			if (rateMultiplier > 0)
+				rate *= rateMultiplier;
+			else
+				rate /= -rateMultiplier;
+		} else {
+			if (rateMultiplier > 0)
+				rate = -rateMultiplier / rate;
+			else
+				rate = -1. / (-rateMultiplier) / rate;
+		}
+		return rate;
+	}
+
+	/**
+	 * Returns the type of a blockette. Blockette 1001 was not swapped for a
+	 * short time in 2009, days 128-133, so its type reads as -5885 in those
+	 * records.
+	 *
+	 * @param type
+	 *            the type as read from the record
+	 * @param year
+	 *            the record's year
+	 * @param doy
+	 *            the record's day of year
+	 * @return the blockette type
+	 */
+	static int blocketteType(int type, int year, int doy) {
+		if (type == -5885 && year == 2009 && doy >= 128 && doy <= 133) {
+			return 1001;
+		}
+		return type;
+	}
+
+	/**
+	 * Safe letter.
+	 *
+	 * @param b the b
+	 * @return the string
+	 */
+	private static String safeLetter(byte b) {
+		char c = (char) b;
+		return Character.isLetterOrDigit(c) || c == ' ' ? "" + c : Util
+				.toHex((byte) c);
+	}
+
+	/**
+	 * Describes the raw header for log messages, read big endian.
+	 *
+	 * @param record
+	 *            buffer holding a mini-seed record
+	 * @return the string
+	 */
+	static String toStringRaw(ByteBuffer record) {
+		ByteBuffer bb = record.duplicate().order(ByteOrder.BIG_ENDIAN);
+		StringBuilder tmp = new StringBuilder(100);
+		for (int i = 0; i < 6; i++)
+			tmp.append(safeLetter(bb.get(i)));
+		tmp.append(" ");
+		for (int i = 18; i < 20; i++)
+			tmp.append(safeLetter(bb.get(i)));
+		for (int i = 8; i < 13; i++)
+			tmp.append(safeLetter(bb.get(i)));
+		for (int i = 15; i < 18; i++)
+			tmp.append(safeLetter(bb.get(i)));
+		for (int i = 13; i < 15; i++)
+			tmp.append(safeLetter(bb.get(i)));
+		short i2 = bb.getShort(20);
+		tmp.append(" " + i2 + " " + Util.toHex(i2));
+		i2 = bb.getShort(22);
+		tmp.append(" " + i2 + " " + Util.toHex(i2));
+		tmp.append(" " + bb.get(24) + ":" + bb.get(25) + ":" + bb.get(26));
+		i2 = bb.getShort(28);
+		tmp.append("." + i2 + " " + Util.toHex(i2));
+		tmp.append(" ns=" + bb.getShort(30));
+		tmp.append(" rt=" + bb.getShort(32));
+		tmp.append("*" + bb.getShort(34));
+		tmp.append(" nb=" + bb.get(39));
+		tmp.append(" d=" + bb.getShort(44));
+		tmp.append(" b=" + bb.getShort(46));
+		return tmp.toString();
+	}
+}
@@ -0,0 +1,356 @@
+/*
+ * MiniSeedView.java
+ */
+
+package seed;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read only view of a mini-seed record held in a {@link ByteBuffer}, such as
+ * a slice of a memory mapped file. Unlike {@link MiniSeed} the record is never
+ * copied; header fields and blockettes 1000, 1001 and 320 are read directly
+ * from the buffer.
+ *
+ * The fixed header is read through {@link MiniSeedHeader}, as MiniSeed reads
+ * it, so a record yields identical values through either class. The one
+ * exception is a record whose blockette offset looks swapped but whose swap
+ * cannot be determined: MiniSeed reads its header little endian while a view
+ * reads it big endian, as it assumes no swap.
+ *
+ * A view is not thread safe and is meant to be used by one thread for one
+ * record.
+ */
+public class MiniSeedView {
+
+	/** The Constant logger. */
+	private static final Logger logger = LoggerFactory
+			.getLogger(seed.MiniSeedView.class);
+
+	/** The record, positioned so that index 0 is the first header byte. */
+	private final ByteBuffer ms;
+
+	/** The swap state, null until the header has been checked. */
+	private Boolean swap = null;
+
+	/** True once the blockettes have been walked. */
+	private boolean cracked = false;
+
+	/** The encoding from blockette 1000. */
+	private int encoding = 0;
+
+	/** The record length from blockette 1000, or the buffer length. */
+	private int recLength;
+
+	/** The timing quality from blockette 1001, -1 if it is absent. */
+	private int timingQuality = -1;
+
+	/** The offset of blockette 320, -1 if it is absent. */
+	private int b320Offset = -1;
+
+	/**
+	 * Creates a view of the record starting at the buffer's current position
+	 * and ending at its limit. The buffer's position and limit are not
+	 * modified.
+	 *
+	 * @param record
+	 *            Buffer containing one mini-seed record
+	 */
+	public MiniSeedView(ByteBuffer record) {
+		ms = record.slice();
+		recLength = ms.limit();
+	}
+
+	/**
+	 * Is the record at the buffer's position a heart beat. These packets have
+	 * all zero sequence # and all spaces in the net/station/location/channel
+	 *
+	 * @param record
+	 *            buffer positioned at a mini-seed record
+	 * @return true if sequences is all zero and first 12 chars are blanks
+	 */
+	public static boolean isHeartBeat(ByteBuffer record) {
+		return MiniSeedHeader.isHeartBeat(record.slice());
+	}
+
+	/**
+	 * This method attempts to determine the block size in blockette 1000 of
+	 * the record at the buffer's position. It matches
+	 * {@link MiniSeed#crackBlockSize(byte[])}, but only the first 256 bytes of
+	 * the record need to be present.
+	 *
+	 * @param record
+	 *            buffer positioned at a mini-seed record
+	 * @return the block size
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 * @throws BlockSizeException
+	 *             occurs if either a blockette Offset is too small or too large
+	 *             OR if there is no blockette 1000.
+	 */
+	public static int crackBlockSize(ByteBuffer record)
+			throws IllegalSeednameException, BlockSizeException {
+		return MiniSeedHeader.crackBlockSize(record.slice());
+	}
+
+	/**
+	 * Returns the record with its byte order set, determining the swap state
+	 * on first use.
+	 *
+	 * @return the record buffer
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	private ByteBuffer header() throws IllegalSeednameException {
+		if (swap == null) {
+			swap = MiniSeedHeader.swapNeeded(ms);
+			ms.order(swap ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		}
+		return ms;
+	}
+
+	/**
+	 * Walks the blockettes, recording blockette 1000, 1001 and 320 values. If
+	 * the record has been previously cracked, no processing is done.
+	 *
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	private void crack() throws IllegalSeednameException {
+		if (cracked)
+			return;
+		ByteBuffer bb = header();
+		int nblockettes = bb.get(39);
+		// This is the "terminator" blocks for rerequests for the GSN, most
+		// LOGS have nsamp set to number of characters in buffer!
+		if (bb.get(15) == 'L' && bb.get(16) == 'O' && bb.get(17) == 'G'
+				&& getNsamp() == 0)
+			nblockettes = 0;
+
+		int next = bb.getShort(46);
+		for (int blk = 0; blk < nblockettes; blk++) {
+			if (next < 48 || next >= 400) {
+				if (getNsamp() > 0)
+					logger.error("Bad position in blockettes next2=" + next);
+				break;
+			}
+			int type = MiniSeedHeader.blocketteType(bb.getShort(next),
+					getYear(), getDoy());
+			switch (type) {
+			case 320: // Pseudo-random calibration
+				b320Offset = next;
+				break;
+			case 1000:
+				encoding = bb.get(next + 4);
+				recLength = 1 << bb.get(next + 6);
+				break;
+			case 1001: // data extension (Quanterra only?)
+				timingQuality = bb.get(next + 4) & 0xff;
+				break;
+			default:
+				break;
+			}
+			next = bb.getShort(next + 2);
+		}
+		cracked = true;
+	}
+
+	/**
+	 * This returns the seedname in NSCL order, matching
+	 * {@link MiniSeed#crackSeedname(byte[])}.
+	 *
+	 * @return The seedname in NSCL order
+	 */
+	public String getSeedName() {
+		return MiniSeedHeader.seedName(ms);
+	}
+
+	/**
+	 * get the sequence number as an int!.
+	 *
+	 * @return the sequence number
+	 */
+	public int getSequence() {
+		byte[] seq = new byte[6];
+		for (int i = 0; i < 6; i++) {
+			seq[i] = ms.get(i);
+		}
+		return Integer.parseInt(new String(seq));
+	}
+
+	/**
+	 * Return the year.
+	 *
+	 * @return The year
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public int getYear() throws IllegalSeednameException {
+		return header().getShort(20);
+	}
+
+	/**
+	 * Return the day of year.
+	 *
+	 * @return The day of year
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public int getDoy() throws IllegalSeednameException {
+		return header().getShort(22);
+	}
+
+	/**
+	 * This returns the time data as a 4 element array with hour, minute, sec,
+	 * and hsec.
+	 *
+	 * @return The time in a 4 integer array
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public int[] getTime() throws IllegalSeednameException {
+		return MiniSeedHeader.time(header());
+	}
+
+	/**
+	 * retun number of samples in packet.
+	 *
+	 * @return # of samples
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public int getNsamp() throws IllegalSeednameException {
+		return header().getShort(30);
+	}
+
+	/**
+	 * This returns the digitizing rate.
+	 *
+	 * @return The digitizing rate as a double. 0. if the block factor and
+	 *         multipler are invalid.
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public double getRate() throws IllegalSeednameException {
+		ByteBuffer bb = header();
+		return MiniSeedHeader.rate(bb.getShort(32), bb.getShort(34));
+	}
+
+	/**
+	 * return the offset to the data.
+	 *
+	 * @return the offset to the data in bytes
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public int getDataOffset() throws IllegalSeednameException {
+		return header().getShort(44);
+	}
+
+	/**
+	 * return the blocksize or record length of this mini-seed.
+	 *
+	 * @return the blocksize of record length
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public int getBlockSize() throws IllegalSeednameException {
+		crack();
+		return recLength;
+	}
+
+	/**
+	 * return the encoding from blockette 1000.
+	 *
+	 * @return the encoding, 0 if there is no blockette 1000
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public int getEncoding() throws IllegalSeednameException {
+		crack();
+		return encoding;
+	}
+
+	/**
+	 * return state of swap as required by the Steim decompression routines.
+	 *
+	 * @return True if bytes need to be swapped
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public boolean isSwapBytes() throws IllegalSeednameException {
+		header();
+		return swap;
+	}
+
+	/**
+	 * return the timing quality byte from blockette 1001.
+	 *
+	 * @return the timing quality byte from blockette 1001 or -1 if it does not
+	 *         exist
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public int getTimingQuality() throws IllegalSeednameException {
+		crack();
+		return timingQuality;
+	}
+
+	/**
+	 * Return a copy of the 64 byte blockette 320. Calibration records are
+	 * rare, so this is the only blockette which is copied out of the record.
+	 *
+	 * @return the blockette or null if this blockette is not in the record
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public byte[] getBlockette320() throws IllegalSeednameException {
+		crack();
+		if (b320Offset < 0) {
+			return null;
+		}
+		byte[] buf320 = new byte[64];
+		ByteBuffer bb = ms.duplicate();
+		bb.position(b320Offset);
+		bb.get(buf320);
+		return buf320;
+	}
+
+	/**
+	 * Returns the length of the compressed data frames.
+	 *
+	 * @return the number of bytes between the data offset and the end of the
+	 *         record
+	 * @throws BlockSizeException
+	 *             if the data offset is beyond the end of the record
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public int getDataLength() throws BlockSizeException,
+			IllegalSeednameException {
+		int dataOffset = getDataOffset();
+		if (getBlockSize() <= dataOffset) {
+			throw new BlockSizeException(String.format(
+					"BlockSizeException: (blockSize:[{%s}]) > (dataOffset:[{%s}])",
+					getBlockSize(), dataOffset));
+		}
+		return getBlockSize() - dataOffset;
+	}
+
+	/**
+	 * Returns the whole record in the byte order given by its header, so the
+	 * data frames can be decoded in place. Callers should only use absolute
+	 * reads since the buffer is shared with this view.
+	 *
+	 * @return the record buffer
+	 * @throws IllegalSeednameException
+	 *             if the buffer clearly is not mini-seed
+	 */
+	public ByteBuffer getRecord() throws IllegalSeednameException {
+		return header();
+	}
+}
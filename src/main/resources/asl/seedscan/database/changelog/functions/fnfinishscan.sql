@@ -7,9 +7,9 @@ CREATE OR REPLACE FUNCTION fnfinishscan(scanid uuid)
 $BODY$
 BEGIN
 
---Update scan to finished
+--Update scan to finished, ending its lease
   UPDATE tblscan
-   SET finished=true
+   SET finished=true, leaseexpires=NULL
  WHERE
 pkscanid = scanid;
 
@@ -28,6 +28,8 @@ pkscanid = scanid;
   AND
   taken = TRUE --Must have been processed
   AND
+  leaseexpires IS NULL --Must not be leased, its child scans may still be added
+  AND
   pkscanid NOT IN (
   --List of all parents with unfinished children
       select distinct fkparentscan
@@ -0,0 +1,52 @@
+-- Function: fnleasescans(character varying, integer, integer)
+
+-- DROP FUNCTION fnleasescans(character varying, integer, integer);
+
+CREATE OR REPLACE FUNCTION fnleasescans(character varying, integer, integer)
+  RETURNS SETOF tblscan AS
+$BODY$
+DECLARE
+    ownerIN alias for $1;
+    countIN alias for $2;
+    secondsIN alias for $3;
+BEGIN
+--Leases up to countIN priority scans to ownerIN for secondsIN seconds.
+--Scans whose lease expired without being renewed are taken again.
+--Rows being taken by other connections are skipped rather than waited on, so scanners sharing
+--the table never wait on each other.
+RETURN QUERY
+UPDATE tblscan
+  SET taken = true, lastupdate = current_timestamp, leaseowner = ownerIN,
+      leaseexpires = current_timestamp + secondsIN * interval '1 second'
+  WHERE
+    pkscanid IN (
+      SELECT pkscanid
+        FROM tblscan
+        WHERE
+            finished = FALSE
+            AND
+            (
+            scheduledrun < current_date
+            OR
+            scheduledrun IS NULL
+            )
+            AND
+            (
+            taken = FALSE
+            OR
+            leaseexpires < current_timestamp
+            )
+        ORDER BY
+            priority desc,
+            enddate desc,
+            startdate desc
+        LIMIT countIN
+        FOR UPDATE SKIP LOCKED
+    )
+  RETURNING tblscan.*;
+
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100
+  ROWS 10;
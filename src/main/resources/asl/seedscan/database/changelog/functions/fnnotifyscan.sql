@@ -0,0 +1,16 @@
+-- Function: fnnotifyscan()
+
+-- DROP FUNCTION fnnotifyscan();
+
+CREATE OR REPLACE FUNCTION fnnotifyscan()
+  RETURNS trigger AS
+$BODY$
+BEGIN
+--Wakes scanners listening on seedscan_scan. Notifications are only delivered on commit and
+--repeats within a transaction are sent once.
+  PERFORM pg_notify('seedscan_scan', '');
+  RETURN NULL;
+END
+$BODY$
+  LANGUAGE plpgsql VOLATILE
+  COST 100;
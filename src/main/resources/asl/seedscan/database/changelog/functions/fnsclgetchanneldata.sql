@@ -17,6 +17,12 @@ DECLARE
     channelData TEXT;
     computeType int;
     metricName TEXT;
+    startJ int := to_char(startDate, 'J')::INT;
+    endJ int := to_char(endDate, 'J')::INT;
+    --Whole months in the range are read from tblMetricMonthly, from fullStartJ up to fullEndJ
+    --exclusive, and the partial months at either edge from tblMetricData.
+    fullStartJ int := to_char(date_trunc('month', startDate - 1) + interval '1 month', 'J')::INT;
+    fullEndJ int := to_char(date_trunc('month', endDate + 1), 'J')::INT;
 BEGIN
     Select fkComputeTypeID, name from tblMetric where pkMetricID = metricID INTO computeType, metricName;
     CASE computeType
@@ -24,28 +30,20 @@ BEGIN
         WHEN 1 THEN
             --Average across total number of values
             SELECT INTO channelData string_agg(CONCAT(id, ',',avg, ',', fnsclGetPercentage(avg, metricName)), E'\n') FROM (
-                SELECT md1.fkChannelID as id, round((SUM(md1.value)/count(md1.*))::numeric, 2) as avg
-                FROM tblMetricData md1
-                WHERE md1.fkChannelID = any(channelIDs)
-                    AND 
-                    md1.date >= to_char(startDate, 'J')::INT
-                    AND md1.date <= to_char(endDate, 'J')::INT
-                    AND md1.fkMetricID = metricID
-                GROUP BY md1.fkChannelID ) channels;
+                SELECT parts.id, round((SUM(parts.valueSum)/SUM(parts.valueCount))::numeric, 2) as avg
+                FROM fnsclgetchannelparts(channelIDs, metricID, startJ, endJ, fullStartJ, fullEndJ) parts
+                GROUP BY parts.id
+                HAVING SUM(parts.valueCount) > 0 ) channels;
         WHEN 2 THEN
             --Average across days NOT ACCURATE
             select '2' into channelData;
         WHEN 3 THEN
             --Count all values, return sum
             SELECT INTO channelData string_agg(CONCAT(id, ',',sum, ',', fnsclGetPercentage(sum, metricName)), E'\n') FROM (
-                SELECT md1.fkChannelID as id, round(SUM(md1.value)::numeric, 0) as sum
-                FROM tblMetricData md1
-                WHERE md1.fkChannelID = any(channelIDs)
-                    AND 
-                    md1.date >= to_char(startDate, 'J')::INT
-                    AND md1.date <= to_char(endDate, 'J')::INT
-                    AND md1.fkMetricID = metricID
-                GROUP BY md1.fkChannelID ) channels;
+                SELECT parts.id, round(SUM(parts.valueSum)::numeric, 0) as sum
+                FROM fnsclgetchannelparts(channelIDs, metricID, startJ, endJ, fullStartJ, fullEndJ) parts
+                GROUP BY parts.id
+                HAVING SUM(parts.valueCount) > 0 ) channels;
         
         WHEN 5 THEN
             --Calculate data between last calibrations
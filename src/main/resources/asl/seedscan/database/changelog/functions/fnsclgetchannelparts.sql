@@ -0,0 +1,38 @@
+-- Function: fnsclgetchannelparts(integer[], integer, integer, integer, integer, integer)
+
+-- DROP FUNCTION fnsclgetchannelparts(integer[], integer, integer, integer, integer, integer);
+
+--Sums and counts of a metric's values for each channel over a range of Julian dates, from the
+--monthly rollups for the whole months fullStartJ up to fullEndJ exclusive, and from the daily
+--values for the days of the range outside those months. Callers add the parts up per channel.
+--The daily values are read through metricDataView, which also covers the values not yet moved
+--out of tblMetricData_legacy. Its date bounds prune tblMetricData to the partitions of the years
+--in the range.
+CREATE OR REPLACE FUNCTION fnsclgetchannelparts(
+    integer[],
+    integer,
+    integer,
+    integer,
+    integer,
+    integer)
+  RETURNS TABLE(id integer, valuesum double precision, valuecount bigint) AS
+$BODY$
+    --Whole months
+    SELECT mm.fkChannelID, mm.valueSum, mm.valueCount::bigint
+    FROM tblMetricMonthly mm
+    WHERE mm.fkChannelID = any($1)
+        AND mm.fkMetricID = $2
+        AND mm.month >= $5
+        AND mm.month < $6
+    UNION ALL
+    --Days of the partial months at the edges
+    SELECT md1.fkChannelID, md1.value, 1::bigint
+    FROM metricDataView md1
+    WHERE md1.fkChannelID = any($1)
+        AND md1.fkMetricID = $2
+        AND md1.date >= $3
+        AND md1.date <= $4
+        AND (md1.date < $5 OR md1.date >= $6)
+$BODY$
+  LANGUAGE sql STABLE
+  COST 100;
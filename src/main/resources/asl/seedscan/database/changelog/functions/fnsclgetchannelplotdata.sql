@@ -16,6 +16,9 @@ DECLARE
     endDate alias for $4;
     channelPlotData TEXT;
     computeType int;
+    --Bounds on tblMetricData.date, so only the partitions of the years in the range are read
+    startJ int := to_char(startDate, 'J')::INT;
+    endJ int := to_char(endDate, 'J')::INT;
 BEGIN
     
     Select fkComputeTypeID from tblMetric where pkMetricID = metricID INTO computeType;
@@ -25,11 +28,11 @@ BEGIN
             --Average across total number of values
             SELECT INTO channelPlotData string_agg(CONCAT(sdate, ',',avg), E'\n') FROM (
                 SELECT to_date(md1.date::text, 'J') as sdate, round(md1.value::numeric, 4) as avg
-                FROM tblMetricData md1
+                FROM metricDataView md1
                 WHERE md1.fkChannelID = channelID
                     AND 
-                    md1.date >= to_char(startDate, 'J')::INT
-                    AND md1.date <= to_char(endDate, 'J')::INT
+                    md1.date >= startJ
+                    AND md1.date <= endJ
                     AND md1.fkMetricID = metricID
                  ) channels;
         WHEN 2 THEN
@@ -39,11 +42,11 @@ BEGIN
             --Count all values, return sum
             SELECT INTO channelPlotData string_agg(CONCAT(sdate, ',',avg), E'\n') FROM (
                 SELECT to_date(md1.date::text, 'J') as sdate, round(md1.value::numeric, 4) as avg
-                FROM tblMetricData md1
+                FROM metricDataView md1
                 WHERE md1.fkchannelID = channelID
                     AND 
-                    md1.date >= to_char(startDate, 'J')::INT
-                    AND md1.date <= to_char(endDate, 'J')::INT
+                    md1.date >= startJ
+                    AND md1.date <= endJ
                     AND md1.fkMetricID = metricID
                 ) stations;
         --Calibration Data
@@ -17,6 +17,13 @@ DECLARE
     stationData TEXT;
     computeType int;
     metricName TEXT;
+    channelIDs int[];
+    startJ int := to_char(startDate, 'J')::INT;
+    endJ int := to_char(endDate, 'J')::INT;
+    --Whole months in the range are read from tblMetricMonthly, from fullStartJ up to fullEndJ
+    --exclusive, and the partial months at either edge from tblMetricData.
+    fullStartJ int := to_char(date_trunc('month', startDate - 1) + interval '1 month', 'J')::INT;
+    fullEndJ int := to_char(date_trunc('month', endDate + 1), 'J')::INT;
 BEGIN
 /*SELECT sum(value) as valueSum, sum(day) as dayCount, sen1.fkStationID, metricID
 FROM(
@@ -62,43 +69,40 @@ INNER JOIN tblSensor sen1
 GROUP BY sen1.fkStationID, semisum.metricID
 */
     Select fkComputeTypeID, name from tblMetric where pkMetricID = metricID INTO computeType, metricName;
+    SELECT array_agg(ch1.pkChannelID)
+        FROM tblChannel ch1
+        JOIN tblSensor sen1
+            ON ch1.fkSensorID = sen1.pkSensorID
+        WHERE sen1.fkStationID = any(stationIDs)
+            AND NOT ch1."isIgnored"
+        INTO channelIDs;
     CASE computeType
         --Metric Data
         WHEN 1 THEN
             --Average across total number of values
             SELECT INTO stationData string_agg(CONCAT(id, ',',avg, ',', fnsclGetPercentage(avg, metricName)), E'\n') FROM (
-                SELECT sen1.fkStationID as id, round((SUM(md1.value)/count(md1.*))::numeric, 4)::numeric as avg
-                FROM tblMetricData md1
+                SELECT sen1.fkStationID as id, round((SUM(parts.valueSum)/SUM(parts.valueCount))::numeric, 4)::numeric as avg
+                FROM fnsclgetchannelparts(channelIDs, metricID, startJ, endJ, fullStartJ, fullEndJ) parts
                 JOIN tblChannel ch1
-                    ON ch1.pkChannelID = md1.fkChannelID
-                    AND NOT ch1."isIgnored"
+                    ON ch1.pkChannelID = parts.id
                 JOIN tblSensor sen1
                     ON ch1.fkSensorID = sen1.pkSensorID
-                WHERE sen1.fkStationID = any(stationIDs)
-                    AND 
-                    md1.date >= to_char(startDate, 'J')::INT
-                    AND md1.date <= to_char(endDate, 'J')::INT
-                    AND md1.fkMetricID = metricID
-                GROUP BY sen1.fkStationID ) stations;
+                GROUP BY sen1.fkStationID
+                HAVING SUM(parts.valueCount) > 0 ) stations;
         WHEN 2 THEN
             --Average across days NOT ACCURATE
             select '2' into stationData;
         WHEN 3 THEN
             --Count all values, return sum
             SELECT INTO stationData string_agg(CONCAT(id, ',',sum, ',', fnsclGetPercentage(sum, metricName)), E'\n') FROM (
-                SELECT sen1.fkStationID as id, round(SUM(md1.value)::numeric, 0) as sum
-                FROM tblMetricData md1
+                SELECT sen1.fkStationID as id, round(SUM(parts.valueSum)::numeric, 0) as sum
+                FROM fnsclgetchannelparts(channelIDs, metricID, startJ, endJ, fullStartJ, fullEndJ) parts
                 JOIN tblChannel ch1
-                    ON ch1.pkChannelID = md1.fkChannelID
-                    AND NOT ch1."isIgnored"
+                    ON ch1.pkChannelID = parts.id
                 JOIN tblSensor sen1
                     ON ch1.fkSensorID = sen1.pkSensorID
-                WHERE sen1.fkStationID = any(stationIDs)
-                    AND 
-                    md1.date >= to_char(startDate, 'J')::INT
-                    AND md1.date <= to_char(endDate, 'J')::INT
-                    AND md1.fkMetricID = metricID
-                GROUP BY sen1.fkStationID ) stations;
+                GROUP BY sen1.fkStationID
+                HAVING SUM(parts.valueCount) > 0 ) stations;
         WHEN 5 THEN
             --Calculate date since last calibration
             SELECT INTO stationData string_agg(CONCAT(id, ',',sum, ',', fnsclGetPercentage(sum, metricName)), E'\n') FROM (
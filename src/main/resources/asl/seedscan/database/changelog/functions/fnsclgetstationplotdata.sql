@@ -16,6 +16,9 @@ DECLARE
     endDate alias for $4;
     stationPlotData TEXT;
     computeType int;
+    --Bounds on tblMetricData.date, so only the partitions of the years in the range are read
+    startJ int := to_char(startDate, 'J')::INT;
+    endJ int := to_char(endDate, 'J')::INT;
 BEGIN
     
     Select fkComputeTypeID from tblMetric where pkMetricID = metricID INTO computeType;
@@ -25,7 +28,7 @@ BEGIN
             --Average across total number of values
             SELECT INTO stationPlotData string_agg(CONCAT(sdate, ',',avg), E'\n') FROM (
                 SELECT to_date(md1.date::text, 'J') as sdate, round((SUM(md1.value)/count(md1.*))::numeric, 4) as avg
-                FROM tblMetricData md1
+                FROM metricDataView md1
                 JOIN tblChannel ch1
                     ON ch1.pkChannelID = md1.fkChannelID
                     AND NOT ch1."isIgnored"
@@ -33,8 +36,8 @@ BEGIN
                     ON ch1.fkSensorID = sen1.pkSensorID
                 WHERE sen1.fkStationID = stationID
                     AND 
-                    md1.date >= to_char(startDate, 'J')::INT
-                    AND md1.date <= to_char(endDate, 'J')::INT
+                    md1.date >= startJ
+                    AND md1.date <= endJ
                     AND md1.fkMetricID = metricID
                 GROUP BY md1.date ) stations;
         WHEN 2 THEN
@@ -44,7 +47,7 @@ BEGIN
             --Count all values, return sum
             SELECT INTO stationPlotData string_agg(CONCAT(sdate, ',',avg), E'\n') FROM (
                 SELECT to_date(md1.date::text, 'J') as sdate, round(SUM(md1.value)::numeric, 4) as avg
-                FROM tblMetricData md1
+                FROM metricDataView md1
                 JOIN tblChannel ch1
                     ON ch1.pkChannelID = md1.fkChannelID
                     AND NOT ch1."isIgnored"
@@ -52,8 +55,8 @@ BEGIN
                     ON ch1.fkSensorID = sen1.pkSensorID
                 WHERE sen1.fkStationID = stationID
                     AND 
-                    md1.date >= to_char(startDate, 'J')::INT
-                    AND md1.date <= to_char(endDate, 'J')::INT
+                    md1.date >= startJ
+                    AND md1.date <= endJ
                     AND md1.fkMetricID = metricID
                 GROUP BY md1.date ) stations;
         --Calibration Data
@@ -5,51 +5,41 @@
 CREATE OR REPLACE FUNCTION fntakenextscan()
   RETURNS SETOF tblscan AS
 $BODY$
-DECLARE
-    scanID uuid;
 BEGIN
---We do not want multiple connections taking the same scan
-    LOCK TABLE tblscan IN ACCESS EXCLUSIVE MODE;
-
-    --Find our priority scan.
-    SELECT pkscanid
-      FROM tblscan
-      WHERE
-          finished = FALSE
-          AND
-          (
-          scheduledrun < current_date
-          OR
-          scheduledrun IS NULL
-          )
-          AND
-          taken = FALSE
-      ORDER BY
-          priority desc,
-          enddate desc,
-          startdate desc
-      LIMIT 1
-  INTO scanID;
-
---Set taken update timestamp
-  UPDATE tblscan
-    SET taken=true, lastupdate = current_timestamp
-  WHERE
-    pkscanid = scanID;
-
+--Takes one scan without a lease, for scanners that do not renew leases.
+--Rows being taken by other connections are skipped rather than waited on.
 RETURN QUERY
-SELECT pkscanid, fkparentscan, lastupdate, metricfilter, networkfilter,
-       stationfilter, channelfilter, startdate, enddate, priority, deleteexisting,
-       scheduledrun, finished, taken, locationfilter
-  FROM tblscan
+UPDATE tblscan
+  SET taken=true, lastupdate = current_timestamp, leaseowner = NULL, leaseexpires = NULL
   WHERE
-  pkscanid = scanID;
-
-
+    pkscanid = (
+      SELECT pkscanid
+        FROM tblscan
+        WHERE
+            finished = FALSE
+            AND
+            (
+            scheduledrun < current_date
+            OR
+            scheduledrun IS NULL
+            )
+            AND
+            (
+            taken = FALSE
+            OR
+            leaseexpires < current_timestamp
+            )
+        ORDER BY
+            priority desc,
+            enddate desc,
+            startdate desc
+        LIMIT 1
+        FOR UPDATE SKIP LOCKED
+    )
+  RETURNING tblscan.*;
 
 END
 $BODY$
   LANGUAGE plpgsql VOLATILE
   COST 100
   ROWS 1000;
-
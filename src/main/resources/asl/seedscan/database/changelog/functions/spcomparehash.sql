@@ -31,7 +31,8 @@ BEGIN
 	  tblhash."pkHashID"
 	FROM
 	  public.tblhash,
-	  public.tblmetricdata,
+	  --Also covers the values not yet moved out of tblmetricdata_legacy
+	  public.metricdataview tblmetricdata,
 	  public.tblmetric,
 	  public.tblchannel,
 	  public.tblsensor,
@@ -50,8 +51,8 @@ BEGIN
 	  "tblGroup".name = networkName AND
 	  tblStation.name = stationName AND
 	  tblSensor.location = locationName AND
-	  tblChannel.name = channelName
-
+	  tblChannel.name = channelName AND
+	  tblMetricData.date = to_char(nDate, 'J')::INT
 	INTO hashID;
 
 	IF hashID IS NOT NULL THEN
@@ -29,7 +29,8 @@ BEGIN
 	  tblMetricData.value
 	FROM
 
-	  public.tblmetricdata,
+	  --Also covers the values not yet moved out of tblmetricdata_legacy
+	  public.metricdataview tblmetricdata,
 	  public.tblmetric,
 	  public.tblchannel,
 	  public.tblsensor,
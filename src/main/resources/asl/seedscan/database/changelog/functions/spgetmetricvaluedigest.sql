@@ -33,7 +33,8 @@ BEGIN
 	  tblHash.hash
 	FROM
 	  public.tblhash,
-	  public.tblmetricdata,
+	  --Also covers the values not yet moved out of tblmetricdata_legacy
+	  public.metricdataview tblmetricdata,
 	  public.tblmetric,
 	  public.tblchannel,
 	  public.tblsensor,
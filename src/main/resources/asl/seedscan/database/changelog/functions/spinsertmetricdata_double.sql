@@ -28,6 +28,7 @@ DECLARE
 	channelID int;
 	metricID int;
 	hashID int;
+	monthID int;
 	debug text;
 
 BEGIN
@@ -145,6 +146,9 @@ BEGIN
 	    VALUES (CURRENT_TIMESTAMP, "tblDate has a date with incorrect pkDateID date:"
 	    +to_char(nDate, 'J')::INT);
     END;
+--Values written before tblMetricData was partitioned are replaced by the new value
+    DELETE FROM tblMetricData_legacy
+	WHERE date = to_char(nDate, 'J')::INT AND fkMetricID = metricID AND fkChannelID = channelID;
 --Insert/Update metric value for day
     UPDATE tblMetricData
 	SET value = valueIN, "fkHashID" = hashID
@@ -161,6 +165,25 @@ BEGIN
     END;
     END IF;
 
+--Recompute the month's rollup once its row is locked, so concurrent writers to the month are counted
+    monthID := to_char(date_trunc('month', nDate), 'J')::INT;
+    INSERT INTO tblMetricMonthly (fkMetricID, fkChannelID, month, valueCount, valueSum)
+	VALUES (metricID, channelID, monthID, 0, 0)
+	ON CONFLICT DO NOTHING;
+    PERFORM 1 FROM tblMetricMonthly
+	WHERE fkMetricID = metricID AND fkChannelID = channelID AND month = monthID
+	FOR UPDATE;
+    UPDATE tblMetricMonthly mm
+	SET valueCount = r.valueCount, valueSum = r.valueSum, valueMin = r.valueMin, valueMax = r.valueMax
+	FROM (
+	    SELECT count(md.value) AS valueCount, coalesce(sum(md.value), 0) AS valueSum,
+		min(md.value) AS valueMin, max(md.value) AS valueMax
+	    FROM metricDataView md
+	    WHERE md.fkMetricID = metricID AND md.fkChannelID = channelID
+		AND md.date >= monthID
+		AND md.date < to_char(date_trunc('month', nDate) + interval '1 month', 'J')::INT
+	) r
+	WHERE mm.fkMetricID = metricID AND mm.fkChannelID = channelID AND mm.month = monthID;
 
     END;
 $BODY$
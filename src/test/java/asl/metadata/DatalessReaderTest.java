@@ -0,0 +1,231 @@
+package asl.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.meta_new.ChannelMeta;
+import asl.metadata.meta_new.PoleZeroStage;
+import asl.metadata.meta_new.StationMeta;
+import asl.testutils.ResourceManager;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class DatalessReaderTest {
+
+  private static final int RECORD_LENGTH = 256;
+
+  /**
+   * Prefixes a blockette body with its type and length.
+   */
+  private static String blockette(int number, String body) {
+    return String.format("%03d%04d", number, body.length() + 7) + body;
+  }
+
+  /**
+   * Packs a header's blockettes into records of one type. Blockettes continue across records, but
+   * never start in the last 7 bytes of one.
+   */
+  private static String records(char type, int firstSequence, String... blockettes) {
+    int bodyLength = RECORD_LENGTH - 8;
+    StringBuilder body = new StringBuilder();
+    for (String blockette : blockettes) {
+      int room = bodyLength - body.length() % bodyLength;
+      if (room < 7) {
+        body.append(String.format("%" + room + "s", ""));
+      }
+      body.append(blockette);
+    }
+    while (body.length() % bodyLength != 0) {
+      body.append(' ');
+    }
+
+    StringBuilder records = new StringBuilder();
+    for (int i = 0; i < body.length() / bodyLength; i++) {
+      records.append(String.format("%06d%c%c", firstSequence + i, type, i == 0 ? ' ' : '*'));
+      records.append(body, i * bodyLength, (i + 1) * bodyLength);
+    }
+    return records.toString();
+  }
+
+  /**
+   * An IU_ANMO volume with one BHZ channel epoch. Its sensor response and gain are dictionary
+   * entries referenced by a B060, the station spans two records.
+   */
+  private static byte[] volume() {
+    String volumeHeader = records('V', 1,
+        blockette(10, " 2.408" + "1990,001~2500,001~2015,001~ASL~IU_ANMO~"));
+    String abbreviations = records('A', 2,
+        blockette(30, "Steim2 Integer Compression Format~" + "0002" + "050" + "00"),
+        blockette(33, "001" + "Streckeisen STS-2 Standard-gain~"),
+        blockette(34, "001" + "M/S~" + "Velocity in Meters Per Second~"),
+        blockette(34, "002" + "V~" + "Volts~"),
+        blockette(34, "003" + "COUNTS~" + "Digital Counts~"),
+        blockette(43, "0001" + "STS-2~" + "A" + "001" + "002"
+            + " 3.94651E+03" + " 2.00000E-02" + "002"
+            + " 0.00000E+00 0.00000E+00 0.00000E+00 0.00000E+00"
+            + " 0.00000E+00 0.00000E+00 0.00000E+00 0.00000E+00"
+            + "002"
+            + "-3.70130E-02 3.70130E-02 0.00000E+00 0.00000E+00"
+            + "-3.70130E-02-3.70130E-02 0.00000E+00 0.00000E+00"),
+        blockette(48, "0002" + "STS-2 gain~" + " 1.50000E+03" + " 2.00000E-02" + "00"));
+    String stationHeader = records('S', 3,
+        blockette(50, "ANMO " + "  34.94590" + " -106.45720" + "1850.00" + "0001" + "000"
+            + "Albuquerque, New Mexico, USA~" + "001" + "3210" + "10"
+            + "2002,323,21:07:00.0000~" + "~" + "N" + "IU"),
+        blockette(52, "00" + "BHZ" + "0000" + "001" + "~" + "001" + "002"
+            + "  34.94590" + " -106.45720" + "1671.00" + "145.0" + "  0.0" + "-90.0"
+            + "0002" + "12" + "2.0000E+01" + "0.0000E+00" + "0000" + "CG~"
+            + "2015,001,00:00:00.0000~" + "~" + "N"),
+        blockette(60, "01" + "01" + "02" + "0001" + "0002"),
+        blockette(58, "00" + " 2.01000E+09" + " 2.00000E-02" + "00"));
+    return (volumeHeader + abbreviations + stationHeader).getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  @Test
+  public void testRead_IsFormattedAsRDSeedPrints() throws Exception {
+    List<Blockette> blockettes = DatalessReader.read(volume());
+
+    int[] numbers = new int[blockettes.size()];
+    for (int i = 0; i < numbers.length; i++) {
+      numbers[i] = blockettes.get(i).getNumber();
+    }
+    // Dictionaries dropped, B030 after its channel, B060 expanded in place
+    assertEquals("[10, 50, 52, 30, 53, 58, 58]", Arrays.toString(numbers));
+
+    Blockette station = blockettes.get(1);
+    assertEquals("ANMO", station.getFieldValue(3, 0));
+    assertEquals("2002,323,21:07:00.0000", station.getFieldValue(13, 0));
+    assertEquals("(null)", station.getFieldValue(14, 0));
+    assertEquals("IU", station.getFieldValue(16, 0));
+
+    Blockette channel = blockettes.get(2);
+    assertEquals("1 Streckeisen STS-2 Standard-gain", channel.getFieldValue(6, 0));
+    assertEquals("1 M/S - Velocity in Meters Per Second", channel.getFieldValue(8, 0));
+    assertEquals("2", channel.getFieldValue(16, 0));
+
+    Blockette poleZero = blockettes.get(4);
+    assertEquals("A", poleZero.getFieldValue(3, 0));
+    assertEquals("1", poleZero.getFieldValue(4, 0));
+    assertEquals("M/S - Velocity in Meters Per Second", poleZero.getFieldValue(5, 0));
+    assertEquals("V - Volts", poleZero.getFieldValue(6, 0));
+    assertEquals(2, poleZero.getFieldValues(15).size());
+    assertEquals("-3.70130E-02", poleZero.getFieldValues(16).get(1));
+
+    Blockette gain = blockettes.get(5);
+    assertEquals("1", gain.getFieldValue(3, 0));
+    assertEquals("1.50000E+03", gain.getFieldValue(4, 0));
+  }
+
+  @Test
+  public void testRead_BuildsStationMeta() throws Exception {
+    Dataless dataless = new Dataless(DatalessReader.read(volume()), "IU", "ANMO");
+    dataless.processVolume();
+    MetaGenerator metaGenerator = new MetaGenerator();
+    metaGenerator.addVolume(dataless.getVolume());
+
+    StationMeta stationMeta = metaGenerator
+        .getStationMeta(new Station("IU", "ANMO"), LocalDateTime.of(2015, 7, 25, 0, 0));
+    assertEquals(34.9459, stationMeta.getLatitude(), 1E-9);
+
+    ChannelMeta channelMeta = stationMeta.getChannelMetadata(new Channel("00", "BHZ"));
+    assertEquals(20.0, channelMeta.getSampleRate(), 1E-9);
+    assertTrue(channelMeta.getInstrumentType().contains("STS-2"));
+    assertEquals(2.01E9, channelMeta.getStage(0).getStageGain(), 1E-3);
+
+    PoleZeroStage stage = (PoleZeroStage) channelMeta.getStage(1);
+    assertEquals(1500.0, stage.getStageGain(), 1E-9);
+    assertEquals(3946.51, stage.getNormalization(), 1E-9);
+    assertEquals(2, stage.getInputUnits());
+    assertEquals(2, stage.getNumberOfZeros());
+    assertEquals(2, stage.getNumberOfPoles());
+    assertEquals(-0.037013, stage.getPoles().get(1).getImaginary(), 1E-12);
+  }
+
+  /**
+   * Describes each channel epoch of a station with the fields of its B052 and of the blockettes of
+   * its response stages, keyed by channel, epoch start, stage and blockette.
+   */
+  private static Map<String, String> describe(SeedVolume volume, Station station) {
+    Map<String, String> description = new TreeMap<>();
+    StationData stationData = volume.getStation(new StationKey(station));
+    for (Map.Entry<ChannelKey, ChannelData> channel : stationData.getChannels().entrySet()) {
+      for (Map.Entry<LocalDateTime, EpochData> epoch : channel.getValue().getEpochs()
+          .entrySet()) {
+        String key = channel.getKey() + " " + epoch.getKey();
+        description.put(key + " B052", fields(epoch.getValue().getInfo()));
+        for (StageData stage : epoch.getValue().getStages().values()) {
+          for (Blockette blockette : stage.getBlockettes().values()) {
+            description.put(String.format("%s stage %02d B%03d", key, stage.getStageID(),
+                blockette.getNumber()), fields(blockette));
+          }
+        }
+      }
+    }
+    return description;
+  }
+
+  private static String fields(Blockette blockette) {
+    Map<Integer, List<String>> fields = new TreeMap<>();
+    for (Field field : blockette.getFields().values()) {
+      fields.put(field.getID(), field.getValues());
+    }
+    return fields.toString();
+  }
+
+  /**
+   * The bundled IU_ANMO dataless read in process matches the rdseed text dump of the station, which
+   * the other tests load through {@link MetaGeneratorMock}.
+   */
+  @Test
+  public void testRead_MatchesRDSeedDump() throws Exception {
+    Station station = new Station("IU", "ANMO");
+    SeedVolume read = MetaGenerator.readVolume(
+        ResourceManager.getDirectoryPath("/metadata/station_dataless") + "IU_ANMO.dataless",
+        station.getNetwork(), station.getStation());
+
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        DatalessReaderTest.class.getResourceAsStream("/metadata/rdseed/IU-ANMO-ascii.txt")))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    MetaGenerator dumped = new MetaGenerator();
+    SeedVolume parsed = dumped
+        .buildVolumesFromStringData(lines, station.getNetwork(), station.getStation());
+
+    // Channels, their epochs and responses
+    Map<String, String> expected = describe(parsed, station);
+    assertTrue(expected.size() > 1);
+    assertEquals(expected, describe(read, station));
+
+    // The metadata a scan of the day gets, down to the evaluated response
+    MetaGenerator inProcess = new MetaGenerator();
+    inProcess.addVolume(read);
+    dumped.addVolume(parsed);
+    LocalDateTime day = LocalDateTime.of(2015, 7, 25, 0, 0);
+    StationMeta expectedMeta = dumped.getStationMeta(station, day);
+    StationMeta stationMeta = inProcess.getStationMeta(station, day);
+    assertEquals(expectedMeta.getChannelHashTable().keySet(),
+        stationMeta.getChannelHashTable().keySet());
+    for (ChannelKey channel : expectedMeta.getChannelHashTable().keySet()) {
+      assertEquals(channel.toString(),
+          expectedMeta.getChannelHashTable().get(channel).getDigestBytes(),
+          stationMeta.getChannelHashTable().get(channel).getDigestBytes());
+    }
+  }
+
+  @Test(expected = DatalessParseException.class)
+  public void testRead_NotSeed() throws Exception {
+    DatalessReader.read("<?xml version=\"1.0\"?>".getBytes(StandardCharsets.ISO_8859_1));
+  }
+}
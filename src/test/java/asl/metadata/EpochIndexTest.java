@@ -0,0 +1,126 @@
+package asl.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class EpochIndexTest {
+
+  private static final LocalDateTime ORIGIN = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+  private static final class Epoch {
+
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+
+    Epoch(int startDay, Integer endDay) {
+      start = ORIGIN.plusDays(startDay);
+      end = endDay == null ? null : ORIGIN.plusDays(endDay).minusSeconds(1);
+    }
+
+    LocalDateTime getStart() {
+      return start;
+    }
+
+    LocalDateTime getEnd() {
+      return end;
+    }
+  }
+
+  private static EpochIndex<Epoch> index(List<Epoch> epochs, boolean allowOpenOlderEpochs) {
+    return new EpochIndex<>(epochs, Epoch::getStart, Epoch::getEnd, allowOpenOlderEpochs);
+  }
+
+  /**
+   * The newest first scan ChannelData and StationData used before the index.
+   */
+  private static Epoch scan(List<Epoch> epochs, LocalDateTime time,
+      boolean allowOpenOlderEpochs) {
+    List<Epoch> sorted = new ArrayList<>(epochs);
+    sorted.sort((a, b) -> b.getStart().compareTo(a.getStart()));
+    for (int i = 0; i < sorted.size(); i++) {
+      Epoch epoch = sorted.get(i);
+      if (epoch.getEnd() == null) {
+        if (i > 0 && !allowOpenOlderEpochs) {
+          return null;
+        }
+        if (time.compareTo(epoch.getStart()) >= 0) {
+          return epoch;
+        }
+      } else if (time.compareTo(epoch.getStart()) >= 0
+          && time.compareTo(epoch.getEnd()) <= 0) {
+        return epoch;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testGetEpoch_ConsecutiveEpochs() {
+    List<Epoch> epochs = new ArrayList<>();
+    epochs.add(new Epoch(100, null));
+    epochs.add(new Epoch(0, 50));
+    epochs.add(new Epoch(50, 100));
+    EpochIndex<Epoch> index = index(epochs, false);
+
+    assertNull(index.getEpoch(ORIGIN.minusSeconds(1)));
+    assertEquals(epochs.get(1), index.getEpoch(ORIGIN));
+    assertEquals(epochs.get(1), index.getEpoch(ORIGIN.plusDays(50).minusSeconds(1)));
+    assertEquals(epochs.get(2), index.getEpoch(ORIGIN.plusDays(50)));
+    assertEquals(epochs.get(0), index.getEpoch(ORIGIN.plusDays(100)));
+    assertEquals(epochs.get(0), index.getEpoch(ORIGIN.plusDays(10000)));
+  }
+
+  @Test
+  public void testGetEpoch_GapBetweenEpochs() {
+    List<Epoch> epochs = new ArrayList<>();
+    epochs.add(new Epoch(0, 10));
+    epochs.add(new Epoch(20, 30));
+    EpochIndex<Epoch> index = index(epochs, false);
+
+    assertEquals(epochs.get(0), index.getEpoch(ORIGIN.plusDays(5)));
+    assertNull(index.getEpoch(ORIGIN.plusDays(15)));
+    assertNull(index.getEpoch(ORIGIN.plusDays(30)));
+  }
+
+  @Test
+  public void testGetEpoch_Empty() {
+    assertNull(index(Collections.<Epoch>emptyList(), false).getEpoch(ORIGIN));
+  }
+
+  @Test
+  public void testGetEpoch_MatchesNewestFirstScan() {
+    Random random = new Random(1);
+    for (int trial = 0; trial < 500; trial++) {
+      // Overlapping epochs and open older epochs, which dataless files shouldn't have. Epochs are
+      // keyed by their start, so no two start together.
+      List<Epoch> epochs = new ArrayList<>();
+      Set<Integer> starts = new HashSet<>();
+      int nEpochs = 1 + random.nextInt(8);
+      for (int i = 0; i < nEpochs; i++) {
+        int start = random.nextInt(100);
+        if (!starts.add(start)) {
+          continue;
+        }
+        Integer end = random.nextInt(6) == 0 ? null : start + 1 + random.nextInt(30);
+        epochs.add(new Epoch(start, end));
+      }
+      for (boolean allowOpenOlderEpochs : new boolean[]{false, true}) {
+        EpochIndex<Epoch> index = index(epochs, allowOpenOlderEpochs);
+        for (int day = -1; day < 140; day++) {
+          LocalDateTime time = ORIGIN.plusDays(day).plusHours(12);
+          assertEquals(scan(epochs, time, allowOpenOlderEpochs),
+              index.getEpoch(time));
+        }
+      }
+    }
+  }
+}
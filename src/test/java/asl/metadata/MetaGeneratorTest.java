@@ -3,13 +3,134 @@ package asl.metadata;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import asl.metadata.meta_new.ChannelMeta;
+import asl.metadata.meta_new.StationMeta;
 import asl.testutils.ResourceManager;
 import java.io.File;
+import java.time.LocalDateTime;
 import java.util.List;
 import org.junit.Test;
 
 public class MetaGeneratorTest {
 
+  private static Blockette stationEpoch(String start, String end) {
+    Blockette blockette = new Blockette(50);
+    blockette.addFieldData(3, "ANMO");
+    blockette.addFieldData(4, "34.9459");
+    blockette.addFieldData(5, "-106.4572");
+    blockette.addFieldData(6, "1671.0");
+    blockette.addFieldData(13, start);
+    blockette.addFieldData(14, end);
+    blockette.addFieldData(16, "IU");
+    return blockette;
+  }
+
+  /**
+   * A B052 epoch with a B058 sensitivity as stage 0.
+   */
+  private static EpochData channelEpoch(ChannelData channel, String start, String end,
+      double sensitivity) throws Exception {
+    Blockette blockette = new Blockette(52);
+    blockette.addFieldData(6, "STS-2");
+    blockette.addFieldData(12, "1671.0");
+    blockette.addFieldData(13, "0.0");
+    blockette.addFieldData(14, "0.0");
+    blockette.addFieldData(15, "-90.0");
+    blockette.addFieldData(18, "20");
+    blockette.addFieldData(21, "CG");
+    blockette.addFieldData(22, start);
+    blockette.addFieldData(23, end);
+    EpochData epoch = channel.getEpoch(channel.addEpoch(blockette));
+
+    Blockette gain = new Blockette(58);
+    gain.addFieldData(4, Double.toString(sensitivity));
+    gain.addFieldData(5, "0.02 HZ");
+    StageData stage = new StageData(0);
+    stage.addBlockette(gain);
+    epoch.addStage(0, stage);
+    return epoch;
+  }
+
+  /**
+   * IU_ANMO with a BHZ sensor replaced on 2015,100 and an LHZ channel added then.
+   */
+  private static MetaGenerator metaGenerator() throws Exception {
+    StationData station = new StationData("IU", "ANMO");
+    station.addEpoch(stationEpoch("2010,001,00:00:00", "(null)"));
+
+    ChannelKey bhz = new ChannelKey("00", "BHZ");
+    ChannelData bhzData = new ChannelData(bhz);
+    channelEpoch(bhzData, "2010,001,00:00:00", "2015,099,23:59:59", 2.0E9);
+    channelEpoch(bhzData, "2015,100,00:00:00", "(null)", 3.0E9);
+    station.addChannel(bhz, bhzData);
+    ChannelKey lhz = new ChannelKey("00", "LHZ");
+    ChannelData lhzData = new ChannelData(lhz);
+    channelEpoch(lhzData, "2015,100,00:00:00", "(null)", 4.0E9);
+    station.addChannel(lhz, lhzData);
+
+    SeedVolume volume = new SeedVolume(new Blockette(10), "IU", "ANMO");
+    volume.addStation(new StationKey("IU", "ANMO"), station);
+    MetaGenerator metaGenerator = new MetaGenerator();
+    metaGenerator.addVolume(volume);
+    return metaGenerator;
+  }
+
+  private static double sensitivity(StationMeta stationMeta, String channel) {
+    return stationMeta.getChannelMetadata(new Channel("00", channel)).getStage(0).getStageGain();
+  }
+
+  @Test
+  public void testGetStationMeta_SameEpochsCopyChannels() throws Exception {
+    MetaGenerator metaGenerator = metaGenerator();
+    Station station = new Station("IU", "ANMO");
+    LocalDateTime first = LocalDateTime.of(2014, 6, 1, 0, 0);
+    StationMeta firstDay = metaGenerator.getStationMeta(station, first);
+    StationMeta secondDay = metaGenerator.getStationMeta(station, first.plusDays(1));
+
+    assertEquals(first, firstDay.getTimestamp());
+    assertEquals(first.plusDays(1), secondDay.getTimestamp());
+    ChannelMeta firstBHZ = firstDay.getChannelMetadata(new Channel("00", "BHZ"));
+    ChannelMeta secondBHZ = secondDay.getChannelMetadata(new Channel("00", "BHZ"));
+    assertNotSame(firstBHZ, secondBHZ);
+    assertNotSame(firstBHZ.getStage(0), secondBHZ.getStage(0));
+    assertEquals(first, firstBHZ.getTimestamp());
+    assertEquals(first.plusDays(1), secondBHZ.getTimestamp());
+    assertEquals(firstBHZ.getDigestBytes(), secondBHZ.getDigestBytes());
+    assertEquals(20.0, secondBHZ.getSampleRate(), 0.0);
+    assertEquals(-90.0, secondBHZ.getDip(), 0.0);
+    assertEquals(1671.0, secondBHZ.getElevation(), 0.0);
+    assertEquals(2.0E9, sensitivity(secondDay, "BHZ"), 0.0);
+    assertEquals(1, secondDay.getNumberOfChannels());
+
+    // Changing one day's channels leaves the other days alone
+    firstBHZ.setAzimuth(45.0);
+    assertEquals(0.0, metaGenerator.getStationMeta(station, first).getChannelMetadata(
+        new Channel("00", "BHZ")).getAzimuth(), 0.0);
+  }
+
+  @Test
+  public void testGetStationMeta_FollowsEpochChanges() throws Exception {
+    MetaGenerator metaGenerator = metaGenerator();
+    Station station = new Station("IU", "ANMO");
+    LocalDateTime lastDay = LocalDateTime.of(2015, 4, 9, 0, 0);
+    assertEquals(99, lastDay.getDayOfYear());
+
+    StationMeta before = metaGenerator.getStationMeta(station, lastDay);
+    StationMeta after = metaGenerator.getStationMeta(station, lastDay.plusDays(1));
+    StationMeta again = metaGenerator.getStationMeta(station, lastDay.minusDays(1));
+
+    assertEquals(2.0E9, sensitivity(before, "BHZ"), 0.0);
+    assertEquals(1, before.getNumberOfChannels());
+    assertEquals(3.0E9, sensitivity(after, "BHZ"), 0.0);
+    assertEquals(4.0E9, sensitivity(after, "LHZ"), 0.0);
+    assertEquals(2, after.getNumberOfChannels());
+    assertEquals(2.0E9, sensitivity(again, "BHZ"), 0.0);
+    assertNull(metaGenerator.getStationMeta(station, LocalDateTime.of(2009, 1, 1, 0, 0)));
+  }
+
   @Test
   public void testGetDatalessFilesForNetwork_findsMultipleFiles() {
     File dir = new File(ResourceManager.getDirectoryPath("/metadata/station_dataless"));
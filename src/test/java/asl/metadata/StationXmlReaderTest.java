@@ -0,0 +1,118 @@
+package asl.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.meta_new.ChannelMeta;
+import asl.metadata.meta_new.PoleZeroStage;
+import asl.metadata.meta_new.StationMeta;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.Test;
+
+public class StationXmlReaderTest {
+
+  /**
+   * The same IU_ANMO BHZ epoch as {@link DatalessReaderTest}, as StationXML.
+   */
+  private static final String STATION_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<FDSNStationXML xmlns=\"http://www.fdsn.org/xml/station/1\" schemaVersion=\"1.0\">\n"
+      + "<Source>IRIS-DMC</Source>\n"
+      + "<Network code=\"IU\">\n"
+      + "<Station code=\"ANMO\" startDate=\"2002-11-19T21:07:00\">\n"
+      + "<Latitude>34.9459</Latitude><Longitude>-106.4572</Longitude>"
+      + "<Elevation>1850.0</Elevation>\n"
+      + "<Site><Name>Albuquerque, New Mexico, USA</Name></Site>\n"
+      + "<Channel code=\"BHZ\" locationCode=\"00\" startDate=\"2015-01-01T00:00:00Z\">\n"
+      + "<Comment><Value>Not a gain</Value></Comment>\n"
+      + "<Latitude>34.9459</Latitude><Longitude>-106.4572</Longitude>"
+      + "<Elevation>1671.0</Elevation><Depth>145.0</Depth>"
+      + "<Azimuth>0.0</Azimuth><Dip>-90.0</Dip>\n"
+      + "<Type>CONTINUOUS</Type><Type>GEOPHYSICAL</Type>\n"
+      + "<SampleRate>20.0</SampleRate>\n"
+      + "<Sensor><Description>Streckeisen STS-2 Standard-gain</Description></Sensor>\n"
+      + "<Response>\n"
+      + "<InstrumentSensitivity><Value>2.01E9</Value><Frequency>0.02</Frequency>"
+      + "<InputUnits><Name>M/S</Name></InputUnits>"
+      + "<OutputUnits><Name>COUNTS</Name></OutputUnits></InstrumentSensitivity>\n"
+      + "<Stage number=\"1\">\n"
+      + "<PolesZeros><InputUnits><Name>M/S</Name>"
+      + "<Description>Velocity in Meters Per Second</Description></InputUnits>"
+      + "<OutputUnits><Name>V</Name></OutputUnits>"
+      + "<PzTransferFunctionType>LAPLACE (RADIANS/SECOND)</PzTransferFunctionType>"
+      + "<NormalizationFactor>3946.51</NormalizationFactor>"
+      + "<NormalizationFrequency>0.02</NormalizationFrequency>\n"
+      + "<Zero number=\"0\"><Real>0</Real><Imaginary>0</Imaginary></Zero>"
+      + "<Zero number=\"1\"><Real>0</Real><Imaginary>0</Imaginary></Zero>\n"
+      + "<Pole number=\"2\"><Real>-0.037013</Real><Imaginary>0.037013</Imaginary></Pole>"
+      + "<Pole number=\"3\"><Real>-0.037013</Real><Imaginary>-0.037013</Imaginary></Pole>\n"
+      + "</PolesZeros>\n"
+      + "<StageGain><Value>1500.0</Value><Frequency>0.02</Frequency></StageGain>\n"
+      + "</Stage>\n"
+      + "</Response>\n"
+      + "</Channel>\n"
+      + "</Station>\n"
+      + "</Network>\n"
+      + "</FDSNStationXML>\n";
+
+  private static List<Blockette> read() throws Exception {
+    return StationXmlReader
+        .read(new ByteArrayInputStream(STATION_XML.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testRead_IsFormattedAsRDSeedPrints() throws Exception {
+    List<Blockette> blockettes = read();
+    assertEquals(6, blockettes.size());
+
+    Blockette station = blockettes.get(1);
+    assertEquals(50, station.getNumber());
+    assertEquals("2002,323,21:07:00.0000", station.getFieldValue(13, 0));
+    assertEquals("(null)", station.getFieldValue(14, 0));
+    assertEquals("IU", station.getFieldValue(16, 0));
+
+    Blockette channel = blockettes.get(2);
+    assertEquals(52, channel.getNumber());
+    assertEquals("CG", channel.getFieldValue(21, 0));
+    assertEquals("2015,001,00:00:00.0000", channel.getFieldValue(22, 0));
+
+    Blockette poleZero = blockettes.get(4);
+    assertEquals(53, poleZero.getNumber());
+    assertEquals("A", poleZero.getFieldValue(3, 0));
+    assertEquals("V - Volts", poleZero.getFieldValue(6, 0));
+    assertEquals("2", poleZero.getFieldValue(14, 0));
+  }
+
+  @Test
+  public void testRead_BuildsStationMeta() throws Exception {
+    Dataless dataless = new Dataless(read(), "IU", "ANMO");
+    dataless.processVolume();
+    MetaGenerator metaGenerator = new MetaGenerator();
+    metaGenerator.addVolume(dataless.getVolume());
+
+    StationMeta stationMeta = metaGenerator
+        .getStationMeta(new Station("IU", "ANMO"), LocalDateTime.of(2015, 7, 25, 0, 0));
+    assertEquals(34.9459, stationMeta.getLatitude(), 1E-9);
+
+    ChannelMeta channelMeta = stationMeta.getChannelMetadata(new Channel("00", "BHZ"));
+    assertEquals(20.0, channelMeta.getSampleRate(), 1E-9);
+    assertTrue(channelMeta.getInstrumentType().contains("STS-2"));
+    assertEquals(2.01E9, channelMeta.getStage(0).getStageGain(), 1E-3);
+
+    PoleZeroStage stage = (PoleZeroStage) channelMeta.getStage(1);
+    assertEquals(1500.0, stage.getStageGain(), 1E-9);
+    assertEquals(3946.51, stage.getNormalization(), 1E-9);
+    assertEquals(2, stage.getInputUnits());
+    assertEquals(2, stage.getNumberOfZeros());
+    assertEquals(2, stage.getNumberOfPoles());
+    assertEquals(-0.037013, stage.getPoles().get(1).getImaginary(), 1E-12);
+  }
+
+  @Test(expected = DatalessParseException.class)
+  public void testRead_NotStationXml() throws Exception {
+    StationXmlReader.read(new ByteArrayInputStream("<FDSNStationXML><Network"
+        .getBytes(StandardCharsets.UTF_8)));
+  }
+}
@@ -0,0 +1,131 @@
+package asl.metadata.meta_new;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import asl.metadata.ChannelKey;
+import asl.metadata.Station;
+import asl.metadata.meta_new.ChannelMeta.ResponseUnits;
+import java.time.LocalDateTime;
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+public class ChannelMetaTest {
+
+  /**
+   * An STS-2 velocity response with the given sensitivity.
+   */
+  private static ChannelMeta channel(String name, double sensitivity) {
+    ChannelMeta channel = new ChannelMeta(new ChannelKey("00", name),
+        LocalDateTime.of(2015, 1, 1, 0, 0), new Station("IU", "ANMO"));
+    channel.addStage(0, new DigitalStage(0, 'D', sensitivity, 0.02));
+    PoleZeroStage poleZero = new PoleZeroStage(1, 'A', 1500.0, 0.02);
+    poleZero.setNormalization(3946.51);
+    poleZero.setInputUnits("M/S - Velocity in Meters Per Second");
+    poleZero.setOutputUnits("V - Volts");
+    poleZero.addZero(Complex.ZERO);
+    poleZero.addZero(Complex.ZERO);
+    poleZero.addPole(new Complex(-0.037013, 0.037013));
+    poleZero.addPole(new Complex(-0.037013, -0.037013));
+    poleZero.addPole(new Complex(-251.33, 0.0));
+    channel.addStage(1, poleZero);
+    channel.addStage(2, new DigitalStage(2, 'D', 1.34E6, 0.02));
+    channel.setSampleRate(20.0);
+    return channel;
+  }
+
+  private static double[] grid(double deltaF, int length) {
+    double[] freqs = new double[length];
+    for (int k = 0; k < length; k++) {
+      freqs[k] = k * deltaF;
+    }
+    return freqs;
+  }
+
+  /**
+   * The response as evaluated with Complex before it was cached.
+   */
+  private static Complex expected(double f, ResponseUnits units, double scale) {
+    Complex s = new Complex(0.0, 2 * Math.PI * f);
+    Complex numerator = s.multiply(s).multiply(3946.51);
+    Complex denominator = s.subtract(new Complex(-0.037013, 0.037013))
+        .multiply(s.subtract(new Complex(-0.037013, -0.037013)))
+        .multiply(s.subtract(new Complex(-251.33, 0.0)));
+    Complex response = numerator.divide(denominator);
+    if (units == ResponseUnits.ACCELERATION) {
+      response = new Complex(0.0, -1.0 / (2 * Math.PI * f)).multiply(response);
+    } else if (units == ResponseUnits.DISPLACEMENT) {
+      response = new Complex(0.0, 2 * Math.PI * f).multiply(response);
+    }
+    return response.multiply(scale);
+  }
+
+  @Test
+  public void testGetResponse_MatchesComplexEvaluation() throws Exception {
+    ChannelMeta channel = channel("BHZ", 2.01E9);
+    double[] freqs = grid(0.01, 500);
+    double scale = 1500.0 * 1.34E6;
+    for (ResponseUnits units : new ResponseUnits[]{ResponseUnits.ACCELERATION,
+        ResponseUnits.VELOCITY, ResponseUnits.DISPLACEMENT}) {
+      Complex[] response = channel.getResponse(freqs, units);
+      for (int k = 1; k < freqs.length; k++) {
+        Complex expected = expected(freqs[k], units, scale);
+        assertEquals(expected.getReal(), response[k].getReal(), expected.abs() * 1E-12);
+        assertEquals(expected.getImaginary(), response[k].getImaginary(), expected.abs() * 1E-12);
+      }
+    }
+    // Differentiating at DC gives an infinite response, as with Complex
+    assertEquals(true, channel.getResponse(freqs, ResponseUnits.ACCELERATION)[0].isInfinite());
+  }
+
+  @Test
+  public void testGetResponseArray_IsCached() throws Exception {
+    ResponseCache cache = ChannelMeta.getResponseCache();
+    // A grid no other test uses
+    double[] freqs = grid(0.0123, 1000);
+    ChannelMeta channel = channel("BHZ", 2.01E9);
+
+    long misses = cache.getMisses();
+    long hits = cache.getHits();
+    double[] first = channel.getResponseArray(freqs, ResponseUnits.ACCELERATION);
+    double[] second = channel.getResponseArray(freqs.clone(), ResponseUnits.ACCELERATION);
+    assertSame(first, second);
+    assertEquals(misses + 1, cache.getMisses());
+    assertEquals(hits + 1, cache.getHits());
+
+    // Another channel with the same response shares it
+    assertSame(first, channel("BH1", 2.01E9).getResponseArray(freqs,
+        ResponseUnits.ACCELERATION));
+
+    // Different units, scaling, grid or response are evaluated separately
+    assertNotSame(first, channel.getResponseArray(freqs, ResponseUnits.VELOCITY));
+    assertNotSame(first, channel.getResponseUnscaledArray(freqs, ResponseUnits.ACCELERATION));
+    assertNotSame(first, channel.getResponseArray(grid(0.0123, 999),
+        ResponseUnits.ACCELERATION));
+    assertNotSame(first, channel("BHZ", 2.02E9).getResponseArray(freqs,
+        ResponseUnits.ACCELERATION));
+    assertEquals(hits + 2, cache.getHits());
+  }
+
+  @Test
+  public void testResponseCache_EvictsLeastRecentlyUsed() {
+    ResponseCache cache = new ResponseCache(3 * 8 * 30);
+    double[] freqs = grid(1.0, 10);
+    ResponseCache.Key[] keys = new ResponseCache.Key[4];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new ResponseCache.Key(new byte[]{(byte) i}, true, 2,
+          ResponseUnits.ACCELERATION, true, freqs);
+    }
+    cache.put(keys[0], new double[20]);
+    cache.put(keys[1], new double[20]);
+    cache.put(keys[2], new double[20]);
+    cache.get(keys[0]);
+    cache.put(keys[3], new double[20]);
+
+    assertEquals(3, cache.getCount());
+    assertEquals(1, cache.getEvictions());
+    assertEquals(null, cache.get(keys[1]));
+    assertEquals(20, cache.get(keys[0]).length);
+  }
+}
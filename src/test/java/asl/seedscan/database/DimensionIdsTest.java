@@ -0,0 +1,240 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.Channel;
+import asl.metadata.Station;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DimensionIdsTest {
+
+  /**
+   * Keeps the rows DimensionIds creates, keyed by table and the statement parameters, and answers
+   * its statements through a JDBC connection.
+   */
+  private static class FakeDatabase {
+
+    private static final Pattern SELECT_TABLE = Pattern.compile("FROM (\\S+) WHERE");
+    private static final Pattern INSERT_TABLE = Pattern.compile("INSERT INTO (\\S+) ");
+
+    private final Map<String, Map<List<Object>, Integer>> tables = new HashMap<>();
+    private final List<String> statements = new ArrayList<>();
+    private int nextID = 1;
+
+    /**
+     * The first selects wait for each other at the barrier after reading, so the threads all miss
+     * before any of them inserts.
+     */
+    private final AtomicInteger selects = new AtomicInteger();
+    private CyclicBarrier selectBarrier = null;
+
+    private synchronized Integer select(String sql, List<Object> parameters) {
+      statements.add(sql);
+      Map<List<Object>, Integer> rows = tables.get(table(SELECT_TABLE, sql));
+      return rows == null ? null : rows.get(parameters);
+    }
+
+    private synchronized void insert(String sql, List<Object> parameters) {
+      statements.add(sql);
+      Map<List<Object>, Integer> rows = tables
+          .computeIfAbsent(table(INSERT_TABLE, sql), table -> new HashMap<>());
+      // ON CONFLICT DO NOTHING
+      if (!rows.containsKey(parameters)) {
+        rows.put(parameters, nextID++);
+      }
+    }
+
+    private synchronized int rowCount(String table) {
+      Map<List<Object>, Integer> rows = tables.get(table);
+      return rows == null ? 0 : rows.size();
+    }
+
+    private synchronized int statementCount() {
+      return statements.size();
+    }
+
+    private static String table(Pattern pattern, String sql) {
+      Matcher matcher = pattern.matcher(sql);
+      if (!matcher.find()) {
+        throw new IllegalArgumentException("Unexpected statement: " + sql);
+      }
+      return matcher.group(1);
+    }
+
+    private Connection connection() {
+      return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("prepareStatement")) {
+              return statement((String) args[0]);
+            }
+            if (method.getName().equals("close")) {
+              return null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+          });
+    }
+
+    private PreparedStatement statement(String sql) {
+      List<Object> parameters = new ArrayList<>();
+      return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "setObject":
+                parameters.add((Integer) args[0] - 1, args[1]);
+                return null;
+              case "executeQuery":
+                Integer id = select(sql, parameters);
+                awaitOtherSelects();
+                return resultSet(id);
+              case "executeUpdate":
+                insert(sql, parameters);
+                return 1;
+              case "close":
+                return null;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+
+    private void awaitOtherSelects() throws Exception {
+      CyclicBarrier barrier = selectBarrier;
+      if (barrier != null && selects.getAndIncrement() < barrier.getParties()) {
+        barrier.await(10, TimeUnit.SECONDS);
+      }
+    }
+
+    private ResultSet resultSet(Integer id) {
+      boolean[] read = {false};
+      return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "next":
+                boolean hasRow = id != null && !read[0];
+                read[0] = true;
+                return hasRow;
+              case "getInt":
+                return id;
+              case "close":
+                return null;
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+  }
+
+  private static final Station STATION = new Station("IU", "ANMO");
+  private static final Channel CHANNEL = new Channel("00", "LHZ");
+
+  private FakeDatabase database;
+  private Connection connection;
+  private DimensionIds ids;
+
+  @Before
+  public void setUp() {
+    database = new FakeDatabase();
+    connection = database.connection();
+    ids = new DimensionIds();
+  }
+
+  @Test
+  public final void getChannelID_Missing_InsertsEachDimensionOnce() throws Exception {
+    int channelID = ids.getChannelID(connection, STATION, CHANNEL);
+
+    assertEquals(1, database.rowCount("\"tblGroup\""));
+    assertEquals(1, database.rowCount("tblstation"));
+    assertEquals(1, database.rowCount("\"tblStationGroupTie\""));
+    assertEquals(1, database.rowCount("tblsensor"));
+    assertEquals(1, database.rowCount("tblchannel"));
+
+    // Another channel of the sensor only adds its channel row
+    int other = ids.getChannelID(connection, STATION, new Channel("00", "LH1"));
+    assertTrue(other != channelID);
+    assertEquals(1, database.rowCount("tblsensor"));
+    assertEquals(2, database.rowCount("tblchannel"));
+  }
+
+  @Test
+  public final void getChannelID_Cached_IssuesNoStatements() throws Exception {
+    int channelID = ids.getChannelID(connection, STATION, CHANNEL);
+    int metricID = ids.getMetricID(connection, "AvailabilityMetric");
+    int dateID = ids.getDateID(connection, LocalDate.of(2015, 7, 25));
+    int count = database.statementCount();
+
+    assertEquals(channelID, ids.getChannelID(connection, STATION, CHANNEL));
+    assertEquals(metricID, ids.getMetricID(connection, "AvailabilityMetric"));
+    assertEquals(dateID, ids.getDateID(connection, LocalDate.of(2015, 7, 25)));
+    assertEquals(count, database.statementCount());
+  }
+
+  @Test
+  public final void getChannelID_ExistingRows_ReusesIDs() throws Exception {
+    int channelID = ids.getChannelID(connection, STATION, CHANNEL);
+
+    // A new instance, as after a restart or clear(), finds the rows instead of inserting
+    DimensionIds restarted = new DimensionIds();
+    assertEquals(channelID, restarted.getChannelID(connection, STATION, CHANNEL));
+    assertEquals(1, database.rowCount("tblchannel"));
+
+    ids.clear();
+    assertEquals(channelID, ids.getChannelID(connection, STATION, CHANNEL));
+    assertEquals(1, database.rowCount("tblchannel"));
+  }
+
+  @Test
+  public final void getDateID_Missing_InsertsJulianDay() throws Exception {
+    int dateID = ids.getDateID(connection, LocalDate.of(2015, 7, 25));
+
+    assertEquals(2457229, dateID);
+    assertEquals(1, database.rowCount("tbldate"));
+  }
+
+  @Test
+  public final void getMetricID_ConcurrentFirstInsert_ReturnsSameID() throws Exception {
+    int threads = 4;
+    database.selectBarrier = new CyclicBarrier(threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        Callable<Integer> lookup = () -> ids.getMetricID(connection, "AvailabilityMetric");
+        results.add(executor.submit(lookup));
+      }
+
+      int metricID = results.get(0).get(10, TimeUnit.SECONDS);
+      for (Future<Integer> result : results) {
+        assertEquals(metricID, (int) result.get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // Every thread missed and inserted, and all but one insert did nothing
+    assertEquals(1, database.rowCount("tblmetric"));
+    int count = database.statementCount();
+    assertEquals(threads * 3, count);
+    ids.getMetricID(connection, "AvailabilityMetric");
+    assertEquals(count, database.statementCount());
+  }
+}
@@ -0,0 +1,253 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import asl.metadata.Blockette;
+import asl.metadata.Channel;
+import asl.metadata.Station;
+import asl.metadata.meta_new.StationMeta;
+import asl.seedscan.metrics.MetricResult;
+import asl.testutils.Dependent;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.temporal.JulianFields;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Needs the test database, see {@link Dependent#assumeTestDatabase()}. Each test writes values of
+ * its own metric to tblmetricdata_legacy and deletes the metric afterwards, which deletes its
+ * values. Chunks are moved starting at the test's metric, which is the newest, so other values in
+ * the legacy table are not moved, except by the LegacyMetricDataMover test, which moves them all as
+ * seedscan would.
+ */
+public class LegacyMetricDataMoverTest {
+
+  private static final Station STATION = new Station("XX", "MOVE");
+  private static final Channel CHANNEL = new Channel("00", "LHZ");
+  private static final LocalDate DAY = LocalDate.of(2015, 7, 25);
+
+  private static MetricDatabase database;
+
+  private Connection connection;
+  private String metricName;
+  private int metricID;
+  private int channelID;
+  private long hashID;
+  private DimensionIds ids;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Dependent.assumeTestDatabase();
+    database = new MetricDatabase(TestDatabase.getUri(), TestDatabase.getUser(),
+        TestDatabase.getPassword());
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    if (database != null) {
+      database.close();
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    connection = TestDatabase.connect();
+    ids = new DimensionIds();
+    metricName = "LegacyMoveTest:" + UUID.randomUUID();
+    metricID = ids.getMetricID(connection, metricName);
+    channelID = ids.getChannelID(connection, STATION, CHANNEL);
+    hashID = ids.getHashIDs(connection, Collections.singletonList(new byte[16])).values()
+        .iterator().next();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (PreparedStatement statement = connection
+        .prepareStatement("DELETE FROM tblmetric WHERE pkmetricid = ?")) {
+      statement.setInt(1, metricID);
+      statement.executeUpdate();
+    }
+    connection.close();
+  }
+
+  private static int julian(LocalDate date) {
+    return (int) date.getLong(JulianFields.JULIAN_DAY);
+  }
+
+  private void writeValue(String table, LocalDate date, double value) throws Exception {
+    ids.getDateID(connection, date);
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT INTO " + table + " (fkchannelid, date, fkmetricid, value, \"fkHashID\") "
+            + "VALUES (?, ?, ?, ?, ?)")) {
+      statement.setInt(1, channelID);
+      statement.setInt(2, julian(date));
+      statement.setInt(3, metricID);
+      statement.setDouble(4, value);
+      statement.setLong(5, hashID);
+      statement.executeUpdate();
+    }
+  }
+
+  /**
+   * @return the test metric's values in a table by day
+   */
+  private Map<LocalDate, Double> values(String table) throws Exception {
+    Map<LocalDate, Double> values = new TreeMap<>();
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT date, value FROM " + table + " WHERE fkmetricid = ?")) {
+      statement.setInt(1, metricID);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          values.put(LocalDate.MIN.with(JulianFields.JULIAN_DAY, resultSet.getInt(1)),
+              resultSet.getDouble(2));
+        }
+      }
+    }
+    return values;
+  }
+
+  private Map<LocalDate, Double> days(Object... dayValues) {
+    Map<LocalDate, Double> values = new TreeMap<>();
+    for (int i = 0; i < dayValues.length; i += 2) {
+      values.put((LocalDate) dayValues[i], (Double) dayValues[i + 1]);
+    }
+    return values;
+  }
+
+  /**
+   * @return the key chunks of the test's metric start after
+   */
+  private List<Integer> start() {
+    return Arrays.asList(metricID, Integer.MIN_VALUE, Integer.MIN_VALUE);
+  }
+
+  private List<Integer> key(LocalDate date) {
+    return Arrays.asList(metricID, julian(date), channelID);
+  }
+
+  @Test
+  public void moveLegacyMetricDataChunk_LegacyOnlyRows_MovesInKeyOrder() throws Exception {
+    writeValue("tblmetricdata_legacy", DAY, 1.0);
+    writeValue("tblmetricdata_legacy", DAY.plusDays(1), 2.0);
+    writeValue("tblmetricdata_legacy", DAY.plusDays(2), 3.0);
+
+    assertEquals(key(DAY.plusDays(1)), database.moveLegacyMetricDataChunk(start(), 2));
+    assertEquals(days(DAY, 1.0, DAY.plusDays(1), 2.0), values("tblmetricdata"));
+    assertEquals(days(DAY.plusDays(2), 3.0), values("tblmetricdata_legacy"));
+
+    assertEquals(key(DAY.plusDays(2)),
+        database.moveLegacyMetricDataChunk(key(DAY.plusDays(1)), 2));
+    assertNull(database.moveLegacyMetricDataChunk(key(DAY.plusDays(2)), 2));
+
+    assertEquals(days(DAY, 1.0, DAY.plusDays(1), 2.0, DAY.plusDays(2), 3.0),
+        values("tblmetricdata"));
+    assertEquals(days(), values("tblmetricdata_legacy"));
+    assertEquals(values("tblmetricdata"), values("metricdataview"));
+  }
+
+  @Test
+  public void moveLegacyMetricDataChunk_RowInBothTables_KeepsNewValue() throws Exception {
+    writeValue("tblmetricdata_legacy", DAY, 1.0);
+    writeValue("tblmetricdata", DAY, 5.0);
+    writeValue("tblmetricdata_legacy", DAY.plusDays(1), 2.0);
+
+    assertEquals(key(DAY.plusDays(1)), database.moveLegacyMetricDataChunk(start(), 10));
+
+    assertEquals(days(DAY, 5.0, DAY.plusDays(1), 2.0), values("tblmetricdata"));
+    assertEquals(days(), values("tblmetricdata_legacy"));
+  }
+
+  @Test
+  public void moveLegacyMetricDataChunk_SecondRunAfterPartialMove_MovesTheRest()
+      throws Exception {
+    for (int i = 0; i < 4; i++) {
+      writeValue("tblmetricdata_legacy", DAY.plusDays(i), i);
+    }
+    database.moveLegacyMetricDataChunk(start(), 2);
+    // Written by a scanner between the runs
+    writeValue("tblmetricdata", DAY.plusDays(3), 9.0);
+
+    // A new run starts over from the first key, as after a restart
+    assertEquals(key(DAY.plusDays(3)), database.moveLegacyMetricDataChunk(start(), 10));
+    assertNull(database.moveLegacyMetricDataChunk(start(), 10));
+
+    assertEquals(days(DAY, 0.0, DAY.plusDays(1), 1.0, DAY.plusDays(2), 2.0, DAY.plusDays(3), 9.0),
+        values("tblmetricdata"));
+    assertEquals(days(), values("tblmetricdata_legacy"));
+  }
+
+  @Test
+  public void legacyMetricDataMover_LegacyRows_MovesThemAll() throws Exception {
+    writeValue("tblmetricdata_legacy", DAY, 1.0);
+    writeValue("tblmetricdata_legacy", DAY.plusDays(1), 2.0);
+    writeValue("tblmetricdata", DAY.plusDays(1), 5.0);
+    writeValue("tblmetricdata_legacy", DAY.plusDays(2), 3.0);
+
+    LegacyMetricDataMover mover = database.moveLegacyMetricData(2);
+    try {
+      long deadline = System.currentTimeMillis() + 60000;
+      while (!values("tblmetricdata_legacy").isEmpty()
+          && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+    } finally {
+      mover.close();
+    }
+
+    assertEquals(days(), values("tblmetricdata_legacy"));
+    assertEquals(days(DAY, 1.0, DAY.plusDays(1), 5.0, DAY.plusDays(2), 3.0),
+        values("tblmetricdata"));
+  }
+
+  @Test
+  public void deleteLegacyMetricRows_WrittenRows_DeletesOnlyThem() throws Exception {
+    writeValue("tblmetricdata_legacy", DAY, 1.0);
+    writeValue("tblmetricdata_legacy", DAY.plusDays(1), 2.0);
+
+    connection.setAutoCommit(false);
+    try {
+      MetricDatabase.deleteLegacyMetricRows(connection,
+          Arrays.asList(key(DAY), key(DAY.plusDays(5))));
+      connection.commit();
+    } finally {
+      connection.setAutoCommit(true);
+    }
+
+    assertEquals(days(DAY.plusDays(1), 2.0), values("tblmetricdata_legacy"));
+  }
+
+  @Test
+  public void insertMetricData_LegacyRow_ReplacesIt() throws Exception {
+    writeValue("tblmetricdata_legacy", DAY, 1.0);
+    writeValue("tblmetricdata_legacy", DAY.plusDays(1), 2.0);
+
+    Blockette blockette = new Blockette(50);
+    blockette.addFieldData(3, STATION.getStation());
+    blockette.addFieldData(4, "0.0");
+    blockette.addFieldData(5, "0.0");
+    blockette.addFieldData(6, "0.0");
+    blockette.addFieldData(16, STATION.getNetwork());
+    MetricResult results = new MetricResult(new StationMeta(blockette, DAY.atStartOfDay()),
+        metricName);
+    results.addResult(CHANNEL, 7.0, ByteBuffer.wrap(new byte[16]));
+    assertEquals(0, database.insertMetricData(Collections.singletonList(results)));
+
+    assertEquals(days(DAY, 7.0), values("tblmetricdata"));
+    assertEquals(days(DAY.plusDays(1), 2.0), values("tblmetricdata_legacy"));
+    assertEquals(days(DAY, 7.0, DAY.plusDays(1), 2.0), values("metricdataview"));
+  }
+}
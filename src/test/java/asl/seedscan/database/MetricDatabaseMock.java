@@ -5,10 +5,12 @@ import asl.metadata.Station;
 import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -23,11 +25,15 @@ public class MetricDatabaseMock extends MetricDatabase {
   private Map<UUID, DatabaseScan> takenScans = new HashMap<>();
   private Map<UUID, DatabaseScan> finishedScans = new HashMap<>();
   private List<DatabaseScan> childScans = new LinkedList<>();
+  private Set<UUID> abandonedScans = new LinkedHashSet<>();
+  private Set<UUID> releasedScans = new LinkedHashSet<>();
+  private boolean failChildScans = false;
 
   private int scanRequests = 0;
   private int errorsInserted = 0;
   private int messagesInserted = 0;
   private int numberOfInsertedChildScans = 0;
+  private int digestLoads = 0;
 
   public MetricDatabaseMock() {
     super(); //Call required because of extension.
@@ -72,6 +78,19 @@ public class MetricDatabaseMock extends MetricDatabase {
   }
 
 
+  /**
+   * Stored digests are looked up one at a time from the mock data.
+   */
+  @Override
+  public synchronized void loadMetricValueDigests(UUID scanID, Station station,
+      LocalDate startDate, LocalDate endDate) {
+    digestLoads++;
+  }
+
+  public synchronized int getNumberOfDigestLoads() {
+    return digestLoads;
+  }
+
   @Override
   public synchronized DatabaseScan takeNextScan() {
     scanRequests++;
@@ -84,6 +103,32 @@ public class MetricDatabaseMock extends MetricDatabase {
     return scan;
   }
 
+  @Override
+  public synchronized List<DatabaseScan> takeNextScans(int count) {
+    List<DatabaseScan> scans = new LinkedList<>();
+    DatabaseScan scan;
+    while (scans.size() < count && (scan = takeNextScan()) != null) {
+      scans.add(scan);
+    }
+    return scans;
+  }
+
+  /**
+   * There is no database to listen to, scans are only found by polling.
+   */
+  @Override
+  public ScanListener listenForScans(Runnable onScan) {
+    return null;
+  }
+
+  /**
+   * There is no database holding legacy metric values.
+   */
+  @Override
+  public LegacyMetricDataMover moveLegacyMetricData(int chunkSize) {
+    return null;
+  }
+
   public void offerNewScan(DatabaseScan scan) {
     newScans.offer(scan);
   }
@@ -123,6 +168,26 @@ public class MetricDatabaseMock extends MetricDatabase {
         deleteExisting));
   }
 
+  /**
+   * Make insertChildScans fail without inserting anything, as it does when the database cannot be
+   * reached.
+   */
+  public void setFailChildScans(boolean failChildScans) {
+    this.failChildScans = failChildScans;
+  }
+
+  @Override
+  public boolean insertChildScans(UUID parentID, List<DatabaseScan> children) {
+    if (failChildScans) {
+      return false;
+    }
+    for (DatabaseScan child : children) {
+      insertChildScan(parentID, child.network, child.station, child.location, child.channel,
+          child.metricName, child.startDate, child.endDate, child.priority, child.deleteExisting);
+    }
+    return true;
+  }
+
   public synchronized int getNumberScanMessages() {
     return messagesInserted;
   }
@@ -135,6 +200,31 @@ public class MetricDatabaseMock extends MetricDatabase {
 
   }
 
+  @Override
+  public synchronized void abandonScanLease(UUID scanID) {
+    abandonedScans.add(scanID);
+  }
+
+  public synchronized Set<UUID> getAbandonedScans() {
+    return abandonedScans;
+  }
+
+  @Override
+  public synchronized void releaseScanLease(UUID scanID) {
+    releasedScans.add(scanID);
+  }
+
+  public synchronized Set<UUID> getReleasedScans() {
+    return releasedScans;
+  }
+
+  /**
+   * @return the child scans in the order they were inserted
+   */
+  public List<DatabaseScan> getChildScans() {
+    return childScans;
+  }
+
   public int getNumberOfInsertedChildScans() {
     return numberOfInsertedChildScans;
   }
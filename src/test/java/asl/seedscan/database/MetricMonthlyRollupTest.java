@@ -0,0 +1,261 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.Channel;
+import asl.metadata.Station;
+import asl.testutils.Dependent;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.temporal.JulianFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Needs the test database, see {@link Dependent#assumeTestDatabase()}. Each test writes values of
+ * its own metric and deletes the metric afterwards, which deletes its values and rollups.
+ */
+public class MetricMonthlyRollupTest {
+
+  private static final Station STATION = new Station("XX", "ROLL");
+  private static final Channel CHANNEL = new Channel("00", "LHZ");
+  private static final double DELTA = 1e-9;
+
+  private Connection connection;
+  private String metricName;
+  private int metricID;
+  private int channelID;
+  private long hashID;
+  private DimensionIds ids;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Dependent.assumeTestDatabase();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    connection = TestDatabase.connect();
+    ids = new DimensionIds();
+    metricName = "RollupTest:" + UUID.randomUUID();
+    metricID = ids.getMetricID(connection, metricName);
+    channelID = ids.getChannelID(connection, STATION, CHANNEL);
+    hashID = ids.getHashIDs(connection, Collections.singletonList(new byte[16])).values()
+        .iterator().next();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (PreparedStatement statement = connection
+        .prepareStatement("DELETE FROM tblmetric WHERE pkmetricid = ?")) {
+      statement.setInt(1, metricID);
+      statement.executeUpdate();
+    }
+    connection.close();
+  }
+
+  private static int julian(LocalDate date) {
+    return (int) date.getLong(JulianFields.JULIAN_DAY);
+  }
+
+  /**
+   * Write a daily value straight to a table, replacing the day's value.
+   */
+  private void writeValue(String table, LocalDate date, double value) throws Exception {
+    ids.getDateID(connection, date);
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT INTO " + table + " (fkchannelid, date, fkmetricid, value, \"fkHashID\") "
+            + "VALUES (?, ?, ?, ?, ?) "
+            + "ON CONFLICT (fkmetricid, date, fkchannelid) DO UPDATE SET value = excluded.value")) {
+      statement.setInt(1, channelID);
+      statement.setInt(2, julian(date));
+      statement.setInt(3, metricID);
+      statement.setDouble(4, value);
+      statement.setLong(5, hashID);
+      statement.executeUpdate();
+    }
+  }
+
+  private void refresh(LocalDate... dates) throws Exception {
+    List<List<Integer>> keys = new ArrayList<>();
+    for (LocalDate date : dates) {
+      keys.add(Arrays.asList(metricID, julian(date), channelID));
+    }
+    connection.setAutoCommit(false);
+    try {
+      MetricDatabase.refreshMonthlyRollups(connection, keys);
+      connection.commit();
+    } finally {
+      connection.setAutoCommit(true);
+    }
+  }
+
+  /**
+   * @return count, sum, min and max of the month's rollup, min and max NaN if null, or null if the
+   * month has no rollup row
+   */
+  private double[] rollup(int year, int month) throws Exception {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT valuecount, valuesum, valuemin, valuemax FROM tblmetricmonthly "
+            + "WHERE fkmetricid = ? AND fkchannelid = ? AND month = ?")) {
+      statement.setInt(1, metricID);
+      statement.setInt(2, channelID);
+      statement.setInt(3, julian(LocalDate.of(year, month, 1)));
+      try (ResultSet resultSet = statement.executeQuery()) {
+        if (!resultSet.next()) {
+          return null;
+        }
+        Object min = resultSet.getObject(3);
+        Object max = resultSet.getObject(4);
+        return new double[]{resultSet.getInt(1), resultSet.getDouble(2),
+            min == null ? Double.NaN : ((Number) min).doubleValue(),
+            max == null ? Double.NaN : ((Number) max).doubleValue()};
+      }
+    }
+  }
+
+  @Test
+  public void refreshMonthlyRollups_NewMonths_SumsDailyValues() throws Exception {
+    writeValue("tblmetricdata", LocalDate.of(2015, 1, 30), 1.0);
+    writeValue("tblmetricdata", LocalDate.of(2015, 1, 31), 4.0);
+    writeValue("tblmetricdata", LocalDate.of(2015, 2, 1), 2.0);
+    // Not yet moved out of the legacy table, still counted
+    writeValue("tblmetricdata_legacy", LocalDate.of(2015, 2, 2), 8.0);
+    refresh(LocalDate.of(2015, 1, 30), LocalDate.of(2015, 1, 31), LocalDate.of(2015, 2, 1),
+        LocalDate.of(2015, 2, 2));
+
+    assertArrayEquals(new double[]{2, 5.0, 1.0, 4.0}, rollup(2015, 1), DELTA);
+    assertArrayEquals(new double[]{2, 10.0, 2.0, 8.0}, rollup(2015, 2), DELTA);
+    assertNull(rollup(2015, 3));
+  }
+
+  @Test
+  public void refreshMonthlyRollups_ReplacedValue_RecomputesMinAndMax() throws Exception {
+    writeValue("tblmetricdata", LocalDate.of(2015, 1, 30), 1.0);
+    writeValue("tblmetricdata", LocalDate.of(2015, 1, 31), 4.0);
+    refresh(LocalDate.of(2015, 1, 30), LocalDate.of(2015, 1, 31));
+
+    writeValue("tblmetricdata", LocalDate.of(2015, 1, 31), 0.5);
+    refresh(LocalDate.of(2015, 1, 31));
+
+    assertArrayEquals(new double[]{2, 1.5, 0.5, 1.0}, rollup(2015, 1), DELTA);
+  }
+
+  @Test
+  public void refreshMonthlyRollups_DeletedValues_EmptiesMonth() throws Exception {
+    writeValue("tblmetricdata", LocalDate.of(2015, 1, 30), 1.0);
+    refresh(LocalDate.of(2015, 1, 30));
+
+    try (PreparedStatement statement = connection
+        .prepareStatement("DELETE FROM tblmetricdata WHERE fkmetricid = ?")) {
+      statement.setInt(1, metricID);
+      statement.executeUpdate();
+    }
+    refresh(LocalDate.of(2015, 1, 30));
+
+    assertArrayEquals(new double[]{0, 0.0, Double.NaN, Double.NaN}, rollup(2015, 1), DELTA);
+  }
+
+  @Test
+  public void spInsertMetricData_Values_RefreshesMonth() throws Exception {
+    try (PreparedStatement statement = connection
+        .prepareStatement("SELECT spInsertMetricData(?, ?, ?, ?, ?, ?, ?, ?)")) {
+      Object[][] values = {{LocalDate.of(2015, 3, 1), 3.0}, {LocalDate.of(2015, 3, 31), 5.0},
+          {LocalDate.of(2015, 3, 1), 7.0}, {LocalDate.of(2015, 4, 1), 9.0}};
+      for (Object[] value : values) {
+        statement.setDate(1, Date.valueOf((LocalDate) value[0]));
+        statement.setString(2, metricName);
+        statement.setString(3, STATION.getNetwork());
+        statement.setString(4, STATION.getStation());
+        statement.setString(5, CHANNEL.getLocation());
+        statement.setString(6, CHANNEL.getChannel());
+        statement.setDouble(7, (Double) value[1]);
+        statement.setBytes(8, new byte[16]);
+        statement.executeQuery().close();
+      }
+    }
+
+    assertArrayEquals(new double[]{2, 12.0, 5.0, 7.0}, rollup(2015, 3), DELTA);
+    assertArrayEquals(new double[]{1, 9.0, 9.0, 9.0}, rollup(2015, 4), DELTA);
+  }
+
+  /**
+   * Sums and counts fnsclgetchannelparts returns for the channel, as "sum/count" in sorted order.
+   */
+  private List<String> channelParts(LocalDate start, LocalDate end, LocalDate fullStart,
+      LocalDate fullEnd) throws Exception {
+    List<String> parts = new ArrayList<>();
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT id, valuesum, valuecount FROM fnsclgetchannelparts(?, ?, ?, ?, ?, ?)")) {
+      statement.setArray(1, connection.createArrayOf("int4", new Integer[]{channelID}));
+      statement.setInt(2, metricID);
+      statement.setInt(3, julian(start));
+      statement.setInt(4, julian(end));
+      statement.setInt(5, julian(fullStart));
+      statement.setInt(6, julian(fullEnd));
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          assertEquals(channelID, resultSet.getInt(1));
+          parts.add(resultSet.getDouble(2) + "/" + resultSet.getLong(3));
+        }
+      }
+    }
+    Collections.sort(parts);
+    return parts;
+  }
+
+  private String channelData(LocalDate start, LocalDate end) throws Exception {
+    try (PreparedStatement statement = connection
+        .prepareStatement("SELECT fnsclgetchanneldata(?, ?, ?, ?)")) {
+      statement.setArray(1, connection.createArrayOf("int4", new Integer[]{channelID}));
+      statement.setInt(2, metricID);
+      statement.setDate(3, Date.valueOf(start));
+      statement.setDate(4, Date.valueOf(end));
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        return resultSet.getString(1);
+      }
+    }
+  }
+
+  @Test
+  public void fnsclgetchannelparts_PartialEdgeMonths_ReadsDailyValues() throws Exception {
+    LocalDate[] days = {LocalDate.of(2015, 1, 30), LocalDate.of(2015, 1, 31),
+        LocalDate.of(2015, 2, 1), LocalDate.of(2015, 2, 28), LocalDate.of(2015, 3, 1),
+        LocalDate.of(2015, 3, 2)};
+    double value = 1.0;
+    for (LocalDate day : days) {
+      writeValue("tblmetricdata", day, value);
+      value *= 2;
+    }
+    refresh(days);
+
+    // January 31 and March 1 from the daily values, February from its rollup
+    assertEquals(Arrays.asList("12.0/2", "16.0/1", "2.0/1"),
+        channelParts(LocalDate.of(2015, 1, 31), LocalDate.of(2015, 3, 1),
+            LocalDate.of(2015, 2, 1), LocalDate.of(2015, 3, 1)));
+
+    // The edges fnsclgetchanneldata picks give the average of the days in the range
+    assertTrue(channelData(LocalDate.of(2015, 1, 31), LocalDate.of(2015, 3, 1))
+        .startsWith(channelID + ",7.50,"));
+    // A range of whole months only reads the rollups
+    assertTrue(channelData(LocalDate.of(2015, 2, 1), LocalDate.of(2015, 2, 28))
+        .startsWith(channelID + ",6.00,"));
+    // A range within a month only reads days
+    assertTrue(channelData(LocalDate.of(2015, 3, 2), LocalDate.of(2015, 3, 31))
+        .startsWith(channelID + ",32.00,"));
+  }
+}
@@ -0,0 +1,174 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import asl.metadata.Channel;
+import asl.metadata.Station;
+import asl.testutils.Dependent;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.temporal.JulianFields;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Needs the test database, see {@link Dependent#assumeTestDatabase()}. Each test writes values of
+ * its own metric and deletes the metric afterwards, which deletes its values.
+ */
+public class MetricValueDigestsTest {
+
+  private static final Station STATION = new Station("XX", "DGST");
+  private static final Channel CHANNEL = new Channel("00", "LHZ");
+  private static final LocalDate DAY = LocalDate.of(2015, 7, 25);
+
+  private static MetricDatabase database;
+
+  private Connection connection;
+  private String metricName;
+  private int metricID;
+  private int channelID;
+  private DimensionIds ids;
+  private final Random random = new Random();
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Dependent.assumeTestDatabase();
+    database = new MetricDatabase(TestDatabase.getUri(), TestDatabase.getUser(),
+        TestDatabase.getPassword());
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    if (database != null) {
+      database.close();
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    connection = TestDatabase.connect();
+    ids = new DimensionIds();
+    metricName = "DigestTest:" + UUID.randomUUID();
+    metricID = ids.getMetricID(connection, metricName);
+    channelID = ids.getChannelID(connection, STATION, CHANNEL);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (PreparedStatement statement = connection
+        .prepareStatement("DELETE FROM tblmetric WHERE pkmetricid = ?")) {
+      statement.setInt(1, metricID);
+      statement.executeUpdate();
+    }
+    connection.close();
+  }
+
+  private byte[] newDigest() {
+    byte[] digest = new byte[16];
+    random.nextBytes(digest);
+    return digest;
+  }
+
+  /**
+   * Write a value with a digest, replacing the day's value.
+   */
+  private void writeDigest(LocalDate date, byte[] digest) throws Exception {
+    ids.getDateID(connection, date);
+    long hashID = ids.getHashIDs(connection, Collections.singletonList(digest))
+        .get(ByteBuffer.wrap(digest));
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT INTO tblmetricdata (fkchannelid, date, fkmetricid, value, \"fkHashID\") "
+            + "VALUES (?, ?, ?, 1.0, ?) "
+            + "ON CONFLICT (fkmetricid, date, fkchannelid) "
+            + "DO UPDATE SET \"fkHashID\" = excluded.\"fkHashID\"")) {
+      statement.setInt(1, channelID);
+      statement.setInt(2, (int) date.getLong(JulianFields.JULIAN_DAY));
+      statement.setInt(3, metricID);
+      statement.setLong(4, hashID);
+      statement.executeUpdate();
+    }
+  }
+
+  private byte[] digest(LocalDate date) {
+    ByteBuffer digest = database.getMetricValueDigest(date, metricName, STATION, CHANNEL);
+    if (digest == null) {
+      return null;
+    }
+    byte[] bytes = new byte[digest.remaining()];
+    digest.get(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void getMetricValueDigest_LoadedDay_ReturnsLoadedDigest() throws Exception {
+    UUID scanID = UUID.randomUUID();
+    byte[] stored = newDigest();
+    writeDigest(DAY, stored);
+    database.loadMetricValueDigests(scanID, STATION, DAY, DAY.plusDays(2));
+    try {
+      // Changed after loading, the loaded digest is still returned
+      writeDigest(DAY, newDigest());
+      assertEquals(Arrays.toString(stored), Arrays.toString(digest(DAY)));
+      // Loaded days without a value are not queried
+      writeDigest(DAY.plusDays(1), newDigest());
+      assertNull(digest(DAY.plusDays(1)));
+    } finally {
+      database.releaseMetricValueDigests(scanID);
+    }
+  }
+
+  @Test
+  public void getMetricValueDigest_DayNotLoaded_QueriesValue() throws Exception {
+    UUID scanID = UUID.randomUUID();
+    database.loadMetricValueDigests(scanID, STATION, DAY, DAY.plusDays(2));
+    try {
+      byte[] later = newDigest();
+      writeDigest(DAY.plusDays(3), later);
+      assertEquals(Arrays.toString(later), Arrays.toString(digest(DAY.plusDays(3))));
+    } finally {
+      database.releaseMetricValueDigests(scanID);
+    }
+  }
+
+  @Test
+  public void releaseMetricValueDigests_LoadedDay_QueriesValue() throws Exception {
+    UUID scanID = UUID.randomUUID();
+    writeDigest(DAY, newDigest());
+    database.loadMetricValueDigests(scanID, STATION, DAY, DAY.plusDays(2));
+    byte[] changed = newDigest();
+    writeDigest(DAY, changed);
+
+    database.releaseMetricValueDigests(scanID);
+    assertEquals(Arrays.toString(changed), Arrays.toString(digest(DAY)));
+  }
+
+  @Test
+  public void releaseMetricValueDigests_OverlappingScan_KeepsItsDigests() throws Exception {
+    UUID firstScan = UUID.randomUUID();
+    UUID secondScan = UUID.randomUUID();
+    byte[] stored = newDigest();
+    writeDigest(DAY, stored);
+    database.loadMetricValueDigests(firstScan, STATION, DAY.minusDays(1), DAY.plusDays(1));
+    database.loadMetricValueDigests(secondScan, STATION, DAY, DAY.plusDays(2));
+    try {
+      writeDigest(DAY, newDigest());
+
+      // The day is still covered by the first scan
+      database.releaseMetricValueDigests(secondScan);
+      assertEquals(Arrays.toString(stored), Arrays.toString(digest(DAY)));
+    } finally {
+      database.releaseMetricValueDigests(firstScan);
+      database.releaseMetricValueDigests(secondScan);
+    }
+  }
+}
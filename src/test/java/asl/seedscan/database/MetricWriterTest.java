@@ -0,0 +1,336 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import asl.metadata.Blockette;
+import asl.metadata.Channel;
+import asl.metadata.meta_new.StationMeta;
+import asl.seedscan.metrics.MetricResult;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MetricWriterTest {
+
+  /**
+   * Records what the writer sends, in order.
+   */
+  private static class RecordingDatabase extends MetricDatabase {
+
+    private final List<String> calls = new ArrayList<>();
+    private boolean failBatches = false;
+    private String failSingle = null;
+    private volatile RuntimeException throwOnBatch = null;
+    private CountDownLatch release = null;
+
+    @Override
+    public int insertMetricData(List<MetricResult> resultsList) {
+      if (release != null) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          return -1;
+        }
+      }
+      synchronized (calls) {
+        if (throwOnBatch != null) {
+          calls.add("threw " + resultsList.size());
+          throw throwOnBatch;
+        }
+        if (failBatches) {
+          calls.add("failed " + resultsList.size());
+          return -1;
+        }
+        calls.add("batch " + resultsList.size());
+      }
+      return 0;
+    }
+
+    @Override
+    public int insertMetricData(MetricResult results) {
+      synchronized (calls) {
+        calls.add("single " + results.getMetricName());
+      }
+      return results.getMetricName().equals(failSingle) ? -1 : 0;
+    }
+
+    @Override
+    public void finishScan(UUID pkScanID) {
+      synchronized (calls) {
+        calls.add("finish " + pkScanID);
+      }
+    }
+
+    @Override
+    public void abandonScanLease(UUID scanID) {
+      synchronized (calls) {
+        calls.add("abandon " + scanID);
+      }
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    List<String> getCalls() {
+      synchronized (calls) {
+        return new ArrayList<>(calls);
+      }
+    }
+  }
+
+  private static final UUID SCAN_ID = new UUID(1, 1);
+
+  private static StationMeta stationMeta;
+  private RecordingDatabase database;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Blockette blockette = new Blockette(50);
+    blockette.addFieldData(3, "ANMO");
+    blockette.addFieldData(4, "34.9");
+    blockette.addFieldData(5, "-106.5");
+    blockette.addFieldData(6, "1850.");
+    blockette.addFieldData(16, "IU");
+    stationMeta = new StationMeta(blockette, LocalDateTime.of(2015, 7, 25, 0, 0));
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    database = new RecordingDatabase();
+  }
+
+  private static MetricResult result(String metricName, int values) {
+    MetricResult result = new MetricResult(stationMeta, metricName);
+    for (int i = 0; i < values; i++) {
+      result.addResult(new Channel("0" + i, "LHZ"), (double) i, ByteBuffer.wrap(new byte[]{1}));
+    }
+    return result;
+  }
+
+  @Test(timeout = 20000)
+  public void finishScan_IsFinishedAfterItsResults() throws Exception {
+    MetricWriter writer = new MetricWriter(database, 100, 1000, 60000);
+    UUID scanID = SCAN_ID;
+    writer.write(scanID, result("AvailabilityMetric", 1));
+    writer.write(SCAN_ID, result("GapCountMetric", 1));
+    writer.write(SCAN_ID, result("TimingQualityMetric", 1));
+    writer.finishScan(scanID);
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    writer.close();
+
+    List<String> calls = database.getCalls();
+    assertEquals(3, calls.size());
+    assertEquals("batch 3", calls.get(0));
+    assertEquals("finish " + scanID, calls.get(1));
+    assertEquals("batch 1", calls.get(2));
+    assertEquals(4, writer.getResultsWritten());
+  }
+
+  @Test(timeout = 20000)
+  public void write_IsBatchSentWhenFull() throws Exception {
+    MetricWriter writer = new MetricWriter(database, 100, 4, 60000);
+    for (int i = 0; i < 5; i++) {
+      writer.write(SCAN_ID, result("AvailabilityMetric", 2));
+    }
+    while (writer.getBatchesWritten() < 2) {
+      Thread.sleep(5);
+    }
+    writer.close();
+
+    List<String> calls = database.getCalls();
+    assertEquals("batch 2", calls.get(0));
+    assertEquals("batch 2", calls.get(1));
+    assertEquals("batch 1", calls.get(2));
+  }
+
+  @Test(timeout = 20000)
+  public void write_IsBatchSentAfterTimeLimit() throws Exception {
+    MetricWriter writer = new MetricWriter(database, 100, 1000, 50);
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    while (writer.getResultsWritten() < 1) {
+      Thread.sleep(5);
+    }
+    assertEquals("batch 1", database.getCalls().get(0));
+    writer.close();
+  }
+
+  @Test(timeout = 20000)
+  public void write_FailedBatchInsertedOneAtATime() throws Exception {
+    database.failBatches = true;
+    MetricWriter writer = new MetricWriter(database, 100, 1000, 60000);
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    writer.write(SCAN_ID, result("GapCountMetric", 1));
+    writer.close();
+
+    List<String> calls = database.getCalls();
+    assertEquals("failed 2", calls.get(0));
+    assertEquals("single AvailabilityMetric", calls.get(1));
+    assertEquals("single GapCountMetric", calls.get(2));
+  }
+
+  @Test(timeout = 20000)
+  public void write_BlocksWhileQueueIsFull() throws Exception {
+    database.release = new CountDownLatch(1);
+    MetricWriter writer = new MetricWriter(database, 1, 1, 60000);
+    // Taken by the writer, which then waits on the database
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    while (writer.getQueued() > 0) {
+      Thread.sleep(5);
+    }
+    // Fills the queue
+    writer.write(SCAN_ID, result("GapCountMetric", 1));
+
+    Thread blocked = new Thread(() -> {
+      try {
+        writer.write(SCAN_ID, result("TimingQualityMetric", 1));
+      } catch (InterruptedException ignored) {
+      }
+    });
+    blocked.start();
+    Thread.sleep(200);
+    assertTrue(blocked.isAlive());
+
+    database.release.countDown();
+    blocked.join();
+    writer.close();
+    assertEquals(3, writer.getResultsWritten());
+  }
+
+  @Test(timeout = 20000)
+  public void close_WhileWriteBlocked_WritesBlockedResult() throws Exception {
+    database.release = new CountDownLatch(1);
+    MetricWriter writer = new MetricWriter(database, 1, 1, 60000);
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    while (writer.getQueued() > 0) {
+      Thread.sleep(5);
+    }
+    writer.write(SCAN_ID, result("GapCountMetric", 1));
+
+    List<Exception> errors = new ArrayList<>();
+    Thread blocked = new Thread(() -> {
+      try {
+        writer.write(SCAN_ID, result("TimingQualityMetric", 1));
+      } catch (Exception e) {
+        errors.add(e);
+      }
+    });
+    blocked.start();
+    Thread.sleep(200);
+    Thread closing = new Thread(() -> {
+      try {
+        writer.close();
+      } catch (InterruptedException ignored) {
+      }
+    });
+    closing.start();
+    Thread.sleep(200);
+
+    database.release.countDown();
+    blocked.join();
+    closing.join();
+    assertTrue(errors.isEmpty());
+    assertEquals(3, writer.getResultsWritten());
+  }
+
+  @Test(timeout = 20000)
+  public void write_AfterClose_IsRefused() throws Exception {
+    MetricWriter writer = new MetricWriter(database, 10, 1, 60000);
+    writer.close();
+    try {
+      writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+      fail("Expected the closed writer to refuse the result");
+    } catch (IllegalStateException expected) {
+    }
+    assertTrue(database.getCalls().isEmpty());
+  }
+
+  @Test(timeout = 20000)
+  public void finishScan_ResultFailedOneAtATime_AbandonsLease() throws Exception {
+    database.failBatches = true;
+    database.failSingle = "GapCountMetric";
+    MetricWriter writer = new MetricWriter(database, 100, 1000, 60000);
+    UUID otherScanID = new UUID(2, 2);
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    writer.write(SCAN_ID, result("GapCountMetric", 1));
+    writer.write(otherScanID, result("AvailabilityMetric", 1));
+    writer.finishScan(SCAN_ID);
+    writer.finishScan(otherScanID);
+    writer.close();
+
+    List<String> calls = database.getCalls();
+    assertEquals("failed 3", calls.get(0));
+    assertEquals("abandon " + SCAN_ID, calls.get(4));
+    assertEquals("finish " + otherScanID, calls.get(5));
+    assertEquals(1, writer.getResultsFailed());
+    assertEquals(2, writer.getResultsWritten());
+  }
+
+  @Test(timeout = 20000)
+  public void finishScan_BatchThrew_AbandonsLease() throws Exception {
+    database.throwOnBatch = new IllegalStateException("connection lost");
+    MetricWriter writer = new MetricWriter(database, 100, 1000, 60000);
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    writer.write(SCAN_ID, result("GapCountMetric", 1));
+    writer.finishScan(SCAN_ID);
+    writer.close();
+
+    List<String> calls = database.getCalls();
+    assertEquals(2, calls.size());
+    assertEquals("threw 2", calls.get(0));
+    assertEquals("abandon " + SCAN_ID, calls.get(1));
+    assertEquals(2, writer.getResultsFailed());
+  }
+
+  @Test(timeout = 20000)
+  public void finishScan_AfterAbandonedScan_FinishesLaterScans() throws Exception {
+    database.throwOnBatch = new IllegalStateException("connection lost");
+    MetricWriter writer = new MetricWriter(database, 100, 1000, 60000);
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    writer.finishScan(SCAN_ID);
+    while (writer.getResultsFailed() < 1) {
+      Thread.sleep(5);
+    }
+    database.throwOnBatch = null;
+    UUID otherScanID = new UUID(2, 2);
+    writer.write(otherScanID, result("AvailabilityMetric", 1));
+    writer.finishScan(otherScanID);
+    writer.close();
+
+    List<String> calls = database.getCalls();
+    assertEquals("abandon " + SCAN_ID, calls.get(1));
+    assertEquals("batch 1", calls.get(2));
+    assertEquals("finish " + otherScanID, calls.get(3));
+  }
+
+  @Test(timeout = 20000)
+  public void abandonScan_IsAbandonedAfterItsResults() throws Exception {
+    database.failBatches = true;
+    database.failSingle = "GapCountMetric";
+    MetricWriter writer = new MetricWriter(database, 100, 1000, 60000);
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    writer.write(SCAN_ID, result("GapCountMetric", 1));
+    writer.abandonScan(SCAN_ID);
+    // The scan taken again once its lease expired
+    writer.write(SCAN_ID, result("AvailabilityMetric", 1));
+    writer.finishScan(SCAN_ID);
+    writer.close();
+
+    List<String> calls = database.getCalls();
+    assertEquals(7, calls.size());
+    assertEquals("failed 2", calls.get(0));
+    assertEquals("abandon " + SCAN_ID, calls.get(3));
+    assertEquals("failed 1", calls.get(4));
+    // The earlier failed result does not keep the rescan from finishing
+    assertEquals("finish " + SCAN_ID, calls.get(6));
+  }
+}
@@ -0,0 +1,257 @@
+package asl.seedscan.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.testutils.Dependent;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Needs the test database, see {@link Dependent#assumeTestDatabase()}. Each test inserts its own
+ * scans with a priority above any real scan, so they are the ones leased, and deletes them
+ * afterwards. Every lease taken has one of its own scans to take, so scans of other tests are left
+ * alone. Two MetricDatabase instances stand for two scanners.
+ */
+public class ScanLeaseTest {
+
+  private static final int PRIORITY = 1000000;
+
+  /**
+   * Seconds a short lease lasts, and milliseconds waited for it to expire.
+   */
+  private static final int SHORT_LEASE = 1;
+  private static final long EXPIRY_WAIT = 2000;
+
+  private Connection connection;
+  private MetricDatabase first;
+  private MetricDatabase second;
+  private final List<UUID> scanIDs = new ArrayList<>();
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Dependent.assumeTestDatabase();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    connection = TestDatabase.connect();
+    first = new MetricDatabase(TestDatabase.getUri(), TestDatabase.getUser(),
+        TestDatabase.getPassword());
+    second = new MetricDatabase(TestDatabase.getUri(), TestDatabase.getUser(),
+        TestDatabase.getPassword());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    first.close();
+    second.close();
+    UUID[] ids = scanIDs.toArray(new UUID[0]);
+    try (PreparedStatement children = connection
+        .prepareStatement("DELETE FROM tblscan WHERE fkparentscan = ANY(?)");
+        PreparedStatement scans = connection
+            .prepareStatement("DELETE FROM tblscan WHERE pkscanid = ANY(?)")) {
+      children.setArray(1, connection.createArrayOf("uuid", ids));
+      children.executeUpdate();
+      scans.setArray(1, connection.createArrayOf("uuid", ids));
+      scans.executeUpdate();
+    }
+    connection.close();
+  }
+
+  private UUID insertScan(String station) throws Exception {
+    return insertScan(station, PRIORITY);
+  }
+
+  private UUID insertScan(String station, int priority) throws Exception {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT INTO tblscan (networkfilter, stationfilter, startdate, enddate, priority) "
+            + "VALUES ('XX', ?, ?, ?, ?) RETURNING pkscanid")) {
+      statement.setString(1, station);
+      statement.setObject(2, LocalDate.of(2015, 1, 1));
+      statement.setObject(3, LocalDate.of(2015, 1, 31));
+      statement.setInt(4, priority);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        UUID scanID = (UUID) resultSet.getObject(1);
+        scanIDs.add(scanID);
+        return scanID;
+      }
+    }
+  }
+
+  private static DatabaseScan child(UUID parentID, String station) {
+    return new DatabaseScan(null, parentID, null, "XX", station, null, null,
+        LocalDate.of(2015, 1, 1), LocalDate.of(2015, 1, 31), PRIORITY, false);
+  }
+
+  private static List<UUID> ids(List<DatabaseScan> scans) {
+    List<UUID> ids = new ArrayList<>();
+    for (DatabaseScan scan : scans) {
+      ids.add(scan.scanID);
+    }
+    return ids;
+  }
+
+  private boolean isFinished(UUID scanID) throws Exception {
+    try (PreparedStatement statement = connection
+        .prepareStatement("SELECT finished FROM tblscan WHERE pkscanid = ?")) {
+      statement.setObject(1, scanID);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        return resultSet.getBoolean(1);
+      }
+    }
+  }
+
+  private String leaseOwner(UUID scanID) throws Exception {
+    try (PreparedStatement statement = connection
+        .prepareStatement("SELECT leaseowner FROM tblscan WHERE pkscanid = ?")) {
+      statement.setObject(1, scanID);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        return resultSet.getString(1);
+      }
+    }
+  }
+
+  private Timestamp leaseExpires(UUID scanID) throws Exception {
+    try (PreparedStatement statement = connection
+        .prepareStatement("SELECT leaseexpires FROM tblscan WHERE pkscanid = ?")) {
+      statement.setObject(1, scanID);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        return resultSet.getTimestamp(1);
+      }
+    }
+  }
+
+  @Test
+  public void takeNextScans_TwoOwners_TakeDifferentScans() throws Exception {
+    UUID a = insertScan("LSA");
+    UUID b = insertScan("LSB", PRIORITY - 1);
+
+    // The first is leased, so the second owner takes the next one
+    assertEquals(Collections.singletonList(a), ids(first.takeNextScans(1)));
+    assertEquals(Collections.singletonList(b), ids(second.takeNextScans(1)));
+    assertNotEquals(leaseOwner(a), leaseOwner(b));
+  }
+
+  @Test
+  public void takeNextScans_ExpiredLease_TakenAgain() throws Exception {
+    UUID scanID = insertScan("LSA");
+    UUID next = insertScan("LSB", PRIORITY - 1);
+    first.setScanLeaseTime(SHORT_LEASE);
+    assertEquals(Collections.singletonList(scanID), ids(first.takeNextScans(1)));
+    String firstOwner = leaseOwner(scanID);
+    assertEquals(Collections.singletonList(next), ids(second.takeNextScans(1)));
+
+    Thread.sleep(EXPIRY_WAIT);
+    assertEquals(Collections.singletonList(scanID), ids(second.takeNextScans(1)));
+    assertNotEquals(firstOwner, leaseOwner(scanID));
+  }
+
+  @Test
+  public void renewScanLeases_LeaseTakenByOtherOwner_RenewsOnlyOwnScans() throws Exception {
+    UUID lost = insertScan("LSA");
+    first.setScanLeaseTime(SHORT_LEASE);
+    assertEquals(Collections.singletonList(lost), ids(first.takeNextScans(1)));
+    UUID kept = insertScan("LSB");
+    first.setScanLeaseTime(600);
+    assertEquals(Collections.singletonList(kept), ids(first.takeNextScans(1)));
+
+    Thread.sleep(EXPIRY_WAIT);
+    assertEquals(Collections.singletonList(lost), ids(second.takeNextScans(1)));
+    String secondOwner = leaseOwner(lost);
+    Timestamp secondExpires = leaseExpires(lost);
+    Timestamp keptExpires = leaseExpires(kept);
+
+    first.renewScanLeases();
+    assertEquals(secondOwner, leaseOwner(lost));
+    assertEquals(secondExpires, leaseExpires(lost));
+    assertTrue(leaseExpires(kept).after(keptExpires));
+  }
+
+  @Test
+  public void abandonScan_FailedScan_TakenAgainOnceLeaseExpires() throws Exception {
+    UUID scanID = insertScan("LSA");
+    first.setScanLeaseTime(SHORT_LEASE);
+    assertEquals(Collections.singletonList(scanID), ids(first.takeNextScans(1)));
+
+    // As StationScan does for a station day that failed
+    MetricWriter writer = new MetricWriter(first, 10, 1000, 60000);
+    writer.abandonScan(scanID);
+    writer.close();
+
+    Thread.sleep(EXPIRY_WAIT);
+    // Not renewed, not finished
+    first.renewScanLeases();
+    assertFalse(isFinished(scanID));
+    assertEquals(Collections.singletonList(scanID), ids(second.takeNextScans(1)));
+  }
+
+  @Test
+  public void finishScan_LastChildOfReleasedParent_FinishesParent() throws Exception {
+    UUID parentID = insertScan("LSP");
+    assertEquals(Collections.singletonList(parentID), ids(first.takeNextScans(1)));
+    assertTrue(first.insertChildScans(parentID,
+        Collections.singletonList(child(parentID, "LSA"))));
+
+    first.releaseScanLease(parentID);
+    assertFalse(isFinished(parentID));
+    assertNull(leaseExpires(parentID));
+
+    List<DatabaseScan> children = second.takeNextScans(1);
+    assertEquals(1, children.size());
+    assertEquals(parentID, children.get(0).parentScanID);
+    second.finishScan(children.get(0).scanID);
+
+    assertTrue(isFinished(parentID));
+  }
+
+  @Test
+  public void releaseScanLease_ChildrenFinished_FinishesParent() throws Exception {
+    UUID parentID = insertScan("LSP");
+    assertEquals(Collections.singletonList(parentID), ids(first.takeNextScans(1)));
+    assertTrue(first.insertChildScans(parentID,
+        Collections.singletonList(child(parentID, "LSA"))));
+    List<DatabaseScan> children = second.takeNextScans(1);
+    assertEquals(1, children.size());
+    second.finishScan(children.get(0).scanID);
+
+    first.releaseScanLease(parentID);
+
+    assertTrue(isFinished(parentID));
+    assertNull(leaseExpires(parentID));
+  }
+
+  @Test
+  public void finishScan_LastChildOfLeasedParent_LeavesParentUnfinished() throws Exception {
+    UUID parentID = insertScan("LSP");
+    assertEquals(Collections.singletonList(parentID), ids(first.takeNextScans(1)));
+    assertTrue(first.insertChildScans(parentID,
+        Collections.singletonList(child(parentID, "LSA"))));
+
+    // The parent may still be adding children
+    List<DatabaseScan> children = second.takeNextScans(1);
+    assertEquals(1, children.size());
+    second.finishScan(children.get(0).scanID);
+
+    assertFalse(isFinished(parentID));
+    assertTrue(isFinished(children.get(0).scanID));
+  }
+}
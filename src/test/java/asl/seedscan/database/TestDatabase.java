@@ -0,0 +1,42 @@
+package asl.seedscan.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Connections to the test database described in
+ * {@link asl.testutils.Dependent#assumeTestDatabase()}.
+ */
+public class TestDatabase {
+
+  public static String getUri() {
+    return System.getenv("SEEDSCAN_TEST_DB_URI");
+  }
+
+  public static String getUser() {
+    String user = System.getenv("SEEDSCAN_TEST_DB_USER");
+    return user == null ? "seedscan" : user;
+  }
+
+  public static String getPassword() {
+    String password = System.getenv("SEEDSCAN_TEST_DB_PASSWORD");
+    return password == null ? "" : password;
+  }
+
+  /**
+   * @return a new connection in auto-commit mode
+   * @throws SQLException if the database cannot be reached
+   */
+  public static Connection connect() throws SQLException {
+    return DriverManager.getConnection(getUri(), getUser(), getPassword());
+  }
+
+  /**
+   * @return a MetricDatabase connected to the test database
+   * @throws SQLException if the database cannot be reached
+   */
+  public static MetricDatabase openMetricDatabase() throws SQLException {
+    return new MetricDatabase(getUri(), getUser(), getPassword());
+  }
+}
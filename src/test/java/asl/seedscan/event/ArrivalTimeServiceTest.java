@@ -0,0 +1,85 @@
+package asl.seedscan.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import asl.metadata.Blockette;
+import asl.metadata.meta_new.StationMeta;
+import edu.sc.seis.TauP.Arrival;
+import edu.sc.seis.TauP.SphericalCoords;
+import edu.sc.seis.TauP.TauP_Time;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ArrivalTimeServiceTest {
+
+  private static EventCMT event(String eventID, double latitude, double longitude, double depth) {
+    return new EventCMT.Builder(eventID)
+        .calendar(GregorianCalendar.from(LocalDateTime.of(2017, 3, 1, 0, 0)
+            .atZone(ZoneOffset.UTC)))
+        .depth(depth).latitude(latitude).longitude(longitude).build();
+  }
+
+  private static StationMeta station(String name, double latitude, double longitude)
+      throws Exception {
+    Blockette blockette = new Blockette(50);
+    blockette.addFieldData(3, name);
+    blockette.addFieldData(4, Double.toString(latitude));
+    blockette.addFieldData(5, Double.toString(longitude));
+    blockette.addFieldData(6, "0.");
+    blockette.addFieldData(16, "IU");
+    return new StationMeta(blockette, LocalDateTime.of(2017, 3, 1, 0, 0));
+  }
+
+  @Test
+  public void testGetArrivals_MatchesTauPAndIsCached() throws Exception {
+    ArrivalTimeService service = new ArrivalTimeService("prem", 100);
+    EventCMT event = event("C201703010000A", 30, 60, 55);
+    StationMeta station = station("KEV", 70, 25);
+
+    List<Arrival> arrivals = service.getArrivals(event, station, "P,S");
+    TauP_Time timeTool = new TauP_Time("prem");
+    timeTool.parsePhaseList("P,S");
+    timeTool.setSourceDepth(55);
+    timeTool.calculate(SphericalCoords.distance(30, 60, 70, 25));
+    List<Arrival> expected = timeTool.getArrivals();
+    assertEquals(expected.size(), arrivals.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getName(), arrivals.get(i).getName());
+      assertEquals(expected.get(i).getTime(), arrivals.get(i).getTime(), 0.0);
+    }
+
+    // P alone doesn't disturb the cached P and S arrivals
+    assertEquals(expected.get(0).getTime(), service.getPArrivalTime(event, station), 0.0);
+    assertSame(arrivals, service.getArrivals(event, station, "P,S"));
+  }
+
+  @Test
+  public void testGetPArrivalTime_NoPWave() throws Exception {
+    ArrivalTimeService service = new ArrivalTimeService("prem", 100);
+    // 150 degrees, inside the core shadow
+    assertEquals(Double.NaN,
+        service.getPArrivalTime(event("A", 0, 0, 10), station("ANTI", 0, 150)), 0.0);
+  }
+
+  @Test
+  public void testGetPArrivalTime_TableMatchesCalculation() throws Exception {
+    ArrivalTimeService calculated = new ArrivalTimeService("prem", 1000);
+    ArrivalTimeService interpolated = new ArrivalTimeService("prem", 1000);
+    interpolated.setTableStep(0.5);
+
+    Random random = new Random(1);
+    StationMeta station = station("ANMO", 0, 0);
+    for (int i = 0; i < 200; i++) {
+      // Two rows of the table, at teleseismic distances including the core shadow
+      double depth = 30 + 10 * random.nextDouble();
+      EventCMT event = event("E" + i, 0, 20 + 100 * random.nextDouble(), depth);
+      assertEquals(calculated.getPArrivalTime(event, station),
+          interpolated.getPArrivalTime(event, station), 0.1);
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package asl.seedscan.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import asl.metadata.Blockette;
+import asl.metadata.Station;
+import asl.metadata.meta_new.StationMeta;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricDataCacheTest {
+
+  private static final Station STATION = new Station("IU", "ANMO");
+  private static final LocalDate DATE = LocalDate.of(2015, 7, 25);
+
+  private MetricDataCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new MetricDataCache(200);
+  }
+
+  /**
+   * Creates a day without samples whose estimated size grows with the number of quality values.
+   */
+  private static MetricData day(int qualityCount) {
+    Hashtable<String, ArrayList<Integer>> qualityData = new Hashtable<>();
+    qualityData.put("00-LHZ", new ArrayList<>(Collections.nCopies(qualityCount, 100)));
+    return new MetricData(null, new Hashtable<>(), qualityData, null, null);
+  }
+
+  @Test
+  public final void testGetSameSourceIsHit() throws Exception {
+    MetricData data = day(2);
+    AtomicInteger loads = new AtomicInteger();
+    assertSame(data, cache.get(STATION, DATE, null, "a", () -> {
+      loads.incrementAndGet();
+      return data;
+    }));
+    assertSame(data, cache.get(STATION, DATE, null, "a", () -> {
+      loads.incrementAndGet();
+      return day(2);
+    }));
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(data.getEstimatedSize(), cache.getSize());
+  }
+
+  @Test
+  public final void testGetChangedSourceReloads() throws Exception {
+    MetricData first = day(2);
+    MetricData second = day(4);
+    cache.get(STATION, DATE, null, "a", () -> first);
+    assertSame(second, cache.get(STATION, DATE, null, "b", () -> second));
+    assertEquals(1, cache.getCount());
+    assertEquals(second.getEstimatedSize(), cache.getSize());
+  }
+
+  @Test
+  public final void testGetNullIsNotCached() throws Exception {
+    assertNull(cache.get(STATION, DATE, null, "a", () -> null));
+    assertEquals(0, cache.getCount());
+    assertNull(cache.peek(STATION, DATE, null));
+  }
+
+  @Test
+  public final void testEvictsLeastRecentlyUsed() throws Exception {
+    MetricData first = day(2);
+    MetricData second = day(2);
+    cache.get(STATION, DATE, null, "a", () -> first);
+    cache.get(STATION, DATE.plusDays(1), null, "a", () -> second);
+    // Touch the first day so the second is the least recently used
+    assertSame(first, cache.peek(STATION, DATE, null));
+    cache.get(STATION, DATE.plusDays(2), null, "a", () -> day(2));
+
+    assertEquals(1, cache.getEvictions());
+    assertEquals(2 * first.getEstimatedSize(), cache.getSize());
+    assertSame(first, cache.peek(STATION, DATE, null));
+    assertNull(cache.peek(STATION, DATE.plusDays(1), null));
+  }
+
+  @Test
+  public final void testPeekDoesNotLoad() throws Exception {
+    assertNull(cache.peek(STATION, DATE, null));
+    MetricData data = day(1);
+    cache.get(STATION, DATE, null, "a", () -> data);
+    assertSame(data, cache.peek(STATION, DATE, null));
+    assertNull(cache.peek(new Station("IU", "COLA"), DATE, null));
+  }
+
+  @Test
+  public final void testConcurrentGetLoadsOnce() throws Exception {
+    MetricData data = day(1);
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    List<MetricData> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        MetricData result = cache.get(STATION, DATE, null, "a", () -> {
+          loads.incrementAndGet();
+          try {
+            Thread.sleep(50);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return data;
+        });
+        synchronized (results) {
+          results.add(result);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(1, loads.get());
+    assertEquals(8, results.size());
+    for (MetricData result : results) {
+      assertSame(data, result);
+    }
+  }
+
+  @Test
+  public final void testPeekIsNotCounted() throws Exception {
+    assertNull(cache.peek(STATION, DATE, null));
+    cache.get(STATION, DATE, null, "a", () -> day(1));
+    cache.peek(STATION, DATE, null);
+    assertEquals(0, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  private static Blockette stationEpoch() {
+    Blockette blockette = new Blockette(50);
+    blockette.addFieldData(3, "ANMO");
+    blockette.addFieldData(4, "34.9459");
+    blockette.addFieldData(5, "-106.4572");
+    blockette.addFieldData(6, "1671.0");
+    blockette.addFieldData(16, "IU");
+    return blockette;
+  }
+
+  @Test
+  public final void testGetChangedMetadataReloads() throws Exception {
+    Blockette stationEpoch = stationEpoch();
+    StationMeta firstMeta = new StationMeta(stationEpoch, DATE.atStartOfDay());
+    StationMeta sameSnapshot = new StationMeta(stationEpoch, DATE.atStartOfDay());
+    // Metadata built again after the dataless was reloaded
+    StationMeta reloaded = new StationMeta(stationEpoch(), DATE.atStartOfDay());
+
+    MetricData first = day(2);
+    MetricData second = day(2);
+    cache.get(STATION, DATE, firstMeta, "a", () -> first);
+    assertSame(first, cache.get(STATION, DATE, sameSnapshot, "a", () -> second));
+    assertSame(second, cache.get(STATION, DATE, reloaded, "a", () -> second));
+    assertNull(cache.peek(STATION, DATE, null));
+    assertSame(first, cache.peek(STATION, DATE, sameSnapshot));
+  }
+
+  @Test
+  public final void testCopyIsNotLinkedToCachedDay() throws Exception {
+    MetricData cached = day(2);
+    cache.get(STATION, DATE, null, "a", () -> cached);
+    MetricData copy = cached.copy();
+    assertNotSame(cached, copy);
+    copy.setNextMetricData(day(1));
+    copy.setPreviousMetricData(day(1));
+    assertNull(cached.getNextMetricData());
+    assertNull(cached.getPreviousMetricData());
+
+    copy.releasePreviousMetricData();
+    assertNull(copy.getPreviousMetricData());
+    assertEquals(cached.getEstimatedSize(), copy.getEstimatedSize());
+  }
+}
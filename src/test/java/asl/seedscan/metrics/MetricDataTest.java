@@ -19,6 +19,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Hashtable;
 import javax.xml.bind.DatatypeConverter;
 import org.apache.commons.codec.binary.Hex;
 import org.junit.BeforeClass;
@@ -208,6 +209,44 @@ public class MetricDataTest {
     assertEquals("LHZ", dataSet.getChannel());
   }
 
+  private static DataSet dataSet(String location, String channel) {
+    DataSet dataSet = new DataSet();
+    dataSet.setNetwork("IU");
+    dataSet.setStation("ANMO");
+    dataSet.setLocation(location);
+    dataSet.setChannel(channel);
+    return dataSet;
+  }
+
+  /*
+   * Channels are matched exactly, not as substrings of the data keys.
+   */
+  @Test
+  public final void testGetChannelData_IndexedByChannel() throws Exception {
+    Hashtable<String, ArrayList<DataSet>> tables = new Hashtable<>();
+    DataSet lhnd = dataSet("00", "LHND");
+    DataSet bhz = dataSet("--", "BHZ");
+    tables.put("IU_ANMO 00-LHND (1.0 Hz)", new ArrayList<>(Arrays.asList(lhnd)));
+    tables.put("IU_ANMO ---BHZ (20.0 Hz)", new ArrayList<>(Arrays.asList(bhz)));
+    Hashtable<String, ArrayList<Integer>> quality = new Hashtable<>();
+    quality.put("IU_ANMO ---BHZ (20.0 Hz)", new ArrayList<>(Arrays.asList(100, 90)));
+    MetricData metricData = new MetricData(new MetricDatabaseMock(), tables, quality, metadata,
+        null);
+
+    assertTrue(metricData.hasChannelData(new Channel("00", "LHND")));
+    assertEquals(lhnd, metricData.getChannelData(new Channel("00", "LHND")).get(0));
+    // "00-LHN" is part of "00-LHND" but is another channel
+    assertFalse(metricData.hasChannelData(new Channel("00", "LHN")));
+    assertNull(metricData.getChannelData(new Channel("00", "LHN")));
+    assertFalse(metricData.hasChannelData(new Channel("0", "LHND")));
+
+    assertEquals(bhz, metricData.getChannelData(new Channel("--", "BHZ")).get(0));
+    assertEquals(Arrays.asList(100, 90),
+        metricData.getChannelTimingQualityData(new Channel("--", "BHZ")));
+    assertNull(metricData.getChannelTimingQualityData(new Channel("00", "LHND")));
+    assertNull(metricData.getChannelCalData(new Channel("--", "BHZ")));
+  }
+
   /*
    * TODO: Need a day with a calibration, but won't worry about until
    * Calibration metric is working.
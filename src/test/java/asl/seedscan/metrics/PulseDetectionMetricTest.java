@@ -7,6 +7,8 @@ import static asl.seedscan.metrics.PulseDetectionMetric.getCenteredMovingAverage
 import static asl.seedscan.metrics.PulseDetectionMetric.getStepFunction;
 import static asl.seedscan.metrics.PulseDetectionMetric.removeResponseOnTimeDomainData;
 import static asl.seedscan.metrics.PulseDetectionMetric.sharpnessConstraint;
+import static asl.utils.NumericUtils.detrend;
+import static asl.utils.NumericUtils.getMean;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -24,6 +26,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Random;
 import java.util.Set;
 import org.junit.Test;
 
@@ -447,4 +450,98 @@ public class PulseDetectionMetricTest {
     assertTrue(sb.toString(), passes);
   }
 
+  /**
+   * A random walk with a slow oscillation, roughly the shape of a low-passed trace.
+   */
+  private static double[] randomTrace(int length) {
+    Random random = new Random(42);
+    double[] trace = new double[length];
+    double walk = 0;
+    for (int i = 0; i < length; ++i) {
+      walk += random.nextGaussian();
+      trace[i] = 1E-6 * (walk + 200 * Math.sin(i / 700.));
+    }
+    return trace;
+  }
+
+  /**
+   * The correlation as computed window by window before the FFT version.
+   */
+  private static double[][] referenceCrossCorrelate(double[] trace, double[] stepFunction) {
+    double[] stepFunctionProcessed = detrend(stepFunction);
+    double summedSquares = 0.;
+    for (double point : stepFunctionProcessed) {
+      summedSquares += Math.pow(point, 2);
+    }
+    summedSquares = Math.sqrt(summedSquares);
+    for (int i = 0; i < stepFunctionProcessed.length; ++i) {
+      stepFunctionProcessed[i] /= summedSquares;
+    }
+    int corrLen = trace.length - stepFunction.length;
+    double[] correl = new double[corrLen];
+    double[] scal = new double[corrLen];
+    for (int i = 0; i < corrLen; ++i) {
+      double[] tr2 = detrend(Arrays.copyOfRange(trace, i, i + stepFunction.length));
+      double sumSqd = 0;
+      for (double v : tr2) {
+        sumSqd += Math.pow(v, 2);
+      }
+      sumSqd = Math.sqrt(sumSqd);
+      double scalNumer = 0;
+      double scalDenom = 0;
+      for (int j = 0; j < tr2.length; ++j) {
+        correl[i] += tr2[j] / sumSqd * stepFunctionProcessed[j];
+        scalNumer += tr2[j] * stepFunctionProcessed[j];
+        scalDenom += stepFunction[j] * stepFunctionProcessed[j];
+      }
+      scal[i] = scalNumer / scalDenom;
+    }
+    return new double[][]{correl, scal};
+  }
+
+  @Test
+  public void testCrossCorrelationMatchesWindowedCalculation() {
+    // several FFT blocks of a 1 Hz step function
+    double[] trace = randomTrace(12000);
+    double[] step = getStepFunction(1.0);
+    double[][] expect = referenceCrossCorrelate(trace, step);
+    double[][] result = PulseDetectionMetric.crossCorrelate(trace, step);
+    assertEquals(expect[0].length, result[0].length);
+    double largestScale = 0;
+    for (double value : expect[1]) {
+      largestScale = Math.max(largestScale, Math.abs(value));
+    }
+    for (int i = 0; i < expect[0].length; ++i) {
+      assertEquals("correlation at " + i, expect[0][i], result[0][i], 1E-9);
+      assertEquals("scale at " + i, expect[1][i], result[1][i], largestScale * 1E-9);
+    }
+  }
+
+  @Test
+  public void testMovingAveragesMatchWindowedCalculation() {
+    double[] trace = randomTrace(5000);
+    // windows of odd and even length, and duplicated values
+    for (int i = 0; i < trace.length; i += 7) {
+      trace[i] = 0;
+    }
+    for (int windowLength : new int[]{1, 2, 61, 240}) {
+      int singleSide = (int) ((Math.ceil(windowLength / 2.) * 2. - 1.) / 2.);
+      double[] mean = getCenteredMovingAverage(trace, windowLength);
+      double[][] thirds = getCenteredMovingAveragePercentiles(trace, windowLength);
+      for (int i = 0; i < trace.length; ++i) {
+        double[] window = Arrays.copyOfRange(trace, Math.max(0, i - singleSide),
+            Math.min(trace.length, i + singleSide));
+        assertEquals(getMean(window), mean[i], 1E-15);
+        Arrays.sort(window);
+        int firstDivider = window.length / 3;
+        int secondDivider = (int) (window.length / 1.5);
+        assertEquals(getMean(Arrays.copyOfRange(window, 0, firstDivider)), thirds[0][i], 1E-15);
+        assertEquals(getMean(Arrays.copyOfRange(window, firstDivider, secondDivider)),
+            thirds[1][i], 1E-15);
+        assertEquals(getMean(Arrays.copyOfRange(window, secondDivider, window.length)),
+            thirds[2][i], 1E-15);
+      }
+    }
+  }
+
 }
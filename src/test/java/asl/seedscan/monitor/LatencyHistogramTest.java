@@ -0,0 +1,71 @@
+package asl.seedscan.monitor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testRecordCountsIntoBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(500_000L); // 0.5 ms
+    histogram.record(1_000_000L); // exactly on the 1 ms bound
+    histogram.record(3_000_000_000L); // 3 s
+    histogram.record(400_000_000_000L); // over every bound
+    histogram.record(-5L);
+
+    assertEquals(5, histogram.getCount());
+    assertEquals(403.0015, histogram.getSum(), 1e-9);
+    assertEquals(400.0, histogram.getMax(), 0.0);
+
+    long[] counts = histogram.getCumulativeCounts();
+    assertEquals(LatencyHistogram.BOUNDS.length + 1, counts.length);
+    assertEquals(3, counts[0]);
+    // 2.5 s bucket, then the 5 s bucket holds the 3 s duration
+    assertEquals(3, counts[10]);
+    assertEquals(4, counts[11]);
+    assertEquals(4, counts[LatencyHistogram.BOUNDS.length - 1]);
+    assertEquals(5, counts[LatencyHistogram.BOUNDS.length]);
+  }
+
+  @Test
+  public void testGetQuantile() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0.0, histogram.getQuantile(0.5), 0.0);
+
+    for (int i = 0; i < 90; i++) {
+      histogram.record(20_000_000L); // 20 ms
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.record(700_000_000L); // 700 ms
+    }
+    assertEquals(0.025, histogram.getQuantile(0.5), 0.0);
+    assertEquals(0.025, histogram.getQuantile(0.9), 0.0);
+    // Never more than the longest duration
+    assertEquals(0.7, histogram.getQuantile(0.95), 0.0);
+
+    histogram.record(1_000_000_000_000L);
+    assertEquals(1000.0, histogram.getQuantile(1.0), 0.0);
+  }
+
+  @Test
+  public void testRecordFromThreads() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10000; i++) {
+          histogram.record(i * 1000L);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40000, histogram.getCount());
+    long[] counts = histogram.getCumulativeCounts();
+    assertEquals(40000, counts[counts.length - 1]);
+  }
+}
@@ -0,0 +1,139 @@
+package asl.seedscan.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class ScanMetricsTest {
+
+  private static ScanMetrics sampleMetrics() {
+    ScanMetrics metrics = new ScanMetrics();
+    metrics.stage(ScanMetrics.STAGE_SPLIT).record(2_000_000_000L);
+    metrics.metric("AvailabilityMetric").record(3_000_000L);
+    metrics.metric("AvailabilityMetric").record(30_000_000L);
+    metrics.database("take_next_scan").record(1_000_000L);
+    metrics.increment(ScanMetrics.Count.STATION_DAYS);
+    metrics.increment(ScanMetrics.Count.STATION_DAYS);
+    metrics.increment(ScanMetrics.Count.DIGEST_SKIPS);
+    return metrics;
+  }
+
+  @Test
+  public void testToPrometheus() {
+    ScanMetrics metrics = sampleMetrics();
+    AtomicLong depth = new AtomicLong(7);
+    metrics.registerGauge("seedscan_work_queue_depth", "Queued work.", depth::get);
+    String text = metrics.toPrometheus();
+
+    assertTrue(text.contains("# TYPE seedscan_stage_seconds histogram\n"));
+    assertTrue(text.contains("seedscan_stage_seconds_bucket{stage=\"split\",le=\"1.0\"} 0\n"));
+    assertTrue(text.contains("seedscan_stage_seconds_bucket{stage=\"split\",le=\"2.5\"} 1\n"));
+    assertTrue(text.contains("seedscan_stage_seconds_bucket{stage=\"split\",le=\"+Inf\"} 1\n"));
+    assertTrue(text.contains("seedscan_stage_seconds_sum{stage=\"split\"} 2.0\n"));
+    assertTrue(text.contains(
+        "seedscan_metric_seconds_bucket{metric=\"AvailabilityMetric\",le=\"0.005\"} 1\n"));
+    assertTrue(text.contains("seedscan_metric_seconds_count{metric=\"AvailabilityMetric\"} 2\n"));
+    assertTrue(text.contains("seedscan_database_seconds_count{call=\"take_next_scan\"} 1\n"));
+    assertTrue(text.contains("# TYPE seedscan_station_days_total counter\n"));
+    assertTrue(text.contains("seedscan_station_days_total 2\n"));
+    assertTrue(text.contains("seedscan_digest_skips_total 1\n"));
+    assertTrue(text.contains("seedscan_split_timeouts_total 0\n"));
+    assertTrue(text.contains("# TYPE seedscan_work_queue_depth gauge\n"));
+    assertTrue(text.contains("seedscan_work_queue_depth 7\n"));
+
+    // Gauges are read when written
+    depth.set(3);
+    assertTrue(metrics.toPrometheus().contains("seedscan_work_queue_depth 3\n"));
+    metrics.removeGauge("seedscan_work_queue_depth");
+    assertFalse(metrics.toPrometheus().contains("seedscan_work_queue_depth"));
+  }
+
+  @Test
+  public void testToJson() {
+    String json = sampleMetrics().toJson();
+    assertTrue(json.startsWith("{\"uptime_seconds\":"));
+    assertTrue(json.contains("\"stages\":{\"split\":{\"count\":1,\"sum\":2.000000,"
+        + "\"mean\":2.000000,\"p50\":2.000000,\"p95\":2.000000,\"p99\":2.000000,"
+        + "\"max\":2.000000}}"));
+    assertTrue(json.contains("\"AvailabilityMetric\":{\"count\":2,\"sum\":0.033000"));
+    assertTrue(json.contains("\"seedscan_station_days_total\":2"));
+    assertTrue(json.endsWith("\"gauges\":{}}"));
+  }
+
+  @Test
+  public void testJsonString() {
+    assertEquals("\"a\\\"b\\\\c\\u000a\"", ScanMetrics.jsonString("a\"b\\c\n"));
+  }
+
+  @Test
+  public void testMetricsServer() throws Exception {
+    MetricsServer server = new MetricsServer(sampleMetrics(), 0);
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(
+          "http://127.0.0.1:" + server.getPort() + "/metrics").openConnection();
+      assertEquals(200, connection.getResponseCode());
+      assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+      assertTrue(read(connection.getInputStream()).contains("seedscan_station_days_total 2\n"));
+
+      connection = (HttpURLConnection) new URL(
+          "http://127.0.0.1:" + server.getPort() + "/metrics.json").openConnection();
+      assertEquals(200, connection.getResponseCode());
+      assertTrue(read(connection.getInputStream()).contains("\"seedscan_station_days_total\":2"));
+
+      connection = (HttpURLConnection) new URL(
+          "http://127.0.0.1:" + server.getPort() + "/metrics").openConnection();
+      connection.setRequestMethod("POST");
+      assertEquals(405, connection.getResponseCode());
+    } finally {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testMetricsSummaryWriter() throws Exception {
+    Path directory = Files.createTempDirectory("metrics");
+    Path file = directory.resolve("summary.json");
+    ScanMetrics metrics = sampleMetrics();
+    MetricsSummaryWriter writer = new MetricsSummaryWriter(metrics, file, 3600);
+    try {
+      writer.write();
+      String summary = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+      assertTrue(summary.startsWith("{\"time\":\""));
+      // Nothing was scanned since the writer started
+      assertTrue(summary.contains("\"station_days_per_second\":0.000000,"));
+      assertTrue(summary.contains("\"scan\":{\"uptime_seconds\":"));
+
+      metrics.increment(ScanMetrics.Count.STATION_DAYS);
+      writer.close();
+      summary = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+      assertTrue(summary.contains("\"seedscan_station_days_total\":3"));
+      // Only the summary is left, no temporary files
+      assertEquals(1, directory.toFile().list().length);
+    } finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(directory);
+    }
+  }
+
+  private static String read(InputStream in) throws Exception {
+    try (InputStream input = in) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = input.read(buffer)) > 0) {
+        out.write(buffer, 0, read);
+      }
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+}
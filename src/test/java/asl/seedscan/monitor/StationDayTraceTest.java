@@ -0,0 +1,82 @@
+package asl.seedscan.monitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+
+public class StationDayTraceTest {
+
+  private static StationDayTrace trace() {
+    StationDayTrace trace = new StationDayTrace("IU", "ANMO", LocalDate.of(2018, 3, 14),
+        UUID.fromString("00000000-0000-0000-0000-000000000001"));
+    trace.setData(new StationDayTrace.Decode(StationDayTrace.Decode.SPLIT, 3, 123456L, 301,
+        2_500_000_000L), 12, 40, 864000L, 200.0);
+    trace.setMetricCount(3);
+    trace.setMetric(0, "AvailabilityMetric", 1_000_000L);
+    trace.setMetric(2, "CoherencePBM:4-8", 1_500_000_000L);
+    trace.setPsds(6, 18);
+    return trace;
+  }
+
+  @Test
+  public void testToJson() {
+    StationDayTrace trace = trace();
+    trace.setOutcome("failed");
+    trace.finish();
+    String json = trace.toJson();
+
+    assertTrue(json.startsWith("{\"network\":\"IU\",\"station\":\"ANMO\",\"date\":\"2018-03-14\","
+        + "\"scan_id\":\"00000000-0000-0000-0000-000000000001\",\"outcome\":\"failed\","
+        + "\"seconds\":"));
+    assertTrue(json.contains(",\"decode\":{\"source\":\"split\",\"files\":3,\"bytes\":123456,"
+        + "\"records\":301,\"seconds\":2.500000},\"channels\":12,\"segments\":40,"
+        + "\"samples\":864000,\"max_sample_rate\":200.0,\"psds_computed\":6,\"psds_reused\":18,"));
+    // The metric not computed is left out
+    assertTrue(json.endsWith(
+        ",\"metrics\":[{\"metric\":\"AvailabilityMetric\",\"seconds\":0.001000},"
+            + "{\"metric\":\"CoherencePBM:4-8\",\"seconds\":1.500000}]}"));
+    assertFalse(json.contains("\n"));
+  }
+
+  @Test
+  public void testToJson_WithoutData() {
+    StationDayTrace trace = new StationDayTrace("IU", "ANMO", LocalDate.of(2018, 3, 14), null);
+    trace.setOutcome("no_metadata");
+    trace.finish();
+    String json = trace.toJson();
+    assertTrue(json.contains("\"scan_id\":null,\"outcome\":\"no_metadata\""));
+    assertTrue(json.contains("\"decode\":null,\"channels\":0"));
+    assertTrue(json.endsWith("\"metrics\":[]}"));
+  }
+
+  @Test
+  public void testSlowDayLog_WritesDaysOverThreshold() throws Exception {
+    Path directory = Files.createTempDirectory("traces");
+    Path file = directory.resolve("slow_days.jsonl");
+    try {
+      SlowDayLog log = new SlowDayLog(file, 3600);
+      StationDayTrace fast = trace();
+      fast.finish();
+      assertFalse(log.record(fast));
+      assertFalse(Files.exists(file));
+
+      SlowDayLog everyDay = new SlowDayLog(file, 0);
+      assertTrue(everyDay.record(fast));
+      assertTrue(everyDay.record(fast));
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      assertEquals(2, lines.size());
+      assertEquals(fast.toJson(), lines.get(1));
+    } finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(directory);
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package asl.seedscan.scanner;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 import asl.metadata.MetaGenerator;
@@ -9,6 +11,7 @@ import asl.testutils.Dependent;
 import asl.testutils.ResourceManager;
 import asl.testutils.ThreadUtils.MutableFlag;
 import java.util.Queue;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -102,6 +105,15 @@ public class ScanManagerTest {
     }
   }
 
+  @Test(timeout = 20000)
+  public void load_doesLoaderRunOnSeparateThread() throws Exception {
+    Thread caller = Thread.currentThread();
+    Future<Thread> loader = manager.load(Thread::currentThread);
+
+    assertNotEquals(caller, loader.get());
+    assertEquals(42, manager.load(() -> 42).get().intValue());
+  }
+
   @Test(timeout = 20000)
   public void addTask_doesTaskExecuteAfterBeingAdded_ManyTasks() throws Exception {
     Queue<MutableFlag> flags = new LinkedBlockingQueue<>();
@@ -0,0 +1,170 @@
+package asl.seedscan.scanner.scanworker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.metadata.MetaGenerator;
+import asl.metadata.Station;
+import asl.seedscan.database.DatabaseScan;
+import asl.seedscan.database.MetricDatabase;
+import asl.seedscan.database.TestDatabase;
+import asl.seedscan.scanner.ScanManagerMock;
+import asl.testutils.Dependent;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Needs the test database, see {@link Dependent#assumeTestDatabase()}. Each test splits a parent
+ * scan of its own into the child scans of two stations over two windows, and deletes them
+ * afterwards. The scans have a priority below any real scan, so no scanner takes them.
+ */
+public class RetrieveScanSplitTest {
+
+  private static final int PRIORITY = -1000000;
+  private static final LocalDate START = LocalDate.of(2015, 1, 1);
+  private static final LocalDate LAST_WINDOW = LocalDate.of(2015, 2, 1);
+  private static final LocalDate END = LocalDate.of(2015, 3, 1);
+
+  private Connection connection;
+  private MetricDatabase database;
+  private ScanManagerMock manager;
+  private DatabaseScan parent;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Dependent.assumeTestDatabase();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    connection = TestDatabase.connect();
+    database = TestDatabase.openMetricDatabase();
+    MetaGenerator metaGenerator = new MetaGenerator() {
+      @Override
+      public List<Station> getStationList(String[] networks, String[] stations) {
+        return Arrays.asList(new Station("XX", "SPA"), new Station("XX", "SPB"));
+      }
+    };
+    manager = new ScanManagerMock(database, metaGenerator);
+
+    try (PreparedStatement statement = connection.prepareStatement(
+        "INSERT INTO tblscan (networkfilter, startdate, enddate, priority) "
+            + "VALUES ('XX', ?, ?, ?) RETURNING pkscanid")) {
+      statement.setObject(1, START);
+      statement.setObject(2, END);
+      statement.setInt(3, PRIORITY);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        parent = new DatabaseScan((UUID) resultSet.getObject(1), null, null, "XX", null, null,
+            null, START, END, PRIORITY, false);
+      }
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    manager.halt();
+    database.close();
+    try (PreparedStatement children = connection
+        .prepareStatement("DELETE FROM tblscan WHERE fkparentscan = ?");
+        PreparedStatement scans = connection
+            .prepareStatement("DELETE FROM tblscan WHERE pkscanid = ?")) {
+      children.setObject(1, parent.scanID);
+      children.executeUpdate();
+      scans.setObject(1, parent.scanID);
+      scans.executeUpdate();
+    }
+    connection.close();
+  }
+
+  /**
+   * @return when each child scan was inserted, by station and start date
+   */
+  private Map<String, Timestamp> children() throws Exception {
+    Map<String, Timestamp> children = new HashMap<>();
+    try (PreparedStatement statement = connection.prepareStatement(
+        "SELECT networkfilter, stationfilter, startdate, lastupdate FROM tblscan "
+            + "WHERE fkparentscan = ?")) {
+      statement.setObject(1, parent.scanID);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          String key = resultSet.getString(1) + "." + resultSet.getString(2) + " "
+              + resultSet.getObject(3, LocalDate.class);
+          // A duplicate child would replace the first
+          assertNull(children.put(key, resultSet.getTimestamp(4)));
+        }
+      }
+    }
+    return children;
+  }
+
+  private void deleteChildren(LocalDate startDate) throws Exception {
+    try (PreparedStatement statement = connection.prepareStatement(
+        "DELETE FROM tblscan WHERE fkparentscan = ? AND startdate = ?")) {
+      statement.setObject(1, parent.scanID);
+      statement.setObject(2, startDate);
+      statement.executeUpdate();
+    }
+  }
+
+  @Test
+  public void parseScan_SplitTwice_InsertsEachChildOnce() throws Exception {
+    RetrieveScan retrieveScan = new RetrieveScan(manager);
+    retrieveScan.parseScan(parent);
+    Map<String, Timestamp> first = children();
+    assertEquals(Arrays.asList(
+        "XX.SPA 2015-01-01", "XX.SPA 2015-02-01", "XX.SPB 2015-01-01", "XX.SPB 2015-02-01"),
+        sorted(first));
+
+    retrieveScan.parseScan(parent);
+    assertEquals(first, children());
+  }
+
+  @Test
+  public void parseScan_SplitAfterPartialSplit_InsertsOnlyMissingChildren() throws Exception {
+    RetrieveScan retrieveScan = new RetrieveScan(manager);
+    retrieveScan.parseScan(parent);
+    Map<String, Timestamp> first = children();
+
+    // As left by a split that failed after inserting the last window
+    deleteChildren(START);
+    retrieveScan.parseScan(parent);
+    Map<String, Timestamp> second = children();
+    assertEquals(sorted(first), sorted(second));
+    assertEquals(first.get("XX.SPA 2015-02-01"), second.get("XX.SPA 2015-02-01"));
+    assertEquals(first.get("XX.SPB 2015-02-01"), second.get("XX.SPB 2015-02-01"));
+  }
+
+  @Test
+  public void parseScan_TwoWindows_InsertsLastWindowFirst() throws Exception {
+    new RetrieveScan(manager).parseScan(parent);
+
+    Map<String, Timestamp> children = children();
+    for (String station : Arrays.asList("XX.SPA", "XX.SPB")) {
+      for (String other : Arrays.asList("XX.SPA", "XX.SPB")) {
+        assertTrue(children.get(station + " " + LAST_WINDOW)
+            .before(children.get(other + " " + START)));
+      }
+    }
+  }
+
+  private static List<String> sorted(Map<String, Timestamp> children) {
+    List<String> keys = new ArrayList<>(children.keySet());
+    keys.sort(null);
+    return keys;
+  }
+}
@@ -1,14 +1,18 @@
 package asl.seedscan.scanner.scanworker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import asl.metadata.MetaGenerator;
+import asl.metadata.Station;
 import asl.seedscan.database.DatabaseScan;
 import asl.seedscan.database.MetricDatabaseMock;
 import asl.seedscan.scanner.ScanManagerMock;
 import asl.testutils.Dependent;
 import asl.testutils.ResourceManager;
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -196,6 +200,48 @@ public class RetrieveScanTest {
     assertEquals(0, database.getNumberErrors());
   }
 
+  @Test
+  public void parseScan_Over30days_InsertsLastWindowFirstAndReleasesLease() throws Exception {
+    UUID scanID = new UUID(100, 100);
+    DatabaseScan dbScan = new DatabaseScan(
+        scanID,
+        null,
+        null,
+        "CU", "SDDR", null, null,
+        LocalDate.of(2010, 1, 1), LocalDate.of(2013, 1, 1),
+        1, false);
+
+    scan.parseScan(dbScan);
+    List<DatabaseScan> children = database.getChildScans();
+    assertEquals(36, children.size());
+    // Scans are taken latest first
+    assertEquals(dbScan.endDate, children.get(0).endDate);
+    for (DatabaseScan child : children.subList(1, children.size())) {
+      assertTrue(child.startDate.isBefore(children.get(0).startDate));
+    }
+    assertEquals(Collections.singleton(scanID), database.getReleasedScans());
+    assertTrue(database.getAbandonedScans().isEmpty());
+  }
+
+  @Test
+  public void parseScan_InsertChildScansFails_AbandonsLease() throws Exception {
+    UUID scanID = new UUID(100, 100);
+    DatabaseScan dbScan = new DatabaseScan(
+        scanID,
+        null,
+        null,
+        "CU", "SDDR", null, null,
+        LocalDate.of(2010, 1, 1), LocalDate.of(2013, 1, 1),
+        1, false);
+    database.setFailChildScans(true);
+
+    scan.parseScan(dbScan);
+    // Split again once the lease expires instead of finishing without its children
+    assertEquals(Collections.singleton(scanID), database.getAbandonedScans());
+    assertTrue(database.getReleasedScans().isEmpty());
+    assertEquals(0, database.getNumberOfInsertedChildScans());
+  }
+
   /**
    * After a split, a new RetrieveScan should be added to the task queue.
    *
@@ -238,4 +284,31 @@ public class RetrieveScanTest {
     assertEquals(Long.MAX_VALUE, scan.getFinePriority().longValue());
   }
 
-}
\ No newline at end of file
+  @Test
+  public void run_StationListFails_AbandonsLease() throws Exception {
+    MetaGenerator failing = new MetaGenerator() {
+      @Override
+      public List<Station> getStationList(String[] networks, String[] stations) {
+        throw new IllegalStateException("No metadata");
+      }
+    };
+    manager.halt();
+    manager = new ScanManagerMock(database, failing);
+    scan = new RetrieveScan(manager);
+    UUID scanID = new UUID(100, 100);
+    database.offerNewScan(new DatabaseScan(
+        scanID,
+        null,
+        null,
+        null, null, null, null,
+        LocalDate.of(2013, 1, 1), LocalDate.of(2013, 1, 30),
+        1, false));
+
+    scan.run();
+    assertEquals(Collections.singleton(scanID), database.getAbandonedScans());
+    assertEquals(1, database.getNumberErrors());
+    assertEquals(0, database.getNumberOfInsertedChildScans());
+    // Only the next retriever is added
+    assertEquals(1, manager.getNumberTasksAdded());
+  }
+}
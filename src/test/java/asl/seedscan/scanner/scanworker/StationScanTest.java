@@ -2,17 +2,21 @@ package asl.seedscan.scanner.scanworker;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import asl.metadata.Channel;
 import asl.metadata.MetaGenerator;
 import asl.metadata.Station;
+import asl.metadata.meta_new.StationMeta;
 import asl.seedscan.database.DatabaseScan;
 import asl.seedscan.database.MetricDatabaseMock;
 import asl.seedscan.scanner.ScanManagerMock;
 import asl.testutils.Dependent;
 import asl.testutils.ResourceManager;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.Queue;
 import java.util.UUID;
 import org.junit.After;
@@ -103,6 +107,8 @@ public class StationScanTest {
     scan.run();
 
     assertEquals("Number of station Scans added: ", 1, manager.getNumberTasksAdded());
+    //Digests for the whole scan are loaded on its first day
+    assertEquals(1, database.getNumberOfDigestLoads());
   }
 
   @Test(timeout = 20000)
@@ -121,6 +127,28 @@ public class StationScanTest {
     scan.run();
 
     assertEquals("Number of station Scans added: ", 1, manager.getNumberTasksAdded());
+    assertEquals(0, database.getNumberOfDigestLoads());
+  }
+
+  @Test(timeout = 20000)
+  public void run_IsFollowingDayLoadedBeforeItIsScanned() throws Exception {
+    //Null metadata
+    DatabaseScan dbScan = new DatabaseScan(
+        new UUID(100, 100),
+        new UUID(10, 10),
+        null,
+        "IU", "KIP", null, null,
+        LocalDate.of(2012, 1, 15), LocalDate.of(2012, 1, 20),
+        1, false);
+    StationScan scan = new StationScan(manager, dbScan, LocalDate.of(2012, 1, 17), null);
+    scan.loadScanData();
+
+    //Loads for the 18th's scan were started
+    assertNotNull(scan.followingMetadataLoad);
+    assertNotNull(scan.followingDayLoad);
+    //No metadata or data for IU KIP in 2012
+    assertNull(scan.followingMetadataLoad.get());
+    assertNull(scan.followingDayLoad.get());
   }
 
   @Test(timeout = 20000)
@@ -168,6 +196,34 @@ public class StationScanTest {
     assertNotNull(scan.previousMetricData);
   }
 
+  @Test(timeout = 20000)
+  public void run_DayFails_AbandonsLease() throws Exception {
+    MetaGenerator failing = new MetaGenerator() {
+      @Override
+      public StationMeta getStationMeta(Station station, LocalDateTime timestamp) {
+        throw new IllegalStateException("No metadata");
+      }
+    };
+    manager.halt();
+    manager = new ScanManagerMock(database, failing);
+    DatabaseScan dbScan = new DatabaseScan(
+        new UUID(100, 100),
+        new UUID(10, 10),
+        null,
+        "IU", "KIP", null, null,
+        LocalDate.of(2012, 1, 15), LocalDate.of(2012, 1, 20),
+        1, false);
+    StationScan scan = new StationScan(manager, dbScan, LocalDate.of(2012, 1, 17), null);
+
+    scan.run();
+    manager.metricWriter.close();
+
+    // Neither continued nor finished, its lease is given up so it is taken again once it expires
+    assertEquals(0, manager.getNumberTasksAdded());
+    assertEquals(Collections.singleton(dbScan.scanID), database.getAbandonedScans());
+    assertEquals(1, database.getNumberScanMessages());
+  }
+
   @Ignore
   @Test
   public void run_NoMetadataForDay_NoMetricsShouldBeRun() throws Exception {
@@ -0,0 +1,158 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import asl.testutils.Dependent;
+import asl.testutils.ResourceManager;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import seed.Blockette320;
+
+public class DecodedDataCacheTest {
+
+  private static final LocalDate DATE = LocalDate.of(2015, 7, 25);
+  private static File[] files;
+  private static SeedSplitter splitter;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Dependent.assumeGlobalState();
+    File dir = new File(ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206"));
+    files = dir.listFiles((dir1, name) -> name.endsWith(".seed"));
+    Arrays.sort(files);
+    splitter = new SeedSplitter(files);
+    splitter.doInBackground();
+  }
+
+  private static DecodedDataCache.Entry splitEntry() {
+    return new DecodedDataCache.Entry(splitter.getTable(), splitter.getQualityTable(),
+        splitter.getCalTable());
+  }
+
+  @Test
+  public final void load_AfterStore_MatchesSplitter() throws Exception {
+    DecodedDataCache cache = new DecodedDataCache(folder.getRoot(), Long.MAX_VALUE);
+    assertNull(cache.load("IU", "ANMO", DATE, files, "All"));
+
+    cache.store("IU", "ANMO", DATE, files, "All", splitEntry());
+    assertTrue(cache.getFile("IU", "ANMO", DATE).isFile());
+    DecodedDataCache.Entry entry = cache.load("IU", "ANMO", DATE, files, "All");
+    assertNotNull(entry);
+
+    Hashtable<String, ArrayList<DataSet>> expected = splitter.getTable();
+    assertEquals(expected.keySet(), entry.getTable().keySet());
+    for (String key : expected.keySet()) {
+      ArrayList<DataSet> expectedSets = expected.get(key);
+      ArrayList<DataSet> sets = entry.getTable().get(key);
+      assertEquals(key, expectedSets.size(), sets.size());
+      for (int i = 0; i < expectedSets.size(); i++) {
+        DataSet expectedSet = expectedSets.get(i);
+        DataSet set = sets.get(i);
+        assertEquals(key, expectedSet.getNetwork(), set.getNetwork());
+        assertEquals(key, expectedSet.getStation(), set.getStation());
+        assertEquals(key, expectedSet.getLocation(), set.getLocation());
+        assertEquals(key, expectedSet.getChannel(), set.getChannel());
+        assertEquals(key, expectedSet.getStartTime(), set.getStartTime());
+        assertEquals(key, expectedSet.getEndTime(), set.getEndTime());
+        assertEquals(key, expectedSet.getSampleRate(), set.getSampleRate(), 0.0);
+        assertArrayEquals(key, expectedSet.getSeries(), set.getSeries());
+        assertEquals(key, expectedSet.getDigestBytes(), set.getDigestBytes());
+      }
+    }
+
+    assertEquals(splitter.getQualityTable(), entry.getQualityTable());
+
+    Hashtable<String, ArrayList<Blockette320>> expectedCal = splitter.getCalTable();
+    assertEquals(expectedCal.keySet(), entry.getCalTable().keySet());
+    for (String key : expectedCal.keySet()) {
+      assertEquals(key, expectedCal.get(key).size(), entry.getCalTable().get(key).size());
+      for (int i = 0; i < expectedCal.get(key).size(); i++) {
+        assertArrayEquals(key, expectedCal.get(key).get(i).getBytes(),
+            entry.getCalTable().get(key).get(i).getBytes());
+      }
+    }
+  }
+
+  @Test
+  public final void load_SourceChanged_ReturnsNull() throws Exception {
+    File dataDir = folder.newFolder("data");
+    File[] copies = new File[files.length];
+    for (int i = 0; i < files.length; i++) {
+      copies[i] = new File(dataDir, files[i].getName());
+      Files.copy(files[i].toPath(), copies[i].toPath());
+    }
+    DecodedDataCache cache = new DecodedDataCache(folder.newFolder("cache"), Long.MAX_VALUE);
+    cache.store("IU", "ANMO", DATE, copies, "All", splitEntry());
+
+    // Different quality flags split differently
+    assertNull(cache.load("IU", "ANMO", DATE, copies, "D,Q"));
+
+    cache.store("IU", "ANMO", DATE, copies, "All", splitEntry());
+    assertTrue(copies[0].setLastModified(copies[0].lastModified() - 60000));
+    assertNull(cache.load("IU", "ANMO", DATE, copies, "All"));
+    assertFalse(cache.getFile("IU", "ANMO", DATE).exists());
+  }
+
+  @Test
+  public final void store_OverSize_EvictsLeastRecentlyUsed() throws Exception {
+    DecodedDataCache unbounded = new DecodedDataCache(folder.getRoot(), Long.MAX_VALUE);
+    unbounded.store("IU", "ANMO", DATE, files, "All", splitEntry());
+    long daySize = unbounded.getFile("IU", "ANMO", DATE).length();
+
+    DecodedDataCache cache = new DecodedDataCache(folder.getRoot(), 2 * daySize);
+    LocalDate secondDate = DATE.plusDays(1);
+    LocalDate thirdDate = DATE.plusDays(2);
+    cache.store("IU", "ANMO", secondDate, files, "All", splitEntry());
+    // Make the first day the most recently used one
+    assertTrue(cache.getFile("IU", "ANMO", secondDate).setLastModified(1000));
+    assertNotNull(cache.load("IU", "ANMO", DATE, files, "All"));
+
+    cache.store("IU", "ANMO", thirdDate, files, "All", splitEntry());
+    assertTrue(cache.getFile("IU", "ANMO", DATE).exists());
+    assertFalse(cache.getFile("IU", "ANMO", secondDate).exists());
+    assertTrue(cache.getFile("IU", "ANMO", thirdDate).exists());
+  }
+
+  @Test
+  public final void store_OverSizeWithSharedDirectory_EvictsOtherProcessFiles() throws Exception {
+    DecodedDataCache unbounded = new DecodedDataCache(folder.getRoot(), Long.MAX_VALUE);
+    unbounded.store("IU", "ANMO", DATE, files, "All", splitEntry());
+    long daySize = unbounded.getFile("IU", "ANMO", DATE).length();
+    assertTrue(unbounded.getFile("IU", "ANMO", DATE).delete());
+
+    DecodedDataCache cache = new DecodedDataCache(folder.getRoot(), 2 * daySize);
+    // Written by another cache sharing the directory after this one listed it
+    DecodedDataCache other = new DecodedDataCache(folder.getRoot(), Long.MAX_VALUE);
+    other.store("IU", "ANMO", DATE, files, "All", splitEntry());
+
+    LocalDate secondDate = DATE.plusDays(1);
+    LocalDate thirdDate = DATE.plusDays(2);
+    LocalDate fourthDate = DATE.plusDays(3);
+    cache.store("IU", "ANMO", secondDate, files, "All", splitEntry());
+    cache.store("IU", "ANMO", thirdDate, files, "All", splitEntry());
+    // Only counted once this cache is over its size and lists the directory again
+    assertTrue(cache.getFile("IU", "ANMO", DATE).exists());
+
+    cache.store("IU", "ANMO", fourthDate, files, "All", splitEntry());
+    assertFalse(cache.getFile("IU", "ANMO", DATE).exists());
+    assertFalse(cache.getFile("IU", "ANMO", secondDate).exists());
+    assertTrue(cache.getFile("IU", "ANMO", thirdDate).exists());
+    assertTrue(cache.getFile("IU", "ANMO", fourthDate).exists());
+  }
+}
@@ -0,0 +1,71 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import asl.testutils.Dependent;
+import asl.testutils.ResourceManager;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import seed.Blockette320;
+
+public class SeedSplitterTest {
+
+  private static File[] files;
+  private static SeedSplitter serial;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Dependent.assumeGlobalState();
+    File dir = new File(ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206"));
+    files = dir.listFiles((dir1, name) -> name.endsWith(".seed"));
+    Arrays.sort(files);
+    serial = new SeedSplitter(files);
+    serial.doInBackground();
+  }
+
+  @Test
+  public final void doInBackground_Parallel_MatchesSerial() throws Exception {
+    SeedSplitter parallel = new SeedSplitter(files, 4);
+    Hashtable<String, ArrayList<DataSet>> table = parallel.doInBackground();
+    assertNotNull(table);
+
+    Hashtable<String, ArrayList<DataSet>> expected = serial.getTable();
+    assertEquals(expected.keySet(), table.keySet());
+    for (String key : expected.keySet()) {
+      ArrayList<DataSet> expectedSets = expected.get(key);
+      ArrayList<DataSet> sets = table.get(key);
+      assertEquals(key, expectedSets.size(), sets.size());
+      for (int i = 0; i < expectedSets.size(); i++) {
+        assertEquals(key, expectedSets.get(i).getStartTime(), sets.get(i).getStartTime());
+        assertEquals(key, expectedSets.get(i).getEndTime(), sets.get(i).getEndTime());
+        assertArrayEquals(key, expectedSets.get(i).getSeries(), sets.get(i).getSeries());
+      }
+    }
+
+    assertEquals(serial.getQualityTable(), parallel.getQualityTable());
+
+    Hashtable<String, ArrayList<Blockette320>> expectedCal = serial.getCalTable();
+    Hashtable<String, ArrayList<Blockette320>> cal = parallel.getCalTable();
+    assertEquals(expectedCal.keySet(), cal.keySet());
+    for (String key : expectedCal.keySet()) {
+      assertEquals(key, expectedCal.get(key).size(), cal.get(key).size());
+      for (int i = 0; i < expectedCal.get(key).size(); i++) {
+        assertEquals(key, expectedCal.get(key).get(i).getCalibrationEpoch(),
+            cal.get(key).get(i).getCalibrationEpoch());
+      }
+    }
+  }
+
+  @Test
+  public final void doInBackground_OneProcessor_UsesSerialPath() throws Exception {
+    SeedSplitter splitter = new SeedSplitter(files, 1);
+    Hashtable<String, ArrayList<DataSet>> table = splitter.doInBackground();
+    assertEquals(serial.getTable().keySet(), table.keySet());
+  }
+}
@@ -0,0 +1,127 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class SequenceTest {
+
+  private static final long START = 1500000000000000L;
+
+  /**
+   * The digest as addDigestMembers computed it, one value at a time.
+   */
+  private static byte[] expectedDigest(long startTime, double sampleRate, int[] samples,
+      int length) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    digest.update(ByteBuffer.allocate(8).putLong(startTime).array());
+    digest.update(ByteBuffer.allocate(8).putDouble(sampleRate).array());
+    for (int i = 0; i < length; i++) {
+      digest.update(ByteBuffer.allocate(4).putInt(samples[i]).array());
+    }
+    return digest.digest();
+  }
+
+  private static Sequence sequence(long startTime, double sampleRate) throws Exception {
+    Sequence sequence = new Sequence();
+    sequence.setStartTime(startTime);
+    sequence.setSampleRate(sampleRate);
+    return sequence;
+  }
+
+  @Test
+  public void testGetDigestBytes_MatchesWhileAppending() throws Exception {
+    Random random = new Random(1);
+    int[] samples = new int[20000];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = random.nextInt();
+    }
+
+    Sequence sequence = sequence(START, 40.0);
+    assertArrayEquals(expectedDigest(START, 40.0, samples, 0),
+        sequence.getDigestBytes().array());
+    int length = 0;
+    while (length < samples.length) {
+      int count = Math.min(samples.length - length, random.nextInt(3000));
+      if (random.nextBoolean()) {
+        sequence.extend(samples, length, count);
+      } else {
+        for (int i = 0; i < count; i++) {
+          sequence.append(samples[length + i]);
+        }
+      }
+      length += count;
+      if (random.nextInt(4) == 0) {
+        // Back out a record, possibly into a digested block
+        int rewind = Math.min(length, random.nextInt(5000));
+        sequence.rewind(rewind);
+        length -= rewind;
+      }
+      assertEquals(length, sequence.getLength());
+      assertArrayEquals(expectedDigest(START, 40.0, samples, length),
+          sequence.getDigestBytes().array());
+    }
+  }
+
+  @Test
+  public void testGetDigestBytes_FrozenUntilChanged() throws Exception {
+    int[] samples = new int[10000];
+    Arrays.fill(samples, 7);
+    Sequence sequence = sequence(START, 20.0);
+    sequence.extend(samples, 0, 9000);
+    sequence.freezeDigest();
+    byte[] frozen = sequence.getDigestBytes().array();
+    assertArrayEquals(expectedDigest(START, 20.0, samples, 9000), frozen);
+
+    // Callers can't alter the frozen digest
+    sequence.getDigestBytes().array()[0]++;
+    assertArrayEquals(frozen, sequence.getDigestBytes().array());
+
+    sequence.extend(samples, 9000, 1000);
+    assertArrayEquals(expectedDigest(START, 20.0, samples, 10000),
+        sequence.getDigestBytes().array());
+
+    // The start time and sample rate come first, so changing them rehashes the data
+    sequence.setStartTime(START + 1);
+    sequence.setSampleRate(10.0);
+    assertArrayEquals(expectedDigest(START + 1, 10.0, samples, 10000),
+        sequence.getDigestBytes().array());
+    assertFalse(Arrays.equals(frozen, sequence.getDigestBytes().array()));
+  }
+
+  @Test
+  public void testGetDigestBytes_MatchesAfterMerge() throws Exception {
+    Random random = new Random(2);
+    int[] samples = new int[15000];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = random.nextInt(1000);
+    }
+    // 1 Hz, so each data point is a second apart
+    long interval = 1000000L;
+    Sequence first = sequence(START, 1.0);
+    first.extend(samples, 0, 6000);
+    Sequence second = sequence(START + 5000 * interval, 1.0);
+    second.extend(samples, 5000, 10000);
+    first.freezeDigest();
+    second.freezeDigest();
+
+    // Merging the earlier sequence into the later one swaps their data
+    first.mergeInto(second);
+    assertEquals(START, second.getStartTime());
+    assertEquals(0, first.getLength());
+    int[] merged = second.getSeries();
+    assertArrayEquals(expectedDigest(START, 1.0, merged, merged.length),
+        second.getDigestBytes().array());
+
+    second.trimStart(START + 100 * interval);
+    int[] trimmed = second.getSeries();
+    assertArrayEquals(expectedDigest(second.getStartTime(), 1.0, trimmed, trimmed.length),
+        second.getDigestBytes().array());
+  }
+}
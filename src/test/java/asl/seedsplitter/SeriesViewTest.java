@@ -0,0 +1,106 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class SeriesViewTest {
+
+  private static final long START = 1500000000000000L;
+
+  private static DataSet dataSet(long startTime, int[] samples) throws Exception {
+    DataSet dataSet = new DataSet();
+    dataSet.setStartTime(startTime);
+    dataSet.setSampleRate(20.0);
+    dataSet.extend(samples, 0, samples.length);
+    return dataSet;
+  }
+
+  private static int[] samples(Random random, int length) {
+    int[] samples = new int[length];
+    for (int i = 0; i < length; i++) {
+      samples[i] = random.nextInt();
+    }
+    return samples;
+  }
+
+  private static double[] toDoubles(int[] samples) {
+    double[] doubles = new double[samples.length];
+    for (int i = 0; i < samples.length; i++) {
+      doubles[i] = samples[i];
+    }
+    return doubles;
+  }
+
+  @Test
+  public void testGetView_MatchesGetSeries() throws Exception {
+    Random random = new Random(1);
+    DataSet dataSet = dataSet(START, samples(random, 10000));
+    long interval = dataSet.getInterval();
+    for (int trial = 0; trial < 50; trial++) {
+      long start = START + random.nextInt(9000) * interval + random.nextInt((int) interval);
+      long end = start + random.nextInt(1000) * interval;
+      SeriesView view = dataSet.getView(start, end);
+      double[] expected = toDoubles(dataSet.getSeries(start, end));
+      assertArrayEquals(expected, view.toArray(), 0.0);
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i], view.get(i), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testBuild_SpansSequencesAndGaps() throws Exception {
+    Random random = new Random(2);
+    int[] first = samples(random, 5000);
+    int[] second = samples(random, 300);
+    DataSet firstSet = dataSet(START, first);
+    DataSet secondSet = dataSet(START, second);
+
+    SeriesView view = new SeriesView.Builder().addGap(10).add(firstSet, 4000, 1000)
+        .addGap(0).addGap(20).add(secondSet).build();
+    assertEquals(1330, view.getLength());
+
+    double[] expected = new double[1330];
+    for (int i = 0; i < 1000; i++) {
+      expected[10 + i] = first[4000 + i];
+    }
+    for (int i = 0; i < 300; i++) {
+      expected[1030 + i] = second[i];
+    }
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], view.get(i), 0.0);
+    }
+    assertArrayEquals(expected, view.toArray(), 0.0);
+
+    // Partial copies start and end within segments
+    double[] part = new double[400];
+    view.copyTo(900, part, 0, 400);
+    for (int i = 0; i < part.length; i++) {
+      assertEquals(expected[900 + i], part[i], 0.0);
+    }
+
+    // Views append the segments of other views
+    SeriesView both = new SeriesView.Builder().add(view).add(firstSet.getView()).build();
+    assertEquals(1330 + 5000, both.getLength());
+    assertEquals(first[4999], both.get(both.getLength() - 1), 0.0);
+    assertEquals(expected[1329], both.get(1329), 0.0);
+  }
+
+  @Test
+  public void testToArray_ReturnsNewArrays() throws Exception {
+    DataSet dataSet = dataSet(START, samples(new Random(3), 100));
+    SeriesView view = dataSet.getView();
+    assertNotSame(view.toArray(), view.toArray());
+    assertEquals(50, new SeriesView.Builder().add(dataSet, 0, 50).build().toArray().length);
+    assertEquals(0, SeriesView.EMPTY.toArray().length);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGet_OutsideView() throws Exception {
+    dataSet(START, new int[10]).getView().get(10);
+  }
+}
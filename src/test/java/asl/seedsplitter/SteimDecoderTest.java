@@ -0,0 +1,175 @@
+package asl.seedsplitter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import asl.testutils.Dependent;
+import asl.testutils.ResourceManager;
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.Steim1;
+import edu.iris.dmc.seedcodec.Steim2;
+import edu.iris.dmc.seedcodec.SteimException;
+import edu.iris.dmc.seedcodec.SteimFrameBlock;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import seed.MiniSeed;
+import seed.MiniSeedView;
+
+public class SteimDecoderTest {
+
+  private static List<ByteBuffer> records;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Dependent.assumeGlobalState();
+    records = new ArrayList<>();
+    File dir = new File(ResourceManager.getDirectoryPath("/seed_data/IU_ANMO/2015/206"));
+    File[] files = dir.listFiles((dir1, name) -> name.endsWith(".seed"));
+    Arrays.sort(files);
+    for (File file : files) {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+      while (buffer.remaining() >= 256) {
+        int length = MiniSeedView.crackBlockSize(buffer);
+        ByteBuffer record = buffer.slice();
+        record.limit(length);
+        buffer.position(buffer.position() + length);
+        if (!MiniSeedView.isHeartBeat(record)) {
+          MiniSeedView view = new MiniSeedView(record);
+          if (view.getEncoding() == B1000Types.STEIM1 || view.getEncoding() == B1000Types.STEIM2) {
+            records.add(record);
+          }
+        }
+      }
+    }
+    assertFalse(records.isEmpty());
+  }
+
+  @Test
+  public final void decode_MatchesDecomp() throws Exception {
+    SteimDecoder decoder = new SteimDecoder();
+    Sequence sequence = new Sequence();
+    int total = 0;
+    for (ByteBuffer record : records) {
+      byte[] bytes = new byte[record.remaining()];
+      record.duplicate().get(bytes);
+      int[] expected = new MiniSeed(bytes).decomp();
+
+      int count = decoder.decode(new MiniSeedView(record), sequence);
+      assertEquals(expected.length, count);
+      assertArrayEquals(expected, Arrays.copyOfRange(sequence.getSeries(), total, total + count));
+      total += count;
+    }
+    assertEquals(total, sequence.getLength());
+  }
+
+  @Test
+  public final void decode_SampleCountMismatch_AppendsNothing() throws Exception {
+    SteimDecoder decoder = new SteimDecoder();
+    Sequence sequence = new Sequence();
+    MiniSeedView first = new MiniSeedView(records.get(0));
+    decoder.decode(first, sequence);
+    int[] before = sequence.getSeries();
+
+    MiniSeedView view = new MiniSeedView(records.get(1));
+    try {
+      decoder.decode(view.getRecord(), view.getDataOffset(), view.getDataLength(),
+          view.getNsamp() + 1, view.getEncoding() == B1000Types.STEIM2, sequence);
+      fail("Expected a SteimException");
+    } catch (SteimException e) {
+      assertArrayEquals(before, sequence.getSeries());
+    }
+
+    // The sequence is still usable after backing out the record
+    decoder.decode(view, sequence);
+    assertEquals(before.length + view.getNsamp(), sequence.getLength());
+  }
+
+  /**
+   * Decode frames with both SteimDecoder and seedCodec and check they agree, either on the samples
+   * or on failing.
+   */
+  private static void assertSameAsSeedCodec(byte[] frames, int numSamples, boolean steim2) {
+    int[] expected;
+    try {
+      expected = steim2 ? Steim2.decode(frames, numSamples, false)
+          : Steim1.decode(frames, numSamples, false);
+    } catch (SteimException | RuntimeException e) {
+      // seedCodec fails with an index exception if the first frame holds no first difference
+      expected = null;
+    }
+
+    SteimDecoder decoder = new SteimDecoder();
+    Sequence sequence = new Sequence();
+    try {
+      int count = decoder.decode(ByteBuffer.wrap(frames), 0, frames.length, numSamples, steim2,
+          sequence);
+      if (expected == null) {
+        fail("seedCodec failed but SteimDecoder decoded " + count + " samples");
+      }
+      assertArrayEquals(expected, sequence.getSeries());
+    } catch (SteimException e) {
+      if (expected != null) {
+        fail("seedCodec decoded " + expected.length + " samples but SteimDecoder failed: " + e);
+      }
+      assertEquals(0, sequence.getLength());
+    }
+  }
+
+  @Test
+  public final void decode_FirstFrameHeaderWordsCoded_MatchesSeedCodec() throws Exception {
+    ByteBuffer frames = ByteBuffer.allocate(128);
+    // First frame: word 1 is coded as 4 differences and word 2 as 2, and a code 0 word follows
+    // them. The first three values are taken as the header whatever their words' codes.
+    frames.putInt(0, 0x18400000);
+    frames.putInt(4, 0x01020304);
+    frames.putInt(8, 0x00050006);
+    frames.putInt(12, 0x7fffffff);
+    frames.putInt(16, 0x11121314);
+    // Second frame: code 0 words in the header slots are not values
+    frames.putInt(64, 0x05000000);
+    frames.putInt(68, 1000);
+    frames.putInt(72, 0x0a0b0c0d);
+    frames.putInt(76, 0x21222324);
+    for (int numSamples = 1; numSamples <= 12; numSamples++) {
+      assertSameAsSeedCodec(frames.array(), numSamples, false);
+      assertSameAsSeedCodec(frames.array(), numSamples, true);
+    }
+  }
+
+  @Test
+  public final void decode_EncodedSamples_MatchesSeedCodec() throws Exception {
+    Random random = new Random(206);
+    for (int run = 0; run < 50; run++) {
+      int[] samples = new int[1 + random.nextInt(400)];
+      // Steim2 differences are at most 30 bits
+      int bits = 4 + random.nextInt(25);
+      for (int i = 0; i < samples.length; i++) {
+        samples[i] = random.nextInt() >> (32 - bits);
+      }
+      boolean steim2 = run % 2 == 1;
+      SteimFrameBlock block = steim2 ? Steim2.encode(samples, 7) : Steim1.encode(samples, 7);
+      assertSameAsSeedCodec(block.getEncodedData(), block.getNumSamples(), steim2);
+    }
+  }
+
+  @Test
+  public final void decode_RandomFrames_MatchesSeedCodec() throws Exception {
+    // Any word may carry any code, including the header words of the first frame
+    Random random = new Random(2015);
+    for (int run = 0; run < 2000; run++) {
+      byte[] frames = new byte[64 * (1 + random.nextInt(7))];
+      random.nextBytes(frames);
+      int numSamples = 1 + random.nextInt(frames.length / 2);
+      assertSameAsSeedCodec(frames, numSamples, run % 2 == 1);
+    }
+  }
+}
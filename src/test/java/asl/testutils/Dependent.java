@@ -40,5 +40,14 @@ public class Dependent {
     GlobalMock.setEventsDir(ResourceManager.getDirectoryPath("/event_synthetics"));
   }
 
+  /**
+   * Skip the test unless a PostgreSQL database with the seedscan schema is given by the
+   * SEEDSCAN_TEST_DB_URI, SEEDSCAN_TEST_DB_USER and SEEDSCAN_TEST_DB_PASSWORD environment
+   * variables. Tests using it write values for the made up network XX.
+   */
+  public static void assumeTestDatabase() {
+    Assume.assumeTrue("No test database", System.getenv("SEEDSCAN_TEST_DB_URI") != null);
+  }
+
 
 }
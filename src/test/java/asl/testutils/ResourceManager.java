@@ -124,7 +124,6 @@ public abstract class ResourceManager { // NO_UCD (test only)
   }
 
   public static synchronized MetaGenerator loadMetaGenerator() throws Exception {
-    Dependent.requireRDSeed();
     if (sharedMetaGenerator == null) {
       String[] netArray = {"CU", "GT", "IC", "IW", "NE", "US", "IU"};
       sharedMetaGenerator = new MetaGenerator(
@@ -0,0 +1,250 @@
+package asl.timeseries;
+
+import static org.junit.Assert.assertEquals;
+
+import asl.utils.FFTResult;
+import asl.utils.TimeSeriesUtils;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+import org.junit.Test;
+
+public class CrossSpectrumTest {
+
+  /**
+   * Peterson's algorithm on Complex objects, as FFTResult.spectralCalc computes it.
+   */
+  private static Complex[] referenceSpectrum(double[] x, double[] y, double period) {
+    int range = x.length / 4;
+    int slider = range / 4;
+    int padding = 2;
+    while (padding < range) {
+      padding *= 2;
+    }
+    int singleSide = padding / 2 + 1;
+    Complex[] spectrum = new Complex[singleSide];
+    Arrays.fill(spectrum, Complex.ZERO);
+    FastFourierTransformer fft = new FastFourierTransformer(DftNormalization.STANDARD);
+
+    double wss = 0;
+    int segments = 0;
+    for (int start = 0; start + range <= x.length; start += slider) {
+      double[] xRange = Arrays.copyOfRange(x, start, start + range);
+      double[] yRange = Arrays.copyOfRange(y, start, start + range);
+      detrendDemean(xRange);
+      detrendDemean(yRange);
+      wss = PreprocessingUtils.costaper(xRange, 0.10);
+      PreprocessingUtils.costaper(yRange, 0.10);
+      Complex[] xFFT = fft.transform(Arrays.copyOf(xRange, padding), TransformType.FORWARD);
+      Complex[] yFFT = fft.transform(Arrays.copyOf(yRange, padding), TransformType.FORWARD);
+      for (int k = 0; k < singleSide; k++) {
+        spectrum[k] = spectrum[k].add(xFFT[k].multiply(yFFT[k].conjugate()));
+      }
+      segments++;
+    }
+    double normalization = 2.0 * period / padding / (wss / range) / segments;
+    for (int k = 0; k < singleSide; k++) {
+      spectrum[k] = spectrum[k].multiply(normalization);
+    }
+    return spectrum;
+  }
+
+  private static void detrendDemean(double[] data) {
+    double sumX = 0;
+    double sumY = 0;
+    double sumXSquared = 0;
+    double sumXY = 0;
+    for (int i = 0; i < data.length; i++) {
+      sumX += i;
+      sumY += data[i];
+      sumXSquared += (double) i * i;
+      sumXY += data[i] * i;
+    }
+    double del = sumXSquared - sumX * sumX / data.length;
+    double slope = (sumXY - sumX * sumY / data.length) / del;
+    double offset = (sumXSquared * sumY - sumX * sumXY) / (del * data.length);
+    double mean = 0;
+    for (int i = 0; i < data.length; i++) {
+      data[i] -= slope * i + offset;
+      mean += data[i];
+    }
+    mean /= data.length;
+    for (int i = 0; i < data.length; i++) {
+      data[i] -= mean;
+    }
+  }
+
+  private static double[] noise(long seed, int length) {
+    Random random = new Random(seed);
+    double[] data = new double[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = 1000 * random.nextGaussian() + 0.1 * i + 500 * Math.sin(i / 50.0);
+    }
+    return data;
+  }
+
+  private static void assertSpectrumEquals(Complex[] expected, CrossSpectrum actual) {
+    assertEquals(expected.length, actual.getSize());
+    double largest = 0;
+    for (Complex value : expected) {
+      largest = Math.max(largest, value.abs());
+    }
+    for (int k = 0; k < expected.length; k++) {
+      assertEquals(expected[k].getReal(), actual.getReal(k), largest * 1E-12);
+      assertEquals(expected[k].getImaginary(), actual.getImaginary(k), largest * 1E-12);
+    }
+  }
+
+  @Test
+  public void testTransformMatchesApacheFFT() {
+    double[] real = noise(1, 64);
+    double[] imaginary = noise(2, 64);
+    Complex[] input = new Complex[64];
+    double[] interleaved = new double[128];
+    for (int i = 0; i < 64; i++) {
+      input[i] = new Complex(real[i], imaginary[i]);
+      interleaved[2 * i] = real[i];
+      interleaved[2 * i + 1] = imaginary[i];
+    }
+    Complex[] expected = new FastFourierTransformer(DftNormalization.STANDARD)
+        .transform(input, TransformType.FORWARD);
+
+    FFTPlan.forSize(64).transform(interleaved);
+    for (int k = 0; k < 64; k++) {
+      assertEquals(expected[k].getReal(), interleaved[2 * k], 1E-7);
+      assertEquals(expected[k].getImaginary(), interleaved[2 * k + 1], 1E-7);
+    }
+  }
+
+  @Test
+  public void testComputeCrossMatchesReference() {
+    double[] x = noise(3, 8640);
+    double[] y = noise(4, 8640);
+    Complex[] expected = referenceSpectrum(x, y, 0.05);
+    CrossSpectrum actual = CrossSpectrum.compute(x, y, 0.05);
+
+    assertSpectrumEquals(expected, actual);
+    assertEquals(1.0 / (4096 * 0.05), actual.getDeltaF(), 1E-15);
+  }
+
+  @Test
+  public void testComputePowerMatchesReference() {
+    // Copies, as CrossPower passes for a channel with itself
+    double[] x = noise(5, 86400);
+    Complex[] expected = referenceSpectrum(x, x.clone(), 1.0);
+    CrossSpectrum actual = CrossSpectrum.compute(x, x.clone(), 1.0);
+
+    assertSpectrumEquals(expected, actual);
+    for (int k = 0; k < actual.getSize(); k++) {
+      assertEquals(0.0, actual.getImaginary(k), 0.0);
+    }
+  }
+
+  @Test
+  public void testRemoveResponseMatchesComplexDivision() throws Exception {
+    double[] x = noise(6, 4096);
+    double[] y = noise(7, 4096);
+    Complex[] expected = referenceSpectrum(x, y, 1.0);
+    CrossSpectrum actual = CrossSpectrum.compute(x, y, 1.0);
+
+    double[] responseX = new double[2 * actual.getSize()];
+    double[] responseY = new double[2 * actual.getSize()];
+    for (int k = 0; k < actual.getSize(); k++) {
+      responseX[2 * k] = 1 + k;
+      responseX[2 * k + 1] = -0.5 * k;
+      responseY[2 * k] = 2 - 0.01 * k;
+      responseY[2 * k + 1] = 0.25 * k;
+    }
+    actual.removeResponse(responseX, responseY);
+    double[] magnitudes = actual.getMagnitudes();
+
+    assertEquals(0.0, magnitudes[0], 0.0);
+    for (int k = 1; k < magnitudes.length; k++) {
+      Complex response = new Complex(responseX[2 * k], responseX[2 * k + 1])
+          .multiply(new Complex(responseY[2 * k], responseY[2 * k + 1]).conjugate());
+      double expectedMagnitude = expected[k].divide(response).abs();
+      assertEquals(expectedMagnitude, magnitudes[k], expectedMagnitude * 1E-9);
+    }
+  }
+
+  @Test(expected = TimeseriesException.class)
+  public void testRemoveResponseZeroResponse() throws Exception {
+    CrossSpectrum spectrum = CrossSpectrum.compute(noise(8, 1024), noise(9, 1024), 1.0);
+    double[] response = new double[2 * spectrum.getSize()];
+    spectrum.removeResponse(response, response);
+  }
+
+  /**
+   * Response of a broadband seismometer with a 120 s corner, 0.707 damping and a gain of 1500 at
+   * each frequency.
+   */
+  private static Complex[] seismometerResponse(double[] frequencies) {
+    double corner = 2 * Math.PI / 120.0;
+    Complex[] response = new Complex[frequencies.length];
+    for (int k = 0; k < frequencies.length; k++) {
+      Complex s = new Complex(0, 2 * Math.PI * frequencies[k]);
+      Complex numerator = s.multiply(s).multiply(1500);
+      Complex denominator = s.multiply(s).add(s.multiply(2 * 0.707 * corner))
+          .add(corner * corner);
+      response[k] = numerator.divide(denominator);
+    }
+    return response;
+  }
+
+  private static double[] interleave(Complex[] response) {
+    double[] interleaved = new double[2 * response.length];
+    for (int k = 0; k < response.length; k++) {
+      interleaved[2 * k] = response[k].getReal();
+      interleaved[2 * k + 1] = response[k].getImaginary();
+    }
+    return interleaved;
+  }
+
+  @Test
+  public void testRemoveResponseMatchesSpectralCalc() throws Exception {
+    // Two hours at 20 Hz, a 0.2 Hz swell and a 2 Hz tone over noise
+    int length = 2 * 3600 * 20;
+    double sampleRate = 20.0;
+    Random random = new Random(11);
+    double[] x = new double[length];
+    double[] y = new double[length];
+    for (int i = 0; i < length; i++) {
+      double time = i / sampleRate;
+      double swell = 2000 * Math.sin(2 * Math.PI * 0.2 * time);
+      x[i] = swell + 300 * Math.sin(2 * Math.PI * 2.0 * time) + 100 * random.nextGaussian();
+      y[i] = 0.8 * swell + 100 * random.nextGaussian();
+    }
+
+    // As CrossPower computed it before CrossSpectrum
+    long interval = (long) (TimeSeriesUtils.ONE_HZ_INTERVAL / sampleRate);
+    FFTResult reference = FFTResult.spectralCalc(x, y, interval);
+    Complex[] referenceSpectrum = reference.getFFT();
+    double[] referenceFrequencies = reference.getFreqs();
+    Complex[] responseX = seismometerResponse(referenceFrequencies);
+    Complex[] responseY = seismometerResponse(referenceFrequencies);
+    double[] expected = new double[referenceFrequencies.length];
+    for (int k = 1; k < expected.length; k++) {
+      expected[k] = referenceSpectrum[k].divide(responseX[k].multiply(responseY[k].conjugate()))
+          .abs();
+    }
+
+    double period = interval / (double) TimeSeriesUtils.ONE_HZ_INTERVAL;
+    CrossSpectrum spectrum = CrossSpectrum.compute(x, y, period);
+    assertEquals(reference.getFreq(1), spectrum.getDeltaF(), 1E-15);
+    double[] frequencies = spectrum.getFrequencies();
+    assertEquals(referenceFrequencies.length, frequencies.length);
+    for (int k = 0; k < frequencies.length; k++) {
+      assertEquals(referenceFrequencies[k], frequencies[k], 1E-12);
+    }
+    spectrum.removeResponse(interleave(responseX), interleave(responseY));
+    double[] actual = spectrum.getMagnitudes();
+
+    assertEquals(0.0, actual[0], 0.0);
+    for (int k = 1; k < actual.length; k++) {
+      assertEquals("frequency " + frequencies[k], expected[k], actual[k], expected[k] * 1E-9);
+    }
+  }
+}
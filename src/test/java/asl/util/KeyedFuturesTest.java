@@ -0,0 +1,87 @@
+package asl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class KeyedFuturesTest {
+
+  @Test
+  public void testGetComputesOncePerKey() throws Exception {
+    KeyedFutures<String, Integer> futures = new KeyedFutures<>();
+    AtomicInteger computations = new AtomicInteger();
+
+    assertEquals(1, futures.get("a", () -> computations.incrementAndGet()).intValue());
+    assertEquals(1, futures.get("a", () -> computations.incrementAndGet()).intValue());
+    assertEquals(2, futures.get("b", () -> computations.incrementAndGet()).intValue());
+    assertEquals(2, computations.get());
+    assertEquals(2, futures.size());
+    assertEquals(3, futures.getRequests());
+    assertEquals(2, futures.getComputations());
+  }
+
+  @Test
+  public void testGetKeepsNullValues() throws Exception {
+    KeyedFutures<String, Integer> futures = new KeyedFutures<>();
+    AtomicInteger computations = new AtomicInteger();
+
+    assertNull(futures.get("a", () -> {
+      computations.incrementAndGet();
+      return null;
+    }));
+    assertNull(futures.get("a", () -> computations.incrementAndGet()));
+    assertEquals(1, computations.get());
+  }
+
+  @Test
+  public void testGetFailureIsThrownAndNotKept() throws Exception {
+    KeyedFutures<String, Integer> futures = new KeyedFutures<>();
+    try {
+      futures.get("a", () -> {
+        throw new IOException("failed");
+      });
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertEquals("failed", e.getMessage());
+    }
+    assertFalse(futures.containsKey("a"));
+
+    assertEquals(5, futures.get("a", () -> 5).intValue());
+    assertTrue(futures.containsKey("a"));
+  }
+
+  @Test(timeout = 20000)
+  public void testConcurrentGetComputesOnce() throws Exception {
+    KeyedFutures<String, Integer> futures = new KeyedFutures<>();
+    AtomicInteger computations = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<Integer>> tasks = new ArrayList<>();
+      for (int i = 0; i < 64; i++) {
+        String key = "key" + (i % 4);
+        tasks.add(() -> futures.get(key, () -> {
+          Thread.sleep(20);
+          return computations.incrementAndGet();
+        }));
+      }
+      for (Future<Integer> result : pool.invokeAll(tasks)) {
+        assertTrue(result.get() >= 1 && result.get() <= 4);
+      }
+      assertEquals(4, computations.get());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+}
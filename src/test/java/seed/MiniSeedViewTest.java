@@ -0,0 +1,131 @@
+package seed;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class MiniSeedViewTest {
+
+  /**
+   * Build a 512 byte Steim2 record of IU ANMO 00 LHZ with blockettes 1000 and 1001.
+   *
+   * @param order byte order of the record
+   * @param year the year
+   * @param doy the day of year
+   * @param b1001Type type written for blockette 1001
+   * @return the record
+   */
+  private static byte[] record(ByteOrder order, int year, int doy, int b1001Type) {
+    ByteBuffer bb = ByteBuffer.allocate(512).order(order);
+    bb.put("000042D ".getBytes(StandardCharsets.US_ASCII));
+    bb.put("ANMO 00LHZIU".getBytes(StandardCharsets.US_ASCII));
+    bb.putShort(20, (short) year);
+    bb.putShort(22, (short) doy);
+    bb.put(24, (byte) 13);
+    bb.put(25, (byte) 45);
+    bb.put(26, (byte) 30);
+    bb.putShort(28, (short) 1234);
+    bb.putShort(30, (short) 300);
+    bb.putShort(32, (short) 1);
+    bb.putShort(34, (short) 1);
+    bb.put(39, (byte) 2);
+    bb.putShort(44, (short) 64);
+    bb.putShort(46, (short) 48);
+    // Blockette 1000, Steim2 in a 512 byte record
+    bb.putShort(48, (short) 1000);
+    bb.putShort(50, (short) 56);
+    bb.put(52, (byte) 11);
+    bb.put(53, (byte) (order == ByteOrder.BIG_ENDIAN ? 1 : 0));
+    bb.put(54, (byte) 9);
+    // Blockette 1001
+    bb.putShort(56, (short) b1001Type);
+    bb.putShort(58, (short) 0);
+    bb.put(60, (byte) 87);
+    return bb.array();
+  }
+
+  private static void assertSameHeader(byte[] bytes) throws Exception {
+    MiniSeed miniSeed = new MiniSeed(bytes);
+    MiniSeedView view = new MiniSeedView(ByteBuffer.wrap(bytes));
+
+    assertEquals(miniSeed.getSeedName(), view.getSeedName());
+    assertEquals(miniSeed.isSwapBytes(), view.isSwapBytes());
+    assertEquals(miniSeed.getYear(), view.getYear());
+    assertEquals(miniSeed.getDoy(), view.getDoy());
+    assertArrayEquals(MiniSeed.crackTime(bytes), view.getTime());
+    assertEquals(miniSeed.getNsamp(), view.getNsamp());
+    assertEquals(miniSeed.getRate(), view.getRate(), 0);
+    assertEquals(MiniSeed.crackRate(bytes), view.getRate(), 0);
+    assertEquals(miniSeed.getDataOffset(), view.getDataOffset());
+    assertEquals(miniSeed.getBlockSize(), view.getBlockSize());
+    assertEquals(MiniSeed.crackBlockSize(bytes), MiniSeedView.crackBlockSize(ByteBuffer.wrap(bytes)));
+    assertEquals(miniSeed.getEncoding(), view.getEncoding());
+    assertEquals(miniSeed.getTimingQuality(), view.getTimingQuality());
+  }
+
+  @Test
+  public final void header_BigEndian_MatchesMiniSeed() throws Exception {
+    byte[] bytes = record(ByteOrder.BIG_ENDIAN, 2015, 206, 1001);
+    assertSameHeader(bytes);
+
+    MiniSeedView view = new MiniSeedView(ByteBuffer.wrap(bytes));
+    assertFalse(view.isSwapBytes());
+    assertEquals("IUANMO LHZ00", view.getSeedName());
+    assertEquals(512, view.getBlockSize());
+    assertEquals(87, view.getTimingQuality());
+  }
+
+  @Test
+  public final void header_LittleEndian_MatchesMiniSeed() throws Exception {
+    byte[] bytes = record(ByteOrder.LITTLE_ENDIAN, 2015, 206, 1001);
+    assertSameHeader(bytes);
+
+    MiniSeedView view = new MiniSeedView(ByteBuffer.wrap(bytes));
+    assertTrue(view.isSwapBytes());
+    assertEquals(2015, view.getYear());
+    assertEquals(206, view.getDoy());
+  }
+
+  @Test
+  public final void header_Unswapped1001In2009_MatchesMiniSeed() throws Exception {
+    // Blockette 1001 was written unswapped, -5885 once read, from 2009,128 to 133
+    byte[] bytes = record(ByteOrder.BIG_ENDIAN, 2009, 130, -5885);
+    assertSameHeader(bytes);
+    assertEquals(87, new MiniSeedView(ByteBuffer.wrap(bytes)).getTimingQuality());
+  }
+
+  @Test
+  public final void isHeartBeat_MatchesMiniSeed() throws Exception {
+    byte[] heartBeat = new byte[512];
+    for (int i = 0; i < 6; i++) {
+      heartBeat[i] = '0';
+    }
+    for (int i = 6; i < 18; i++) {
+      heartBeat[i] = ' ';
+    }
+    assertTrue(MiniSeed.crackIsHeartBeat(heartBeat));
+    assertTrue(MiniSeedView.isHeartBeat(ByteBuffer.wrap(heartBeat)));
+
+    byte[] bytes = record(ByteOrder.BIG_ENDIAN, 2015, 206, 1001);
+    assertFalse(MiniSeed.crackIsHeartBeat(bytes));
+    assertFalse(MiniSeedView.isHeartBeat(ByteBuffer.wrap(bytes)));
+  }
+
+  @Test
+  public final void isHeartBeat_PositionedBuffer_ReadsFromPosition() throws Exception {
+    byte[] bytes = record(ByteOrder.BIG_ENDIAN, 2015, 206, 1001);
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    buffer.position(512);
+    buffer.put(bytes);
+    buffer.position(512);
+    assertFalse(MiniSeedView.isHeartBeat(buffer));
+    assertEquals(512, MiniSeedView.crackBlockSize(buffer));
+    assertEquals(512, buffer.position());
+  }
+}